@@ -0,0 +1,183 @@
+#!/usr/bin/env python3
+# -*- coding: utf-8 -*-
+"""
+Long-lived worker for the map extraction scripts (tiến trình Python dùng lại giữa các lần phân tích)
+
+Started and recycled by PythonWorkerPool (Java). OpenCV / NumPy and the extractor module are
+imported once; each job then calls the script's main() with the given argv, exactly like a
+one-shot `python map_polygon_extractor.py ...` run, so the scripts need no changes.
+
+Protocol on stdin/stdout: every message is a 4-byte big-endian length followed by UTF-8 JSON.
+  request:  {"id": 1, "op": "run", "script": "map_polygon_extractor", "args": ["in.png", "out.json", ...]}
+            {"id": 2, "op": "ping"}
+  response: {"id": 1, "ok": true, "exitCode": 0, "status": {...}, "output": "...", "durationMs": 1234}
+While a job runs its log lines go to stderr; only the ===JSON_START=== block and a short tail
+of the log are returned. The worker exits when stdin is closed.
+"""
+
+import importlib
+import io
+import json
+import os
+import struct
+import sys
+import time
+import traceback
+from collections import deque
+
+SCRIPT_DIR = os.path.dirname(os.path.abspath(__file__))
+if SCRIPT_DIR not in sys.path:
+    sys.path.insert(0, SCRIPT_DIR)
+
+# Scripts a job may run (module name = file name without .py)
+ALLOWED_SCRIPTS = {"map_polygon_extractor", "advanced_zone_detector"}
+PRELOAD = ["cv2", "numpy", "map_polygon_extractor"]
+TAIL_LINES = 200
+MAX_FRAME = 64 * 1024 * 1024
+
+
+class JobOutput(io.TextIOBase):
+    """Stand-in for sys.stdout during a job: echoes to stderr, keeps the status block and a log tail"""
+
+    encoding = "utf-8"
+
+    def __init__(self):
+        super().__init__()
+        self.tail = deque(maxlen=TAIL_LINES)
+        self.status_lines = None
+        self.status = None
+        self.partial = ""
+
+    def writable(self):
+        return True
+
+    def write(self, text):
+        sys.stderr.write(text)
+        self.partial += text
+        while "\n" in self.partial:
+            line, self.partial = self.partial.split("\n", 1)
+            self._line(line.rstrip("\r"))
+        return len(text)
+
+    def _line(self, line):
+        if line == "===JSON_START===":
+            self.status_lines = []
+        elif line == "===JSON_END===":
+            if self.status_lines is not None:
+                self.status = "".join(self.status_lines)
+            self.status_lines = None
+        elif self.status_lines is not None:
+            self.status_lines.append(line)
+        else:
+            self.tail.append(line)
+
+    def flush(self):
+        sys.stderr.flush()
+
+    def reconfigure(self, **kwargs):
+        # Scripts call sys.stdout.reconfigure(encoding='utf-8') at import time
+        pass
+
+
+def read_frame(stream):
+    header = stream.read(4)
+    if len(header) < 4:
+        return None
+    (length,) = struct.unpack(">I", header)
+    if length > MAX_FRAME:
+        raise ValueError(f"frame too large: {length}")
+    data = stream.read(length)
+    if len(data) < length:
+        return None
+    return json.loads(data.decode("utf-8"))
+
+
+def write_frame(stream, message):
+    data = json.dumps(message, ensure_ascii=False).encode("utf-8")
+    stream.write(struct.pack(">I", len(data)))
+    stream.write(data)
+    stream.flush()
+
+
+def run_job(request):
+    script = request.get("script")
+    if script not in ALLOWED_SCRIPTS:
+        return {"ok": False, "exitCode": 2, "error": f"Unknown script: {script}"}
+
+    out = JobOutput()
+    saved_stdout, saved_argv = sys.stdout, sys.argv
+    sys.stdout = out
+    sys.argv = [script + ".py"] + [str(arg) for arg in request.get("args", [])]
+    exit_code = 0
+    error = None
+    start = time.time()
+    try:
+        module = importlib.import_module(script)
+        module.main()
+    except SystemExit as e:
+        exit_code = e.code if isinstance(e.code, int) else (0 if e.code is None else 1)
+    except Exception as e:
+        exit_code = 1
+        error = str(e)
+        out.write(traceback.format_exc())
+    finally:
+        if out.partial:
+            out._line(out.partial)
+            out.partial = ""
+        sys.stdout = saved_stdout
+        sys.argv = saved_argv
+
+    status = None
+    if out.status:
+        try:
+            status = json.loads(out.status)
+        except ValueError:
+            status = None
+    return {
+        "ok": True,
+        "exitCode": exit_code,
+        "status": status,
+        "output": "\n".join(out.tail),
+        "error": error,
+        "durationMs": int((time.time() - start) * 1000),
+    }
+
+
+def main():
+    protocol_in = sys.stdin.buffer
+    # Keep the real stdout for frames only; anything else that writes to fd 1 (native OpenCV
+    # messages, stray prints) is sent to stderr instead of corrupting the protocol
+    protocol_out = os.fdopen(os.dup(1), "wb")
+    os.dup2(2, 1)
+    try:
+        sys.stderr.reconfigure(encoding="utf-8", errors="replace")
+    except AttributeError:
+        pass
+    sys.stdout = sys.stderr
+
+    for name in PRELOAD:
+        try:
+            importlib.import_module(name)
+        except Exception as e:
+            print(f"[Worker] Preload of {name} failed: {e}", file=sys.stderr, flush=True)
+
+    jobs = 0
+    while True:
+        request = read_frame(protocol_in)
+        if request is None:
+            break
+        op = request.get("op", "run")
+        if op == "ping":
+            response = {"ok": True, "pong": True, "pid": os.getpid(), "jobs": jobs}
+        elif op == "run":
+            response = run_job(request)
+            jobs += 1
+        else:
+            response = {"ok": False, "error": f"Unknown op: {op}"}
+        if "id" in request:
+            response["id"] = request["id"]
+        write_frame(protocol_out, response)
+
+
+if __name__ == "__main__":
+    main()
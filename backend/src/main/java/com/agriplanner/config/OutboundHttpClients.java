@@ -0,0 +1,295 @@
+package com.agriplanner.config;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Shared outbound HTTP client for AI providers and OAuth (HTTP client dùng chung cho các lệnh gọi ra ngoài)
+ *
+ * One JDK {@link HttpClient} (HTTP/2, keep-alive connection reuse per host) backs a RestTemplate
+ * per timeout profile, so services no longer pay a TLS handshake on every call. Concurrent
+ * requests per host are capped, which is where pool saturation shows up in {@link #getStats()}
+ * together with per-host latency. {@link #send} gives direct access for streaming request bodies.
+ */
+@Component
+public class OutboundHttpClients {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundHttpClients.class);
+
+    // Text chat completions (GitHub Models, Groq, Cohere)
+    public static final String PROFILE_AI_CHAT = "ai-chat";
+    // Image analysis (Gemini Vision, GPT-4o vision): large uploads, slow answers
+    public static final String PROFILE_AI_VISION = "ai-vision";
+    // Google / Facebook login token exchange
+    public static final String PROFILE_OAUTH = "oauth";
+
+    // Latency histogram bucket upper bounds (ms); the last bucket is open-ended
+    private static final long[] BUCKET_BOUNDS = { 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000,
+            120000 };
+
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    private final Map<String, Duration> readTimeouts = new LinkedHashMap<>();
+    private final Map<String, RestTemplate> restTemplates = new ConcurrentHashMap<>();
+    private final Map<String, HostStats> hosts = new ConcurrentHashMap<>();
+    private final int maxPerHost;
+    private final long acquireTimeoutMs;
+
+    public OutboundHttpClients(
+            @Value("${http.outbound.connect-timeout-ms:5000}") long connectTimeoutMs,
+            @Value("${http.outbound.max-per-host:16}") int maxPerHost,
+            @Value("${http.outbound.acquire-timeout-ms:30000}") long acquireTimeoutMs,
+            @Value("${http.outbound.ai-chat.read-timeout-ms:30000}") long aiChatReadTimeoutMs,
+            @Value("${http.outbound.ai-vision.read-timeout-ms:120000}") long aiVisionReadTimeoutMs,
+            @Value("${http.outbound.oauth.read-timeout-ms:10000}") long oauthReadTimeoutMs) {
+        this.maxPerHost = Math.max(1, maxPerHost);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "outbound-http");
+            t.setDaemon(true);
+            return t;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        readTimeouts.put(PROFILE_AI_CHAT, Duration.ofMillis(aiChatReadTimeoutMs));
+        readTimeouts.put(PROFILE_AI_VISION, Duration.ofMillis(aiVisionReadTimeoutMs));
+        readTimeouts.put(PROFILE_OAUTH, Duration.ofMillis(oauthReadTimeoutMs));
+    }
+
+    /**
+     * RestTemplate on the shared client with the profile's read timeout
+     */
+    public RestTemplate restTemplate(String profile) {
+        return restTemplates.computeIfAbsent(profile, p -> {
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient, executor);
+            requestFactory.setReadTimeout(readTimeout(p));
+            RestTemplate restTemplate = new RestTemplate(requestFactory);
+            restTemplate.getInterceptors().add(new MeteringInterceptor());
+            return restTemplate;
+        });
+    }
+
+    /**
+     * Send a request on the shared client (e.g. with a streaming BodyPublisher), with the
+     * profile's timeout, the per-host limit and metrics
+     */
+    public <T> HttpResponse<T> send(String profile, java.net.http.HttpRequest.Builder request,
+            HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        java.net.http.HttpRequest built = request.timeout(readTimeout(profile)).build();
+        HostStats stats = acquire(built.uri());
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            HttpResponse<T> response = httpClient.send(built, bodyHandler);
+            failed = response.statusCode() >= 500;
+            return response;
+        } finally {
+            stats.release(start, failed);
+        }
+    }
+
+    /**
+     * POST a JSON body built outside RestTemplate (e.g. {@link com.agriplanner.util.StreamingJsonBody}).
+     * Errors surface like RestTemplate's: 4xx/5xx as HttpStatusCodeException, I/O as ResourceAccessException.
+     */
+    public ResponseEntity<String> postJson(String profile, String url, HttpHeaders headers,
+            java.net.http.HttpRequest.BodyPublisher body) {
+        URI uri = URI.create(url);
+        java.net.http.HttpRequest.Builder request = java.net.http.HttpRequest.newBuilder(uri).POST(body);
+        headers.forEach((name, values) -> values.forEach(value -> request.header(name, value)));
+
+        // Keep query strings (API keys) out of error messages
+        String target = uri.getScheme() + "://" + uri.getHost() + uri.getPath();
+        HttpResponse<byte[]> response;
+        try {
+            response = send(profile, request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw new ResourceAccessException("I/O error on POST request for \"" + target + "\": " + e.getMessage(),
+                    e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("POST request for \"" + target + "\" was interrupted");
+        }
+
+        HttpStatusCode status = HttpStatusCode.valueOf(response.statusCode());
+        HttpHeaders responseHeaders = new HttpHeaders();
+        response.headers().map().forEach(responseHeaders::addAll);
+        HttpStatus known = HttpStatus.resolve(response.statusCode());
+        String statusText = known != null ? known.getReasonPhrase() : "";
+        if (status.is4xxClientError()) {
+            throw HttpClientErrorException.create(status, statusText, responseHeaders, response.body(),
+                    StandardCharsets.UTF_8);
+        }
+        if (status.is5xxServerError()) {
+            throw HttpServerErrorException.create(status, statusText, responseHeaders, response.body(),
+                    StandardCharsets.UTF_8);
+        }
+        return new ResponseEntity<>(new String(response.body(), StandardCharsets.UTF_8), responseHeaders, status);
+    }
+
+    private Duration readTimeout(String profile) {
+        return readTimeouts.getOrDefault(profile, readTimeouts.get(PROFILE_AI_CHAT));
+    }
+
+    // ==================== PER-HOST LIMIT + METRICS ====================
+
+    private final class HostStats {
+        final Semaphore permits = new Semaphore(maxPerHost, true);
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong waited = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong peakInFlight = new AtomicLong();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+        final AtomicLong totalMillis = new AtomicLong();
+
+        int inFlight() {
+            return maxPerHost - permits.availablePermits();
+        }
+
+        void release(long startNanos, boolean failed) {
+            long millis = (System.nanoTime() - startNanos) / 1_000_000;
+            permits.release();
+            requests.incrementAndGet();
+            totalMillis.addAndGet(millis);
+            if (failed) {
+                errors.incrementAndGet();
+            }
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+
+        long percentile(double p) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return BUCKET_BOUNDS[i];
+                }
+            }
+            return BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] * 2;
+        }
+    }
+
+    private HostStats acquire(URI uri) throws IOException {
+        String host = uri.getHost() != null ? uri.getHost() : "unknown";
+        HostStats stats = hosts.computeIfAbsent(host, h -> new HostStats());
+        if (!stats.permits.tryAcquire()) {
+            // Saturated: every slot for this host is busy
+            stats.waited.incrementAndGet();
+            try {
+                if (!stats.permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    stats.rejected.incrementAndGet();
+                    throw new IOException("Too many concurrent requests to " + host);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a connection to " + host);
+            }
+        }
+        stats.peakInFlight.accumulateAndGet(stats.inFlight(), Math::max);
+        return stats;
+    }
+
+    private final class MeteringInterceptor implements ClientHttpRequestInterceptor {
+        @Override
+        @NonNull
+        public ClientHttpResponse intercept(@NonNull HttpRequest request, @NonNull byte[] body,
+                @NonNull ClientHttpRequestExecution execution) throws IOException {
+            HostStats stats = acquire(request.getURI());
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                failed = response.getStatusCode().is5xxServerError();
+                return response;
+            } finally {
+                stats.release(start, failed);
+            }
+        }
+    }
+
+    /**
+     * Per host: requests, errors, in-flight / limit, saturation waits and latency percentiles
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxPerHost", maxPerHost);
+        Map<String, Object> timeouts = new LinkedHashMap<>();
+        readTimeouts.forEach((profile, timeout) -> timeouts.put(profile, timeout.toMillis()));
+        stats.put("readTimeoutsMs", timeouts);
+        Map<String, Object> perHost = new LinkedHashMap<>();
+        hosts.forEach((host, h) -> {
+            long requests = h.requests.get();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("requests", requests);
+            item.put("errors", h.errors.get());
+            item.put("inFlight", h.inFlight());
+            item.put("peakInFlight", h.peakInFlight.get());
+            item.put("saturatedWaits", h.waited.get());
+            item.put("rejected", h.rejected.get());
+            item.put("avgMs", requests == 0 ? 0 : h.totalMillis.get() / requests);
+            item.put("p50Ms", h.percentile(0.5));
+            item.put("p95Ms", h.percentile(0.95));
+            item.put("p99Ms", h.percentile(0.99));
+            perHost.put(host, item);
+        });
+        stats.put("hosts", perHost);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Shutting down outbound HTTP client");
+        executor.shutdownNow();
+    }
+}
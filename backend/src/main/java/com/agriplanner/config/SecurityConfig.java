@@ -106,6 +106,7 @@ public class SecurityConfig {
                         .requestMatchers("/api/land-parcels/**").permitAll()
                         // KMZ overlay images (public for map display)
                         .requestMatchers("/api/kmz/images/**").permitAll()
+                        .requestMatchers("/api/kmz/tiles/**").permitAll()
                         // Static uploads (images, videos)
                         .requestMatchers("/uploads/**").permitAll()
                         // Debug
@@ -1,6 +1,8 @@
 package com.agriplanner.controller;
 
+import com.agriplanner.config.OutboundHttpClients;
 import com.agriplanner.service.AIAdvisorService;
+import com.agriplanner.service.FieldOverlayService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,9 +17,14 @@ import java.util.Map;
 public class AIAdvisorController {
 
     private final AIAdvisorService aiAdvisorService;
+    private final FieldOverlayService fieldOverlayService;
+    private final OutboundHttpClients httpClients;
 
-    public AIAdvisorController(AIAdvisorService aiAdvisorService) {
+    public AIAdvisorController(AIAdvisorService aiAdvisorService, FieldOverlayService fieldOverlayService,
+            OutboundHttpClients httpClients) {
         this.aiAdvisorService = aiAdvisorService;
+        this.fieldOverlayService = fieldOverlayService;
+        this.httpClients = httpClients;
     }
 
     /**
@@ -32,13 +39,21 @@ public class AIAdvisorController {
      *   "humidity": 75,
      *   "rainfall": 120,
      *   "existingCrops": "Lúa",
-     *   "farmSize": "2 hecta"
+     *   "farmSize": "2 hecta",
+     *   "fieldId": 12            // tùy chọn: lấy loại đất từ bản đồ thổ nhưỡng khi thiếu soilType
      * }
      */
     @PostMapping("/recommend")
     public ResponseEntity<?> getRecommendation(@RequestBody Map<String, Object> request) {
         try {
             String soilType = (String) request.get("soilType");
+            if ((soilType == null || soilType.isBlank()) && request.get("fieldId") != null) {
+                FieldOverlayService.Composition composition = fieldOverlayService
+                        .getComposition(Long.valueOf(request.get("fieldId").toString()));
+                if (composition != null) {
+                    soilType = composition.describe(FieldOverlayService.MAP_TYPE_SOIL);
+                }
+            }
             String location = (String) request.get("location");
             String currentSeason = (String) request.get("currentSeason");
             Double temperature = request.get("temperature") != null 
@@ -74,7 +89,10 @@ public class AIAdvisorController {
     public ResponseEntity<?> getProviders() {
         return ResponseEntity.ok(Map.of(
             "success", true,
-            "providers", aiAdvisorService.getAvailableProviders()
+            "providers", aiAdvisorService.getAvailableProviders(),
+            "stats", aiAdvisorService.getProviderStats(),
+            "http", httpClients.getStats(),
+            "adviceCache", aiAdvisorService.getAdviceCacheStats()
         ));
     }
 
@@ -95,8 +113,8 @@ public class AIAdvisorController {
             ));
         }
 
-        // Quick test
-        Map<String, Object> testResult = aiAdvisorService.getAgricultureAdvice(
+        // Quick test (never served from the advice cache)
+        Map<String, Object> testResult = aiAdvisorService.requestAdvice(
             "Đất phù sa", "Cần Thơ", "Đông Xuân", 28.0, 75.0, 100.0, null, "1 hecta"
         );
 
@@ -1,6 +1,8 @@
 package com.agriplanner.controller;
 
 import com.agriplanner.model.*;
+import com.agriplanner.service.BoundaryResponseMapper;
+import com.agriplanner.service.FieldOverlayService;
 import com.agriplanner.service.FieldService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -20,16 +22,19 @@ import java.util.Map;
 public class FieldController {
 
     private final FieldService fieldService;
+    private final BoundaryResponseMapper boundaryMapper;
     private final com.agriplanner.repository.InventoryRepository inventoryRepository;
+    private final FieldOverlayService fieldOverlayService;
 
     /**
      * Get all fields for a farm
      */
     @GetMapping
-    public ResponseEntity<?> getFieldsByFarm(@RequestParam Long farmId) {
+    public ResponseEntity<?> getFieldsByFarm(@RequestParam Long farmId,
+            @RequestParam(required = false) String geometry) {
         try {
             List<Field> fields = fieldService.getFieldsByFarm(farmId);
-            return ResponseEntity.ok(fields);
+            return ResponseEntity.ok(boundaryMapper.fields(fields, geometry));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -39,9 +44,20 @@ public class FieldController {
      * Get field by ID
      */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getFieldById(@PathVariable Long id) {
+    public ResponseEntity<?> getFieldById(@PathVariable Long id,
+            @RequestParam(required = false) String geometry) {
         return fieldService.getFieldById(id)
-                .map(ResponseEntity::ok)
+                .map(field -> ResponseEntity.ok(boundaryMapper.field(field, geometry)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Soil / planning zone composition of the field (tỷ lệ loại đất, vùng quy hoạch)
+     */
+    @GetMapping("/{id}/zone-composition")
+    public ResponseEntity<?> getZoneComposition(@PathVariable Long id) {
+        return fieldService.getFieldById(id)
+                .map(field -> ResponseEntity.ok(fieldOverlayService.getComposition(field).toMap()))
                 .orElse(ResponseEntity.notFound().build());
     }
 
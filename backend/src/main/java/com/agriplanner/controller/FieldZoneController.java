@@ -2,6 +2,8 @@ package com.agriplanner.controller;
 
 import com.agriplanner.model.*;
 import com.agriplanner.repository.*;
+import com.agriplanner.service.BoundaryResponseMapper;
+import com.agriplanner.service.FieldOverlayService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,16 +22,27 @@ import java.util.*;
 public class FieldZoneController {
 
     private final FieldZoneRepository fieldZoneRepository;
+    private final BoundaryResponseMapper boundaryMapper;
+    private final FieldOverlayService fieldOverlayService;
 
     @GetMapping("/field/{fieldId}")
-    public ResponseEntity<List<FieldZone>> getByField(@PathVariable Long fieldId) {
-        return ResponseEntity.ok(fieldZoneRepository.findByFieldId(fieldId));
+    public ResponseEntity<?> getByField(@PathVariable Long fieldId,
+            @RequestParam(required = false) String geometry) {
+        return ResponseEntity.ok(boundaryMapper.fieldZones(fieldZoneRepository.findByFieldId(fieldId), geometry));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> getById(@PathVariable Long id) {
+    public ResponseEntity<?> getById(@PathVariable Long id,
+            @RequestParam(required = false) String geometry) {
         return fieldZoneRepository.findById(id)
-                .map(ResponseEntity::ok)
+                .map(zone -> ResponseEntity.ok(boundaryMapper.fieldZone(zone, geometry)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/{id}/zone-composition")
+    public ResponseEntity<?> getZoneComposition(@PathVariable Long id) {
+        return fieldZoneRepository.findById(id)
+                .map(zone -> ResponseEntity.ok(fieldOverlayService.getComposition(zone).toMap()))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -1,17 +1,28 @@
 package com.agriplanner.controller;
 
+import com.agriplanner.service.KmzOverlayTileService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Pattern;
 
 /**
  * Controller for serving KMZ overlay images
@@ -24,9 +35,25 @@ public class KmzImageController {
 
     private static final Logger logger = LoggerFactory.getLogger(KmzImageController.class);
 
+    // Tiles never change once written (a new pyramid gets a new ETag)
+    private static final String TILE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final Pattern IMAGE_KEY = Pattern.compile("[A-Za-z0-9._-]+");
+
+    // Tomcat sendfile request attributes (zero-copy file transfer)
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final KmzOverlayTileService overlayTileService;
+
     @Value("${kmz.upload.dir:${user.home}/agriplanner/uploads/kmz}")
     private String uploadDir;
 
+    public KmzImageController(KmzOverlayTileService overlayTileService) {
+        this.overlayTileService = overlayTileService;
+    }
+
     /**
      * Serve overlay image from KMZ upload
      * Public endpoint - no authentication required for maps
@@ -62,4 +89,100 @@ public class KmzImageController {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    // ==================== TILE PYRAMID ====================
+
+    /**
+     * TileJSON by overlay image name, so clients need not derive the tile key themselves
+     */
+    @GetMapping(value = "/tiles/{uploadId}/tile.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Resource> getOverlayTileJsonByImage(
+            @PathVariable Long uploadId,
+            @RequestParam String image) {
+        return getOverlayTileJson(uploadId, KmzOverlayTileService.imageKey(image));
+    }
+
+    /**
+     * TileJSON of an overlay's pyramid (min/max zoom, bounds, URL template); 404 until it is built
+     */
+    @GetMapping(value = "/tiles/{uploadId}/{imageKey}/tile.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Resource> getOverlayTileJson(
+            @PathVariable Long uploadId,
+            @PathVariable String imageKey) {
+        if (!isValidKey(imageKey)) {
+            return ResponseEntity.notFound().build();
+        }
+        Path meta = overlayTileService.tileDir(uploadId, imageKey).resolve(KmzOverlayTileService.METADATA_FILE);
+        if (!Files.isRegularFile(meta)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .body(new FileSystemResource(meta));
+    }
+
+    /**
+     * Serve one overlay tile with a strong ETag and immutable caching.
+     * The file is handed to Tomcat's sendfile when available, otherwise copied channel to channel.
+     */
+    @GetMapping("/tiles/{uploadId}/{imageKey}/{z}/{x}/{y}.png")
+    public void getOverlayTile(
+            @PathVariable Long uploadId,
+            @PathVariable String imageKey,
+            @PathVariable int z,
+            @PathVariable int x,
+            @PathVariable int y,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        if (!isValidKey(imageKey) || z < 0 || z > 30 || x < 0 || y < 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path tile = KmzOverlayTileService.tilePath(overlayTileService.tileDir(uploadId, imageKey), z, x, y);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(tile, BasicFileAttributes.class);
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String etag = "\"" + Long.toHexString(attrs.lastModifiedTime().toMillis()) + "-"
+                + Long.toHexString(attrs.size()) + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, TILE_CACHE_CONTROL);
+        if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MediaType.IMAGE_PNG_VALUE);
+        response.setContentLengthLong(attrs.size());
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, tile.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, attrs.size());
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(tile)) {
+            channel.transferTo(0, attrs.size(), Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private boolean isValidKey(String imageKey) {
+        return IMAGE_KEY.matcher(imageKey).matches() && !imageKey.startsWith(".");
+    }
+
+    private boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -7,6 +7,7 @@ import com.agriplanner.repository.KmzUploadRepository;
 import com.agriplanner.repository.PlanningZoneRepository;
 import com.agriplanner.service.KmzParserService;
 import com.agriplanner.service.MapAnalysisAIService;
+import com.agriplanner.service.ZoneOverlapDetector;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +40,7 @@ public class KmzUploadController {
     private final KmzParserService kmzParserService;
     private final KmzUploadRepository kmzUploadRepository;
     private final PlanningZoneRepository planningZoneRepository;
+    private final ZoneOverlapDetector zoneOverlapDetector;
     
     @Autowired
     private MapAnalysisAIService mapAnalysisAIService;
@@ -51,10 +53,12 @@ public class KmzUploadController {
 
     public KmzUploadController(KmzParserService kmzParserService,
             KmzUploadRepository kmzUploadRepository,
-            PlanningZoneRepository planningZoneRepository) {
+            PlanningZoneRepository planningZoneRepository,
+            ZoneOverlapDetector zoneOverlapDetector) {
         this.kmzParserService = kmzParserService;
         this.kmzUploadRepository = kmzUploadRepository;
         this.planningZoneRepository = planningZoneRepository;
+        this.zoneOverlapDetector = zoneOverlapDetector;
     }
 
     /**
@@ -96,7 +100,8 @@ public class KmzUploadController {
             KmzUpload upload = kmzParserService.processKmzFile(file, province, district, userId, mapType);
 
             if (notes != null && !notes.isEmpty()) {
-                upload.setNotes(notes);
+                // Keep the parser's note (skipped duplicates) after the user's
+                upload.setNotes(upload.getNotes() != null ? notes + "\n" + upload.getNotes() : notes);
                 kmzUploadRepository.save(upload);
             }
 
@@ -439,6 +444,8 @@ public class KmzUploadController {
     
     /**
      * Confirm and save AI analysis results to database
+     * Without "overlapPolicy" the default reject-duplicates applies: a batch with a zone that
+     * duplicates a stored zone or another zone of the batch gets 400 with duplicateZones=true
      */
     @PostMapping("/analyze/confirm")
     @PreAuthorize("hasRole('SYSTEM_ADMIN') or hasRole('OWNER')")
@@ -460,6 +467,38 @@ public class KmzUploadController {
             String district = (String) analysisResult.get("district");
             String mapType = (String) analysisResult.get("mapType");
             Long userId = getCurrentUserId();
+
+            // Build zones first so they can be checked against stored zones before anything is saved
+            List<PlanningZone> newZones = new ArrayList<>();
+            if (zones != null) {
+                for (Map<String, Object> zoneData : zones) {
+                    try {
+                        PlanningZone zone = createZoneFromAnalysis(zoneData, null, userId, mapType);
+                        if (zone != null) {
+                            newZones.add(zone);
+                        }
+                    } catch (Exception e) {
+                        logger.warn("Error converting zone: {}", e.getMessage());
+                    }
+                }
+            }
+
+            String overlapPolicy = (String) request.get("overlapPolicy");
+            ZoneOverlapDetector.OverlapReport overlapReport = null;
+            if (!newZones.isEmpty() && !ZoneOverlapDetector.POLICY_ALLOW.equals(overlapPolicy)) {
+                overlapReport = zoneOverlapDetector.detect(newZones, mapType);
+                if (zoneOverlapDetector.rejects(overlapReport, overlapPolicy)) {
+                    return ResponseEntity.badRequest().body(Map.of(
+                        "success", false,
+                        "error", overlapReport.describe(),
+                        "duplicateZones", true,
+                        "overlaps", overlapReport.toMap()
+                    ));
+                }
+                if (ZoneOverlapDetector.POLICY_SKIP_DUPLICATES.equals(overlapPolicy)) {
+                    newZones = zoneOverlapDetector.withoutDuplicates(newZones, overlapReport);
+                }
+            }
             
             // Create upload record
             KmzUpload upload = new KmzUpload();
@@ -475,17 +514,13 @@ public class KmzUploadController {
             
             // Save zones
             int savedCount = 0;
-            if (zones != null) {
-                for (Map<String, Object> zoneData : zones) {
-                    try {
-                        PlanningZone zone = createZoneFromAnalysis(zoneData, upload.getId(), userId, mapType);
-                        if (zone != null) {
-                            planningZoneRepository.save(zone);
-                            savedCount++;
-                        }
-                    } catch (Exception e) {
-                        logger.warn("Error saving zone: {}", e.getMessage());
-                    }
+            for (PlanningZone zone : newZones) {
+                try {
+                    zone.setKmzUploadId(upload.getId());
+                    planningZoneRepository.save(zone);
+                    savedCount++;
+                } catch (Exception e) {
+                    logger.warn("Error saving zone: {}", e.getMessage());
                 }
             }
             
@@ -496,12 +531,15 @@ public class KmzUploadController {
             // Clear analysis from memory
             analysisResults.remove(analysisId);
             
-            return ResponseEntity.ok(Map.of(
-                "success", true,
-                "uploadId", upload.getId(),
-                "zonesCount", savedCount,
-                "message", "Đã lưu " + savedCount + " vùng vào database"
-            ));
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("uploadId", upload.getId());
+            response.put("zonesCount", savedCount);
+            response.put("message", "Đã lưu " + savedCount + " vùng vào database");
+            if (overlapReport != null) {
+                response.put("overlaps", overlapReport.toMap());
+            }
+            return ResponseEntity.ok(response);
             
         } catch (Exception e) {
             logger.error("Confirm analysis error: {}", e.getMessage(), e);
@@ -2,9 +2,14 @@ package com.agriplanner.controller;
 
 import com.agriplanner.model.LandParcel;
 import com.agriplanner.repository.LandParcelRepository;
+import com.agriplanner.service.BoundaryResponseMapper;
+import com.agriplanner.service.LandParcelImportService;
+import com.agriplanner.service.LandParcelViewportService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.util.HashMap;
 import java.util.List;
@@ -20,19 +25,68 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class LandParcelController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final LandParcelRepository landParcelRepository;
+    private final BoundaryResponseMapper boundaryMapper;
+    private final LandParcelImportService importService;
+    private final LandParcelViewportService viewportService;
 
     /**
-     * Get parcels within map bounds (for viewport rendering)
+     * Get parcels whose polygon intersects the map bounds (for viewport rendering).
+     * With zoom: lighter rows when zoomed out (centroids / simplified outlines / full) in a paged
+     * object {lod, items, hasMore, nextCursor}. Without zoom: a plain array of full parcels with
+     * the continuation in the X-Next-Cursor header. Every page is capped on the server.
      */
     @GetMapping("/bounds")
-    public ResponseEntity<List<LandParcel>> getParcelsInBounds(
+    public ResponseEntity<?> getParcelsInBounds(
             @RequestParam double swLat,
             @RequestParam double swLng,
             @RequestParam double neLat,
-            @RequestParam double neLng) {
-        List<LandParcel> parcels = landParcelRepository.findInBounds(swLat, swLng, neLat, neLng);
-        return ResponseEntity.ok(parcels);
+            @RequestParam double neLng,
+            @RequestParam(required = false) Integer zoom,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String geometry) {
+        LandParcelViewportService.ViewportPage page;
+        try {
+            page = viewportService.getPage(swLat, swLng, neLat, neLng, zoom, cursor, limit, geometry);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+        }
+        if (zoom != null) {
+            return ResponseEntity.ok(page.toMap());
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    /**
+     * Get parcels containing a point (click on map)
+     */
+    @GetMapping("/at-point")
+    public ResponseEntity<?> getParcelsAtPoint(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(required = false) String geometry) {
+        return ResponseEntity.ok(boundaryMapper.landParcels(landParcelRepository.findContainingPoint(lat, lng),
+                geometry));
+    }
+
+    /**
+     * Get parcels within radius (degrees) of a point, nearest first
+     */
+    @GetMapping("/near")
+    public ResponseEntity<?> getParcelsNearPoint(
+            @RequestParam double lat,
+            @RequestParam double lng,
+            @RequestParam(defaultValue = "0.001") double radius,
+            @RequestParam(required = false) String geometry) {
+        return ResponseEntity.ok(boundaryMapper.landParcels(landParcelRepository.findWithinDistance(lat, lng, radius),
+                geometry));
     }
 
     /**
@@ -107,4 +161,69 @@ public class LandParcelController {
         return ResponseEntity.ok(
                 landParcelRepository.findByMapSheetNumberAndParcelNumber(mapSheet, parcelNumber));
     }
+
+    // ==================== BULK IMPORT ====================
+
+    /**
+     * Import a GeoJSON / GeoJSON-seq / zipped shapefile dump (upsert by parcelId).
+     * Runs in the background; poll the returned job. resumeFrom skips already-imported features.
+     */
+    @PostMapping("/import")
+    @PreAuthorize("hasRole('SYSTEM_ADMIN') or hasRole('OWNER')")
+    public ResponseEntity<?> importParcels(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String district,
+            @RequestParam(defaultValue = "Cà Mau") String province,
+            @RequestParam(defaultValue = "GeoServer import") String source,
+            @RequestParam(defaultValue = "0") long resumeFrom) {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", "File rỗng"));
+        }
+        try {
+            LandParcelImportService.ImportJob job = importService.startImport(file, district, province, source,
+                    resumeFrom);
+            return ResponseEntity.accepted().body(Map.of(
+                    "success", true,
+                    "message", "Đã bắt đầu nhập thửa đất",
+                    "job", job.toMap()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                    "success", false,
+                    "error", "Lỗi lưu file: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Progress of an import job
+     */
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<?> getImportJob(@PathVariable String jobId) {
+        LandParcelImportService.ImportJob job = importService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(job.toMap());
+    }
+
+    /**
+     * Resume a failed import from its last committed offset
+     */
+    @PostMapping("/import/{jobId}/resume")
+    @PreAuthorize("hasRole('SYSTEM_ADMIN') or hasRole('OWNER')")
+    public ResponseEntity<?> resumeImport(@PathVariable String jobId) {
+        try {
+            LandParcelImportService.ImportJob job = importService.resume(jobId);
+            if (job == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.accepted().body(Map.of(
+                    "success", true,
+                    "message", "Tiếp tục nhập từ vị trí " + job.getStartOffset(),
+                    "job", job.toMap()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+        }
+    }
 }
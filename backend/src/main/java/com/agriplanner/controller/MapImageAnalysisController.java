@@ -1,15 +1,23 @@
 package com.agriplanner.controller;
 
 import com.agriplanner.model.MapAnalysisHistory;
+import com.agriplanner.model.MapAnalysisJob;
 import com.agriplanner.model.PlanningZone;
 import com.agriplanner.model.User;
 import com.agriplanner.repository.MapAnalysisHistoryRepository;
 import com.agriplanner.repository.PlanningZoneRepository;
+import com.agriplanner.service.AnalysisResultStore;
+import com.agriplanner.service.MapAnalysisJobService;
 import com.agriplanner.service.MultiAIOrchestrator;
+import com.agriplanner.service.PlanningZoneBulkWriter;
+import com.agriplanner.service.PythonWorkerPool;
+import com.agriplanner.service.VisionResultCache;
+import com.agriplanner.service.ZoneOverlapDetector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -19,6 +27,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.math.BigDecimal;
@@ -47,29 +56,50 @@ public class MapImageAnalysisController {
     @Autowired
     private MapAnalysisHistoryRepository analysisHistoryRepository;
 
-    @Value("${map.image.upload.dir:${user.home}/agriplanner/uploads/map-images}")
-    private String uploadDir;
+    @Autowired
+    private PlanningZoneBulkWriter planningZoneBulkWriter;
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    @Autowired
+    private ZoneOverlapDetector zoneOverlapDetector;
 
-    // Store analysis results temporarily for confirmation
-    private final Map<String, Map<String, Object>> analysisResults = new ConcurrentHashMap<>();
+    @Autowired
+    private PythonWorkerPool pythonWorkerPool;
+
+    @Autowired
+    private MapAnalysisJobService analysisJobService;
+
+    // Analysis results waiting for confirmation (heap up to a budget, then spilled to disk)
+    @Autowired
+    private AnalysisResultStore analysisResults;
+
+    @Autowired
+    private VisionResultCache visionResultCache;
+
+    @Value("${map.image.upload.dir:${user.home}/agriplanner/uploads/map-images}")
+    private String uploadDir;
 
     // Store SSE emitters for progress updates
     private final Map<String, SseEmitter> progressEmitters = new ConcurrentHashMap<>();
 
+    /**
+     * Analyses run on the job queue workers (MapAnalysisJobService)
+     */
+    @PostConstruct
+    public void registerJobHandlers() {
+        analysisJobService.registerHandler(MapAnalysisJobService.KIND_AI, (job, context) -> runAnalysisAsync(
+                job.getId(), new File(job.getImagePath()), job.getProvince(), job.getDistrict(),
+                job.getMapType(), context));
+        analysisJobService.registerHandler(MapAnalysisJobService.KIND_GEOREF, (job, context) -> {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> controlPoints = new com.fasterxml.jackson.databind.ObjectMapper()
+                    .readValue(job.getParams(), List.class);
+            return runGeorefAnalysisAsync(job.getId(), new File(job.getImagePath()), controlPoints,
+                    job.getProvince(), job.getDistrict(), job.getMapType(), context);
+        });
+    }
+
     @PreDestroy
     public void cleanup() {
-        logger.info("Shutting down MapImageAnalysisController executor service...");
-        executorService.shutdown();
-        try {
-            if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
         // Close all SSE emitters
         progressEmitters.forEach((id, emitter) -> {
             try {
@@ -89,7 +119,8 @@ public class MapImageAnalysisController {
             @RequestParam("image") MultipartFile imageFile,
             @RequestParam(value = "province", defaultValue = "Cà Mau") String province,
             @RequestParam(value = "district", required = false) String district,
-            @RequestParam(value = "mapType", defaultValue = "soil") String mapType) {
+            @RequestParam(value = "mapType", defaultValue = "soil") String mapType,
+            @RequestParam(value = "priority", defaultValue = "interactive") String priority) {
 
         logger.info("=== MAP IMAGE ANALYSIS REQUEST ===");
         logger.info("File: {}, Size: {} bytes", imageFile.getOriginalFilename(), imageFile.getSize());
@@ -118,6 +149,10 @@ public class MapImageAnalysisController {
                         "error", "File quá lớn (tối đa 50MB)"));
             }
 
+            // Reject before storing the upload if the queue is already full
+            int jobPriority = parsePriority(priority);
+            analysisJobService.checkCapacity(jobPriority);
+
             // Save file temporarily
             String analysisId = UUID.randomUUID().toString().substring(0, 8);
             Path uploadPath = Paths.get(uploadDir);
@@ -135,18 +170,28 @@ public class MapImageAnalysisController {
 
             logger.info("File saved: {}", filePath);
 
+            // Queue the analysis (durable, survives restarts)
+            MapAnalysisJob job = newJob(analysisId, MapAnalysisJobService.KIND_AI, jobPriority,
+                    filePath, province, district, mapType);
+            try {
+                analysisJobService.submit(job);
+            } catch (MapAnalysisJobService.QueueFullException e) {
+                Files.deleteIfExists(filePath);
+                throw e;
+            }
+
             // Return analysis ID immediately, process async
             Map<String, Object> response = new LinkedHashMap<>();
             response.put("success", true);
             response.put("analysisId", analysisId);
             response.put("message", "Đã nhận file, bắt đầu phân tích...");
             response.put("imagePath", filePath.toString());
-
-            // Start async analysis
-            executorService.submit(() -> runAnalysisAsync(analysisId, filePath.toFile(), province, district, mapType));
+            addQueueInfo(response, analysisId);
 
             return ResponseEntity.ok(response);
 
+        } catch (MapAnalysisJobService.QueueFullException e) {
+            return queueFullResponse(e);
         } catch (Exception e) {
             logger.error("Error starting analysis: {}", e.getMessage(), e);
             return ResponseEntity.internalServerError().body(Map.of(
@@ -165,7 +210,8 @@ public class MapImageAnalysisController {
             @RequestParam("controlPoints") String controlPointsJson,
             @RequestParam(value = "province", defaultValue = "Cà Mau") String province,
             @RequestParam(value = "district", required = false) String district,
-            @RequestParam(value = "mapType", defaultValue = "soil") String mapType) {
+            @RequestParam(value = "mapType", defaultValue = "soil") String mapType,
+            @RequestParam(value = "priority", defaultValue = "interactive") String priority) {
 
         logger.info("=== GEOREFERENCED ANALYSIS REQUEST ===");
         logger.info("File: {}, Size: {} bytes, MapType: {}",
@@ -210,6 +256,9 @@ public class MapImageAnalysisController {
                 }
             }
 
+            int jobPriority = parsePriority(priority);
+            analysisJobService.checkCapacity(jobPriority);
+
             // Save file
             String analysisId = UUID.randomUUID().toString().substring(0, 8);
             Path uploadPath = Paths.get(uploadDir);
@@ -224,6 +273,17 @@ public class MapImageAnalysisController {
 
             logger.info("File saved: {}", filePath);
 
+            // Queue the georeferenced analysis; control points travel in the job params
+            MapAnalysisJob job = newJob(analysisId, MapAnalysisJobService.KIND_GEOREF, jobPriority,
+                    filePath, province, district, mapType);
+            job.setParams(controlPointsJson);
+            try {
+                analysisJobService.submit(job);
+            } catch (MapAnalysisJobService.QueueFullException e) {
+                Files.deleteIfExists(filePath);
+                throw e;
+            }
+
             // Return ID immediately, process async
             Map<String, Object> response = new LinkedHashMap<>();
             response.put("success", true);
@@ -231,14 +291,13 @@ public class MapImageAnalysisController {
             response.put("message", "Đã nhận file và 4 điểm tham chiếu, bắt đầu phân tích offline...");
             response.put("imagePath", filePath.toString());
             response.put("offlineMode", true);
-
-            // Start async georeferenced analysis
-            final List<Map<String, Object>> finalControlPoints = controlPoints;
-            executorService.submit(() -> runGeorefAnalysisAsync(
-                    analysisId, filePath.toFile(), finalControlPoints, province, district, mapType));
+            addQueueInfo(response, analysisId);
 
             return ResponseEntity.ok(response);
 
+        } catch (MapAnalysisJobService.QueueFullException e) {
+            return queueFullResponse(e);
+
         } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
             logger.error("Invalid control points JSON: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of(
@@ -298,12 +357,15 @@ public class MapImageAnalysisController {
         Map<String, Object> result = analysisResults.get(analysisId);
 
         if (result == null) {
-            return ResponseEntity.ok(Map.of(
-                    "status", "processing",
-                    "message", "Đang phân tích..."));
+            return ResponseEntity.ok(jobStatusResponse(analysisId));
         }
 
         Boolean success = (Boolean) result.get("success");
+        if (Boolean.TRUE.equals(result.get("cancelled"))) {
+            return ResponseEntity.ok(Map.of(
+                    "status", "cancelled",
+                    "message", "Đã hủy phân tích"));
+        }
         if (success != null && success) {
             return ResponseEntity.ok(Map.of(
                     "status", "completed",
@@ -316,6 +378,84 @@ public class MapImageAnalysisController {
         }
     }
 
+    /**
+     * Cancel a queued or running analysis (hủy phân tích đang chờ / đang chạy)
+     */
+    @PostMapping("/analyze/{analysisId}/cancel")
+    public ResponseEntity<?> cancelAnalysis(@PathVariable String analysisId) {
+        if (!analysisJobService.cancel(analysisId)) {
+            return ResponseEntity.ok(Map.of(
+                    "success", false,
+                    "error", "Phân tích không còn trong hàng đợi hoặc đã kết thúc"));
+        }
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "Đã gửi yêu cầu hủy phân tích"));
+    }
+
+    /**
+     * Python worker pool metrics (số tiến trình OpenCV đang chạy / chờ)
+     */
+    @GetMapping("/python-workers")
+    public ResponseEntity<?> getPythonWorkerStats() {
+        return ResponseEntity.ok(pythonWorkerPool.getStats());
+    }
+
+    /**
+     * Analysis job queue metrics (số phân tích đang chạy / đang chờ)
+     */
+    @GetMapping("/jobs/stats")
+    public ResponseEntity<?> getJobQueueStats() {
+        return ResponseEntity.ok(analysisJobService.getStats());
+    }
+
+    /**
+     * Pending result store metrics (hit rate, bytes on heap / spilled to disk)
+     */
+    @GetMapping("/results/stats")
+    public ResponseEntity<?> getResultStoreStats() {
+        return ResponseEntity.ok(analysisResults.getStats());
+    }
+
+    // ==================== AI VISION CACHE ====================
+
+    /**
+     * Cached AI coordinate / legend results (kết quả AI đã lưu theo ảnh)
+     */
+    @GetMapping("/vision-cache")
+    public ResponseEntity<?> getVisionCache(
+            @RequestParam(value = "imageHash", required = false) String imageHash,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "50") int size) {
+        return ResponseEntity.ok(visionResultCache.list(imageHash, page, size));
+    }
+
+    /**
+     * Purge cached AI results: one image, one map type, or all
+     */
+    @DeleteMapping("/vision-cache")
+    public ResponseEntity<?> purgeVisionCache(
+            @RequestParam(value = "imageHash", required = false) String imageHash,
+            @RequestParam(value = "mapType", required = false) String mapType) {
+        long removed = visionResultCache.purge(imageHash, mapType);
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "Đã xóa " + removed + " kết quả AI đã lưu",
+                "deletedCount", removed));
+    }
+
+    @DeleteMapping("/vision-cache/{id}")
+    public ResponseEntity<?> deleteVisionCacheEntry(@PathVariable Long id) {
+        if (!visionResultCache.delete(id)) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", "Không tìm thấy kết quả AI đã lưu"));
+        }
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "Đã xóa kết quả AI đã lưu"));
+    }
+
     /**
      * Get analysis history from database
      * Combines persisted history with in-memory pending analyses
@@ -350,7 +490,7 @@ public class MapImageAnalysisController {
         Set<String> persistedIds = new HashSet<>();
         history.forEach(h -> persistedIds.add((String) h.get("analysisId")));
 
-        analysisResults.forEach((id, result) -> {
+        analysisResults.summaries().forEach((id, result) -> {
             if (!persistedIds.contains(id)) {
                 Map<String, Object> item = new LinkedHashMap<>();
                 item.put("analysisId", id);
@@ -361,9 +501,8 @@ public class MapImageAnalysisController {
                 item.put("status", result.getOrDefault("status", "pending"));
 
                 // Add zone count if available
-                if (result.containsKey("zones")) {
-                    List<?> zones = (List<?>) result.get("zones");
-                    item.put("zoneCount", zones != null ? zones.size() : 0);
+                if (result.containsKey("zoneCount")) {
+                    item.put("zoneCount", result.get("zoneCount"));
                 }
                 item.put("persisted", false); // Mark as in-memory only
                 history.add(item);
@@ -400,9 +539,11 @@ public class MapImageAnalysisController {
         boolean removedFromMemory = false;
         boolean removedFromDb = false;
 
+        // 0. Stop the analysis if it is still queued or running
+        analysisJobService.cancel(analysisId);
+
         // 1. Remove from in-memory cache
-        Map<String, Object> removed = analysisResults.remove(analysisId);
-        if (removed != null) {
+        if (analysisResults.remove(analysisId)) {
             removedFromMemory = true;
         }
 
@@ -481,6 +622,8 @@ public class MapImageAnalysisController {
     /**
      * Confirm and save analysis results to database
      * Also saves analysis history for admin management
+     * Without "overlapPolicy" the default reject-duplicates applies: a batch with a zone that
+     * duplicates a stored zone or another zone of the batch gets 400 with duplicateZones=true
      */
     @PostMapping("/analyze/{analysisId}/confirm")
     public ResponseEntity<?> confirmAnalysis(
@@ -548,27 +691,50 @@ public class MapImageAnalysisController {
             // Get current user
             Long userId = getCurrentUserId();
 
-            // Save zones one by one (each in its own flush to avoid transaction rollback cascade)
-            int savedCount = 0;
+            // Convert all zones first so they can be checked against stored zones before saving
             int errorCount = 0;
-            if (zones != null && !zones.isEmpty()) {
+            List<PlanningZone> newZones = new ArrayList<>();
+            if (zones != null) {
                 for (Map<String, Object> zoneData : zones) {
                     try {
                         PlanningZone zone = convertToZone(zoneData, coordinates, province, district, mapType, userId);
                         zone.setAnalysisId(analysisId);
-                        planningZoneRepository.saveAndFlush(zone);
-                        savedCount++;
+                        newZones.add(zone);
                     } catch (Exception e) {
                         errorCount++;
-                        logger.warn("Error saving zone {}/{}: {} - {}",
+                        logger.warn("Error converting zone {}/{}: {} - {}",
                             errorCount, zones.size(), e.getClass().getSimpleName(), e.getMessage());
-                        if (errorCount <= 3) {
-                            logger.debug("Zone save error detail:", e);
-                        }
                     }
                 }
             }
 
+            // === Duplicate / overlapping polygon check ===
+            String overlapPolicy = (String) confirmData.get("overlapPolicy");
+            ZoneOverlapDetector.OverlapReport overlapReport = null;
+            if (!newZones.isEmpty() && !ZoneOverlapDetector.POLICY_ALLOW.equals(overlapPolicy)) {
+                overlapReport = zoneOverlapDetector.detect(newZones, mapType);
+                if (zoneOverlapDetector.rejects(overlapReport, overlapPolicy)) {
+                    return ResponseEntity.badRequest().body(Map.of(
+                            "success", false,
+                            "error", overlapReport.describe(),
+                            "duplicateZones", true,
+                            "overlaps", overlapReport.toMap()));
+                }
+                if (ZoneOverlapDetector.POLICY_SKIP_DUPLICATES.equals(overlapPolicy)) {
+                    newZones = zoneOverlapDetector.withoutDuplicates(newZones, overlapReport);
+                }
+            }
+
+            // Save zones in batched chunks (a failing row is isolated and rejected, not the whole import)
+            int savedCount = 0;
+            List<PlanningZoneBulkWriter.RejectedZone> rejectedZones = List.of();
+            if (!newZones.isEmpty()) {
+                PlanningZoneBulkWriter.BulkWriteResult writeResult = planningZoneBulkWriter.writeAll(newZones);
+                savedCount = writeResult.getSavedCount();
+                errorCount += writeResult.getRejectedCount();
+                rejectedZones = writeResult.getRejected();
+            }
+
             logger.info("Saved {}/{} zones for analysis {} ({} errors)",
                 savedCount, zones != null ? zones.size() : 0, analysisId, errorCount);
 
@@ -661,11 +827,17 @@ public class MapImageAnalysisController {
             // Clean up in-memory cache
             analysisResults.remove(analysisId);
 
-            return ResponseEntity.ok(Map.of(
-                    "success", true,
-                    "savedZones", savedCount,
-                    "analysisId", analysisId,
-                    "message", String.format("Đã lưu %d vùng vào hệ thống", savedCount)));
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("savedZones", savedCount);
+            response.put("rejectedCount", errorCount);
+            response.put("rejectedZones", rejectedZones);
+            response.put("analysisId", analysisId);
+            response.put("message", String.format("Đã lưu %d vùng vào hệ thống", savedCount));
+            if (overlapReport != null) {
+                response.put("overlaps", overlapReport.toMap());
+            }
+            return ResponseEntity.ok(response);
 
         } catch (Exception e) {
             logger.error("Error confirming analysis: {}", e.getMessage(), e);
@@ -679,58 +851,31 @@ public class MapImageAnalysisController {
 
     /**
      * P3 FIX: Cleanup old analysis results (called by scheduler)
+     * TTL and size budget are handled by AnalysisResultStore; this only forces an expiry sweep
      */
     public void cleanupOldAnalysisResults() {
-        long now = System.currentTimeMillis();
-        long expirationTime = 3600000; // 1 hour
-        int removedCount = 0;
-
-        Iterator<Map.Entry<String, Map<String, Object>>> it = analysisResults.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, Map<String, Object>> entry = it.next();
-            Map<String, Object> result = entry.getValue();
-
-            // Check if analysis has timestamp
-            if (result.containsKey("timestamp") && result.get("timestamp") instanceof Long) {
-                long timestamp = (Long) result.get("timestamp");
-                if (now - timestamp > expirationTime) {
-                    it.remove();
-                    removedCount++;
-                }
-            } else {
-                // If no timestamp, effectively give it a TTL from now (or just leave it until
-                // size limit)
-                // For safety, we'll just add a timestamp now if missing so it gets cleaned up
-                // next time
-                result.putIfAbsent("timestamp", now);
-            }
-        }
-
-        if (removedCount > 0) {
-            logger.info("Cleaned up {} expired analysis results", removedCount);
-        }
-
-        // Secondary check: size limit
-        if (analysisResults.size() > 100) {
-            analysisResults.clear();
-            logger.info("Force cleaned up all cached analysis results (size limit exceeded)");
-        }
+        analysisResults.evictExpired();
     }
 
     // ============ PRIVATE METHODS ============
 
-    private void runAnalysisAsync(String analysisId, File imageFile, String province, String district, String mapType) {
+    private Map<String, Object> runAnalysisAsync(String analysisId, File imageFile, String province,
+            String district, String mapType, MapAnalysisJobService.JobContext context) {
         logger.info("Starting async analysis: {} (mapType: {})", analysisId, mapType);
 
         try {
-            // Create progress callback
+            // Create progress callback (also the cancellation checkpoint)
             MultiAIOrchestrator.ProgressCallback callback = (step, status, message) -> {
+                context.onProgress(step, status);
                 sendProgressUpdate(analysisId, step, status, message);
             };
 
             // Run multi-AI orchestration with mapType
             Map<String, Object> result = multiAIOrchestrator.analyzeMapImage(
                     imageFile, province, district, mapType, callback);
+            if (context.isCancelled()) {
+                return cancelledResult(analysisId);
+            }
 
             // Store result
             result.put("analysisId", analysisId);
@@ -753,8 +898,14 @@ public class MapImageAnalysisController {
                     logger.debug("Error completing SSE", e);
                 }
             }
+            return result;
 
+        } catch (CancellationException e) {
+            return cancelledResult(analysisId);
         } catch (Exception e) {
+            if (context.isCancelled()) {
+                return cancelledResult(analysisId);
+            }
             logger.error("Async analysis failed: {}", e.getMessage(), e);
 
             Map<String, Object> errorResult = new HashMap<>();
@@ -763,26 +914,32 @@ public class MapImageAnalysisController {
             analysisResults.put(analysisId, errorResult);
 
             sendProgressUpdate(analysisId, "error", "failed", e.getMessage());
+            return errorResult;
         }
     }
 
     /**
      * NEW: Async worker for georeferenced analysis using advanced_zone_detector.py
      */
-    private void runGeorefAnalysisAsync(String analysisId, File imageFile,
-            List<Map<String, Object>> controlPoints, String province, String district, String mapType) {
+    private Map<String, Object> runGeorefAnalysisAsync(String analysisId, File imageFile,
+            List<Map<String, Object>> controlPoints, String province, String district, String mapType,
+            MapAnalysisJobService.JobContext context) {
 
         logger.info("Starting async georeferenced analysis: {} (mapType: {})", analysisId, mapType);
 
         try {
-            // Create progress callback
+            // Create progress callback (also the cancellation checkpoint)
             MultiAIOrchestrator.ProgressCallback callback = (step, status, message) -> {
+                context.onProgress(step, status);
                 sendProgressUpdate(analysisId, step, status, message);
             };
 
             // Run georeferenced analysis (offline, no AI API)
             Map<String, Object> result = multiAIOrchestrator.analyzeWithGeoreferencing(
                     imageFile, controlPoints, province, district, mapType, callback);
+            if (context.isCancelled()) {
+                return cancelledResult(analysisId);
+            }
 
             // Store result
             result.put("analysisId", analysisId);
@@ -813,8 +970,14 @@ public class MapImageAnalysisController {
                     logger.debug("Error completing SSE", e);
                 }
             }
+            return result;
 
+        } catch (CancellationException e) {
+            return cancelledResult(analysisId);
         } catch (Exception e) {
+            if (context.isCancelled()) {
+                return cancelledResult(analysisId);
+            }
             logger.error("Async georef analysis failed: {}", e.getMessage(), e);
 
             Map<String, Object> errorResult = new HashMap<>();
@@ -823,7 +986,105 @@ public class MapImageAnalysisController {
             analysisResults.put(analysisId, errorResult);
 
             sendProgressUpdate(analysisId, "error", "failed", e.getMessage());
+            return errorResult;
+        }
+    }
+
+    /**
+     * Store the cancelled outcome and close the progress stream
+     */
+    private Map<String, Object> cancelledResult(String analysisId) {
+        logger.info("Analysis {} cancelled", analysisId);
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", false);
+        result.put("cancelled", true);
+        result.put("error", "Đã hủy phân tích");
+        analysisResults.put(analysisId, result);
+
+        sendProgressUpdate(analysisId, "cancelled", "cancelled", "Đã hủy phân tích");
+        SseEmitter emitter = progressEmitters.remove(analysisId);
+        if (emitter != null) {
+            try {
+                emitter.complete();
+            } catch (Exception ignored) {
+            }
+        }
+        return result;
+    }
+
+    // ==================== JOB QUEUE HELPERS ====================
+
+    private int parsePriority(String priority) {
+        return "bulk".equalsIgnoreCase(priority)
+                ? MapAnalysisJobService.PRIORITY_BULK
+                : MapAnalysisJobService.PRIORITY_INTERACTIVE;
+    }
+
+    private MapAnalysisJob newJob(String analysisId, String kind, int priority, Path imagePath,
+            String province, String district, String mapType) {
+        MapAnalysisJob job = new MapAnalysisJob();
+        job.setId(analysisId);
+        job.setKind(kind);
+        job.setPriority(priority);
+        job.setImagePath(imagePath.toString());
+        job.setProvince(province);
+        job.setDistrict(district);
+        job.setMapType(mapType);
+        job.setCreatedBy(getCurrentUserId());
+        return job;
+    }
+
+    private void addQueueInfo(Map<String, Object> response, String analysisId) {
+        Map<String, Object> jobStatus = analysisJobService.getStatus(analysisId);
+        if (jobStatus != null) {
+            response.put("queuePosition", jobStatus.get("position"));
+            response.put("etaSeconds", jobStatus.get("etaSeconds"));
+        }
+    }
+
+    private ResponseEntity<?> queueFullResponse(MapAnalysisJobService.QueueFullException e) {
+        logger.warn("Map analysis queue full ({} waiting), rejecting upload", e.getQueued());
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("error", e.getMessage());
+        body.put("queueLength", e.getQueued());
+        body.put("retryAfterSeconds", e.getRetryAfterSeconds());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", String.valueOf(e.getRetryAfterSeconds()))
+                .body(body);
+    }
+
+    /**
+     * Status of an analysis that has no in-memory result yet (queued, running, or finished earlier)
+     */
+    private Map<String, Object> jobStatusResponse(String analysisId) {
+        Map<String, Object> jobStatus = analysisJobService.getStatus(analysisId);
+        Map<String, Object> response = new LinkedHashMap<>();
+        String state = jobStatus != null ? (String) jobStatus.get("state") : null;
+        if (MapAnalysisJobService.STATUS_QUEUED.equals(state)) {
+            response.put("status", "queued");
+            response.put("position", jobStatus.get("position"));
+            response.put("queueLength", jobStatus.get("queueLength"));
+            response.put("etaSeconds", jobStatus.get("etaSeconds"));
+            response.put("message", "Đang chờ trong hàng đợi (vị trí " + jobStatus.get("position") + ")");
+        } else if (MapAnalysisJobService.STATUS_CANCELLED.equals(state)) {
+            response.put("status", "cancelled");
+            response.put("message", "Đã hủy phân tích");
+        } else if (MapAnalysisJobService.STATUS_FAILED.equals(state)) {
+            response.put("status", "failed");
+            response.put("error", Objects.requireNonNullElse(jobStatus.get("error"), "Phân tích thất bại"));
+        } else if (MapAnalysisJobService.STATUS_COMPLETED.equals(state)) {
+            response.put("status", "expired");
+            response.put("message", "Kết quả phân tích không còn trong bộ nhớ, xem lại trong lịch sử phân tích");
+        } else {
+            response.put("status", "processing");
+            response.put("message", "Đang phân tích...");
+            if (jobStatus != null) {
+                response.put("step", jobStatus.get("step"));
+                response.put("etaSeconds", jobStatus.get("etaSeconds"));
+            }
         }
+        return response;
     }
 
     private void sendProgressUpdate(String analysisId, String step, String status, String message) {
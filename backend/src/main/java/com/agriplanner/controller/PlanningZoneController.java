@@ -4,24 +4,32 @@ import com.agriplanner.model.PlanningZone;
 import com.agriplanner.model.PlanningZoneType;
 import com.agriplanner.model.SoilType;
 import com.agriplanner.model.ZoneSnapshot;
-import com.agriplanner.model.ZoneSnapshotItem;
 import com.agriplanner.repository.PlanningZoneRepository;
 import com.agriplanner.repository.PlanningZoneTypeRepository;
 import com.agriplanner.repository.SoilTypeRepository;
 import com.agriplanner.repository.ZoneSnapshotRepository;
-import com.agriplanner.repository.ZoneSnapshotItemRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.agriplanner.service.BoundaryResponseMapper;
+import com.agriplanner.service.FieldOverlayService;
+import com.agriplanner.service.PlanningZoneClusterService;
+import com.agriplanner.service.PlanningZoneExportService;
+import com.agriplanner.service.PlanningZoneSpatialIndex;
+import com.agriplanner.service.PlanningZoneTileService;
+import com.agriplanner.service.ZoneSnapshotService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * REST Controller for Planning Zone management (Quản lý Quy hoạch Đất đai)
@@ -32,60 +40,80 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class PlanningZoneController {
 
+    // Ids bound per findAllById call (PostgreSQL allows 32767 bind parameters)
+    private static final int ID_CHUNK = 1000;
+
     private final PlanningZoneRepository planningZoneRepository;
     private final PlanningZoneTypeRepository planningZoneTypeRepository;
     private final SoilTypeRepository soilTypeRepository;
     private final ZoneSnapshotRepository zoneSnapshotRepository;
-    private final ZoneSnapshotItemRepository zoneSnapshotItemRepository;
+    private final PlanningZoneSpatialIndex spatialIndex;
+    private final PlanningZoneTileService tileService;
+    private final PlanningZoneExportService exportService;
+    private final PlanningZoneClusterService clusterService;
+    private final BoundaryResponseMapper boundaryMapper;
+    private final ZoneSnapshotService zoneSnapshotService;
+    private final FieldOverlayService fieldOverlayService;
 
     /**
      * Get all planning zones (optionally filtered by map type)
      */
     @GetMapping
-    public ResponseEntity<List<PlanningZone>> getAllZones(
-            @RequestParam(required = false) String mapType) {
+    public ResponseEntity<?> getAllZones(
+            @RequestParam(required = false) String mapType,
+            @RequestParam(required = false) String geometry) {
         if (mapType != null && !mapType.isEmpty()) {
-            return ResponseEntity.ok(planningZoneRepository.findByMapType(mapType));
+            return ResponseEntity.ok(boundaryMapper.planningZones(planningZoneRepository.findByMapType(mapType),
+                    geometry));
         }
-        return ResponseEntity.ok(planningZoneRepository.findAll());
+        return ResponseEntity.ok(boundaryMapper.planningZones(planningZoneRepository.findAll(), geometry));
     }
 
     /**
-     * Get planning zones within map bounds (optionally filtered by map type)
+     * Get planning zones whose polygon intersects the map bounds (optionally filtered by map type)
      */
     @GetMapping("/bounds")
-    public ResponseEntity<List<PlanningZone>> getZonesByBounds(
+    public ResponseEntity<?> getZonesByBounds(
             @RequestParam BigDecimal minLat,
             @RequestParam BigDecimal maxLat,
             @RequestParam BigDecimal minLng,
             @RequestParam BigDecimal maxLng,
-            @RequestParam(required = false) String mapType) {
+            @RequestParam(required = false) String mapType,
+            @RequestParam(required = false) String geometry) {
         List<PlanningZone> zones;
-        if (mapType != null && !mapType.isEmpty()) {
-            zones = planningZoneRepository.findByMapTypeAndBoundingBox(mapType, minLat, maxLat, minLng, maxLng);
+        if (spatialIndex.isReady()) {
+            List<Long> ids = spatialIndex.findIntersecting(minLat.doubleValue(), maxLat.doubleValue(),
+                    minLng.doubleValue(), maxLng.doubleValue(), mapType);
+            zones = findAllByIdChunked(ids);
         } else {
-            zones = planningZoneRepository.findByBoundingBox(minLat, maxLat, minLng, maxLng);
+            // Index still loading - use PostGIS
+            zones = planningZoneRepository.findIntersectingEnvelope(minLat.doubleValue(), maxLat.doubleValue(),
+                    minLng.doubleValue(), maxLng.doubleValue(), emptyToNull(mapType));
         }
-        return ResponseEntity.ok(zones);
+        return ResponseEntity.ok(boundaryMapper.planningZones(zones, geometry));
     }
 
     /**
-     * Get planning zones near a point (optionally filtered by map type)
+     * Get planning zones within radius (degrees) of a point, nearest first (optionally filtered by map type)
      */
     @GetMapping("/near")
-    public ResponseEntity<List<PlanningZone>> getZonesNearPoint(
+    public ResponseEntity<?> getZonesNearPoint(
             @RequestParam BigDecimal lat,
             @RequestParam BigDecimal lng,
             @RequestParam(defaultValue = "0.05") BigDecimal radius,
-            @RequestParam(required = false) String mapType) {
-        List<PlanningZone> zones = planningZoneRepository.findNearPoint(lat, lng, radius);
-        // Filter by mapType if provided
-        if (mapType != null && !mapType.isEmpty()) {
-            zones = zones.stream()
-                    .filter(z -> mapType.equals(z.getMapType()))
-                    .toList();
+            @RequestParam(required = false) String mapType,
+            @RequestParam(required = false) String geometry) {
+        List<PlanningZone> zones;
+        if (spatialIndex.isReady()) {
+            List<Long> ids = spatialIndex.findWithinDistance(lat.doubleValue(), lng.doubleValue(),
+                    radius.doubleValue(), mapType);
+            zones = findAllByIdInOrder(ids);
+        } else {
+            // Index still loading - use PostGIS
+            zones = planningZoneRepository.findWithinDistance(lat.doubleValue(), lng.doubleValue(),
+                    radius.doubleValue(), emptyToNull(mapType));
         }
-        return ResponseEntity.ok(zones);
+        return ResponseEntity.ok(boundaryMapper.planningZones(zones, geometry));
     }
 
     /**
@@ -114,12 +142,13 @@ public class PlanningZoneController {
      * Get planning zone by ID
      */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getZoneById(@PathVariable Long id) {
+    public ResponseEntity<?> getZoneById(@PathVariable Long id,
+            @RequestParam(required = false) String geometry) {
         if (id == null) {
             return ResponseEntity.badRequest().body(Map.of("error", "ID is required"));
         }
         return planningZoneRepository.findById(id)
-                .map(zone -> ResponseEntity.ok((Object) zone))
+                .map(zone -> ResponseEntity.ok(boundaryMapper.planningZone(zone, geometry)))
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -258,10 +287,24 @@ public class PlanningZoneController {
 
     /**
      * Get soil types suitable for a specific crop
+     * With fieldId, soil types actually present on the field come first (largest share first)
      */
     @GetMapping("/soil-types/for-crop")
-    public ResponseEntity<List<SoilType>> getSoilTypesForCrop(@RequestParam String cropName) {
-        return ResponseEntity.ok(soilTypeRepository.findBySuitableCropsContainingIgnoreCase(cropName));
+    public ResponseEntity<List<SoilType>> getSoilTypesForCrop(@RequestParam String cropName,
+            @RequestParam(required = false) Long fieldId) {
+        List<SoilType> soilTypes = soilTypeRepository.findBySuitableCropsContainingIgnoreCase(cropName);
+        FieldOverlayService.Composition composition = fieldOverlayService.getComposition(fieldId);
+        if (composition == null) {
+            return ResponseEntity.ok(soilTypes);
+        }
+        Map<String, Integer> rank = new HashMap<>();
+        List<FieldOverlayService.Share> soil = composition.layer(FieldOverlayService.MAP_TYPE_SOIL);
+        for (int i = 0; i < soil.size(); i++) {
+            rank.putIfAbsent(soil.get(i).getZoneCode(), i);
+        }
+        List<SoilType> sorted = new ArrayList<>(soilTypes);
+        sorted.sort(java.util.Comparator.comparingInt(t -> rank.getOrDefault(t.getCode(), Integer.MAX_VALUE)));
+        return ResponseEntity.ok(sorted);
     }
 
     /**
@@ -407,10 +450,20 @@ public class PlanningZoneController {
     }
 
     /**
-     * Get zones overview for clustering (lightweight data)
+     * Get zones overview for clustering (lightweight data).
+     * With zoom, zones are clustered on the server and limited to the viewport.
      */
     @GetMapping("/overview")
-    public ResponseEntity<?> getZonesOverview() {
+    public ResponseEntity<?> getZonesOverview(
+            @RequestParam(required = false) Integer zoom,
+            @RequestParam(defaultValue = "-90") double minLat,
+            @RequestParam(defaultValue = "90") double maxLat,
+            @RequestParam(defaultValue = "-180") double minLng,
+            @RequestParam(defaultValue = "180") double maxLng) {
+        if (zoom != null && clusterService.isReady()) {
+            return ResponseEntity.ok(clusterService.getClusters(zoom, minLat, maxLat, minLng, maxLng));
+        }
+
         List<Object[]> overview = planningZoneRepository.findZoneOverview();
 
         var result = overview.stream().map(row -> Map.of(
@@ -426,96 +479,90 @@ public class PlanningZoneController {
     }
 
     /**
-     * Find zones at a specific point (which zone contains this coordinate)
+     * Find zones at a specific point (zones whose polygon contains this coordinate)
      */
     @GetMapping("/at-point")
-    public ResponseEntity<List<PlanningZone>> getZonesAtPoint(
+    public ResponseEntity<?> getZonesAtPoint(
             @RequestParam BigDecimal lat,
-            @RequestParam BigDecimal lng) {
-        // First find zones near the point, then filter by actual polygon
-        BigDecimal radius = new BigDecimal("0.01"); // ~1km radius
-        List<PlanningZone> nearbyZones = planningZoneRepository.findNearPoint(lat, lng, radius);
-
-        // For now return nearby zones - full "contains" check would require PostGIS
-        return ResponseEntity.ok(nearbyZones);
+            @RequestParam BigDecimal lng,
+            @RequestParam(required = false) String mapType,
+            @RequestParam(required = false) String geometry) {
+        List<PlanningZone> zones;
+        if (spatialIndex.isReady()) {
+            List<Long> ids = spatialIndex.findContaining(lat.doubleValue(), lng.doubleValue(), mapType);
+            zones = findAllByIdChunked(ids);
+        } else {
+            // Index still loading - use PostGIS
+            zones = planningZoneRepository.findContainingPoint(lat.doubleValue(), lng.doubleValue(),
+                    emptyToNull(mapType));
+        }
+        return ResponseEntity.ok(boundaryMapper.planningZones(zones, geometry));
     }
 
     /**
-     * Export zones as GeoJSON
+     * Mapbox Vector Tile of zones (layer "zones"), optionally filtered by map type
      */
-    @GetMapping("/export/geojson")
-    public ResponseEntity<?> exportAsGeoJson(
-            @RequestParam(required = false) String district,
-            @RequestParam(required = false) String zoneType) {
+    @GetMapping("/tiles/{z}/{x}/{y}.mvt")
+    public ResponseEntity<?> getZoneTile(
+            @PathVariable int z,
+            @PathVariable int x,
+            @PathVariable int y,
+            @RequestParam(required = false) String mapType) {
+        if (!PlanningZoneTileService.isValidTile(z, x, y)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid tile coordinates"));
+        }
+        byte[] tile = tileService.getTile(z, x, y, mapType);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.mapbox-vector-tile"))
+                .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS))
+                .body(tile);
+    }
 
-        List<PlanningZone> zones;
-        if (district != null && !district.isEmpty()) {
-            if (zoneType != null && !zoneType.isEmpty()) {
-                zones = planningZoneRepository.findByDistrictAndZoneType(district, zoneType);
-            } else {
-                zones = planningZoneRepository.findByDistrict(district);
-            }
-        } else if (zoneType != null && !zoneType.isEmpty()) {
-            zones = planningZoneRepository.findByZoneType(zoneType);
-        } else {
-            zones = planningZoneRepository.findAll();
+    private String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    // Index hits can run to tens of thousands at low zoom; keep each IN list small
+    private List<PlanningZone> findAllByIdChunked(List<Long> ids) {
+        List<PlanningZone> zones = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i += ID_CHUNK) {
+            zones.addAll(planningZoneRepository.findAllById(ids.subList(i, Math.min(i + ID_CHUNK, ids.size()))));
         }
+        return zones;
+    }
 
-        // Build GeoJSON FeatureCollection
-        var features = zones.stream().map(zone -> {
-            Object geometry = null;
-            if (zone.getGeojson() != null && !zone.getGeojson().isEmpty()) {
-                try {
-                    geometry = new com.fasterxml.jackson.databind.ObjectMapper().readValue(zone.getGeojson(),
-                            Object.class);
-                } catch (Exception e) {
-                    geometry = null;
-                }
-            }
-            if (geometry == null && zone.getBoundaryCoordinates() != null) {
-                try {
-                    var coords = new com.fasterxml.jackson.databind.ObjectMapper()
-                            .readValue(zone.getBoundaryCoordinates(), Object.class);
-                    geometry = Map.of(
-                            "type", "Polygon",
-                            "coordinates", List.of(coords));
-                } catch (Exception e) {
-                    geometry = null;
-                }
+    private List<PlanningZone> findAllByIdInOrder(List<Long> ids) {
+        Map<Long, PlanningZone> byId = new HashMap<>();
+        findAllByIdChunked(ids).forEach(zone -> byId.put(zone.getId(), zone));
+        List<PlanningZone> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            PlanningZone zone = byId.get(id);
+            if (zone != null) {
+                ordered.add(zone);
             }
+        }
+        return ordered;
+    }
 
-            return Map.of(
-                    "type", "Feature",
-                    "properties", Map.of(
-                            "id", zone.getId(),
-                            "name", zone.getName() != null ? zone.getName() : "",
-                            "zoneType", zone.getZoneType() != null ? zone.getZoneType() : "",
-                            "zoneCode", zone.getZoneCode() != null ? zone.getZoneCode() : "",
-                            "district", zone.getDistrict() != null ? zone.getDistrict() : "",
-                            "fillColor", zone.getFillColor() != null ? zone.getFillColor() : "#f59e0b",
-                            "areaSqm", zone.getAreaSqm() != null ? zone.getAreaSqm() : 0),
-                    "geometry", geometry);
-        }).toList();
-
-        var geojson = Map.of(
-                "type", "FeatureCollection",
-                "features", features,
-                "metadata", Map.of(
-                        "exported", java.time.LocalDateTime.now().toString(),
-                        "count", zones.size(),
-                        "filter", Map.of(
-                                "district", district != null ? district : "all",
-                                "zoneType", zoneType != null ? zoneType : "all")));
-
+    /**
+     * Export zones as GeoJSON
+     */
+    @GetMapping("/export/geojson")
+    public ResponseEntity<StreamingResponseBody> exportAsGeoJson(
+            @RequestParam(required = false) String district,
+            @RequestParam(required = false) String zoneType) {
+        // Streamed page by page - memory does not grow with the number of zones
+        StreamingResponseBody body = out -> exportService.writeGeoJson(out, district, zoneType);
         return ResponseEntity.ok()
                 .header("Content-Disposition", "attachment; filename=planning_zones.geojson")
-                .body(geojson);
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
     // ==================== SNAPSHOT & VERSION CONTROL ====================
 
     /**
-     * Create a snapshot of current zones
+     * Create a snapshot of current zones (stores only changes since the previous snapshot)
      */
     @PostMapping("/snapshots")
     @PreAuthorize("hasRole('SYSTEM_ADMIN') or hasRole('OWNER')")
@@ -524,30 +571,7 @@ public class PlanningZoneController {
             String name = request.getOrDefault("name", "Snapshot " + LocalDateTime.now());
             String description = request.get("description");
 
-            // Create snapshot
-            ZoneSnapshot snapshot = new ZoneSnapshot();
-            snapshot.setName(name);
-            snapshot.setDescription(description);
-            snapshot.setCreatedBy(1L);
-
-            // Get all current zones
-            List<PlanningZone> zones = planningZoneRepository.findAll();
-            snapshot.setZonesCount(zones.size());
-            zoneSnapshotRepository.save(snapshot);
-
-            // Save zone data as JSON items
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.registerModule(new JavaTimeModule());
-
-            List<ZoneSnapshotItem> items = new ArrayList<>();
-            for (PlanningZone zone : zones) {
-                ZoneSnapshotItem item = new ZoneSnapshotItem();
-                item.setSnapshot(snapshot);
-                item.setOriginalZoneId(zone.getId());
-                item.setZoneData(mapper.writeValueAsString(zone));
-                items.add(item);
-            }
-            zoneSnapshotItemRepository.saveAll(items);
+            ZoneSnapshot snapshot = zoneSnapshotService.createSnapshot(name, description, 1L);
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
@@ -556,6 +580,7 @@ public class PlanningZoneController {
                             "id", snapshot.getId(),
                             "name", snapshot.getName(),
                             "zonesCount", snapshot.getZonesCount(),
+                            "changesCount", snapshot.getChangesCount(),
                             "createdAt", snapshot.getCreatedAt().toString())));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of(
@@ -584,37 +609,24 @@ public class PlanningZoneController {
     }
 
     /**
-     * Rollback to a specific snapshot
+     * Rollback to a specific snapshot (only differing zones are written, in one transaction)
      */
     @PostMapping("/rollback/{snapshotId}")
-    @SuppressWarnings("null")
     public ResponseEntity<?> rollbackToSnapshot(@PathVariable Long snapshotId) {
         try {
             ZoneSnapshot snapshot = zoneSnapshotRepository.findById(snapshotId)
                     .orElseThrow(() -> new RuntimeException("Snapshot không tồn tại"));
 
-            // Get snapshot items
-            List<ZoneSnapshotItem> items = zoneSnapshotItemRepository.findBySnapshotId(snapshotId);
-
-            // Delete all current zones
-            planningZoneRepository.deleteAll();
-
-            // Restore zones from snapshot
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.registerModule(new JavaTimeModule());
-
-            List<PlanningZone> restoredZones = new ArrayList<>();
-            for (ZoneSnapshotItem item : items) {
-                PlanningZone zone = mapper.readValue(item.getZoneData(), PlanningZone.class);
-                zone.setId(null); // Reset ID for new insert
-                restoredZones.add(zone);
-            }
-            planningZoneRepository.saveAll(restoredZones);
+            ZoneSnapshotService.RollbackResult result = zoneSnapshotService.rollback(snapshotId);
 
             return ResponseEntity.ok(Map.of(
                     "success", true,
                     "message", "Đã rollback về snapshot: " + snapshot.getName(),
-                    "restoredCount", restoredZones.size()));
+                    "restoredCount", result.getRestoredCount(),
+                    "insertedCount", result.getInsertedCount(),
+                    "updatedCount", result.getUpdatedCount(),
+                    "deletedCount", result.getDeletedCount(),
+                    "unchangedCount", result.getUnchangedCount()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of(
                     "success", false,
@@ -626,13 +638,11 @@ public class PlanningZoneController {
      * Delete a snapshot
      */
     @DeleteMapping("/snapshots/{snapshotId}")
-    @SuppressWarnings("null")
     public ResponseEntity<?> deleteSnapshot(@PathVariable Long snapshotId) {
         try {
-            if (!zoneSnapshotRepository.existsById(snapshotId)) {
+            if (!zoneSnapshotService.deleteSnapshot(snapshotId)) {
                 return ResponseEntity.notFound().build();
             }
-            zoneSnapshotRepository.deleteById(snapshotId);
             return ResponseEntity.ok(Map.of("success", true, "message", "Đã xóa snapshot"));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of(
@@ -0,0 +1,59 @@
+package com.agriplanner.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * Cached AI vision result for one image - kết quả AI đã lưu theo mã băm ảnh
+ */
+@Entity
+@Table(name = "ai_vision_cache")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AiVisionCacheEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "cache_key", nullable = false, unique = true, length = 200)
+    private String cacheKey;
+
+    @Column(name = "image_hash", nullable = false, length = 64)
+    private String imageHash; // SHA-256 hex of the image bytes
+
+    @Column(name = "map_type", nullable = false, length = 20)
+    private String mapType;
+
+    @Column(name = "prompt_version", nullable = false, length = 20)
+    private String promptVersion;
+
+    @Column(nullable = false, length = 20)
+    private String kind; // "coordinates" or "legend"
+
+    @Column(length = 30)
+    private String provider; // gemini, gpt4o
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(columnDefinition = "jsonb", nullable = false)
+    private String result;
+
+    @Column(name = "size_bytes", nullable = false)
+    private Integer sizeBytes = 0;
+
+    @Column(name = "hit_count", nullable = false)
+    private Integer hitCount = 0;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "last_used_at")
+    private LocalDateTime lastUsedAt = LocalDateTime.now();
+}
@@ -1,5 +1,9 @@
 package com.agriplanner.model;
 
+import com.agriplanner.service.FieldOverlayListener;
+import com.agriplanner.util.GeometryCodec;
+import com.agriplanner.util.ZoneGeometryUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
@@ -13,6 +17,7 @@ import org.hibernate.type.SqlTypes;
  */
 @Entity
 @Table(name = "fields")
+@EntityListeners(FieldOverlayListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -33,9 +38,39 @@ public class Field {
     @Column(name = "area_sqm")
     private BigDecimal areaSqm;
 
+    // JSON array of [lat, lng] coordinates; stored packed, rebuilt on load
+    @Transient
+    private String boundaryCoordinates;
+
+    // Text column, only kept for boundaries the packed form cannot give back (lines, repaired rings)
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
     @JdbcTypeCode(SqlTypes.JSON)
     @Column(name = "boundary_coordinates", columnDefinition = "jsonb")
-    private String boundaryCoordinates; // JSON array of [lat, lng] coordinates
+    private String storedBoundaryCoordinates;
+
+    // Boundary as stored (GeometryCodec) - the source of boundaryCoordinates
+    @JsonIgnore
+    @Column(name = "boundary_packed")
+    private byte[] boundaryPacked;
+
+    // Stored bounding box (7 decimals, rounded outwards) for index-only viewport overlap tests
+    @JsonIgnore
+    @Column(name = "min_lat", precision = 10, scale = 7)
+    private BigDecimal minLat;
+
+    @JsonIgnore
+    @Column(name = "max_lat", precision = 10, scale = 7)
+    private BigDecimal maxLat;
+
+    @JsonIgnore
+    @Column(name = "min_lng", precision = 10, scale = 7)
+    private BigDecimal minLng;
+
+    @JsonIgnore
+    @Column(name = "max_lng", precision = 10, scale = 7)
+    private BigDecimal maxLng;
 
     @Column(name = "soil_type")
     private String soilType;
@@ -109,4 +144,37 @@ public class Field {
     @org.hibernate.annotations.CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private java.time.LocalDateTime createdAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        refreshBoundaryPacked();
+    }
+
+    @PostLoad
+    protected void onLoad() {
+        boundaryCoordinates = storedBoundaryCoordinates != null ? storedBoundaryCoordinates
+                : GeometryCodec.toLatLngArray(GeometryCodec.unpack(boundaryPacked));
+    }
+
+    // Packs at once so a changed boundary marks the entity dirty (boundaryCoordinates is transient)
+    public void setBoundaryCoordinates(String boundaryCoordinates) {
+        this.boundaryCoordinates = boundaryCoordinates;
+        refreshBoundaryPacked();
+    }
+
+    /**
+     * Re-encode the packed boundary and the bounding box from boundaryCoordinates
+     */
+    public void refreshBoundaryPacked() {
+        org.locationtech.jts.geom.Geometry boundary = ZoneGeometryUtils.fromLatLngArray(boundaryCoordinates);
+        boundaryPacked = GeometryCodec.pack(boundary);
+        storedBoundaryCoordinates = GeometryCodec.rebuildsLatLngArray(boundaryCoordinates, boundaryPacked)
+                ? null : boundaryCoordinates;
+        BigDecimal[] bounds = ZoneGeometryUtils.boundsOf(boundary);
+        minLat = bounds != null ? bounds[0] : null;
+        maxLat = bounds != null ? bounds[1] : null;
+        minLng = bounds != null ? bounds[2] : null;
+        maxLng = bounds != null ? bounds[3] : null;
+    }
 }
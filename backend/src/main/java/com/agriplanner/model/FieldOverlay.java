@@ -0,0 +1,48 @@
+package com.agriplanner.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Stored zone composition of a field or field zone - tỷ lệ loại đất / vùng quy hoạch trên ruộng
+ */
+@Entity
+@Table(name = "field_overlays")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FieldOverlay {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "field_id", nullable = false)
+    private Long fieldId;
+
+    // null = the whole field
+    @Column(name = "field_zone_id")
+    private Long fieldZoneId;
+
+    // Hash of the packed boundary this composition was computed from
+    @Column(name = "boundary_hash")
+    private Integer boundaryHash;
+
+    @Column(name = "area_sqm", precision = 15, scale = 2)
+    private BigDecimal areaSqm;
+
+    // JSON array of { mapType, zoneCode, zoneType, name, areaSqm, fraction }
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "composition", columnDefinition = "jsonb", nullable = false)
+    private String composition;
+
+    @Column(name = "computed_at")
+    private LocalDateTime computedAt;
+}
@@ -1,5 +1,9 @@
 package com.agriplanner.model;
 
+import com.agriplanner.service.FieldOverlayListener;
+import com.agriplanner.util.GeometryCodec;
+import com.agriplanner.util.ZoneGeometryUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 import java.math.BigDecimal;
@@ -11,6 +15,7 @@ import java.time.LocalDateTime;
  */
 @Entity
 @Table(name = "field_zones")
+@EntityListeners(FieldOverlayListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -46,9 +51,22 @@ public class FieldZone {
     @Column(name = "expected_harvest_date")
     private LocalDate expectedHarvestDate;
 
-    @Column(name = "boundary_coordinates", columnDefinition = "TEXT")
+    // JSON array of [lat, lng] coordinates; stored packed, rebuilt on load
+    @Transient
     private String boundaryCoordinates;
 
+    // Text column, only kept for boundaries the packed form cannot give back (lines, repaired rings)
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @Column(name = "boundary_coordinates", columnDefinition = "TEXT")
+    private String storedBoundaryCoordinates;
+
+    // Boundary as stored (GeometryCodec) - the source of boundaryCoordinates
+    @JsonIgnore
+    @Column(name = "boundary_packed")
+    private byte[] boundaryPacked;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -58,5 +76,33 @@ public class FieldZone {
         if (workflowStage == null) {
             workflowStage = "EMPTY";
         }
+        refreshBoundaryPacked();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        refreshBoundaryPacked();
+    }
+
+    @PostLoad
+    protected void onLoad() {
+        boundaryCoordinates = storedBoundaryCoordinates != null ? storedBoundaryCoordinates
+                : GeometryCodec.toLatLngArray(GeometryCodec.unpack(boundaryPacked));
+    }
+
+    // Packs at once so a changed boundary marks the entity dirty (boundaryCoordinates is transient)
+    public void setBoundaryCoordinates(String boundaryCoordinates) {
+        this.boundaryCoordinates = boundaryCoordinates;
+        refreshBoundaryPacked();
+    }
+
+    /**
+     * Re-encode the packed boundary from boundaryCoordinates; the text column is cleared when the
+     * packed form gives the same array back
+     */
+    public void refreshBoundaryPacked() {
+        boundaryPacked = GeometryCodec.pack(ZoneGeometryUtils.fromLatLngArray(boundaryCoordinates));
+        storedBoundaryCoordinates = GeometryCodec.rebuildsLatLngArray(boundaryCoordinates, boundaryPacked)
+                ? null : boundaryCoordinates;
     }
 }
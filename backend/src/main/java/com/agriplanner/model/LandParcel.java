@@ -1,9 +1,12 @@
 package com.agriplanner.model;
 
+import com.agriplanner.util.ZoneGeometryUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.locationtech.jts.geom.MultiPolygon;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
@@ -106,12 +109,22 @@ public class LandParcel {
     @Column(name = "boundary_geojson", columnDefinition = "TEXT")
     private String boundaryGeojson;
 
+    // PostGIS geometry derived from boundaryGeojson (GiST-indexed)
+    @JsonIgnore
+    @Column(name = "geom", columnDefinition = "geometry(MultiPolygon,4326)")
+    private MultiPolygon geom;
+
     @Column(name = "center_lat", precision = 10, scale = 7)
     private BigDecimal centerLat;
 
     @Column(name = "center_lng", precision = 10, scale = 7)
     private BigDecimal centerLng;
 
+    // Hilbert curve position of the centre, maintained by trigger (V46); keyset order for viewports
+    @JsonIgnore
+    @Column(name = "hilbert_key", insertable = false, updatable = false)
+    private Long hilbertKey;
+
     @Column(columnDefinition = "TEXT")
     private String notes;
 
@@ -123,4 +136,20 @@ public class LandParcel {
 
     @Column(name = "created_at")
     private LocalDateTime createdAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        refreshGeom();
+    }
+
+    /**
+     * Recompute the PostGIS geometry from boundaryGeojson
+     */
+    public void refreshGeom() {
+        geom = ZoneGeometryUtils.toMultiPolygon(ZoneGeometryUtils.fromGeoJson(boundaryGeojson));
+    }
 }
@@ -0,0 +1,77 @@
+package com.agriplanner.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.LocalDateTime;
+
+/**
+ * Queued / running map-image analysis - công việc phân tích bản đồ trong hàng đợi
+ */
+@Entity
+@Table(name = "map_analysis_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MapAnalysisJob {
+
+    @Id
+    @Column(length = 50)
+    private String id; // = analysisId
+
+    @Column(nullable = false, length = 20)
+    private String kind; // "ai" or "georef"
+
+    @Column(nullable = false)
+    private Integer priority = 0; // 0 = interactive, 1 = bulk
+
+    @Column(nullable = false, length = 20)
+    private String status = "QUEUED"; // QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+
+    @Column(name = "image_path", columnDefinition = "TEXT")
+    private String imagePath;
+
+    @Column(name = "map_type", length = 20)
+    private String mapType;
+
+    @Column(length = 100)
+    private String province;
+
+    @Column(length = 100)
+    private String district;
+
+    // Extra inputs (e.g. control points) as JSON
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(columnDefinition = "jsonb")
+    private String params;
+
+    @Column(name = "current_step", length = 50)
+    private String currentStep;
+
+    // { step: millis } once finished
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "step_timings", columnDefinition = "jsonb")
+    private String stepTimings;
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "created_by")
+    private Long createdBy;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
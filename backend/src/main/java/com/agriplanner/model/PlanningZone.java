@@ -1,9 +1,13 @@
 package com.agriplanner.model;
 
+import com.agriplanner.service.PlanningZoneIndexListener;
+import com.agriplanner.util.ZoneGeometryUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.locationtech.jts.geom.MultiPolygon;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
@@ -12,6 +16,7 @@ import java.time.LocalDateTime;
  */
 @Entity
 @Table(name = "planning_zones")
+@EntityListeners(PlanningZoneIndexListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -84,6 +89,11 @@ public class PlanningZone {
     @Column(name = "geojson", columnDefinition = "TEXT")
     private String geojson;
 
+    // PostGIS geometry derived from geojson/boundaryCoordinates (GiST-indexed)
+    @JsonIgnore
+    @Column(name = "geom", columnDefinition = "geometry(MultiPolygon,4326)")
+    private MultiPolygon geom;
+
     // Image overlay URL for GroundOverlay KMZ files
     @Column(name = "image_url", columnDefinition = "TEXT")
     private String imageUrl;
@@ -106,10 +116,19 @@ public class PlanningZone {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
+        refreshGeom();
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        refreshGeom();
+    }
+
+    /**
+     * Recompute the PostGIS geometry from the stored boundary JSON
+     */
+    public void refreshGeom() {
+        geom = ZoneGeometryUtils.toMultiPolygon(ZoneGeometryUtils.toGeometry(geojson, boundaryCoordinates, null, null));
     }
 }
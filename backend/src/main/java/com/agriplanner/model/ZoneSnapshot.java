@@ -31,6 +31,13 @@ public class ZoneSnapshot {
     @Column(name = "zones_count")
     private Integer zonesCount = 0;
 
+    // Delta snapshots only store changes against their parent (null = full base)
+    @Column(name = "parent_snapshot_id")
+    private Long parentSnapshotId;
+
+    @Column(name = "changes_count")
+    private Integer changesCount;
+
     @Column(name = "created_by")
     private Long createdBy;
 
@@ -0,0 +1,28 @@
+package com.agriplanner.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Content-addressed zone payload shared by snapshot items (gzip JSON, keyed by SHA-256)
+ */
+@Entity
+@Table(name = "zone_snapshot_blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ZoneSnapshotBlob {
+
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "payload", nullable = false)
+    private byte[] payload;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
@@ -27,9 +27,16 @@ public class ZoneSnapshotItem {
     @Column(name = "original_zone_id")
     private Long originalZoneId;
 
-    @Column(name = "zone_data", columnDefinition = "TEXT", nullable = false)
+    // Legacy full snapshots only; delta items reference a gzip blob by content hash
+    @Column(name = "zone_data", columnDefinition = "TEXT")
     private String zoneData; // JSON string of zone
 
+    @Column(name = "change_type", length = 10)
+    private String changeType; // UPSERT, DELETE (null = legacy UPSERT)
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash; // SHA-256 of the zone JSON -> zone_snapshot_blobs
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -0,0 +1,44 @@
+package com.agriplanner.repository;
+
+import com.agriplanner.model.AiVisionCacheEntry;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AiVisionCacheRepository extends JpaRepository<AiVisionCacheEntry, Long> {
+
+    Optional<AiVisionCacheEntry> findByCacheKey(String cacheKey);
+
+    Page<AiVisionCacheEntry> findAllByOrderByLastUsedAtDesc(Pageable pageable);
+
+    Page<AiVisionCacheEntry> findByImageHashOrderByLastUsedAtDesc(String imageHash, Pageable pageable);
+
+    /**
+     * Least recently used first (LRU eviction)
+     */
+    List<AiVisionCacheEntry> findAllByOrderByLastUsedAtAsc(Pageable pageable);
+
+    @Query("SELECT COALESCE(SUM(e.sizeBytes), 0) FROM AiVisionCacheEntry e")
+    long sumSizeBytes();
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AiVisionCacheEntry e SET e.hitCount = e.hitCount + 1, e.lastUsedAt = :now WHERE e.id = :id")
+    int recordHit(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Transactional
+    long deleteByImageHash(String imageHash);
+
+    @Transactional
+    long deleteByMapType(String mapType);
+}
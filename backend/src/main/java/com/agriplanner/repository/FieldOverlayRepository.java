@@ -0,0 +1,38 @@
+package com.agriplanner.repository;
+
+import com.agriplanner.model.FieldOverlay;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FieldOverlayRepository extends JpaRepository<FieldOverlay, Long> {
+
+    Optional<FieldOverlay> findByFieldIdAndFieldZoneIdIsNull(Long fieldId);
+
+    Optional<FieldOverlay> findByFieldZoneId(Long fieldZoneId);
+
+    /**
+     * Fields with no up-to-date stored composition, in ID order (startup backfill)
+     */
+    @Query("SELECT f.id FROM Field f WHERE f.id > :afterId AND NOT EXISTS " +
+            "(SELECT 1 FROM FieldOverlay o WHERE o.fieldId = f.id AND o.fieldZoneId IS NULL " +
+            "AND o.boundaryHash IS NOT NULL) ORDER BY f.id")
+    List<Long> findFieldIdsWithoutOverlay(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Clear the boundary hash of every row of these fields so the next read recomputes them
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE FieldOverlay o SET o.boundaryHash = NULL WHERE o.fieldId IN :fieldIds")
+    int markStaleByFieldIds(@Param("fieldIds") Collection<Long> fieldIds);
+}
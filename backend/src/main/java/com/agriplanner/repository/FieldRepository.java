@@ -15,4 +15,14 @@ public interface FieldRepository extends JpaRepository<Field, Long> {
     java.math.BigDecimal sumAreaByFarmId(@org.springframework.web.bind.annotation.PathVariable("farmId") Long farmId);
 
     Field findFirstByFarmIdOrderByCreatedAtAsc(Long farmId);
+
+    // Fields whose bounding box overlaps the area, plus fields without a box yet (backfill pending or
+    // unreadable) for the caller to test in memory; idx_fields_bbox range-scans min_lat only
+    @org.springframework.data.jpa.repository.Query("SELECT f FROM Field f WHERE (f.minLat <= :maxLat AND f.maxLat >= :minLat " +
+            "AND f.minLng <= :maxLng AND f.maxLng >= :minLng) OR f.minLat IS NULL")
+    List<Field> findByBoundingBox(
+            @org.springframework.data.repository.query.Param("minLat") java.math.BigDecimal minLat,
+            @org.springframework.data.repository.query.Param("maxLat") java.math.BigDecimal maxLat,
+            @org.springframework.data.repository.query.Param("minLng") java.math.BigDecimal minLng,
+            @org.springframework.data.repository.query.Param("maxLng") java.math.BigDecimal maxLng);
 }
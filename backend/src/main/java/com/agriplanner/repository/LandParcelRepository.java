@@ -11,17 +11,6 @@ import java.util.List;
 @Repository
 public interface LandParcelRepository extends JpaRepository<LandParcel, Long> {
 
-    /**
-     * Find parcels within a bounding box (for map viewport)
-     */
-    @Query("SELECT p FROM LandParcel p WHERE p.centerLat BETWEEN :swLat AND :neLat " +
-           "AND p.centerLng BETWEEN :swLng AND :neLng")
-    List<LandParcel> findInBounds(
-            @Param("swLat") double swLat,
-            @Param("swLng") double swLng,
-            @Param("neLat") double neLat,
-            @Param("neLng") double neLng);
-
     /**
      * Find parcels by district
      */
@@ -62,4 +51,135 @@ public interface LandParcelRepository extends JpaRepository<LandParcel, Long> {
      * Count total parcels in a district
      */
     long countByDistrict(String district);
+
+    // ==================== POSTGIS (geom column, GiST index) ====================
+
+    /**
+     * Parcels whose geometry contains the point
+     */
+    @Query(value = "SELECT * FROM land_parcels p " +
+           "WHERE ST_Contains(p.geom, ST_SetSRID(ST_MakePoint(:lng, :lat), 4326))",
+           nativeQuery = true)
+    List<LandParcel> findContainingPoint(@Param("lat") double lat, @Param("lng") double lng);
+
+    /**
+     * Parcels within radius (degrees) of the point, nearest first
+     */
+    @Query(value = "SELECT * FROM land_parcels p " +
+           "WHERE ST_DWithin(p.geom, ST_SetSRID(ST_MakePoint(:lng, :lat), 4326), :radius) " +
+           "ORDER BY p.geom <-> ST_SetSRID(ST_MakePoint(:lng, :lat), 4326)",
+           nativeQuery = true)
+    List<LandParcel> findWithinDistance(
+            @Param("lat") double lat,
+            @Param("lng") double lng,
+            @Param("radius") double radius);
+
+    // ==================== KEYSET VIEWPORT PAGES (hilbert_key, id) ====================
+
+    /**
+     * Full parcels intersecting the viewport, in Hilbert order after the cursor
+     */
+    @Query(value = "SELECT * FROM land_parcels p " +
+           "WHERE p.geom && ST_MakeEnvelope(:swLng, :swLat, :neLng, :neLat, 4326) " +
+           "AND ST_Intersects(p.geom, ST_MakeEnvelope(:swLng, :swLat, :neLng, :neLat, 4326)) " +
+           "AND (p.hilbert_key, p.id) > (:afterKey, :afterId) " +
+           "ORDER BY p.hilbert_key, p.id LIMIT :limit",
+           nativeQuery = true)
+    List<LandParcel> findPageInEnvelope(
+            @Param("swLat") double swLat,
+            @Param("swLng") double swLng,
+            @Param("neLat") double neLat,
+            @Param("neLng") double neLng,
+            @Param("afterKey") long afterKey,
+            @Param("afterId") long afterId,
+            @Param("limit") int limit);
+
+    /**
+     * Centroid-only rows: id, hilbertKey, parcelId, landUseCode, centerLat, centerLng
+     */
+    @Query(value = "SELECT p.id, p.hilbert_key, p.parcel_id, p.land_use_code, p.center_lat, p.center_lng " +
+           "FROM land_parcels p " +
+           "WHERE p.geom && ST_MakeEnvelope(:swLng, :swLat, :neLng, :neLat, 4326) " +
+           "AND (p.hilbert_key, p.id) > (:afterKey, :afterId) " +
+           "ORDER BY p.hilbert_key, p.id LIMIT :limit",
+           nativeQuery = true)
+    List<Object[]> findCentroidPageInEnvelope(
+            @Param("swLat") double swLat,
+            @Param("swLng") double swLng,
+            @Param("neLat") double neLat,
+            @Param("neLng") double neLng,
+            @Param("afterKey") long afterKey,
+            @Param("afterId") long afterId,
+            @Param("limit") int limit);
+
+    /**
+     * Simplified outline rows: id, hilbertKey, parcelId, mapSheetNumber, parcelNumber, landUseCode,
+     * landUseName, areaSqm, simplified GeoJSON geometry
+     */
+    @Query(value = "SELECT p.id, p.hilbert_key, p.parcel_id, p.map_sheet_number, p.parcel_number, " +
+           "p.land_use_code, p.land_use_name, p.area_sqm, " +
+           "ST_AsGeoJSON(ST_SimplifyPreserveTopology(p.geom, :tolerance), 7) " +
+           "FROM land_parcels p " +
+           "WHERE p.geom && ST_MakeEnvelope(:swLng, :swLat, :neLng, :neLat, 4326) " +
+           "AND ST_Intersects(p.geom, ST_MakeEnvelope(:swLng, :swLat, :neLng, :neLat, 4326)) " +
+           "AND (p.hilbert_key, p.id) > (:afterKey, :afterId) " +
+           "ORDER BY p.hilbert_key, p.id LIMIT :limit",
+           nativeQuery = true)
+    List<Object[]> findOutlinePageInEnvelope(
+            @Param("swLat") double swLat,
+            @Param("swLng") double swLng,
+            @Param("neLat") double neLat,
+            @Param("neLng") double neLng,
+            @Param("tolerance") double tolerance,
+            @Param("afterKey") long afterKey,
+            @Param("afterId") long afterId,
+            @Param("limit") int limit);
+
+    // ==================== VIEWPORT TAIL (rows without hilbert_key or geom, by id) ====================
+    // Rows the keyset pages cannot order or match yet; a geometry-less row matches on its centre.
+
+    String TAIL_IN_ENVELOPE = "(p.hilbert_key IS NULL OR p.geom IS NULL) " +
+           "AND ((p.geom && ST_MakeEnvelope(:swLng, :swLat, :neLng, :neLat, 4326) " +
+           "AND ST_Intersects(p.geom, ST_MakeEnvelope(:swLng, :swLat, :neLng, :neLat, 4326))) " +
+           "OR (p.geom IS NULL AND p.center_lat BETWEEN :swLat AND :neLat " +
+           "AND p.center_lng BETWEEN :swLng AND :neLng)) " +
+           "AND p.id > :afterId ";
+
+    @Query(value = "SELECT * FROM land_parcels p WHERE " + TAIL_IN_ENVELOPE +
+           "ORDER BY p.id LIMIT :limit",
+           nativeQuery = true)
+    List<LandParcel> findTailPageInEnvelope(
+            @Param("swLat") double swLat,
+            @Param("swLng") double swLng,
+            @Param("neLat") double neLat,
+            @Param("neLng") double neLng,
+            @Param("afterId") long afterId,
+            @Param("limit") int limit);
+
+    @Query(value = "SELECT p.id, p.hilbert_key, p.parcel_id, p.land_use_code, p.center_lat, p.center_lng " +
+           "FROM land_parcels p WHERE " + TAIL_IN_ENVELOPE +
+           "ORDER BY p.id LIMIT :limit",
+           nativeQuery = true)
+    List<Object[]> findCentroidTailPageInEnvelope(
+            @Param("swLat") double swLat,
+            @Param("swLng") double swLng,
+            @Param("neLat") double neLat,
+            @Param("neLng") double neLng,
+            @Param("afterId") long afterId,
+            @Param("limit") int limit);
+
+    @Query(value = "SELECT p.id, p.hilbert_key, p.parcel_id, p.map_sheet_number, p.parcel_number, " +
+           "p.land_use_code, p.land_use_name, p.area_sqm, " +
+           "ST_AsGeoJSON(ST_SimplifyPreserveTopology(p.geom, :tolerance), 7) " +
+           "FROM land_parcels p WHERE " + TAIL_IN_ENVELOPE +
+           "ORDER BY p.id LIMIT :limit",
+           nativeQuery = true)
+    List<Object[]> findOutlineTailPageInEnvelope(
+            @Param("swLat") double swLat,
+            @Param("swLng") double swLng,
+            @Param("neLat") double neLat,
+            @Param("neLng") double neLng,
+            @Param("tolerance") double tolerance,
+            @Param("afterId") long afterId,
+            @Param("limit") int limit);
 }
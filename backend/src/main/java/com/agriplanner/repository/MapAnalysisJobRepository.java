@@ -0,0 +1,24 @@
+package com.agriplanner.repository;
+
+import com.agriplanner.model.MapAnalysisJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MapAnalysisJobRepository extends JpaRepository<MapAnalysisJob, String> {
+
+    List<MapAnalysisJob> findByStatusInOrderByPriorityAscCreatedAtAsc(Collection<String> statuses);
+
+    /**
+     * Recently finished jobs of one kind (seed for the step duration estimates)
+     */
+    @Query("SELECT j FROM MapAnalysisJob j WHERE j.kind = :kind AND j.status = 'COMPLETED' " +
+            "AND j.stepTimings IS NOT NULL ORDER BY j.finishedAt DESC")
+    List<MapAnalysisJob> findRecentCompleted(@Param("kind") String kind, Pageable pageable);
+}
@@ -1,12 +1,14 @@
 package com.agriplanner.repository;
 
 import com.agriplanner.model.PlanningZone;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -40,18 +42,6 @@ public interface PlanningZoneRepository extends JpaRepository<PlanningZone, Long
          */
         List<PlanningZone> findByZoneCode(String zoneCode);
 
-        /**
-         * Find zones within a bounding box (for map viewport)
-         */
-        @Query("SELECT pz FROM PlanningZone pz WHERE " +
-                        "pz.centerLat BETWEEN :minLat AND :maxLat AND " +
-                        "pz.centerLng BETWEEN :minLng AND :maxLng")
-        List<PlanningZone> findByBoundingBox(
-                        @Param("minLat") BigDecimal minLat,
-                        @Param("maxLat") BigDecimal maxLat,
-                        @Param("minLng") BigDecimal minLng,
-                        @Param("maxLng") BigDecimal maxLng);
-
         /**
          * Find zones near a point (within radius in degrees)
          */
@@ -112,6 +102,13 @@ public interface PlanningZoneRepository extends JpaRepository<PlanningZone, Long
         @Query("SELECT pz.id, pz.name, pz.centerLat, pz.centerLng, pz.zoneType, pz.fillColor, pz.areaSqm FROM PlanningZone pz")
         List<Object[]> findZoneOverview();
 
+        /**
+         * Zone overview rows for the given IDs (same columns as findZoneOverview)
+         */
+        @Query("SELECT pz.id, pz.name, pz.centerLat, pz.centerLng, pz.zoneType, pz.fillColor, pz.areaSqm " +
+                        "FROM PlanningZone pz WHERE pz.id IN :ids")
+        List<Object[]> findZoneOverviewByIdIn(@Param("ids") Collection<Long> ids);
+
         /**
          * Find distinct districts that have zones
          */
@@ -135,20 +132,6 @@ public interface PlanningZoneRepository extends JpaRepository<PlanningZone, Long
          */
         List<PlanningZone> findByMapTypeAndDistrict(String mapType, String district);
 
-        /**
-         * Find zones within bounding box filtered by map type
-         */
-        @Query("SELECT pz FROM PlanningZone pz WHERE " +
-                        "pz.mapType = :mapType AND " +
-                        "pz.centerLat BETWEEN :minLat AND :maxLat AND " +
-                        "pz.centerLng BETWEEN :minLng AND :maxLng")
-        List<PlanningZone> findByMapTypeAndBoundingBox(
-                        @Param("mapType") String mapType,
-                        @Param("minLat") BigDecimal minLat,
-                        @Param("maxLat") BigDecimal maxLat,
-                        @Param("minLng") BigDecimal minLng,
-                        @Param("maxLng") BigDecimal maxLng);
-
         /**
          * Count zones by map type
          */
@@ -171,4 +154,86 @@ public interface PlanningZoneRepository extends JpaRepository<PlanningZone, Long
          * Count zones by AI analysis ID
          */
         long countByAnalysisId(String analysisId);
+
+        // ==================== SPATIAL INDEX ====================
+
+        /**
+         * Geometry rows for building the in-memory spatial index (keyset-paged by id):
+         * id, mapType, geojson, boundaryCoordinates, centerLat, centerLng
+         */
+        @Query("SELECT pz.id, pz.mapType, pz.geojson, pz.boundaryCoordinates, pz.centerLat, pz.centerLng " +
+                        "FROM PlanningZone pz WHERE pz.id > :afterId ORDER BY pz.id")
+        List<Object[]> findGeometryRowsAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
+        /**
+         * Keyset page of full zones ordered by ID
+         */
+        List<PlanningZone> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+        /**
+         * Lightweight attributes for vector tiles (no geometry text):
+         * id, name, zoneType, zoneCode, fillColor, mapType, kmzUploadId, analysisId
+         */
+        @Query("SELECT pz.id, pz.name, pz.zoneType, pz.zoneCode, pz.fillColor, pz.mapType, pz.kmzUploadId, " +
+                        "pz.analysisId FROM PlanningZone pz WHERE pz.id IN :ids")
+        List<Object[]> findTileAttributesByIdIn(@Param("ids") Collection<Long> ids);
+
+        /**
+         * Keyset page of export rows (scalar projection, nothing kept in the persistence context):
+         * id, name, zoneType, zoneCode, district, fillColor, areaSqm, geojson, boundaryCoordinates
+         */
+        @Query("SELECT pz.id, pz.name, pz.zoneType, pz.zoneCode, pz.district, pz.fillColor, pz.areaSqm, " +
+                        "pz.geojson, pz.boundaryCoordinates FROM PlanningZone pz " +
+                        "WHERE pz.id > :afterId " +
+                        "AND (:district IS NULL OR pz.district = :district) " +
+                        "AND (:zoneType IS NULL OR pz.zoneType = :zoneType) " +
+                        "ORDER BY pz.id")
+        List<Object[]> findExportRowsAfterId(
+                        @Param("afterId") Long afterId,
+                        @Param("district") String district,
+                        @Param("zoneType") String zoneType,
+                        Pageable pageable);
+
+        // ==================== POSTGIS (geom column, GiST index) ====================
+
+        /**
+         * Zones whose geometry intersects the envelope (optionally filtered by map type)
+         */
+        @Query(value = "SELECT * FROM planning_zones pz " +
+                        "WHERE pz.geom && ST_MakeEnvelope(:minLng, :minLat, :maxLng, :maxLat, 4326) " +
+                        "AND ST_Intersects(pz.geom, ST_MakeEnvelope(:minLng, :minLat, :maxLng, :maxLat, 4326)) " +
+                        "AND (CAST(:mapType AS text) IS NULL OR pz.map_type = CAST(:mapType AS text))",
+                        nativeQuery = true)
+        List<PlanningZone> findIntersectingEnvelope(
+                        @Param("minLat") double minLat,
+                        @Param("maxLat") double maxLat,
+                        @Param("minLng") double minLng,
+                        @Param("maxLng") double maxLng,
+                        @Param("mapType") String mapType);
+
+        /**
+         * Zones whose geometry contains the point (optionally filtered by map type)
+         */
+        @Query(value = "SELECT * FROM planning_zones pz " +
+                        "WHERE ST_Contains(pz.geom, ST_SetSRID(ST_MakePoint(:lng, :lat), 4326)) " +
+                        "AND (CAST(:mapType AS text) IS NULL OR pz.map_type = CAST(:mapType AS text))",
+                        nativeQuery = true)
+        List<PlanningZone> findContainingPoint(
+                        @Param("lat") double lat,
+                        @Param("lng") double lng,
+                        @Param("mapType") String mapType);
+
+        /**
+         * Zones within radius (degrees) of the point, nearest first (optionally filtered by map type)
+         */
+        @Query(value = "SELECT * FROM planning_zones pz " +
+                        "WHERE ST_DWithin(pz.geom, ST_SetSRID(ST_MakePoint(:lng, :lat), 4326), :radius) " +
+                        "AND (CAST(:mapType AS text) IS NULL OR pz.map_type = CAST(:mapType AS text)) " +
+                        "ORDER BY pz.geom <-> ST_SetSRID(ST_MakePoint(:lng, :lat), 4326)",
+                        nativeQuery = true)
+        List<PlanningZone> findWithinDistance(
+                        @Param("lat") double lat,
+                        @Param("lng") double lng,
+                        @Param("radius") double radius,
+                        @Param("mapType") String mapType);
 }
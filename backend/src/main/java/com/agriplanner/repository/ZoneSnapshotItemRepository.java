@@ -2,6 +2,8 @@ package com.agriplanner.repository;
 
 import com.agriplanner.model.ZoneSnapshotItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.util.List;
 
@@ -22,4 +24,11 @@ public interface ZoneSnapshotItemRepository extends JpaRepository<ZoneSnapshotIt
      * Count items in a snapshot
      */
     long countBySnapshotId(Long snapshotId);
+
+    /**
+     * Change rows of a snapshot without payloads: id, originalZoneId, changeType, contentHash
+     */
+    @Query("SELECT i.id, i.originalZoneId, i.changeType, i.contentHash FROM ZoneSnapshotItem i " +
+            "WHERE i.snapshot.id = :snapshotId ORDER BY i.id")
+    List<Object[]> findChangeRowsBySnapshotId(@Param("snapshotId") Long snapshotId);
 }
@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ZoneSnapshotRepository extends JpaRepository<ZoneSnapshot, Long> {
@@ -30,4 +31,14 @@ public interface ZoneSnapshotRepository extends JpaRepository<ZoneSnapshot, Long
      */
     @Query(value = "SELECT * FROM zone_snapshots ORDER BY created_at DESC LIMIT ?1", nativeQuery = true)
     List<ZoneSnapshot> findLatestSnapshots(int limit);
+
+    /**
+     * Most recent snapshot (parent of the next delta)
+     */
+    Optional<ZoneSnapshot> findFirstByOrderByIdDesc();
+
+    /**
+     * Delta snapshots built on top of the given one
+     */
+    List<ZoneSnapshot> findByParentSnapshotId(Long parentSnapshotId);
 }
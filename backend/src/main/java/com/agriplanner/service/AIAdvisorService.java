@@ -1,15 +1,19 @@
 package com.agriplanner.service;
 
+import com.agriplanner.config.OutboundHttpClients;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * AI Advisor Service - Tích hợp nhiều AI providers
@@ -18,6 +22,9 @@ import java.util.*;
  * 1. GitHub Models (Khuyên dùng - Miễn phí cho developers)
  * 2. Groq Cloud (Nhanh, rẻ)
  * 3. Cohere (Chuyên RAG/search)
+ *
+ * Providers are called through AiProviderRouter: the preferred one first, the next one
+ * hedged in after a latency-based delay, first valid JSON wins.
  * 
  * @author AgriPlanner Team
  */
@@ -26,9 +33,29 @@ import java.util.*;
 public class AIAdvisorService {
 
     private static final Logger logger = LoggerFactory.getLogger(AIAdvisorService.class);
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @Autowired
+    private AiProviderRouter providerRouter;
+
+    // Same soil / province / season / weather bucket -> advice given before
+    @Autowired
+    private AdviceCache adviceCache;
+
+    // Whole advice request, all providers included
+    @Value("${ai.advisor.budget-ms:35000}")
+    private long adviceBudgetMs;
+
+    // Hedge delay per provider until its latency histogram has enough samples
+    private static final long GITHUB_COLD_START_MS = 4000;
+    private static final long GROQ_COLD_START_MS = 2000;
+    private static final long COHERE_COLD_START_MS = 4000;
+
+    public AIAdvisorService(OutboundHttpClients httpClients) {
+        this.restTemplate = httpClients.restTemplate(OutboundHttpClients.PROFILE_AI_CHAT);
+    }
+
     // ============ API Keys (từ application.properties hoặc .env) ============
     @Value("${ai.github.token:}")
     private String githubToken;
@@ -56,7 +83,7 @@ public class AIAdvisorService {
 
     /**
      * Đề xuất nông vụ dựa trên thông tin đất và thời tiết
-     * Tự động chọn provider khả dụng
+     * Tự động chọn provider khả dụng; lời khuyên cho cùng điều kiện được dùng lại từ cache
      */
     public Map<String, Object> getAgricultureAdvice(
             String soilType,
@@ -67,6 +94,24 @@ public class AIAdvisorService {
             Double rainfall,
             String existingCrops,
             String farmSize) {
+        AdviceCache.Key key = adviceCache.keyFor(soilType, location, currentSeason,
+                temperature, humidity, rainfall, existingCrops, farmSize);
+        return adviceCache.get(key, () -> requestAdvice(soilType, location, currentSeason,
+                temperature, humidity, rainfall, existingCrops, farmSize));
+    }
+
+    /**
+     * Ask the AI providers directly, bypassing the advice cache (also used to test the connection)
+     */
+    public Map<String, Object> requestAdvice(
+            String soilType,
+            String location,
+            String currentSeason,
+            Double temperature,
+            Double humidity,
+            Double rainfall,
+            String existingCrops,
+            String farmSize) {
         // Build prompt
         String prompt = buildAgriculturePrompt(soilType, location, currentSeason,
                 temperature, humidity, rainfall, existingCrops, farmSize);
@@ -97,41 +142,70 @@ public class AIAdvisorService {
                 }
                 """;
 
-        // Try providers in order of preference
-        Map<String, Object> result = null;
+        // Providers in order of preference; the router hedges between them
+        List<AiProviderRouter.Candidate<Map<String, Object>>> candidates = new ArrayList<>();
+        Map<String, String> providerLabels = new HashMap<>();
+        // First plain-text (non-JSON) answer, used only if no provider returns JSON
+        AtomicReference<Map<String, Object>> textAnswer = new AtomicReference<>();
 
-        // 1. Try GitHub Models first (best quality)
+        // 1. GitHub Models (best quality)
         if (isConfigured(githubToken)) {
-            result = callGitHubModels(systemPrompt, prompt);
-            if (result != null) {
-                result.put("provider", "GitHub Models");
-                return result;
-            }
+            candidates.add(new AiProviderRouter.Candidate<>("github-models", GITHUB_COLD_START_MS,
+                    () -> keepText(callGitHubModels(systemPrompt, prompt), "GitHub Models", textAnswer)));
+            providerLabels.put("github-models", "GitHub Models");
         }
 
-        // 2. Try Groq (fastest)
+        // 2. Groq (fastest)
         if (isConfigured(groqApiKey)) {
-            result = callGroq(systemPrompt, prompt);
-            if (result != null) {
-                result.put("provider", "Groq");
-                return result;
-            }
+            candidates.add(new AiProviderRouter.Candidate<>("groq", GROQ_COLD_START_MS,
+                    () -> keepText(callGroq(systemPrompt, prompt), "Groq", textAnswer)));
+            providerLabels.put("groq", "Groq");
         }
 
-        // 3. Try Cohere
+        // 3. Cohere
         if (isConfigured(cohereApiKey)) {
-            result = callCohere(systemPrompt, prompt);
-            if (result != null) {
-                result.put("provider", "Cohere");
-                return result;
-            }
+            candidates.add(new AiProviderRouter.Candidate<>("cohere", COHERE_COLD_START_MS,
+                    () -> keepText(callCohere(systemPrompt, prompt), "Cohere", textAnswer)));
+            providerLabels.put("cohere", "Cohere");
+        }
+
+        if (candidates.isEmpty()) {
+            logger.error("No AI provider configured");
+            return Map.of(
+                    "error", true,
+                    "message", "Không có AI provider nào được cấu hình. Vui lòng thêm API key vào .env");
+        }
+
+        // A prose answer (parsed=false) only hands over to the next provider; it is kept as a
+        // last resort and does not count against the provider's circuit breaker
+        AiProviderRouter.Outcome<Map<String, Object>> outcome = providerRouter.hedge("advice", candidates,
+                result -> !Boolean.FALSE.equals(result.get("parsed")), Duration.ofMillis(adviceBudgetMs));
+        if (outcome.isSuccess()) {
+            Map<String, Object> result = new HashMap<>(outcome.getValue());
+            result.put("provider", providerLabels.get(outcome.getProvider()));
+            return result;
+        }
+        if (textAnswer.get() != null) {
+            return textAnswer.get();
         }
 
-        // No provider available
-        logger.error("No AI provider configured or all failed");
+        logger.error("All AI providers failed: {}", outcome.getError());
         return Map.of(
                 "error", true,
-                "message", "Không có AI provider nào được cấu hình. Vui lòng thêm API key vào .env");
+                "message", "Không AI provider nào phản hồi: " + outcome.getError());
+    }
+
+    /**
+     * Remember a plain-text answer (kept as last resort) and pass the result on
+     */
+    private Map<String, Object> keepText(Map<String, Object> result, String providerLabel,
+            AtomicReference<Map<String, Object>> textAnswer) {
+        if (result != null && Boolean.FALSE.equals(result.get("parsed"))) {
+            Map<String, Object> text = new HashMap<>(result);
+            text.put("provider", providerLabel);
+            textAnswer.compareAndSet(null, text);
+        }
+        return result;
     }
 
     /**
@@ -159,9 +233,9 @@ public class AIAdvisorService {
 
             return parseOpenAIResponse(response.getBody());
 
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             logger.error("GitHub Models error: {}", e.getMessage());
-            return null;
+            throw e;
         }
     }
 
@@ -190,9 +264,9 @@ public class AIAdvisorService {
 
             return parseOpenAIResponse(response.getBody());
 
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             logger.error("Groq error: {}", e.getMessage());
-            return null;
+            throw e;
         }
     }
 
@@ -219,9 +293,9 @@ public class AIAdvisorService {
 
             return parseCohereResponse(response.getBody());
 
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             logger.error("Cohere error: {}", e.getMessage());
-            return null;
+            throw e;
         }
     }
 
@@ -322,4 +396,18 @@ public class AIAdvisorService {
                 "groq", isConfigured(groqApiKey),
                 "cohere", isConfigured(cohereApiKey));
     }
+
+    /**
+     * Circuit state and latency percentiles of every routed AI provider
+     */
+    public Map<String, Object> getProviderStats() {
+        return providerRouter.getStats();
+    }
+
+    /**
+     * Advice cache size, hits / misses and hit rate
+     */
+    public Map<String, Object> getAdviceCacheStats() {
+        return adviceCache.getStats();
+    }
 }
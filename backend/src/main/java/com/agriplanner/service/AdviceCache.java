@@ -0,0 +1,234 @@
+package com.agriplanner.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-memory cache of agricultural advice (Cache đề xuất nông vụ)
+ *
+ * Farmers of the same commune ask with the same soil, season and near-identical weather, so the
+ * key is a canonical tuple: soil code, province, season and temperature / humidity / rainfall
+ * rounded down to configurable steps. Entries expire after a TTL and the least recently used
+ * ones are dropped past max-entries. Concurrent identical requests share one provider call.
+ */
+@Service
+public class AdviceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdviceCache.class);
+
+    private final SoilTypeMappingService soilTypeMappingService;
+
+    @Value("${ai.advice-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.advice-cache.ttl-minutes:360}")
+    private long ttlMinutes;
+
+    @Value("${ai.advice-cache.max-entries:1000}")
+    private int maxEntries;
+
+    // Bucket widths: 27.1°C and 28.9°C share the 26-28 bucket with the default step
+    @Value("${ai.advice-cache.temperature-step:2}")
+    private double temperatureStep;
+
+    @Value("${ai.advice-cache.humidity-step:10}")
+    private double humidityStep;
+
+    @Value("${ai.advice-cache.rainfall-step:25}")
+    private double rainfallStep;
+
+    private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Key, CompletableFuture<Map<String, Object>>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public AdviceCache(SoilTypeMappingService soilTypeMappingService) {
+        this.soilTypeMappingService = soilTypeMappingService;
+    }
+
+    /**
+     * Canonical advice inputs; null components mean "not given"
+     */
+    public record Key(String soil, String province, String season, Long temperatureBucket,
+            Long humidityBucket, Long rainfallBucket, String existingCrops, String farmSize) {
+    }
+
+    private static final class Entry {
+        final Map<String, Object> advice;
+        final long createdAt;
+        final long expiresAt;
+
+        Entry(Map<String, Object> advice, long createdAt, long expiresAt) {
+            this.advice = advice;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Build the cache key from the raw request values
+     *
+     * @param location free text such as "Cần Thơ, Việt Nam"; the first part is the province
+     */
+    public Key keyFor(String soilType, String location, String currentSeason, Double temperature,
+            Double humidity, Double rainfall, String existingCrops, String farmSize) {
+        String soil = null;
+        if (soilType != null && !soilType.isBlank()) {
+            String code = soilTypeMappingService.mapAiNameToCode(soilType);
+            soil = code != null ? code : normalize(soilType);
+        }
+        String province = location != null ? normalize(location.split(",", 2)[0]) : null;
+        if (province != null) {
+            province = province.replaceFirst("^(tinh|thanh pho|tp) ", "");
+        }
+        return new Key(soil, province, normalize(currentSeason),
+                bucket(temperature, temperatureStep), bucket(humidity, humidityStep),
+                bucket(rainfall, rainfallStep), normalize(existingCrops), normalize(farmSize));
+    }
+
+    private String normalize(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        // normalizeText drops 'đ' (not a combining mark); keep it as 'd'
+        String normalized = soilTypeMappingService.normalizeText(text.replace('đ', 'd').replace('Đ', 'D'));
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    private static Long bucket(Double value, double step) {
+        if (value == null || value.isNaN()) {
+            return null;
+        }
+        return step > 0 ? (long) Math.floor(value / step) : Math.round(value);
+    }
+
+    /**
+     * Cached advice for the key, or the loader's result. Only one loader runs per key at a time;
+     * identical requests arriving meanwhile wait for it. Results with "error" or an unparsed
+     * text answer are returned but not cached.
+     */
+    public Map<String, Object> get(Key key, Supplier<Map<String, Object>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Map<String, Object> cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<Map<String, Object>> mine = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return new HashMap<>(running.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            // The previous loader may have finished between the lookup and putIfAbsent
+            cached = lookup(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                mine.complete(cached);
+                return cached;
+            }
+
+            misses.incrementAndGet();
+            Map<String, Object> advice = loader.get();
+            if (advice != null && !advice.containsKey("error") && !Boolean.FALSE.equals(advice.get("parsed"))) {
+                store(key, advice);
+            }
+            mine.complete(advice != null ? advice : Map.of());
+            return advice;
+        } catch (RuntimeException | Error e) {
+            // Waiters must not hang on a loader that blew up
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private Map<String, Object> lookup(Key key) {
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis()) {
+                cache.remove(key);
+                expirations.incrementAndGet();
+                return null;
+            }
+            Map<String, Object> advice = new HashMap<>(entry.advice);
+            advice.put("cached", true);
+            advice.put("cachedAt", entry.createdAt);
+            return advice;
+        }
+    }
+
+    private void store(Key key, Map<String, Object> advice) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(new HashMap<>(advice), now, now + ttlMinutes * 60_000);
+        synchronized (cache) {
+            cache.put(key, entry);
+            Iterator<Entry> it = cache.values().iterator();
+            while (cache.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        logger.debug("Cached advice for {}", key);
+    }
+
+    /**
+     * Size, hit / miss / coalesced counts and hit rate
+     */
+    public Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long coalescedCount = coalesced.get();
+        long lookups = hitCount + missCount + coalescedCount;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (cache) {
+            stats.put("entries", cache.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMinutes", ttlMinutes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("coalesced", coalescedCount);
+        stats.put("inFlight", inFlight.size());
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        // Coalesced requests were served without their own provider call too
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) (hitCount + coalescedCount) / lookups);
+        return stats;
+    }
+}
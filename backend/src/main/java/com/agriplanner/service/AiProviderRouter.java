@@ -0,0 +1,503 @@
+package com.agriplanner.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Hedged routing over several AI providers (gọi song song có trễ, lấy kết quả đầu tiên hợp lệ)
+ *
+ * The preferred provider is called first. If it has not answered after its usual latency
+ * (a percentile of its own latency histogram) the next provider is started as well; a failure
+ * starts the next one at once. The first valid answer wins and the other calls are cancelled,
+ * so the wait is bounded by the hedge budget instead of the sum of all provider timeouts.
+ * Every provider has a circuit breaker: after consecutive failures it is skipped for a while,
+ * then a single trial call decides whether it closes again. An answer that arrives but is not
+ * valid for the request (e.g. prose instead of JSON) moves on to the next provider without
+ * counting against the breaker; each call gives the breaker at most one verdict.
+ */
+@Service
+public class AiProviderRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AiProviderRouter.class);
+
+    // Latency histogram bucket upper bounds (ms); the last bucket is open-ended
+    private static final long[] BUCKET_BOUNDS = { 100, 200, 400, 700, 1000, 1500, 2000, 3000, 4000, 6000, 8000,
+            12000, 16000, 24000, 32000, 48000, 64000, 96000, 128000 };
+    // Below this many samples a provider's own cold-start delay is used
+    private static final int MIN_SAMPLES = 10;
+
+    @Value("${ai.router.breaker.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${ai.router.breaker.open-seconds:30}")
+    private long openSeconds;
+
+    @Value("${ai.router.hedge.percentile:0.9}")
+    private double hedgePercentile;
+
+    @Value("${ai.router.hedge.min-delay-ms:500}")
+    private long minHedgeDelayMs;
+
+    private final Map<String, ProviderState> providers = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ai-router");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * One provider to try for a request
+     *
+     * @param coldStartDelayMs hedge delay used until the provider has enough latency samples
+     */
+    public record Candidate<T>(String provider, long coldStartDelayMs, Callable<T> call) {
+    }
+
+    /**
+     * Result of a routed request: the winning value, or null with the reason
+     */
+    @Data
+    public static class Outcome<T> {
+        private T value;
+        private String provider;
+        private long elapsedMs;
+        private String error;
+        private final List<Map<String, Object>> attempts = new ArrayList<>();
+
+        public boolean isSuccess() {
+            return value != null;
+        }
+
+        /**
+         * Error of the given provider's attempt, if it failed
+         */
+        public String errorOf(String providerName) {
+            return attempts.stream()
+                    .filter(a -> providerName.equals(a.get("provider")) && a.get("error") != null)
+                    .map(a -> (String) a.get("error"))
+                    .findFirst().orElse(null);
+        }
+    }
+
+    private enum BreakerState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final class ProviderState {
+        final String name;
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong successes = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong unusable = new AtomicLong();
+        final AtomicLong hedged = new AtomicLong();
+        final AtomicLong wins = new AtomicLong();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        BreakerState state = BreakerState.CLOSED;
+        long openedAt;
+        boolean trialInFlight;
+
+        ProviderState(String name) {
+            this.name = name;
+        }
+
+        synchronized boolean isAvailable() {
+            if (state == BreakerState.OPEN) {
+                return System.currentTimeMillis() - openedAt >= openSeconds * 1000;
+            }
+            return state == BreakerState.CLOSED || !trialInFlight;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == BreakerState.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openSeconds * 1000) {
+                    return false;
+                }
+                state = BreakerState.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == BreakerState.HALF_OPEN) {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+            }
+            return true;
+        }
+
+        synchronized void onSuccess(long latencyMs) {
+            recordLatency(latencyMs);
+            successes.incrementAndGet();
+            consecutiveFailures.set(0);
+            if (state != BreakerState.CLOSED) {
+                logger.info("AI provider {} recovered, circuit closed", name);
+            }
+            state = BreakerState.CLOSED;
+            trialInFlight = false;
+        }
+
+        /**
+         * The provider answered but the content cannot be used: healthy for the breaker
+         */
+        synchronized void onUnusable(long latencyMs) {
+            unusable.incrementAndGet();
+            recordLatency(latencyMs);
+            consecutiveFailures.set(0);
+            if (state != BreakerState.CLOSED) {
+                logger.info("AI provider {} answered again, circuit closed", name);
+            }
+            state = BreakerState.CLOSED;
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure(long latencyMs, String error) {
+            failures.incrementAndGet();
+            int failed = consecutiveFailures.incrementAndGet();
+            if (state == BreakerState.HALF_OPEN || (state == BreakerState.CLOSED && failed >= failureThreshold)) {
+                state = BreakerState.OPEN;
+                openedAt = System.currentTimeMillis();
+                logger.warn("AI provider {} circuit opened for {} s after {} failures (last: {})",
+                        name, openSeconds, failed, error);
+            }
+            trialInFlight = false;
+        }
+
+        /**
+         * Call abandoned because another provider won: frees a half-open trial, no verdict
+         */
+        synchronized void onCancelled() {
+            trialInFlight = false;
+        }
+
+        void recordLatency(long latencyMs) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && latencyMs > BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+
+        long samples() {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            return total;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, or -1 without enough samples
+         */
+        long percentile(double p) {
+            long total = samples();
+            if (total < MIN_SAMPLES) {
+                return -1;
+            }
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return i < BUCKET_BOUNDS.length ? BUCKET_BOUNDS[i] : BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] * 2;
+                }
+            }
+            return BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1] * 2;
+        }
+
+        synchronized String stateName() {
+            if (state == BreakerState.OPEN && System.currentTimeMillis() - openedAt >= openSeconds * 1000) {
+                return BreakerState.HALF_OPEN.name();
+            }
+            return state.name();
+        }
+    }
+
+    private static final class Attempt<T> {
+        final Candidate<T> candidate;
+        final ProviderState state;
+        final long startedAt = System.currentTimeMillis();
+        volatile Future<Attempt<T>> future;
+        volatile T value;
+        volatile String error;
+        volatile long latencyMs;
+        volatile boolean done;
+        // Answered with a value the request could not use
+        volatile boolean unusable;
+        // Set by whoever gives the breaker verdict first: the call itself or the router
+        // abandoning it (cancelled / timed out)
+        final AtomicBoolean judged = new AtomicBoolean();
+
+        Attempt(Candidate<T> candidate, ProviderState state) {
+            this.candidate = candidate;
+            this.state = state;
+        }
+
+        boolean claimVerdict() {
+            return judged.compareAndSet(false, true);
+        }
+    }
+
+    // ==================== ROUTING ====================
+
+    /**
+     * Call the candidates (in preference order) with hedging; the first value accepted by
+     * {@code valid} wins. Blocks for at most {@code budget}.
+     */
+    public <T> Outcome<T> hedge(String route, List<Candidate<T>> candidates, Predicate<T> valid, Duration budget) {
+        Outcome<T> outcome = new Outcome<>();
+        long start = System.currentTimeMillis();
+        long deadline = start + budget.toMillis();
+
+        List<Candidate<T>> queue = new ArrayList<>();
+        for (Candidate<T> candidate : candidates) {
+            if (state(candidate.provider()).isAvailable()) {
+                queue.add(candidate);
+            } else {
+                outcome.getAttempts().add(attemptInfo(candidate.provider(), "skipped", 0, "circuit open"));
+            }
+        }
+        if (queue.isEmpty()) {
+            outcome.setError("Tất cả AI provider đang tạm ngắt (circuit open)");
+            outcome.setElapsedMs(System.currentTimeMillis() - start);
+            return outcome;
+        }
+
+        ExecutorCompletionService<Attempt<T>> completion = new ExecutorCompletionService<>(executor);
+        List<Attempt<T>> launched = new ArrayList<>();
+        int next = 0;
+        List<Attempt<T>> cancelled = new ArrayList<>();
+        Attempt<T> winner = null;
+        String lastError = null;
+        boolean launchNow = true;
+        // Launched but not yet taken from the completion queue; a call may already be done
+        // while its result still waits there
+        int pending = 0;
+
+        try {
+            while (true) {
+                // First call, or the last answer was a failure: start the next provider at once
+                boolean anyRunning = pending > 0;
+                if ((launchNow || !anyRunning) && next < queue.size()) {
+                    Attempt<T> attempt = launch(completion, queue.get(next++), valid);
+                    if (attempt != null) {
+                        if (!launched.isEmpty()) {
+                            attempt.state.hedged.incrementAndGet();
+                        }
+                        launched.add(attempt);
+                        pending++;
+                        launchNow = false;
+                    }
+                    continue;
+                }
+                if (!anyRunning) {
+                    break;
+                }
+                launchNow = false;
+
+                long now = System.currentTimeMillis();
+                if (now >= deadline) {
+                    lastError = "Hết thời gian chờ AI (" + (budget.toMillis() + 999) / 1000 + "s)";
+                    break;
+                }
+                long wait = deadline - now;
+                if (next < queue.size()) {
+                    Attempt<T> newest = launched.get(launched.size() - 1);
+                    long hedgeAt = newest.startedAt + hedgeDelay(newest);
+                    wait = Math.min(wait, Math.max(0, hedgeAt - now));
+                }
+
+                Future<Attempt<T>> done = completion.poll(wait, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    if (next < queue.size() && System.currentTimeMillis() < deadline) {
+                        Attempt<T> attempt = launch(completion, queue.get(next++), valid);
+                        if (attempt != null) {
+                            attempt.state.hedged.incrementAndGet();
+                            logger.debug("[{}] hedging with {} after {} ms", route, attempt.candidate.provider(),
+                                    System.currentTimeMillis() - start);
+                            launched.add(attempt);
+                            pending++;
+                        }
+                    }
+                    continue;
+                }
+                pending--;
+                Attempt<T> attempt = done.get();
+                if (attempt.value != null) {
+                    winner = attempt;
+                    break;
+                }
+                lastError = attempt.candidate.provider() + ": " + attempt.error;
+                launchNow = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastError = "Đã hủy";
+        } catch (ExecutionException e) {
+            lastError = e.getMessage();
+        } finally {
+            for (Attempt<T> attempt : launched) {
+                if (attempt != winner && !attempt.done) {
+                    long runningMs = System.currentTimeMillis() - attempt.startedAt;
+                    if (attempt.claimVerdict()) {
+                        if (winner != null) {
+                            // Lost the race: no verdict on the provider
+                            attempt.state.onCancelled();
+                        } else {
+                            // Still silent when the whole budget ran out: counts as a timeout
+                            attempt.state.onFailure(runningMs, "timeout");
+                        }
+                    }
+                    attempt.future.cancel(true);
+                    cancelled.add(attempt);
+                    outcome.getAttempts().add(attemptInfo(attempt.candidate.provider(),
+                            winner != null ? "cancelled" : "timeout", runningMs, null));
+                }
+            }
+        }
+
+        for (Attempt<T> attempt : launched) {
+            if (attempt.done && !cancelled.contains(attempt)) {
+                outcome.getAttempts().add(attemptInfo(attempt.candidate.provider(),
+                        attempt.value != null ? "success" : attempt.unusable ? "unusable" : "failed",
+                        attempt.latencyMs, attempt.error));
+            }
+        }
+        outcome.setElapsedMs(System.currentTimeMillis() - start);
+        if (winner != null) {
+            winner.state.wins.incrementAndGet();
+            outcome.setValue(winner.value);
+            outcome.setProvider(winner.candidate.provider());
+            logger.info("[{}] answered by {} in {} ms ({} provider(s) called)", route,
+                    winner.candidate.provider(), outcome.getElapsedMs(), launched.size());
+        } else {
+            outcome.setError(lastError != null ? lastError : "Không có AI provider nào trả lời hợp lệ");
+            logger.warn("[{}] no valid answer after {} ms: {}", route, outcome.getElapsedMs(), outcome.getError());
+        }
+        return outcome;
+    }
+
+    private <T> Attempt<T> launch(ExecutorCompletionService<Attempt<T>> completion, Candidate<T> candidate,
+            Predicate<T> valid) {
+        ProviderState state = state(candidate.provider());
+        if (!state.tryAcquire()) {
+            return null;
+        }
+        Attempt<T> attempt = new Attempt<>(candidate, state);
+        state.calls.incrementAndGet();
+        attempt.future = completion.submit(() -> {
+            try {
+                T value = candidate.call().call();
+                attempt.latencyMs = System.currentTimeMillis() - attempt.startedAt;
+                if (value != null && valid.test(value)) {
+                    attempt.value = value;
+                    if (attempt.claimVerdict()) {
+                        state.onSuccess(attempt.latencyMs);
+                    } else {
+                        // Late answer of an abandoned call: still a latency sample, no verdict
+                        state.recordLatency(attempt.latencyMs);
+                    }
+                } else if (value != null) {
+                    // Answered, but not usable here: fall through to the next provider only
+                    attempt.unusable = true;
+                    attempt.error = "Phản hồi không dùng được";
+                    if (attempt.claimVerdict()) {
+                        state.onUnusable(attempt.latencyMs);
+                    }
+                } else {
+                    attempt.error = "Không có phản hồi";
+                    if (attempt.claimVerdict()) {
+                        state.onFailure(attempt.latencyMs, attempt.error);
+                    }
+                }
+            } catch (Exception e) {
+                attempt.latencyMs = System.currentTimeMillis() - attempt.startedAt;
+                attempt.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                if (attempt.claimVerdict()) {
+                    state.onFailure(attempt.latencyMs, attempt.error);
+                }
+            } finally {
+                attempt.done = true;
+            }
+            return attempt;
+        });
+        return attempt;
+    }
+
+    /**
+     * How long to wait for this attempt before starting the next provider
+     */
+    private long hedgeDelay(Attempt<?> attempt) {
+        long percentile = attempt.state.percentile(hedgePercentile);
+        long delay = percentile > 0 ? percentile : attempt.candidate.coldStartDelayMs();
+        return Math.max(minHedgeDelayMs, delay);
+    }
+
+    private ProviderState state(String provider) {
+        return providers.computeIfAbsent(provider, ProviderState::new);
+    }
+
+    private static Map<String, Object> attemptInfo(String provider, String status, long latencyMs, String error) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("provider", provider);
+        info.put("status", status);
+        info.put("latencyMs", latencyMs);
+        if (error != null) {
+            info.put("error", error);
+        }
+        return info;
+    }
+
+    // ==================== METRICS ====================
+
+    /**
+     * Per provider: circuit state, call counts, hedges, wins and latency percentiles
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        providers.forEach((name, state) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("circuit", state.stateName());
+            item.put("calls", state.calls.get());
+            item.put("successes", state.successes.get());
+            item.put("failures", state.failures.get());
+            item.put("unusableAnswers", state.unusable.get());
+            item.put("consecutiveFailures", state.consecutiveFailures.get());
+            item.put("hedgedCalls", state.hedged.get());
+            item.put("wins", state.wins.get());
+            item.put("samples", state.samples());
+            item.put("p50Ms", state.percentile(0.5));
+            item.put("p90Ms", state.percentile(0.9));
+            item.put("p99Ms", state.percentile(0.99));
+            stats.put(name, item);
+        });
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
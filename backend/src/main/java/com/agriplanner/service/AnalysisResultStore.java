@@ -0,0 +1,470 @@
+package com.agriplanner.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Store for analysis results waiting for confirmation (kết quả phân tích chờ xác nhận)
+ *
+ * Results (zone polygons, base64 legend images) can be several MB each. Recently used results
+ * stay on heap up to a byte budget; older ones are written as gzip JSON files and read back
+ * through a memory-mapped file when asked for again. Entries expire after a TTL. Spilled files
+ * are picked up again after a restart, so a finished job's result survives it.
+ *
+ * Values are treated as immutable once stored: callers that change a result must put it again.
+ */
+@Service
+public class AnalysisResultStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisResultStore.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+    private static final TypeReference<LinkedHashMap<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+    private static final String FILE_SUFFIX = ".json.gz";
+    // Small fields kept with every entry so listings never read a spilled result
+    private static final List<String> SUMMARY_KEYS = List.of("timestamp", "mapType", "province", "district", "status");
+
+    @Value("${analysis.result-store.heap-budget-mb:64}")
+    private long heapBudgetMb;
+
+    @Value("${analysis.result-store.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${analysis.result-store.dir:${java.io.tmpdir}/agriplanner/analysis-results}")
+    private String spillDir;
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    // Spill files that could not be deleted yet (still mapped on some platforms)
+    private final Set<Path> pendingDeletes = ConcurrentHashMap.newKeySet();
+    private final Object budgetLock = new Object();
+    private long heapBytes;
+
+    private final AtomicLong heapHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    private static final class Slot {
+        final String id;
+        final long storedAt;
+        volatile long bytes;
+        volatile Map<String, Object> summary;
+        volatile Map<String, Object> value;
+        volatile Path file;
+        volatile long fileBytes;
+        volatile long lastAccess;
+
+        Slot(String id, Map<String, Object> value, long bytes, Map<String, Object> summary, long storedAt) {
+            this.id = id;
+            this.value = value;
+            this.bytes = bytes;
+            this.summary = summary;
+            this.storedAt = storedAt;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        Path dir = Paths.get(spillDir);
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            logger.warn("Cannot create analysis result spill dir {}: {}", dir, e.getMessage());
+            return;
+        }
+        // Re-index results spilled before a restart (summary is read lazily on first use)
+        long cutoff = System.currentTimeMillis() - ttlMillis();
+        int restored = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (modified < cutoff) {
+                    deleteFile(file);
+                    continue;
+                }
+                String id = file.getFileName().toString();
+                id = id.substring(0, id.length() - FILE_SUFFIX.length());
+                Slot slot = new Slot(id, null, 0, null, modified);
+                slot.file = file;
+                slot.fileBytes = Files.size(file);
+                slots.put(id, slot);
+                restored++;
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot scan analysis result spill dir {}: {}", dir, e.getMessage());
+        }
+        if (restored > 0) {
+            logger.info("Restored {} spilled analysis results from {}", restored, dir);
+        }
+    }
+
+    // ==================== READ / WRITE ====================
+
+    public void put(String id, Map<String, Object> result) {
+        long bytes = estimateBytes(result);
+        Slot slot = new Slot(id, result, bytes, summarize(result), System.currentTimeMillis());
+        Slot previous = slots.put(id, slot);
+        synchronized (budgetLock) {
+            heapBytes += bytes;
+            release(previous);
+        }
+        enforceBudget();
+    }
+
+    /**
+     * The stored result, or null if unknown or expired
+     */
+    public Map<String, Object> get(String id) {
+        Slot slot = slots.get(id);
+        if (slot == null || isExpired(slot)) {
+            if (slot != null) {
+                remove(id);
+                expired.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        slot.lastAccess = System.currentTimeMillis();
+        Map<String, Object> value = slot.value;
+        if (value != null) {
+            heapHits.incrementAndGet();
+            return value;
+        }
+        value = readSpilled(slot);
+        if (value == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        promote(slot, value);
+        return value;
+    }
+
+    public boolean contains(String id) {
+        Slot slot = slots.get(id);
+        return slot != null && !isExpired(slot);
+    }
+
+    public boolean remove(String id) {
+        Slot slot = slots.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        synchronized (budgetLock) {
+            release(slot);
+        }
+        return true;
+    }
+
+    public void clear() {
+        new ArrayList<>(slots.keySet()).forEach(this::remove);
+    }
+
+    /**
+     * id -> small summary fields (timestamp, mapType, province, district, status, zoneCount)
+     */
+    public Map<String, Map<String, Object>> summaries() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (Slot slot : slots.values()) {
+            if (isExpired(slot)) {
+                continue;
+            }
+            Map<String, Object> summary = slot.summary;
+            if (summary == null) {
+                // Restored from disk: read once, without keeping the full result on heap
+                Map<String, Object> value = readSpilled(slot);
+                summary = value != null ? summarize(value) : Map.of();
+                slot.summary = summary;
+            }
+            result.put(slot.id, summary);
+        }
+        return result;
+    }
+
+    // ==================== EVICTION ====================
+
+    /**
+     * Drop expired entries and retry deleting spill files still held open
+     */
+    @Scheduled(fixedDelayString = "${analysis.result-store.sweep-interval-ms:60000}")
+    public int evictExpired() {
+        int removed = 0;
+        for (Slot slot : new ArrayList<>(slots.values())) {
+            if (isExpired(slot) && slots.remove(slot.id, slot)) {
+                synchronized (budgetLock) {
+                    release(slot);
+                }
+                removed++;
+            }
+        }
+        expired.addAndGet(removed);
+        new ArrayList<>(pendingDeletes).forEach(this::deleteFile);
+        if (removed > 0) {
+            logger.info("Evicted {} expired analysis results", removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Spill least recently used results until the heap share is within budget
+     */
+    private void enforceBudget() {
+        long budget = heapBudgetMb * 1024 * 1024;
+        while (true) {
+            Slot victim;
+            synchronized (budgetLock) {
+                if (heapBytes <= budget) {
+                    return;
+                }
+                victim = slots.values().stream()
+                        .filter(s -> s.value != null)
+                        .min(Comparator.comparingLong(s -> s.lastAccess))
+                        .orElse(null);
+                if (victim == null) {
+                    return;
+                }
+            }
+            if (!spill(victim)) {
+                return;
+            }
+        }
+    }
+
+    private boolean spill(Slot slot) {
+        Map<String, Object> value = slot.value;
+        if (value == null) {
+            return true;
+        }
+        if (slot.file == null) {
+            Path dir = Paths.get(spillDir);
+            Path file = dir.resolve(slot.id + FILE_SUFFIX);
+            Path tmp = dir.resolve(slot.id + FILE_SUFFIX + ".tmp");
+            try {
+                Files.createDirectories(dir);
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+                    MAPPER.writeValue(out, value);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                slot.fileBytes = Files.size(file);
+                slot.file = file;
+            } catch (Exception e) {
+                logger.warn("Could not spill analysis result {}: {}", slot.id, e.getMessage());
+                deleteFile(tmp);
+                return false;
+            }
+            spills.incrementAndGet();
+        }
+        synchronized (budgetLock) {
+            if (slot.value != null && slots.get(slot.id) == slot) {
+                slot.value = null;
+                heapBytes -= slot.bytes;
+            }
+        }
+        if (slots.get(slot.id) != slot) {
+            // Removed or replaced while writing
+            deleteFile(slot.file);
+        }
+        logger.debug("Spilled analysis result {} ({} KB on disk)", slot.id, slot.fileBytes / 1024);
+        return true;
+    }
+
+    private void promote(Slot slot, Map<String, Object> value) {
+        long budget = heapBudgetMb * 1024 * 1024;
+        if (slot.bytes == 0) {
+            // Restored from disk after a restart
+            slot.bytes = estimateBytes(value);
+            slot.summary = summarize(value);
+        }
+        synchronized (budgetLock) {
+            // A result larger than the whole budget is served from disk every time
+            if (slot.value != null || slot.bytes > budget || slots.get(slot.id) != slot) {
+                return;
+            }
+            slot.value = value;
+            heapBytes += slot.bytes;
+        }
+        enforceBudget();
+    }
+
+    // Caller holds budgetLock
+    private void release(Slot slot) {
+        if (slot == null) {
+            return;
+        }
+        if (slot.value != null) {
+            heapBytes -= slot.bytes;
+            slot.value = null;
+        }
+        if (slot.file != null) {
+            deleteFile(slot.file);
+        }
+    }
+
+    private Map<String, Object> readSpilled(Slot slot) {
+        Path file = slot.file;
+        if (file == null) {
+            return slot.value;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try (InputStream in = new GZIPInputStream(new BufferedInputStream(new ByteBufferInputStream(buffer)),
+                    64 * 1024)) {
+                return MAPPER.readValue(in, MAP_TYPE);
+            }
+        } catch (Exception e) {
+            logger.warn("Could not read spilled analysis result {}: {}", slot.id, e.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            pendingDeletes.remove(file);
+        } catch (IOException e) {
+            pendingDeletes.add(file);
+        }
+    }
+
+    private boolean isExpired(Slot slot) {
+        return System.currentTimeMillis() - slot.storedAt > ttlMillis();
+    }
+
+    private long ttlMillis() {
+        return ttlMinutes * 60_000;
+    }
+
+    // ==================== METRICS ====================
+
+    public Map<String, Object> getStats() {
+        long hits = heapHits.get() + diskHits.get();
+        long lookups = hits + misses.get();
+        long onHeap = 0;
+        long spilledEntries = 0;
+        long spilledBytes = 0;
+        for (Slot slot : slots.values()) {
+            if (slot.value != null) {
+                onHeap++;
+            }
+            if (slot.file != null) {
+                spilledEntries++;
+                spilledBytes += slot.fileBytes;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", slots.size());
+        stats.put("onHeap", onHeap);
+        synchronized (budgetLock) {
+            stats.put("heapBytes", heapBytes);
+        }
+        stats.put("heapBudgetBytes", heapBudgetMb * 1024 * 1024);
+        stats.put("spilledEntries", spilledEntries);
+        stats.put("spilledBytes", spilledBytes);
+        stats.put("heapHits", heapHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : Math.round(hits * 1000.0 / lookups) / 1000.0);
+        stats.put("spills", spills.get());
+        stats.put("expired", expired.get());
+        return stats;
+    }
+
+    // ==================== HELPERS ====================
+
+    private static Map<String, Object> summarize(Map<String, Object> result) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (String key : SUMMARY_KEYS) {
+            if (result.get(key) != null) {
+                summary.put(key, result.get(key));
+            }
+        }
+        if (result.get("zones") instanceof List<?> zones) {
+            summary.put("zoneCount", zones.size());
+        }
+        return summary;
+    }
+
+    /**
+     * Serialized JSON size, counted without buffering (roughly the heap share of the map)
+     */
+    private static long estimateBytes(Map<String, Object> result) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try {
+            MAPPER.writeValue(counter, result);
+        } catch (IOException e) {
+            // Not serializable: it stays on heap, count a nominal size
+            return 1024;
+        }
+        return counter.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.agriplanner.service;
 
+import com.agriplanner.config.OutboundHttpClients;
 import com.agriplanner.dto.AuthResponse;
 import com.agriplanner.dto.LoginRequest;
 import com.agriplanner.dto.RegisterRequest;
@@ -34,6 +35,7 @@ public class AuthService {
     private final JwtService jwtService;
     private final TwoFactorService twoFactorService;
     private final EmailService emailService;
+    private final OutboundHttpClients httpClients;
 
     @Value("${google.client.id:}")
     private String googleClientId;
@@ -368,7 +370,7 @@ public class AuthService {
      * Exchange Google authorization code for user info
      */
     private java.util.Map<String, Object> exchangeGoogleCode(String code, String redirectUri) {
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = httpClients.restTemplate(OutboundHttpClients.PROFILE_OAUTH);
 
         java.util.Map<String, String> tokenRequest = new java.util.HashMap<>();
         tokenRequest.put("code", code);
@@ -490,7 +492,7 @@ public class AuthService {
      * Exchange Facebook authorization code for access token and user info
      */
     private java.util.Map<String, Object> exchangeFacebookCode(String code, String redirectUri) {
-        RestTemplate restTemplate = new RestTemplate();
+        RestTemplate restTemplate = httpClients.restTemplate(OutboundHttpClients.PROFILE_OAUTH);
 
         // Exchange code for access token
         String tokenUrl = String.format(
@@ -626,7 +628,7 @@ public class AuthService {
     public AuthResponse loginWithGithub(String code) {
         try {
             // Exchange code for access token
-            RestTemplate restTemplate = new RestTemplate();
+            RestTemplate restTemplate = httpClients.restTemplate(OutboundHttpClients.PROFILE_OAUTH);
 
             HttpHeaders headers = new HttpHeaders();
             headers.set("Accept", "application/json");
@@ -744,7 +746,7 @@ public class AuthService {
     @Transactional
     public AuthResponse registerWithGithub(String code, String role, String farmName, Long farmId, String cvProfile) {
         try {
-            RestTemplate restTemplate = new RestTemplate();
+            RestTemplate restTemplate = httpClients.restTemplate(OutboundHttpClients.PROFILE_OAUTH);
             HttpHeaders headers = new HttpHeaders();
             headers.set("Accept", "application/json");
 
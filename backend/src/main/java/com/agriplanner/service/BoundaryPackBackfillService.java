@@ -0,0 +1,103 @@
+package com.agriplanner.service;
+
+import com.agriplanner.util.GeometryCodec;
+import com.agriplanner.util.ZoneGeometryUtils;
+import lombok.RequiredArgsConstructor;
+import org.locationtech.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves boundaries written as JSON text to boundary_packed (mã hóa ranh giới cũ)
+ *
+ * The packed format is produced in Java, so the migration only adds the column and this job
+ * walks the fields / field_zones rows that still carry text, by primary key, in the background
+ * after startup. The text is cleared wherever the packed form gives the same array back; fields
+ * also get their bounding box, which can no longer be computed from the text later.
+ */
+@Service
+@RequiredArgsConstructor
+public class BoundaryPackBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundaryPackBackfillService.class);
+
+    private static final int PAGE_SIZE = 500;
+    // { table, bounding box columns set with the packed boundary }
+    private static final String[][] TABLES = { { "fields", "true" }, { "field_zones", "false" } };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread worker = new Thread(this::backfillAll, "boundary-pack-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void backfillAll() {
+        for (String[] table : TABLES) {
+            try {
+                int packed = backfill(table[0], Boolean.parseBoolean(table[1]));
+                if (packed > 0) {
+                    logger.info("Packed {} boundaries in {}", packed, table[0]);
+                }
+            } catch (Exception e) {
+                logger.warn("Boundary pack backfill for {} failed: {}", table[0], e.getMessage());
+            }
+        }
+    }
+
+    private int backfill(String table, boolean withBounds) {
+        // Rows whose text cannot be rebuilt keep it and are only looked at again on the next start
+        String selectSql = "SELECT id, CAST(boundary_coordinates AS text), boundary_packed IS NOT NULL FROM " + table
+                + " WHERE id > ? AND boundary_coordinates IS NOT NULL ORDER BY id LIMIT " + PAGE_SIZE;
+        String updateSql = "UPDATE " + table + " SET boundary_packed = ?, "
+                + "boundary_coordinates = CASE WHEN ? THEN NULL ELSE boundary_coordinates END"
+                + (withBounds ? ", min_lat = COALESCE(min_lat, ?), max_lat = COALESCE(max_lat, ?), "
+                        + "min_lng = COALESCE(min_lng, ?), max_lng = COALESCE(max_lng, ?)" : "")
+                + " WHERE id = ?";
+
+        int total = 0;
+        long afterId = 0;
+        while (true) {
+            List<Object[]> rows = jdbcTemplate.query(selectSql,
+                    (rs, i) -> new Object[] { rs.getLong(1), rs.getString(2), rs.getBoolean(3) }, afterId);
+            List<Object[]> updates = new ArrayList<>();
+            for (Object[] row : rows) {
+                // Unparseable boundaries stay as text; keyset paging moves past them
+                String text = (String) row[1];
+                Geometry boundary = ZoneGeometryUtils.fromLatLngArray(text);
+                byte[] packed = GeometryCodec.pack(boundary);
+                if (packed == null) {
+                    continue;
+                }
+                boolean dropText = GeometryCodec.rebuildsLatLngArray(text, packed);
+                if (!dropText && (Boolean) row[2]) {
+                    continue;
+                }
+                if (withBounds) {
+                    BigDecimal[] bounds = ZoneGeometryUtils.boundsOf(boundary);
+                    updates.add(new Object[] { packed, dropText, bounds[0], bounds[1], bounds[2], bounds[3], row[0] });
+                } else {
+                    updates.add(new Object[] { packed, dropText, row[0] });
+                }
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(updateSql, updates);
+                total += updates.size();
+            }
+            if (rows.size() < PAGE_SIZE) {
+                return total;
+            }
+            afterId = (Long) rows.get(rows.size() - 1)[0];
+        }
+    }
+}
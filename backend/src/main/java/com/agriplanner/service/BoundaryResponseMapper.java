@@ -0,0 +1,109 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.Field;
+import com.agriplanner.model.FieldZone;
+import com.agriplanner.model.LandParcel;
+import com.agriplanner.model.PlanningZone;
+import com.agriplanner.util.GeometryCodec;
+import com.agriplanner.util.ZoneGeometryUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.locationtech.jts.geom.Geometry;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Opt-in compact geometry for boundary-heavy responses (?geometry=polyline)
+ * Trả ranh giới dạng encoded polyline thay vì JSON tọa độ đầy đủ
+ *
+ * The JSON boundary fields are replaced by "boundaryPolyline": one list per polygon with the
+ * exterior ring first, each ring a Google encoded polyline (precision 5, lat first). Geometry
+ * is read from the binary columns (PostGIS geom / packed boundary) when they are filled.
+ */
+@Component
+@RequiredArgsConstructor
+public class BoundaryResponseMapper {
+
+    public static final String MODE_POLYLINE = "polyline";
+    public static final String POLYLINE_FIELD = "boundaryPolyline";
+
+    private final ObjectMapper objectMapper;
+
+    public boolean isPolyline(String geometry) {
+        return MODE_POLYLINE.equalsIgnoreCase(geometry);
+    }
+
+    public Object planningZones(Collection<PlanningZone> zones, String geometry) {
+        return isPolyline(geometry) ? mapAll(zones, this::boundaryOf, "boundaryCoordinates", "geojson") : zones;
+    }
+
+    public Object planningZone(PlanningZone zone, String geometry) {
+        return isPolyline(geometry) ? map(zone, boundaryOf(zone), "boundaryCoordinates", "geojson") : zone;
+    }
+
+    public Object landParcels(Collection<LandParcel> parcels, String geometry) {
+        return isPolyline(geometry) ? mapAll(parcels, this::boundaryOf, "boundaryGeojson") : parcels;
+    }
+
+    public Object fields(Collection<Field> fields, String geometry) {
+        return isPolyline(geometry) ? mapAll(fields, this::boundaryOf, "boundaryCoordinates") : fields;
+    }
+
+    public Object field(Field field, String geometry) {
+        return isPolyline(geometry) ? map(field, boundaryOf(field), "boundaryCoordinates") : field;
+    }
+
+    public Object fieldZones(Collection<FieldZone> zones, String geometry) {
+        return isPolyline(geometry) ? mapAll(zones, this::boundaryOf, "boundaryCoordinates") : zones;
+    }
+
+    public Object fieldZone(FieldZone zone, String geometry) {
+        return isPolyline(geometry) ? map(zone, boundaryOf(zone), "boundaryCoordinates") : zone;
+    }
+
+    // ==================== GEOMETRY SOURCES ====================
+
+    private Geometry boundaryOf(PlanningZone zone) {
+        if (zone.getGeom() != null) {
+            return zone.getGeom();
+        }
+        return ZoneGeometryUtils.toGeometry(zone.getGeojson(), zone.getBoundaryCoordinates(), null, null);
+    }
+
+    private Geometry boundaryOf(LandParcel parcel) {
+        return parcel.getGeom() != null ? parcel.getGeom() : ZoneGeometryUtils.fromGeoJson(parcel.getBoundaryGeojson());
+    }
+
+    private Geometry boundaryOf(Field field) {
+        Geometry packed = GeometryCodec.unpack(field.getBoundaryPacked());
+        return packed != null ? packed : ZoneGeometryUtils.fromLatLngArray(field.getBoundaryCoordinates());
+    }
+
+    private Geometry boundaryOf(FieldZone zone) {
+        Geometry packed = GeometryCodec.unpack(zone.getBoundaryPacked());
+        return packed != null ? packed : ZoneGeometryUtils.fromLatLngArray(zone.getBoundaryCoordinates());
+    }
+
+    // ==================== MAPPING ====================
+
+    private <T> List<ObjectNode> mapAll(Collection<T> items, Function<T, Geometry> boundaryOf,
+            String... replacedFields) {
+        List<ObjectNode> result = new ArrayList<>(items.size());
+        for (T item : items) {
+            result.add(map(item, boundaryOf.apply(item), replacedFields));
+        }
+        return result;
+    }
+
+    private ObjectNode map(Object item, Geometry boundary, String... replacedFields) {
+        ObjectNode node = objectMapper.valueToTree(item);
+        node.remove(List.of(replacedFields));
+        node.set(POLYLINE_FIELD, objectMapper.valueToTree(GeometryCodec.toPolylines(boundary)));
+        return node;
+    }
+}
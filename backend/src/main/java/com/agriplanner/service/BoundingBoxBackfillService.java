@@ -0,0 +1,88 @@
+package com.agriplanner.service;
+
+import com.agriplanner.util.GeometryCodec;
+import com.agriplanner.util.ZoneGeometryUtils;
+import lombok.RequiredArgsConstructor;
+import org.locationtech.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills min/max lat/lng of fields written before the columns existed (khung bao cho dữ liệu cũ)
+ *
+ * Boxes are derived from the boundary the same way Field does it on save, so the migration
+ * (V47) only adds the columns and index; this job walks fields once by primary key in the
+ * background after startup. Rows it cannot read stay NULL and are still found by
+ * FieldRepository.findByBoundingBox.
+ */
+@Service
+@RequiredArgsConstructor
+public class BoundingBoxBackfillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundingBoxBackfillService.class);
+
+    private static final int PAGE_SIZE = 500;
+
+    private static final String SELECT_SQL = "SELECT id, CAST(boundary_coordinates AS text), boundary_packed "
+            + "FROM fields WHERE id > ? AND min_lat IS NULL ORDER BY id LIMIT " + PAGE_SIZE;
+    private static final String UPDATE_SQL =
+            "UPDATE fields SET min_lat = ?, max_lat = ?, min_lng = ?, max_lng = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread worker = new Thread(this::backfillFields, "bounding-box-backfill");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void backfillFields() {
+        try {
+            int filled = backfill();
+            if (filled > 0) {
+                logger.info("Computed {} bounding boxes in fields", filled);
+            }
+        } catch (Exception e) {
+            logger.warn("Bounding box backfill for fields failed: {}", e.getMessage());
+        }
+    }
+
+    private int backfill() {
+        int total = 0;
+        long afterId = 0;
+        while (true) {
+            List<Object[]> rows = jdbcTemplate.query(SELECT_SQL,
+                    (rs, i) -> new Object[] { rs.getLong(1), rs.getString(2), rs.getBytes(3) }, afterId);
+            List<Object[]> updates = new ArrayList<>();
+            for (Object[] row : rows) {
+                // Packed boundary first (V51 clears the text it replaces), then the [lat, lng] array
+                Geometry boundary = GeometryCodec.unpack((byte[]) row[2]);
+                if (boundary == null) {
+                    boundary = ZoneGeometryUtils.fromLatLngArray((String) row[1]);
+                }
+                BigDecimal[] bounds = ZoneGeometryUtils.boundsOf(boundary);
+                // Rows without a usable boundary stay NULL; keyset paging moves past them
+                if (bounds != null) {
+                    updates.add(new Object[] { bounds[0], bounds[1], bounds[2], bounds[3], row[0] });
+                }
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+                total += updates.size();
+            }
+            if (rows.size() < PAGE_SIZE) {
+                return total;
+            }
+            afterId = (Long) rows.get(rows.size() - 1)[0];
+        }
+    }
+}
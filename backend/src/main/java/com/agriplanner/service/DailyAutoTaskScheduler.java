@@ -59,6 +59,7 @@ public class DailyAutoTaskScheduler {
     private final CropDefinitionRepository cropDefinitionRepository;
     private final PestDetectionRepository pestDetectionRepository;
     private final HealthRecordRepository healthRecordRepository;
+    private final FieldOverlayService fieldOverlayService;
 
     @Scheduled(cron = "0 0 0 * * *", zone = "Asia/Ho_Chi_Minh")
     @Transactional
@@ -183,7 +184,12 @@ public class DailyAutoTaskScheduler {
         task.setOwner(owner);
         task.setField(field);
         task.setName("Bón phân: " + field.getName());
-        task.setDescription("Hệ thống tự tạo: Bón phân theo giai đoạn.");
+        // Stored soil composition of the field (no geometry work here)
+        FieldOverlayService.Composition composition = fieldOverlayService.getComposition(field);
+        String soil = composition != null ? composition.describe(FieldOverlayService.MAP_TYPE_SOIL) : null;
+        task.setDescription(soil != null
+                ? "Hệ thống tự tạo: Bón phân theo giai đoạn. Đất: " + soil + "."
+                : "Hệ thống tự tạo: Bón phân theo giai đoạn.");
         task.setTaskType(TaskType.FERTILIZE);
         task.setPriority("NORMAL");
         task.setStatus("PENDING");
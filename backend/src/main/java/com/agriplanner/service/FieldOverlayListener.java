@@ -0,0 +1,42 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.Field;
+import com.agriplanner.model.FieldZone;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA entity listener on fields and field zones that tells {@link FieldOverlayService} when a
+ * boundary may have changed (the service skips saves with an unchanged boundary).
+ */
+@Component
+public class FieldOverlayListener {
+
+    private final ObjectProvider<FieldOverlayService> overlayService;
+
+    public FieldOverlayListener(ObjectProvider<FieldOverlayService> overlayService) {
+        this.overlayService = overlayService;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Object entity) {
+        if (entity instanceof Field field) {
+            overlayService.ifAvailable(service -> service.onFieldSaved(field));
+        } else if (entity instanceof FieldZone zone) {
+            overlayService.ifAvailable(service -> service.onFieldZoneSaved(zone));
+        }
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        if (entity instanceof Field field) {
+            overlayService.ifAvailable(service -> service.onFieldRemoved(field.getId()));
+        } else if (entity instanceof FieldZone zone) {
+            overlayService.ifAvailable(service -> service.onFieldZoneRemoved(zone.getId()));
+        }
+    }
+}
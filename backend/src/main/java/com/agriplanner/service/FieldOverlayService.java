@@ -0,0 +1,625 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.Field;
+import com.agriplanner.model.FieldOverlay;
+import com.agriplanner.model.FieldZone;
+import com.agriplanner.model.PlanningZone;
+import com.agriplanner.repository.FieldOverlayRepository;
+import com.agriplanner.repository.FieldRepository;
+import com.agriplanner.repository.FieldZoneRepository;
+import com.agriplanner.repository.PlanningZoneRepository;
+import com.agriplanner.util.GeometryCodec;
+import com.agriplanner.util.ZoneGeometryUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Soil and planning zone composition of fields (tỷ lệ loại đất / vùng quy hoạch trên từng ruộng)
+ *
+ * Every field and field zone polygon is intersected with the planning_zones layers once and the
+ * area fraction per zone code is stored in field_overlays (and kept in memory), so endpoints, the
+ * AI advisor and the daily task scheduler read it without geometry work. A composition is
+ * recomputed only when the boundary it was computed from changes (entity listener, after commit)
+ * or when zones overlapping the field's bounding box are saved or deleted (spatial index feed).
+ */
+@Service
+public class FieldOverlayService implements PlanningZoneSpatialIndex.ChangeListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FieldOverlayService.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<List<Share>> SHARES_TYPE = new TypeReference<>() {
+    };
+    private static final int BACKFILL_PAGE_SIZE = 500;
+    private static final int MAX_CACHED = 50_000;
+    private static final int STALE_CHUNK = 1000;
+
+    public static final String MAP_TYPE_SOIL = "soil";
+    public static final String MAP_TYPE_PLANNING = "planning";
+
+    private final FieldRepository fieldRepository;
+    private final FieldZoneRepository fieldZoneRepository;
+    private final FieldOverlayRepository fieldOverlayRepository;
+    private final PlanningZoneRepository planningZoneRepository;
+    private final PlanningZoneSpatialIndex spatialIndex;
+    private final TransactionTemplate storeTransaction;
+
+    private final Map<Long, Composition> fieldCache = new ConcurrentHashMap<>();
+    private final Map<Long, Composition> fieldZoneCache = new ConcurrentHashMap<>();
+    // Queued recomputes, so repeated saves of one field run once
+    private final Set<Long> pendingFields = ConcurrentHashMap.newKeySet();
+    private final Set<Long> pendingFieldZones = ConcurrentHashMap.newKeySet();
+    private final Object writeLock = new Object();
+    private final ExecutorService overlayExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "field-overlay");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Shares below this fraction of the field are dropped (slivers from digitising noise)
+    @Value("${field.overlay.min-fraction:0.005}")
+    private double minFraction;
+
+    public FieldOverlayService(FieldRepository fieldRepository, FieldZoneRepository fieldZoneRepository,
+            FieldOverlayRepository fieldOverlayRepository, PlanningZoneRepository planningZoneRepository,
+            PlanningZoneSpatialIndex spatialIndex, PlatformTransactionManager transactionManager) {
+        this.fieldRepository = fieldRepository;
+        this.fieldZoneRepository = fieldZoneRepository;
+        this.fieldOverlayRepository = fieldOverlayRepository;
+        this.planningZoneRepository = planningZoneRepository;
+        this.spatialIndex = spatialIndex;
+        // Own transaction, so a failed upsert never marks a caller's transaction rollback-only
+        this.storeTransaction = new TransactionTemplate(transactionManager);
+        this.storeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Part of a field covered by one zone code of one map layer
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Share {
+        private String mapType;
+        private String zoneCode;
+        private String zoneType;
+        private String name;
+        private double areaSqm;
+        private double fraction;
+    }
+
+    /**
+     * Composition of one field (fieldZoneId null) or field zone, shares sorted by layer then fraction
+     */
+    @Data
+    @NoArgsConstructor
+    public static class Composition {
+        private Long fieldId;
+        private Long fieldZoneId;
+        private int boundaryHash;
+        private double areaSqm;
+        private List<Share> shares = Collections.emptyList();
+        private LocalDateTime computedAt;
+
+        public List<Share> layer(String mapType) {
+            List<Share> result = new ArrayList<>();
+            for (Share share : shares) {
+                if (mapType.equals(share.getMapType())) {
+                    result.add(share);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Largest share of a layer, or null when the field lies outside that layer
+         */
+        public Share dominant(String mapType) {
+            for (Share share : shares) {
+                if (mapType.equals(share.getMapType())) {
+                    return share;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * "Đất phù sa 80%, Đất phèn 20%" - null when the layer is empty
+         */
+        public String describe(String mapType) {
+            List<String> parts = new ArrayList<>();
+            for (Share share : layer(mapType)) {
+                String label = share.getName() != null ? share.getName()
+                        : share.getZoneType() != null ? share.getZoneType() : share.getZoneCode();
+                parts.add(label + " " + Math.round(share.getFraction() * 100) + "%");
+            }
+            return parts.isEmpty() ? null : String.join(", ", parts);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("fieldId", fieldId);
+            map.put("fieldZoneId", fieldZoneId);
+            map.put("areaSqm", areaSqm);
+            map.put("soil", layer(MAP_TYPE_SOIL));
+            map.put("planning", layer(MAP_TYPE_PLANNING));
+            map.put("soilSummary", describe(MAP_TYPE_SOIL));
+            map.put("computedAt", computedAt);
+            return map;
+        }
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    @PostConstruct
+    public void registerListener() {
+        spatialIndex.addChangeListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        overlayExecutor.shutdownNow();
+    }
+
+    // ==================== READS ====================
+
+    /**
+     * Composition of a field by ID (memory, then field_overlays, computed on first use); null if no field
+     */
+    public Composition getComposition(Long fieldId) {
+        if (fieldId == null) {
+            return null;
+        }
+        Composition cached = fieldCache.get(fieldId);
+        if (cached != null) {
+            return cached;
+        }
+        return fieldRepository.findById(fieldId).map(this::getComposition).orElse(null);
+    }
+
+    /**
+     * Composition of a loaded field; recomputed if its boundary differs from the stored one
+     */
+    public Composition getComposition(Field field) {
+        if (field == null || field.getId() == null) {
+            return null;
+        }
+        int hash = boundaryHash(field.getBoundaryPacked(), field.getBoundaryCoordinates());
+        Composition cached = fieldCache.get(field.getId());
+        if (cached != null && cached.getBoundaryHash() == hash) {
+            return cached;
+        }
+        return load(field.getId(), null, field.getBoundaryCoordinates(), hash);
+    }
+
+    /**
+     * Composition of a field zone by ID; null if no such zone
+     */
+    public Composition getFieldZoneComposition(Long fieldZoneId) {
+        if (fieldZoneId == null) {
+            return null;
+        }
+        Composition cached = fieldZoneCache.get(fieldZoneId);
+        if (cached != null) {
+            return cached;
+        }
+        return fieldZoneRepository.findById(fieldZoneId).map(this::getComposition).orElse(null);
+    }
+
+    public Composition getComposition(FieldZone zone) {
+        if (zone == null || zone.getId() == null) {
+            return null;
+        }
+        int hash = boundaryHash(zone.getBoundaryPacked(), zone.getBoundaryCoordinates());
+        Composition cached = fieldZoneCache.get(zone.getId());
+        if (cached != null && cached.getBoundaryHash() == hash) {
+            return cached;
+        }
+        return load(zone.getFieldId(), zone.getId(), zone.getBoundaryCoordinates(), hash);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedFields", fieldCache.size());
+        stats.put("cachedFieldZones", fieldZoneCache.size());
+        stats.put("pending", pendingFields.size() + pendingFieldZones.size());
+        return stats;
+    }
+
+    private Composition load(Long fieldId, Long fieldZoneId, String boundaryCoordinates, int hash) {
+        FieldOverlay stored = findStored(fieldId, fieldZoneId);
+        Composition composition = null;
+        if (stored != null && stored.getBoundaryHash() != null && stored.getBoundaryHash() == hash) {
+            composition = fromRow(stored);
+        }
+        if (composition == null) {
+            composition = compute(fieldId, fieldZoneId, boundaryCoordinates, hash);
+            store(composition);
+        }
+        cache(composition);
+        return composition;
+    }
+
+    // ==================== CHANGE TRACKING ====================
+
+    /**
+     * Field saved: recompute after commit unless the boundary is unchanged
+     */
+    public void onFieldSaved(Field field) {
+        if (field.getId() == null) {
+            return;
+        }
+        Composition cached = fieldCache.get(field.getId());
+        if (cached != null
+                && cached.getBoundaryHash() == boundaryHash(field.getBoundaryPacked(), field.getBoundaryCoordinates())) {
+            return;
+        }
+        Long fieldId = field.getId();
+        afterCommit(() -> scheduleField(fieldId));
+    }
+
+    public void onFieldZoneSaved(FieldZone zone) {
+        if (zone.getId() == null) {
+            return;
+        }
+        Composition cached = fieldZoneCache.get(zone.getId());
+        if (cached != null
+                && cached.getBoundaryHash() == boundaryHash(zone.getBoundaryPacked(), zone.getBoundaryCoordinates())) {
+            return;
+        }
+        Long fieldZoneId = zone.getId();
+        afterCommit(() -> scheduleFieldZone(fieldZoneId));
+    }
+
+    /**
+     * Field deleted (stored rows go with it via ON DELETE CASCADE)
+     */
+    public void onFieldRemoved(Long fieldId) {
+        if (fieldId != null) {
+            fieldCache.remove(fieldId);
+            fieldZoneCache.values().removeIf(c -> fieldId.equals(c.getFieldId()));
+        }
+    }
+
+    public void onFieldZoneRemoved(Long fieldZoneId) {
+        if (fieldZoneId != null) {
+            fieldZoneCache.remove(fieldZoneId);
+        }
+    }
+
+    /**
+     * Zone layers changed: recompute fields whose box overlaps a changed area. A full index
+     * reload (startup) only fills in fields that have no up-to-date composition yet.
+     */
+    @Override
+    public void onZonesChanged(Set<Long> ids, List<Envelope> areas) {
+        if (ids == null) {
+            overlayExecutor.submit(this::backfill);
+        } else if (!areas.isEmpty()) {
+            List<Envelope> copy = new ArrayList<>(areas);
+            overlayExecutor.submit(() -> refreshAreas(copy));
+        }
+    }
+
+    private void refreshAreas(List<Envelope> areas) {
+        try {
+            // One range query over the union, then the exact per-area box test in memory
+            Envelope union = new Envelope();
+            areas.forEach(union::expandToInclude);
+            List<Field> affected = new ArrayList<>();
+            for (Field field : fieldRepository.findByBoundingBox(
+                    scaled(union.getMinY(), RoundingMode.FLOOR), scaled(union.getMaxY(), RoundingMode.CEILING),
+                    scaled(union.getMinX(), RoundingMode.FLOOR), scaled(union.getMaxX(), RoundingMode.CEILING))) {
+                Envelope box = boxOf(field);
+                if (box != null && areas.stream().anyMatch(box::intersects)) {
+                    affected.add(field);
+                }
+            }
+            if (affected.isEmpty()) {
+                return;
+            }
+            List<Long> fieldIds = affected.stream().map(Field::getId).toList();
+            // Mark stored rows stale first, so a restart before the recompute still redoes them
+            for (int i = 0; i < fieldIds.size(); i += STALE_CHUNK) {
+                fieldOverlayRepository.markStaleByFieldIds(fieldIds.subList(i, Math.min(i + STALE_CHUNK, fieldIds.size())));
+            }
+            Set<Long> idSet = new HashSet<>(fieldIds);
+            fieldCache.keySet().removeAll(idSet);
+            fieldZoneCache.values().removeIf(c -> idSet.contains(c.getFieldId()));
+
+            for (Field field : affected) {
+                getComposition(field);
+                for (FieldZone zone : fieldZoneRepository.findByFieldId(field.getId())) {
+                    getComposition(zone);
+                }
+            }
+            logger.debug("Recomputed zone composition of {} fields after zone changes", affected.size());
+        } catch (Exception e) {
+            logger.warn("Field overlay refresh failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Compute fields without an up-to-date stored composition (field zones are done on first read)
+     */
+    private void backfill() {
+        long start = System.currentTimeMillis();
+        int total = 0;
+        try {
+            Long afterId = 0L;
+            while (true) {
+                List<Long> ids = fieldOverlayRepository.findFieldIdsWithoutOverlay(afterId,
+                        PageRequest.of(0, BACKFILL_PAGE_SIZE));
+                for (Field field : fieldRepository.findAllById(ids)) {
+                    getComposition(field);
+                    total++;
+                }
+                if (ids.size() < BACKFILL_PAGE_SIZE) {
+                    break;
+                }
+                afterId = ids.get(ids.size() - 1);
+            }
+            if (total > 0) {
+                logger.info("Computed zone composition of {} fields in {} ms", total,
+                        System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            logger.warn("Field overlay backfill failed: {}", e.getMessage());
+        }
+    }
+
+    private void scheduleField(Long fieldId) {
+        if (pendingFields.add(fieldId)) {
+            overlayExecutor.submit(() -> {
+                pendingFields.remove(fieldId);
+                try {
+                    fieldRepository.findById(fieldId).ifPresent(this::getComposition);
+                } catch (Exception e) {
+                    logger.warn("Zone composition of field {} failed: {}", fieldId, e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void scheduleFieldZone(Long fieldZoneId) {
+        if (pendingFieldZones.add(fieldZoneId)) {
+            overlayExecutor.submit(() -> {
+                pendingFieldZones.remove(fieldZoneId);
+                try {
+                    fieldZoneRepository.findById(fieldZoneId).ifPresent(this::getComposition);
+                } catch (Exception e) {
+                    logger.warn("Zone composition of field zone {} failed: {}", fieldZoneId, e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+
+    // ==================== OVERLAY ====================
+
+    /**
+     * Intersect the boundary with every zone whose envelope overlaps it and sum the covered
+     * fraction per (map type, zone code); overlapping zones of one code are unioned first
+     */
+    private Composition compute(Long fieldId, Long fieldZoneId, String boundaryCoordinates, int hash) {
+        Composition composition = new Composition();
+        composition.setFieldId(fieldId);
+        composition.setFieldZoneId(fieldZoneId);
+        composition.setBoundaryHash(hash);
+        composition.setComputedAt(LocalDateTime.now());
+
+        Geometry boundary = ZoneGeometryUtils.fixInvalid(
+                ZoneGeometryUtils.toMultiPolygon(ZoneGeometryUtils.fromLatLngArray(boundaryCoordinates)));
+        if (boundary == null || boundary.isEmpty() || boundary.getArea() <= 0) {
+            return composition;
+        }
+        double planarArea = boundary.getArea();
+        double areaSqm = ZoneGeometryUtils.geodesicAreaSqm(boundary);
+        composition.setAreaSqm(round2(areaSqm));
+
+        // Covered part of the boundary per zone
+        Map<Long, Geometry> parts = new LinkedHashMap<>();
+        for (PlanningZoneSpatialIndex.Entry entry : candidates(boundary.getEnvelopeInternal())) {
+            Geometry part;
+            if (entry.getPrepared().covers(boundary)) {
+                part = boundary;
+            } else if (!entry.getPrepared().intersects(boundary)) {
+                continue;
+            } else {
+                part = OverlayNGRobust.overlay(boundary, entry.getGeometry(), OverlayNG.INTERSECTION);
+            }
+            if (part.getArea() > 0) {
+                parts.put(entry.getId(), part);
+            }
+        }
+        if (parts.isEmpty()) {
+            return composition;
+        }
+
+        Map<String, List<Geometry>> partsByCode = new LinkedHashMap<>();
+        Map<String, Share> sharesByCode = new LinkedHashMap<>();
+        for (PlanningZone zone : planningZoneRepository.findAllById(parts.keySet())) {
+            String mapType = zone.getMapType() != null ? zone.getMapType() : MAP_TYPE_PLANNING;
+            String code = zone.getZoneCode() != null && !zone.getZoneCode().isBlank()
+                    ? zone.getZoneCode() : zone.getZoneType();
+            String key = mapType + '|' + code;
+            partsByCode.computeIfAbsent(key, k -> new ArrayList<>()).add(parts.get(zone.getId()));
+            sharesByCode.computeIfAbsent(key, k -> {
+                Share share = new Share();
+                share.setMapType(mapType);
+                share.setZoneCode(code);
+                share.setZoneType(zone.getZoneType());
+                share.setName(zone.getLandUsePurpose() != null ? zone.getLandUsePurpose() : zone.getZoneType());
+                return share;
+            });
+        }
+
+        List<Share> shares = new ArrayList<>();
+        for (Map.Entry<String, List<Geometry>> group : partsByCode.entrySet()) {
+            List<Geometry> pieces = group.getValue();
+            double covered = pieces.size() == 1 ? pieces.get(0).getArea()
+                    : OverlayNGRobust.union(pieces).getArea();
+            double fraction = Math.min(covered / planarArea, 1.0);
+            if (fraction < minFraction) {
+                continue;
+            }
+            Share share = sharesByCode.get(group.getKey());
+            share.setFraction(Math.round(fraction * 10000) / 10000.0);
+            share.setAreaSqm(round2(fraction * areaSqm));
+            shares.add(share);
+        }
+        shares.sort(Comparator.comparing(Share::getMapType).thenComparing(Share::getFraction, Comparator.reverseOrder()));
+        composition.setShares(shares);
+        return composition;
+    }
+
+    /**
+     * Zones around the envelope from the in-memory index, or from PostGIS while it is loading
+     */
+    private List<PlanningZoneSpatialIndex.Entry> candidates(Envelope envelope) {
+        if (spatialIndex.isReady()) {
+            return spatialIndex.findCandidates(envelope, null);
+        }
+        List<PlanningZoneSpatialIndex.Entry> entries = new ArrayList<>();
+        for (PlanningZone zone : planningZoneRepository.findIntersectingEnvelope(envelope.getMinY(),
+                envelope.getMaxY(), envelope.getMinX(), envelope.getMaxX(), null)) {
+            if (zone.getGeom() != null && !zone.getGeom().isEmpty()) {
+                entries.add(new PlanningZoneSpatialIndex.Entry(zone.getId(), zone.getMapType(), zone.getGeom()));
+            }
+        }
+        return entries;
+    }
+
+    // ==================== STORAGE ====================
+
+    private FieldOverlay findStored(Long fieldId, Long fieldZoneId) {
+        return (fieldZoneId == null
+                ? fieldOverlayRepository.findByFieldIdAndFieldZoneIdIsNull(fieldId)
+                : fieldOverlayRepository.findByFieldZoneId(fieldZoneId)).orElse(null);
+    }
+
+    private void store(Composition composition) {
+        // Request threads and the worker may compute the same field; serialise the upsert
+        synchronized (writeLock) {
+            try {
+                String shares = MAPPER.writeValueAsString(composition.getShares());
+                storeTransaction.executeWithoutResult(status -> {
+                    FieldOverlay row = findStored(composition.getFieldId(), composition.getFieldZoneId());
+                    if (row == null) {
+                        row = new FieldOverlay();
+                        row.setFieldId(composition.getFieldId());
+                        row.setFieldZoneId(composition.getFieldZoneId());
+                    }
+                    row.setBoundaryHash(composition.getBoundaryHash());
+                    row.setAreaSqm(BigDecimal.valueOf(composition.getAreaSqm()).setScale(2, RoundingMode.HALF_UP));
+                    row.setComposition(shares);
+                    row.setComputedAt(composition.getComputedAt());
+                    fieldOverlayRepository.save(row);
+                });
+            } catch (Exception e) {
+                // e.g. the field was deleted meanwhile; the in-memory copy is still returned
+                logger.debug("Could not store zone composition of field {}: {}", composition.getFieldId(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    private Composition fromRow(FieldOverlay row) {
+        try {
+            Composition composition = new Composition();
+            composition.setFieldId(row.getFieldId());
+            composition.setFieldZoneId(row.getFieldZoneId());
+            composition.setBoundaryHash(row.getBoundaryHash());
+            composition.setAreaSqm(row.getAreaSqm() != null ? row.getAreaSqm().doubleValue() : 0);
+            composition.setShares(MAPPER.readValue(row.getComposition(), SHARES_TYPE));
+            composition.setComputedAt(row.getComputedAt());
+            return composition;
+        } catch (Exception e) {
+            logger.debug("Unreadable stored composition {}: {}", row.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void cache(Composition composition) {
+        Map<Long, Composition> target = composition.getFieldZoneId() == null ? fieldCache : fieldZoneCache;
+        if (target.size() >= MAX_CACHED) {
+            target.clear();
+        }
+        target.put(composition.getFieldZoneId() == null ? composition.getFieldId() : composition.getFieldZoneId(),
+                composition);
+    }
+
+    /**
+     * Hash of the packed boundary (the entities keep boundaryPacked in sync on save)
+     */
+    private static int boundaryHash(byte[] packed, String boundaryCoordinates) {
+        if (packed == null) {
+            packed = GeometryCodec.pack(ZoneGeometryUtils.fromLatLngArray(boundaryCoordinates));
+        }
+        return Arrays.hashCode(packed);
+    }
+
+    // Stored bounding box, or the boundary's own for rows the backfill has not reached
+    private static Envelope boxOf(Field field) {
+        if (field.getMinLat() != null && field.getMaxLat() != null && field.getMinLng() != null
+                && field.getMaxLng() != null) {
+            return new Envelope(field.getMinLng().doubleValue(), field.getMaxLng().doubleValue(),
+                    field.getMinLat().doubleValue(), field.getMaxLat().doubleValue());
+        }
+        Geometry boundary = ZoneGeometryUtils.fromLatLngArray(field.getBoundaryCoordinates());
+        return boundary != null && !boundary.isEmpty() ? boundary.getEnvelopeInternal() : null;
+    }
+
+    private static BigDecimal scaled(double value, RoundingMode rounding) {
+        return BigDecimal.valueOf(value).setScale(7, rounding);
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
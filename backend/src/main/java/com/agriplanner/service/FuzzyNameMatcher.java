@@ -0,0 +1,357 @@
+package com.agriplanner.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Precomputed name -> code matcher for AI legend labels (bộ so khớp tên loại đất đã lập chỉ mục)
+ *
+ * Snapshot of the mapping services' name and keyword tables, queried with an already normalized
+ * label. The strategies and their tie-breaking are those of the original linear scans (exact,
+ * contains, longest keyword, Levenshtein above a threshold, first entry in table order winning);
+ * only the work is cut down:
+ * - contains / keyword candidates come from a trigram inverted index instead of a full scan
+ * - the Levenshtein pass skips names by length and stops a row band once it cannot win
+ * - results are memoized per normalized label, since a map repeats the same few legend entries
+ *
+ * Instances are immutable apart from the memo; rebuild one whenever the tables change.
+ */
+public class FuzzyNameMatcher {
+
+    public static final String STRATEGY_EXACT = "exact";
+    public static final String STRATEGY_CONTAINS = "contains";
+    public static final String STRATEGY_KEYWORD = "keyword";
+    public static final String STRATEGY_FUZZY = "fuzzy";
+
+    // Memo stops growing past this many distinct labels
+    private static final int MAX_MEMO_ENTRIES = 10_000;
+
+    private static final Match NO_MATCH = new Match(null, null, null);
+
+    /**
+     * Result of one lookup
+     */
+    public static class Match {
+        private final String code;
+        private final String strategy;
+        private final String via;
+
+        Match(String code, String strategy, String via) {
+            this.code = code;
+            this.strategy = strategy;
+            this.via = via;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getStrategy() {
+            return strategy;
+        }
+
+        /** Table entry that produced the match */
+        public String getVia() {
+            return via;
+        }
+    }
+
+    /**
+     * Entries of one table in its original iteration order, with a trigram index
+     */
+    private static class Table {
+        final String[] keys;
+        final String[] codes;
+        final int[] trigramCounts;
+        final Map<String, int[]> postings;
+        // Keys shorter than a trigram are always verified directly
+        final int[] shortKeys;
+
+        Table(Map<String, String> source) {
+            int n = source.size();
+            keys = new String[n];
+            codes = new String[n];
+            trigramCounts = new int[n];
+            Map<String, List<Integer>> lists = new HashMap<>();
+            List<Integer> shorts = new ArrayList<>();
+            int i = 0;
+            for (Map.Entry<String, String> entry : source.entrySet()) {
+                if (i == n) {
+                    break; // source grew while copying
+                }
+                keys[i] = entry.getKey();
+                codes[i] = entry.getValue();
+                Set<String> trigrams = trigrams(entry.getKey());
+                trigramCounts[i] = trigrams.size();
+                if (trigrams.isEmpty()) {
+                    shorts.add(i);
+                }
+                for (String trigram : trigrams) {
+                    lists.computeIfAbsent(trigram, k -> new ArrayList<>()).add(i);
+                }
+                i++;
+            }
+            postings = new HashMap<>(lists.size() * 2);
+            for (Map.Entry<String, List<Integer>> entry : lists.entrySet()) {
+                postings.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            }
+            shortKeys = shorts.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        /**
+         * Number of the query's distinct trigrams found in each key
+         */
+        int[] sharedTrigrams(Set<String> queryTrigrams) {
+            int[] shared = new int[keys.length];
+            for (String trigram : queryTrigrams) {
+                int[] hits = postings.get(trigram);
+                if (hits != null) {
+                    for (int id : hits) {
+                        shared[id]++;
+                    }
+                }
+            }
+            return shared;
+        }
+    }
+
+    private final Map<String, String> exact;
+    private final Table names;
+    private final Table keywords;
+    private final double fuzzyThreshold;
+
+    private final Map<String, Match> memo = new ConcurrentHashMap<>();
+    private final AtomicLong memoHits = new AtomicLong();
+    private final AtomicLong memoMisses = new AtomicLong();
+
+    /**
+     * @param normalizedNameToCode normalized standard name -> code
+     * @param keywordsToCode       normalized keyword -> code
+     * @param fuzzyThreshold       similarity a fuzzy match must exceed (0.0 - 1.0)
+     */
+    public FuzzyNameMatcher(Map<String, String> normalizedNameToCode, Map<String, String> keywordsToCode,
+            double fuzzyThreshold) {
+        this.exact = new HashMap<>(normalizedNameToCode);
+        this.names = new Table(normalizedNameToCode);
+        this.keywords = new Table(keywordsToCode);
+        this.fuzzyThreshold = fuzzyThreshold;
+    }
+
+    /**
+     * Match a normalized label
+     *
+     * @return the match, or null when no strategy matched
+     */
+    public Match match(String normalized) {
+        Match cached = memo.get(normalized);
+        if (cached != null) {
+            memoHits.incrementAndGet();
+            return cached == NO_MATCH ? null : cached;
+        }
+        memoMisses.incrementAndGet();
+        Match result = compute(normalized);
+        if (memo.size() < MAX_MEMO_ENTRIES) {
+            memo.put(normalized, result != null ? result : NO_MATCH);
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("indexedNames", names.size());
+        stats.put("indexedKeywords", keywords.size());
+        stats.put("trigrams", names.postings.size() + keywords.postings.size());
+        stats.put("memoEntries", memo.size());
+        stats.put("memoHits", memoHits.get());
+        stats.put("memoMisses", memoMisses.get());
+        return stats;
+    }
+
+    // ==================== STRATEGIES ====================
+
+    private Match compute(String normalized) {
+        // Strategy 1: exact
+        String code = exact.get(normalized);
+        if (code != null) {
+            return new Match(code, STRATEGY_EXACT, normalized);
+        }
+
+        Set<String> queryTrigrams = trigrams(normalized);
+
+        // Strategy 2: first name (in table order) containing or contained in the label
+        int first = firstContaining(normalized, queryTrigrams);
+        if (first >= 0) {
+            return new Match(names.codes[first], STRATEGY_CONTAINS, names.keys[first]);
+        }
+
+        // Strategy 3: longest keyword contained in the label, earliest on ties
+        int best = longestKeyword(normalized, queryTrigrams);
+        if (best >= 0) {
+            return new Match(keywords.codes[best], STRATEGY_KEYWORD, keywords.keys[best]);
+        }
+
+        // Strategy 4: Levenshtein similarity
+        int fuzzy = bestFuzzy(normalized);
+        if (fuzzy >= 0) {
+            return new Match(names.codes[fuzzy], STRATEGY_FUZZY, names.keys[fuzzy]);
+        }
+        return null;
+    }
+
+    private int firstContaining(String normalized, Set<String> queryTrigrams) {
+        if (queryTrigrams.isEmpty()) {
+            // Too short to index: it may sit inside any name
+            for (int i = 0; i < names.size(); i++) {
+                if (normalized.contains(names.keys[i]) || names.keys[i].contains(normalized)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        int[] shared = names.sharedTrigrams(queryTrigrams);
+        int first = -1;
+        for (int i = 0; i < names.size(); i++) {
+            // name inside label => all of the name's trigrams occur; label inside name => all of the label's
+            boolean candidate = shared[i] == names.trigramCounts[i] || shared[i] == queryTrigrams.size();
+            if (candidate && (normalized.contains(names.keys[i]) || names.keys[i].contains(normalized))) {
+                first = i;
+                break;
+            }
+        }
+        return first;
+    }
+
+    private int longestKeyword(String normalized, Set<String> queryTrigrams) {
+        int best = -1;
+        int bestLength = 0;
+        for (int i : keywords.shortKeys) {
+            best = pickLonger(normalized, i, best, bestLength);
+            bestLength = best >= 0 ? keywords.keys[best].length() : 0;
+        }
+        if (queryTrigrams.isEmpty()) {
+            return best;
+        }
+        int[] shared = keywords.sharedTrigrams(queryTrigrams);
+        for (int i = 0; i < keywords.size(); i++) {
+            if (keywords.trigramCounts[i] > 0 && shared[i] == keywords.trigramCounts[i]) {
+                best = pickLonger(normalized, i, best, bestLength);
+                bestLength = best >= 0 ? keywords.keys[best].length() : 0;
+            }
+        }
+        return best;
+    }
+
+    private int pickLonger(String normalized, int candidate, int best, int bestLength) {
+        String keyword = keywords.keys[candidate];
+        int length = keyword.length();
+        if (length > bestLength && normalized.contains(keyword)) {
+            return candidate;
+        }
+        if (length == bestLength && best >= 0 && candidate < best && normalized.contains(keyword)) {
+            return candidate; // same length, earlier in table order
+        }
+        return best;
+    }
+
+    private int bestFuzzy(String normalized) {
+        int best = -1;
+        double bestSimilarity = fuzzyThreshold;
+        for (int i = 0; i < names.size(); i++) {
+            String key = names.keys[i];
+            int maxLen = Math.max(normalized.length(), key.length());
+            if (maxLen == 0) {
+                if (1.0 > bestSimilarity) {
+                    bestSimilarity = 1.0;
+                    best = i;
+                }
+                continue;
+            }
+            // Any distance above this leaves the similarity below the current best (+1 for rounding slack)
+            int limit = (int) Math.floor((1.0 - bestSimilarity) * maxLen) + 1;
+            if (Math.abs(normalized.length() - key.length()) > limit) {
+                continue;
+            }
+            int distance = boundedLevenshtein(normalized, key, limit);
+            if (distance > limit) {
+                continue;
+            }
+            double similarity = 1.0 - ((double) distance / maxLen);
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    // ==================== HELPERS ====================
+
+    static Set<String> trigrams(String text) {
+        if (text.length() < 3) {
+            return Set.of();
+        }
+        Set<String> trigrams = new HashSet<>(text.length() * 2);
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Levenshtein distance restricted to a diagonal band; returns limit + 1 as soon as the
+     * distance is known to exceed limit
+     */
+    static int boundedLevenshtein(String a, String b, int limit) {
+        int la = a.length();
+        int lb = b.length();
+        int over = limit + 1;
+        if (Math.abs(la - lb) > limit) {
+            return over;
+        }
+        int[] prev = new int[lb + 1];
+        int[] cur = new int[lb + 1];
+        for (int j = 0; j <= lb; j++) {
+            prev[j] = Math.min(j, over);
+        }
+        for (int i = 1; i <= la; i++) {
+            int from = Math.max(1, i - limit);
+            int to = Math.min(lb, i + limit);
+            cur[0] = Math.min(i, over);
+            if (from > 1) {
+                cur[from - 1] = over;
+            }
+            int rowMin = from == 1 ? cur[0] : over;
+            char ca = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                value = Math.min(value, over);
+                cur[j] = value;
+                if (value < rowMin) {
+                    rowMin = value;
+                }
+            }
+            if (to < lb) {
+                cur[to + 1] = over;
+            }
+            if (rowMin > limit) {
+                return over;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return Math.min(prev[lb], over);
+    }
+}
@@ -1,5 +1,8 @@
 package com.agriplanner.service;
 
+import com.agriplanner.config.OutboundHttpClients;
+import com.agriplanner.service.VisionImagePreparer.PreparedImage;
+import com.agriplanner.util.StreamingJsonBody;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -10,10 +13,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 
 import java.io.File;
-import java.nio.file.Files;
 import java.util.*;
 
 /**
@@ -38,9 +39,15 @@ public class GeminiVisionService {
     @Value("${ai.gemini.model:gemini-2.5-flash}")
     private String geminiModel;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final OutboundHttpClients httpClients;
+    private final VisionImagePreparer imagePreparer;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    public GeminiVisionService(OutboundHttpClients httpClients, VisionImagePreparer imagePreparer) {
+        this.httpClients = httpClients;
+        this.imagePreparer = imagePreparer;
+    }
+
     // Gemini API endpoint
     private static final String GEMINI_API_BASE = "https://generativelanguage.googleapis.com/v1beta/models/";
 
@@ -140,13 +147,9 @@ public class GeminiVisionService {
                     "Please set GEMINI_API_KEY in environment variables");
         }
 
-        try {
-            // Read and encode image
-            byte[] imageBytes = Files.readAllBytes(imageFile.toPath());
-            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-            String mimeType = getMimeType(imageFile);
-
-            geminiLogger.debug("Image encoded: {} bytes, MIME: {}", imageBytes.length, mimeType);
+        // Downscaled copy; its Base64 is streamed into the request body
+        try (PreparedImage image = imagePreparer.prepare(imageFile, imagePreparer.getGeminiMaxEdge())) {
+            geminiLogger.debug("Image prepared: {} bytes, MIME: {}", image.size(), image.getMimeType());
 
             // Build Gemini API URL
             String apiUrl = GEMINI_API_BASE + geminiModel + ":generateContent?key=" + geminiApiKey;
@@ -191,8 +194,8 @@ public class GeminiVisionService {
             // Image part
             ObjectNode imagePart = parts.addObject();
             ObjectNode inlineData = imagePart.putObject("inlineData");
-            inlineData.put("mimeType", mimeType);
-            inlineData.put("data", base64Image);
+            inlineData.put("mimeType", image.getMimeType());
+            inlineData.put("data", StreamingJsonBody.PLACEHOLDER);
 
             // Generation config
             ObjectNode generationConfig = requestBody.putObject("generationConfig");
@@ -214,14 +217,12 @@ public class GeminiVisionService {
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
 
-            HttpEntity<String> entity = new HttpEntity<>(requestBody.toString(), headers);
-
             geminiLogger.info("Calling Gemini {} API...", geminiModel);
             long startTime = System.currentTimeMillis();
 
-            @SuppressWarnings("null")
-            ResponseEntity<String> response = restTemplate.exchange(
-                    apiUrl, HttpMethod.POST, entity, String.class);
+            ResponseEntity<String> response = httpClients.postJson(OutboundHttpClients.PROFILE_AI_VISION, apiUrl,
+                    headers, StreamingJsonBody.withBase64File(requestBody.toString(), StreamingJsonBody.PLACEHOLDER,
+                            image.getPath()));
 
             long duration = System.currentTimeMillis() - startTime;
             geminiLogger.info("Gemini response received in {}ms, status: {}", duration, response.getStatusCode());
@@ -420,22 +421,6 @@ public class GeminiVisionService {
         return null;
     }
 
-    /**
-     * Get MIME type from file extension
-     */
-    private String getMimeType(File file) {
-        String name = file.getName().toLowerCase();
-        if (name.endsWith(".png"))
-            return "image/png";
-        if (name.endsWith(".jpg") || name.endsWith(".jpeg"))
-            return "image/jpeg";
-        if (name.endsWith(".gif"))
-            return "image/gif";
-        if (name.endsWith(".webp"))
-            return "image/webp";
-        return "image/jpeg";
-    }
-
     /**
      * Get current model name for logging
      */
@@ -0,0 +1,214 @@
+package com.agriplanner.service;
+
+import lombok.Data;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming (StAX) KML reader.
+ * Đọc KML theo luồng - mỗi Placemark được trả về ngay khi đọc xong, không giữ toàn bộ tài liệu trong bộ nhớ.
+ *
+ * Element names are matched by local name and case-insensitively, so {@code kml:Polygon},
+ * {@code gx:...} and un-prefixed documents are handled the same way. For every Placemark the
+ * first {@code name}, {@code description}, {@code coordinates} (Polygon, LineString or the first
+ * geometry of a MultiGeometry) and 8-digit {@code color} inside it are reported.
+ */
+public class KmlStreamParser {
+
+    private static final Pattern KML_COLOR = Pattern.compile("[a-fA-F0-9]{8}");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final XMLInputFactory factory;
+
+    public KmlStreamParser() {
+        factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        // KML never needs DTDs - disable them to avoid XXE
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Placemark data extracted from KML
+     */
+    @Data
+    public static class Placemark {
+        private String name;
+        private String description;
+        /** Whitespace-normalised KML coordinate tuples: "lng,lat[,alt] lng,lat[,alt] ..." */
+        private String coordinates;
+        /** KML color in AABBGGRR format */
+        private String color;
+    }
+
+    /**
+     * GroundOverlay data extracted from KML
+     */
+    @Data
+    public static class GroundOverlay {
+        private String name;
+        private String iconHref;
+        private Double north;
+        private Double south;
+        private Double east;
+        private Double west;
+
+        public boolean hasBounds() {
+            return north != null && south != null && east != null && west != null;
+        }
+    }
+
+    /**
+     * Parse a KML stream.
+     *
+     * @param in              KML input (not closed by this method)
+     * @param placemarkSink   receives each Placemark; return false to stop parsing
+     * @param overlaySink     receives each GroundOverlay (may be null to skip overlays)
+     */
+    public void parse(InputStream in, Predicate<Placemark> placemarkSink, Consumer<GroundOverlay> overlaySink)
+            throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            Placemark placemark = null;
+            GroundOverlay overlay = null;
+            boolean inIcon = false;
+            boolean inLatLonBox = false;
+            // Element whose text is being captured, and its buffer
+            String capturing = null;
+            int captureDepth = 0;
+            int depth = 0;
+            StringBuilder text = new StringBuilder();
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        depth++;
+                        String tag = reader.getLocalName();
+                        if (tag.equalsIgnoreCase("Placemark")) {
+                            placemark = new Placemark();
+                        } else if (tag.equalsIgnoreCase("GroundOverlay") && overlaySink != null) {
+                            overlay = new GroundOverlay();
+                        } else if (overlay != null && tag.equalsIgnoreCase("Icon")) {
+                            inIcon = true;
+                        } else if (overlay != null && tag.equalsIgnoreCase("LatLonBox")) {
+                            inLatLonBox = true;
+                        }
+                        if (capturing == null && wantsText(tag, placemark, overlay, inIcon, inLatLonBox)) {
+                            capturing = tag;
+                            captureDepth = depth;
+                            text.setLength(0);
+                        }
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA,
+                            XMLStreamConstants.SPACE -> {
+                        if (capturing != null) {
+                            text.append(reader.getText());
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        String tag = reader.getLocalName();
+                        if (capturing != null && depth == captureDepth) {
+                            assignText(capturing, text.toString().trim(), placemark, overlay, inIcon, inLatLonBox);
+                            capturing = null;
+                        }
+                        depth--;
+                        if (placemark != null && tag.equalsIgnoreCase("Placemark")) {
+                            boolean more = placemarkSink.test(placemark);
+                            placemark = null;
+                            if (!more) {
+                                return;
+                            }
+                        } else if (overlay != null && tag.equalsIgnoreCase("GroundOverlay")) {
+                            overlaySink.accept(overlay);
+                            overlay = null;
+                        } else if (tag.equalsIgnoreCase("Icon")) {
+                            inIcon = false;
+                        } else if (tag.equalsIgnoreCase("LatLonBox")) {
+                            inLatLonBox = false;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private boolean wantsText(String tag, Placemark placemark, GroundOverlay overlay, boolean inIcon,
+            boolean inLatLonBox) {
+        if (placemark != null) {
+            return (tag.equalsIgnoreCase("name") && placemark.getName() == null)
+                    || (tag.equalsIgnoreCase("description") && placemark.getDescription() == null)
+                    || (tag.equalsIgnoreCase("coordinates") && placemark.getCoordinates() == null)
+                    || (tag.equalsIgnoreCase("color") && placemark.getColor() == null);
+        }
+        if (overlay != null) {
+            if (inLatLonBox) {
+                return tag.equalsIgnoreCase("north") || tag.equalsIgnoreCase("south")
+                        || tag.equalsIgnoreCase("east") || tag.equalsIgnoreCase("west");
+            }
+            if (inIcon) {
+                return tag.equalsIgnoreCase("href") && overlay.getIconHref() == null;
+            }
+            return tag.equalsIgnoreCase("name") && overlay.getName() == null;
+        }
+        return false;
+    }
+
+    private void assignText(String tag, String value, Placemark placemark, GroundOverlay overlay, boolean inIcon,
+            boolean inLatLonBox) {
+        if (placemark != null) {
+            if (tag.equalsIgnoreCase("name")) {
+                placemark.setName(value);
+            } else if (tag.equalsIgnoreCase("description")) {
+                placemark.setDescription(value);
+            } else if (tag.equalsIgnoreCase("coordinates")) {
+                String coords = WHITESPACE.matcher(value).replaceAll(" ");
+                if (!coords.isEmpty()) {
+                    placemark.setCoordinates(coords);
+                }
+            } else if (tag.equalsIgnoreCase("color") && KML_COLOR.matcher(value).matches()) {
+                placemark.setColor(value);
+            }
+            return;
+        }
+        if (overlay == null) {
+            return;
+        }
+        if (inLatLonBox) {
+            Double number = parseDouble(value);
+            if (tag.equalsIgnoreCase("north")) {
+                overlay.setNorth(number);
+            } else if (tag.equalsIgnoreCase("south")) {
+                overlay.setSouth(number);
+            } else if (tag.equalsIgnoreCase("east")) {
+                overlay.setEast(number);
+            } else if (tag.equalsIgnoreCase("west")) {
+                overlay.setWest(number);
+            }
+        } else if (inIcon) {
+            overlay.setIconHref(value);
+        } else {
+            overlay.setName(value);
+        }
+    }
+
+    private Double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
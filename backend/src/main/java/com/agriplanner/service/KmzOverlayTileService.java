@@ -0,0 +1,501 @@
+package com.agriplanner.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * XYZ tile pyramids for KMZ GroundOverlay images (cắt ảnh overlay thành tile)
+ *
+ * A GroundOverlay image is stretched linearly over its LatLonBox. After import the image is cut
+ * into 256px Web Mercator tiles: the deepest level (about the native resolution) is read from
+ * the source in horizontal bands with ImageIO source regions, so only one band per worker is
+ * decoded in memory; each shallower level is built from the four child tiles. The shallowest
+ * level fits the whole overlay in one tile width, so a first render needs a handful of tiles.
+ *
+ * Layout: {kmz.upload.dir}/tiles/{uploadId}/{imageKey}/{z}/{x}/{y}.png plus tile.json
+ * (TileJSON-style metadata written last, so its presence means the pyramid is complete).
+ */
+@Service
+public class KmzOverlayTileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KmzOverlayTileService.class);
+
+    public static final int TILE_SIZE = 256;
+    public static final String METADATA_FILE = "tile.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Pyramids are generated one overlay at a time; tiles of a level fan out on the pool
+    private final ExecutorService pyramidExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "kmz-overlay-tiles");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ForkJoinPool workers;
+
+    @Value("${kmz.upload.dir:${user.home}/agriplanner/uploads/kmz}")
+    private String uploadDir;
+
+    @Value("${kmz.tiles.max-zoom:20}")
+    private int maxZoomLimit;
+
+    // Upper bound on deepest-level tiles; the max zoom is lowered until it fits
+    @Value("${kmz.tiles.max-tiles:16384}")
+    private int maxTiles;
+
+    // Decoded source rows held by one worker at a time (ARGB bytes)
+    @Value("${kmz.tiles.band-max-bytes:33554432}")
+    private long bandMaxBytes;
+
+    public KmzOverlayTileService(@Value("${kmz.tiles.parallelism:0}") int parallelism) {
+        this.workers = new ForkJoinPool(parallelism > 0 ? parallelism
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pyramidExecutor.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Tile directory key of an overlay image name (safe as one URL path segment). The sanitised
+     * name alone collides ("a b.png" / "a_b.png"), and generate() clears the directory first,
+     * so a short hash of the original name is appended.
+     */
+    public static String imageKey(String imageName) {
+        String hash;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(imageName.getBytes(StandardCharsets.UTF_8));
+            hash = HexFormat.of().formatHex(digest, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return imageName.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + hash;
+    }
+
+    public Path tileDir(Long uploadId, String imageKey) {
+        return Paths.get(uploadDir, "tiles", String.valueOf(uploadId), imageKey);
+    }
+
+    /**
+     * Queue pyramid generation for an extracted overlay image
+     */
+    public void generateAsync(Long uploadId, String imageName, Path image, double north, double south, double east,
+            double west) {
+        pyramidExecutor.submit(() -> {
+            try {
+                generate(uploadId, imageName, image, north, south, east, west);
+            } catch (Exception e) {
+                logger.warn("Tile pyramid for upload {} image {} failed: {}", uploadId, imageName, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Cut the image into tiles; returns the number of tiles written
+     */
+    public int generate(Long uploadId, String imageName, Path image, double north, double south, double east,
+            double west) throws IOException {
+        if (!(north > south) || !(east > west)) {
+            throw new IllegalArgumentException("Invalid overlay bounds");
+        }
+        long started = System.currentTimeMillis();
+        Path dir = tileDir(uploadId, imageKey(imageName));
+        clearPyramid(dir);
+
+        int[] size = readSize(image);
+        Overlay overlay = new Overlay(image, size[0], size[1], north, south, east, west);
+
+        // Deepest level ~ native resolution, shallowest fits the overlay in one tile width
+        double degreesPerPixel = (east - west) / overlay.width;
+        int maxZoom = clampZoom((int) Math.ceil(log2(360.0 / (TILE_SIZE * degreesPerPixel))));
+        int minZoom = clampZoom((int) Math.floor(log2(360.0 / (east - west))));
+        while (maxZoom > minZoom && tileCount(overlay, maxZoom) > maxTiles) {
+            maxZoom--;
+        }
+        minZoom = Math.min(minZoom, maxZoom);
+
+        int written = cutDeepestLevel(overlay, dir, maxZoom);
+        for (int z = maxZoom - 1; z >= minZoom; z--) {
+            written += buildParentLevel(overlay, dir, z);
+        }
+
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("tilejson", "2.2.0");
+        meta.put("name", imageName);
+        meta.put("minzoom", minZoom);
+        meta.put("maxzoom", maxZoom);
+        meta.put("bounds", List.of(west, south, east, north));
+        meta.put("tiles", List.of("/api/kmz/tiles/" + uploadId + "/" + imageKey(imageName) + "/{z}/{x}/{y}.png"));
+        meta.put("tileCount", written);
+        Path tmp = dir.resolve(METADATA_FILE + ".tmp");
+        Files.createDirectories(dir);
+        MAPPER.writeValue(tmp.toFile(), meta);
+        Files.move(tmp, dir.resolve(METADATA_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        logger.info("Tile pyramid for upload {} image {} ({}x{}): z{}-{}, {} tiles in {} ms", uploadId, imageName,
+                overlay.width, overlay.height, minZoom, maxZoom, written, System.currentTimeMillis() - started);
+        return written;
+    }
+
+    /**
+     * Remove a previous pyramid: tile.json first so it is no longer served as complete, then
+     * every tile, since stale children would be merged into the new parent levels
+     */
+    private void clearPyramid(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        Files.deleteIfExists(dir.resolve(METADATA_FILE));
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                if (!path.equals(dir)) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    // ==================== DEEPEST LEVEL (from source bands) ====================
+
+    private int cutDeepestLevel(Overlay overlay, Path dir, int z) throws IOException {
+        int[] xs = tileRange(lngToTileX(overlay.west, z), lngToTileX(overlay.east, z), z);
+        int[] ys = tileRange(latToTileY(overlay.north, z), latToTileY(overlay.south, z), z);
+
+        // Subsampled read when the source is finer than the deepest level (max zoom was capped)
+        double tileDegrees = 360.0 / (TILE_SIZE * (double) (1L << z));
+        int sub = Math.max(1, (int) Math.floor(tileDegrees / ((overlay.east - overlay.west) / overlay.width)));
+
+        // Rows of tiles per band so one decoded band stays within the budget
+        long bytesPerTileRow = (long) (overlay.width / sub + 1) * 4
+                * Math.max(1, (long) Math.ceil(overlay.height / (double) sub / (ys[1] - ys[0] + 1)));
+        int rowsPerBand = (int) Math.max(1, bandMaxBytes / Math.max(bytesPerTileRow, 1));
+        // At least one band per worker; each band re-decodes the rows above it, so no more than that
+        int tileRows = ys[1] - ys[0] + 1;
+        rowsPerBand = Math.min(rowsPerBand, Math.max(1, (tileRows + workers.getParallelism() - 1)
+                / workers.getParallelism()));
+
+        List<int[]> bands = new ArrayList<>();
+        for (int y = ys[0]; y <= ys[1]; y += rowsPerBand) {
+            bands.add(new int[] { y, Math.min(ys[1], y + rowsPerBand - 1) });
+        }
+        return submitAll(bands, band -> cutBand(overlay, dir, z, sub, xs, band[0], band[1]));
+    }
+
+    private int cutBand(Overlay overlay, Path dir, int z, int sub, int[] xs, int y0, int y1) throws IOException {
+        // Source rows covered by the band (latitude is linear in the image)
+        double bandNorth = Math.min(overlay.north, tileYToLat(y0, z));
+        double bandSouth = Math.max(overlay.south, tileYToLat(y1 + 1, z));
+        int top = Math.max(0, (int) Math.floor(overlay.rowOf(bandNorth)));
+        int bottom = Math.min(overlay.height, (int) Math.ceil(overlay.rowOf(bandSouth)) + 1);
+        if (bottom <= top) {
+            return 0;
+        }
+        BufferedImage band = readRegion(overlay.image, new Rectangle(0, top, overlay.width, bottom - top), sub);
+
+        int written = 0;
+        for (int ty = y0; ty <= y1; ty++) {
+            for (int tx = xs[0]; tx <= xs[1]; tx++) {
+                BufferedImage tile = renderTile(overlay, band, top, sub, z, tx, ty);
+                if (tile != null) {
+                    writeTile(dir, z, tx, ty, tile);
+                    written++;
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Resample one tile from a decoded band: columns map linearly in longitude, each output row
+     * is mapped through its own latitude (Mercator rows are not linear in latitude).
+     * Band pixel (i, j) is source pixel (i * sub, bandTop + j * sub).
+     */
+    private BufferedImage renderTile(Overlay overlay, BufferedImage band, int bandTop, int sub, int z, int tx,
+            int ty) {
+        double tileWest = tileXToLng(tx, z);
+        double tileEast = tileXToLng(tx + 1, z);
+        double colScale = overlay.width / (overlay.east - overlay.west);
+        double srcLeft = (tileWest - overlay.west) * colScale;
+        double srcRight = (tileEast - overlay.west) * colScale;
+
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = tile.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        boolean drawn = false;
+        try {
+            // Destination columns covered by the overlay
+            int dx0 = Math.max(0, (int) Math.floor(-srcLeft / (srcRight - srcLeft) * TILE_SIZE));
+            int dx1 = Math.min(TILE_SIZE,
+                    (int) Math.ceil((overlay.width - srcLeft) / (srcRight - srcLeft) * TILE_SIZE));
+            if (dx1 <= dx0) {
+                return null;
+            }
+            int sx0 = (int) Math.round(srcLeft + (srcRight - srcLeft) * dx0 / TILE_SIZE);
+            int sx1 = (int) Math.round(srcLeft + (srcRight - srcLeft) * dx1 / TILE_SIZE);
+            sx0 = Math.max(0, sx0 / sub);
+            sx1 = Math.min(band.getWidth(), Math.max(sx1 / sub, sx0 + 1));
+
+            for (int dy = 0; dy < TILE_SIZE; dy++) {
+                double lat = tileYToLat(ty + (dy + 0.5) / TILE_SIZE, z);
+                if (lat > overlay.north || lat < overlay.south) {
+                    continue;
+                }
+                int sy = ((int) Math.floor(overlay.rowOf(lat)) - bandTop) / sub;
+                if (sy < 0 || sy >= band.getHeight()) {
+                    continue;
+                }
+                g.drawImage(band, dx0, dy, dx1, dy + 1, sx0, sy, sx1, sy + 1, null);
+                drawn = true;
+            }
+        } finally {
+            g.dispose();
+        }
+        return drawn && !isTransparent(tile) ? tile : null;
+    }
+
+    // ==================== SHALLOWER LEVELS (from child tiles) ====================
+
+    private int buildParentLevel(Overlay overlay, Path dir, int z) throws IOException {
+        int[] xs = tileRange(lngToTileX(overlay.west, z), lngToTileX(overlay.east, z), z);
+        int[] ys = tileRange(latToTileY(overlay.north, z), latToTileY(overlay.south, z), z);
+        List<int[]> rows = new ArrayList<>();
+        for (int y = ys[0]; y <= ys[1]; y++) {
+            rows.add(new int[] { y });
+        }
+        return submitAll(rows, row -> {
+            int written = 0;
+            for (int x = xs[0]; x <= xs[1]; x++) {
+                BufferedImage tile = mergeChildren(dir, z, x, row[0]);
+                if (tile != null) {
+                    writeTile(dir, z, x, row[0], tile);
+                    written++;
+                }
+            }
+            return written;
+        });
+    }
+
+    private BufferedImage mergeChildren(Path dir, int z, int x, int y) throws IOException {
+        BufferedImage parent = null;
+        Graphics2D g = null;
+        try {
+            for (int i = 0; i < 4; i++) {
+                int cx = x * 2 + (i & 1);
+                int cy = y * 2 + (i >> 1);
+                Path child = tilePath(dir, z + 1, cx, cy);
+                if (!Files.exists(child)) {
+                    continue;
+                }
+                BufferedImage childImage = ImageIO.read(child.toFile());
+                if (childImage == null) {
+                    continue;
+                }
+                if (parent == null) {
+                    parent = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+                    g = parent.createGraphics();
+                    g.setComposite(AlphaComposite.Src);
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                            RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                }
+                int half = TILE_SIZE / 2;
+                g.drawImage(childImage, (i & 1) * half, (i >> 1) * half, half, half, null);
+            }
+        } finally {
+            if (g != null) {
+                g.dispose();
+            }
+        }
+        return parent;
+    }
+
+    // ==================== IMAGE I/O ====================
+
+    private int[] readSize(Path image) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            ImageReader reader = readerFor(in);
+            try {
+                reader.setInput(in, true, true);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Decode only a region of the source image, keeping every sub-th pixel
+     */
+    private BufferedImage readRegion(Path image, Rectangle region, int sub) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            ImageReader reader = readerFor(in);
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                param.setSourceSubsampling(sub, sub, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private ImageReader readerFor(ImageInputStream in) throws IOException {
+        if (in == null) {
+            throw new IOException("Cannot open image");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        return readers.next();
+    }
+
+    private void writeTile(Path dir, int z, int x, int y, BufferedImage tile) throws IOException {
+        Path path = tilePath(dir, z, x, y);
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(y + ".png.tmp");
+        ImageIO.write(tile, "png", tmp.toFile());
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Path tilePath(Path dir, int z, int x, int y) {
+        return dir.resolve(String.valueOf(z)).resolve(String.valueOf(x)).resolve(y + ".png");
+    }
+
+    private static boolean isTransparent(BufferedImage image) {
+        for (int y = 0; y < image.getHeight(); y += 4) {
+            for (int x = 0; x < image.getWidth(); x += 4) {
+                if ((image.getRGB(x, y) >>> 24) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // ==================== PARALLELISM ====================
+
+    private interface TileWork<T> {
+        int run(T item) throws IOException;
+    }
+
+    private <T> int submitAll(List<T> items, TileWork<T> work) throws IOException {
+        try {
+            return workers.submit(() -> items.parallelStream().mapToInt(item -> {
+                try {
+                    return work.run(item);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }).sum()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // ==================== WEB MERCATOR ====================
+
+    private static class Overlay {
+        final Path image;
+        final int width;
+        final int height;
+        final double north;
+        final double south;
+        final double east;
+        final double west;
+
+        Overlay(Path image, int width, int height, double north, double south, double east, double west) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+            this.north = north;
+            this.south = south;
+            this.east = east;
+            this.west = west;
+        }
+
+        double rowOf(double lat) {
+            return (north - lat) / (north - south) * height;
+        }
+    }
+
+    private int tileCount(Overlay overlay, int z) {
+        int[] xs = tileRange(lngToTileX(overlay.west, z), lngToTileX(overlay.east, z), z);
+        int[] ys = tileRange(latToTileY(overlay.north, z), latToTileY(overlay.south, z), z);
+        return (xs[1] - xs[0] + 1) * (ys[1] - ys[0] + 1);
+    }
+
+    private int clampZoom(int z) {
+        return Math.max(0, Math.min(z, maxZoomLimit));
+    }
+
+    private static int[] tileRange(double from, double to, int z) {
+        int max = (1 << z) - 1;
+        int a = Math.max(0, Math.min(max, (int) Math.floor(from)));
+        int b = Math.max(0, Math.min(max, (int) Math.floor(Math.nextDown(to))));
+        return new int[] { Math.min(a, b), Math.max(a, b) };
+    }
+
+    private static double lngToTileX(double lng, int z) {
+        return (lng + 180.0) / 360.0 * (1 << z);
+    }
+
+    private static double latToTileY(double lat, int z) {
+        double rad = Math.toRadians(Math.max(-85.05112878, Math.min(85.05112878, lat)));
+        return (1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * (1 << z);
+    }
+
+    private static double tileXToLng(double x, int z) {
+        return x / (1 << z) * 360.0 - 180.0;
+    }
+
+    private static double tileYToLat(double y, int z) {
+        double n = Math.PI - 2 * Math.PI * y / (1 << z);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    private static double log2(double v) {
+        return Math.log(v) / Math.log(2);
+    }
+}
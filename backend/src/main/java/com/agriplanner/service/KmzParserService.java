@@ -18,7 +18,9 @@ import java.math.BigDecimal;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.*;
+import java.util.zip.ZipEntry;
 
 /**
  * Service for parsing KMZ/KML files and extracting planning zones
@@ -32,17 +34,32 @@ public class KmzParserService {
     private final KmzUploadRepository kmzUploadRepository;
     private final PlanningZoneRepository planningZoneRepository;
     private final PlanningZoneTypeRepository planningZoneTypeRepository;
+    private final PlanningZoneBulkWriter planningZoneBulkWriter;
+    private final KmzOverlayTileService overlayTileService;
+    private final ZoneOverlapDetector zoneOverlapDetector;
+    private final KmlStreamParser kmlStreamParser = new KmlStreamParser();
+
+    private static final int MAX_GROUND_OVERLAYS = 100;
 
     @Value("${kmz.upload.dir:${user.home}/agriplanner/uploads/kmz}")
     private String uploadDir;
 
+    @Value("${kmz.parser.max-placemarks:10000}")
+    private int maxPlacemarks;
+
     public KmzParserService(
             KmzUploadRepository kmzUploadRepository,
             PlanningZoneRepository planningZoneRepository,
-            PlanningZoneTypeRepository planningZoneTypeRepository) {
+            PlanningZoneTypeRepository planningZoneTypeRepository,
+            PlanningZoneBulkWriter planningZoneBulkWriter,
+            KmzOverlayTileService overlayTileService,
+            ZoneOverlapDetector zoneOverlapDetector) {
         this.kmzUploadRepository = kmzUploadRepository;
         this.planningZoneRepository = planningZoneRepository;
         this.planningZoneTypeRepository = planningZoneTypeRepository;
+        this.planningZoneBulkWriter = planningZoneBulkWriter;
+        this.overlayTileService = overlayTileService;
+        this.zoneOverlapDetector = zoneOverlapDetector;
     }
 
     /**
@@ -82,19 +99,38 @@ public class KmzParserService {
             File targetFile = filePath.toFile();
             file.transferTo(Objects.requireNonNull(targetFile));
 
-            // Extract and parse KMZ
-            List<PlanningZone> zones = parseKmzFile(filePath, upload.getId(), province, district);
-
-            // Save zones with map type
-            for (PlanningZone zone : zones) {
-                zone.setKmzUploadId(upload.getId());
+            // Stream-parse KMZ and save zones with map type in batched chunks as they are read
+            Long uploadId = upload.getId();
+            // Each chunk is checked against stored zones of the map type and within itself;
+            // re-uploaded or repeated polygons are dropped
+            int[] overlaps = { 0, 0 }; // duplicates skipped, conflicting pairs
+            PlanningZoneBulkWriter.Batch batch = planningZoneBulkWriter.openBatch().filterChunks(chunk -> {
+                ZoneOverlapDetector.OverlapReport report = zoneOverlapDetector.detect(chunk, mapType);
+                overlaps[0] += report.getDuplicateIndexes().size();
+                overlaps[1] += report.getConflictCount();
+                return zoneOverlapDetector.withoutDuplicates(chunk, report);
+            });
+            parseKmzFile(filePath, uploadId, province, district, zone -> {
+                zone.setKmzUploadId(uploadId);
                 zone.setCreatedBy(userId);
                 zone.setMapType(mapType);
-                planningZoneRepository.save(zone);
-            }
+                batch.add(zone);
+            });
+            PlanningZoneBulkWriter.BulkWriteResult writeResult = batch.finish();
 
             // Update upload status
-            upload.setZonesCount(zones.size());
+            upload.setZonesCount(writeResult.getSavedCount());
+            if (overlaps[0] > 0 || overlaps[1] > 0) {
+                logger.info("KMZ upload {}: {} duplicate zones skipped, {} overlapping pairs",
+                        uploadId, overlaps[0], overlaps[1]);
+                upload.setNotes(String.format("Bỏ qua %d vùng trùng lặp; %d cặp vùng chồng lấn",
+                        overlaps[0], overlaps[1]));
+            }
+            if (writeResult.getRejectedCount() > 0) {
+                logger.warn("KMZ upload {}: {} zones rejected", uploadId, writeResult.getRejectedCount());
+                upload.setErrorMessage(String.format("%d vùng không lưu được (lỗi đầu tiên: %s)",
+                        writeResult.getRejectedCount(), writeResult.getRejected().get(0).getError()));
+            }
             upload.setStatus(KmzUpload.STATUS_COMPLETED);
             upload.setProcessedAt(LocalDateTime.now());
 
@@ -108,351 +144,259 @@ public class KmzParserService {
     }
 
     /**
-     * Parse KMZ file and extract planning zones
+     * Parse KMZ file and stream extracted planning zones to the sink, one placemark at a time.
+     * The KML entry is read directly from the archive with StAX - the document is never held in memory.
+     *
+     * @return number of zones emitted
      */
-    private List<PlanningZone> parseKmzFile(Path kmzPath, Long uploadId, String province, String district)
-            throws Exception {
-        List<PlanningZone> zones = new ArrayList<>();
-
-        // Create temp directory for extraction
-        Path tempDir = Files.createTempDirectory("kmz_extract_");
-
-        try {
-            logger.info("=== KMZ DEBUG START ===");
-            logger.info("KMZ file path: {}", kmzPath);
-            logger.info("KMZ file size: {} bytes", Files.size(kmzPath));
-
-            // Extract KMZ (it's a ZIP file) - using try-with-resources for proper cleanup
-            try (ZipFile zipFile = new ZipFile(kmzPath.toFile())) {
-                zipFile.extractAll(tempDir.toString());
-            }
+    private int parseKmzFile(Path kmzPath, Long uploadId, String province, String district,
+            Consumer<PlanningZone> sink) throws Exception {
+        logger.info("Parsing KMZ file: {} ({} bytes)", kmzPath, Files.size(kmzPath));
 
-            // List all extracted files for debugging
-            logger.info("Extracted files in temp directory:");
-            try (var stream = Files.walk(tempDir)) {
-                stream.forEach(p -> logger.info("  - {}", p.getFileName()));
-            }
+        // Get zone types for color mapping
+        Map<String, PlanningZoneType> zoneTypeMap = new HashMap<>();
+        planningZoneTypeRepository.findAll().forEach(zt -> zoneTypeMap.put(zt.getCode(), zt));
 
-            // Find KML file
-            Path kmlFile = findKmlFile(tempDir);
-            if (kmlFile == null) {
+        try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(kmzPath.toFile())) {
+            ZipEntry kmlEntry = findKmlEntry(zipFile);
+            if (kmlEntry == null) {
                 logger.error("No KML file found in KMZ archive!");
                 throw new RuntimeException("No KML file found in KMZ archive");
             }
+            logger.info("Found KML entry: {} ({} bytes uncompressed)", kmlEntry.getName(), kmlEntry.getSize());
+
+            int[] found = { 0 };
+            int[] parsed = { 0 };
+            List<KmlStreamParser.GroundOverlay> overlays = new ArrayList<>();
+
+            try (InputStream kmlStream = new BufferedInputStream(zipFile.getInputStream(kmlEntry))) {
+                kmlStreamParser.parse(kmlStream, placemark -> {
+                    found[0]++;
+                    try {
+                        PlanningZone zone = buildZoneFromPlacemark(placemark, province, district, zoneTypeMap);
+                        if (zone != null) {
+                            sink.accept(zone);
+                            parsed[0]++;
+                        }
+                    } catch (Exception e) {
+                        logger.warn("Failed to parse placemark {}: {}", found[0], e.getMessage());
+                    }
+                    return parsed[0] < maxPlacemarks;
+                }, overlay -> {
+                    // Overlays are only used when the document has no vector placemarks
+                    if (parsed[0] == 0 && overlays.size() < MAX_GROUND_OVERLAYS) {
+                        overlays.add(overlay);
+                    }
+                });
+            }
 
-            logger.info("Found KML file: {}", kmlFile.getFileName());
-            logger.info("KML file size: {} bytes", Files.size(kmlFile));
-
-            // Parse KML
-            String kmlContent = Files.readString(kmlFile);
-            logger.info("KML content length: {} characters", kmlContent.length());
-
-            // Log first 5000 characters for debugging
-            String preview = kmlContent.length() > 5000 ? kmlContent.substring(0, 5000) : kmlContent;
-            logger.info("KML content preview:\n{}", preview);
-
-            // Check for common KML elements
-            logger.info("Contains <Placemark>: {}", kmlContent.contains("<Placemark"));
-            logger.info("Contains <GroundOverlay>: {}", kmlContent.contains("<GroundOverlay"));
-            logger.info("Contains <coordinates>: {}", kmlContent.contains("<coordinates"));
-            logger.info("Contains <Polygon>: {}", kmlContent.contains("<Polygon"));
-            logger.info("Contains <Folder>: {}", kmlContent.contains("<Folder"));
-
-            zones = parseKmlContent(kmlContent, province, district, tempDir, uploadId);
+            logger.info("Found {} placemarks, successfully parsed {} zones", found[0], parsed[0]);
 
-            logger.info("=== KMZ DEBUG END - Extracted {} zones ===", zones.size());
+            // If no zones, try GroundOverlay (image overlay KMZ files)
+            if (parsed[0] == 0 && !overlays.isEmpty()) {
+                logger.info("No placemarks found, trying GroundOverlay (image overlay) parsing...");
+                parsed[0] = emitGroundOverlays(overlays, zipFile, kmlEntry, province, district, uploadId, sink);
+                logger.info("Parsed {} zones from GroundOverlay", parsed[0]);
+            }
 
-        } finally {
-            // Cleanup temp directory
-            deleteDirectory(tempDir);
+            return parsed[0];
         }
-
-        return zones;
     }
 
     /**
-     * Find KML file in extracted directory
+     * Find KML entry in KMZ archive (prefers doc.kml, as per the KMZ spec)
      */
-    private Path findKmlFile(Path directory) throws IOException {
-        try (var stream = Files.walk(directory)) {
-            return stream
-                    .filter(p -> p.toString().toLowerCase().endsWith(".kml"))
-                    .findFirst()
-                    .orElse(null);
+    private ZipEntry findKmlEntry(java.util.zip.ZipFile zipFile) {
+        ZipEntry first = null;
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName().toLowerCase();
+            if (entry.isDirectory() || !name.endsWith(".kml")) {
+                continue;
+            }
+            if (name.equals("doc.kml")) {
+                return entry;
+            }
+            if (first == null) {
+                first = entry;
+            }
         }
+        return first;
     }
 
     /**
-     * Parse KML content and extract placemarks
+     * Convert GroundOverlay elements (image overlays with LatLonBox) to zones.
+     * These are KMZ files that use raster images instead of vector polygons
      */
-    private List<PlanningZone> parseKmlContent(String kmlContent, String province, String district, Path tempDir,
-            Long uploadId) {
-        List<PlanningZone> zones = new ArrayList<>();
-
-        // Get zone types for color mapping
-        Map<String, PlanningZoneType> zoneTypeMap = new HashMap<>();
-        planningZoneTypeRepository.findAll().forEach(zt -> zoneTypeMap.put(zt.getCode(), zt));
+    private int emitGroundOverlays(List<KmlStreamParser.GroundOverlay> overlays, java.util.zip.ZipFile zipFile,
+            ZipEntry kmlEntry, String province, String district, Long uploadId, Consumer<PlanningZone> sink) {
+        Set<String> processedBounds = new HashSet<>(); // Avoid duplicates
+        int found = 0;
+        int parsed = 0;
 
-        try {
-            // Remove namespaces for easier parsing (kml:Placemark -> Placemark)
-            String normalizedContent = kmlContent
-                    .replaceAll("<kml:", "<")
-                    .replaceAll("</kml:", "</")
-                    .replaceAll("<gx:", "<")
-                    .replaceAll("</gx:", "</");
-
-            logger.info("KML content length: {} characters", normalizedContent.length());
-
-            // Use regex to extract Placemarks - handle various formats
-            // Pattern now matches Placemark with optional attributes
-            Pattern placemarkPattern = Pattern.compile(
-                    "<Placemark[^>]*>(.*?)</Placemark>",
-                    Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-
-            Matcher matcher = placemarkPattern.matcher(normalizedContent);
-            int found = 0;
-            int parsed = 0;
-
-            while (matcher.find() && parsed < 10000) { // Limit to 10000 zones
-                found++;
-                String placemarkContent = matcher.group(1);
-
-                try {
-                    PlanningZone zone = parsePlacemark(placemarkContent, province, district, zoneTypeMap);
-                    if (zone != null) {
-                        zones.add(zone);
-                        parsed++;
-                    }
-                } catch (Exception e) {
-                    logger.warn("Failed to parse placemark {}: {}", found, e.getMessage());
+        for (KmlStreamParser.GroundOverlay overlay : overlays) {
+            found++;
+            try {
+                if (!overlay.hasBounds())
+                    continue;
+
+                double north = overlay.getNorth();
+                double south = overlay.getSouth();
+                double east = overlay.getEast();
+                double west = overlay.getWest();
+
+                // Create unique key for this bounding box
+                String boundsKey = String.format("%.6f,%.6f,%.6f,%.6f", north, south, east, west);
+                if (!processedBounds.add(boundsKey))
+                    continue; // Skip duplicates
+
+                String href = overlay.getIconHref();
+                String name = overlay.getName();
+                if ((name == null || name.isEmpty()) && href != null) {
+                    // Try to get from Icon href
+                    name = href.replace(".png", "").replace("kml_image_", "");
+                }
+                if (name == null || name.isEmpty()) {
+                    name = "Vùng quy hoạch " + (parsed + 1);
                 }
-            }
-
-            logger.info("Found {} placemarks, successfully parsed {} zones", found, parsed);
-
-            // If no placemarks found, try extracting from Document/Folder structure
-            if (found == 0) {
-                logger.info("No direct placemarks found, trying nested Folder structure...");
-
-                // Try to find placemarks inside Folder elements
-                Pattern folderPattern = Pattern.compile(
-                        "<Folder[^>]*>(.*?)</Folder>",
-                        Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-                Matcher folderMatcher = folderPattern.matcher(normalizedContent);
 
-                while (folderMatcher.find() && parsed < 10000) {
-                    String folderContent = folderMatcher.group(1);
-                    Matcher innerPlacemarkMatcher = placemarkPattern.matcher(folderContent);
+                // Create zone from bounding box
+                PlanningZone zone = new PlanningZone();
+                zone.setName(name);
+
+                // Convert LatLonBox to polygon coordinates (clockwise from NW)
+                // NW -> NE -> SE -> SW -> NW (closed polygon)
+                String coordinates = String.format(
+                        "%f,%f,0 %f,%f,0 %f,%f,0 %f,%f,0 %f,%f,0",
+                        west, north, // NW
+                        east, north, // NE
+                        east, south, // SE
+                        west, south, // SW
+                        west, north // Close polygon
+                );
+
+                String coordJson = parseCoordinatesToJson(coordinates);
+                zone.setBoundaryCoordinates(coordJson);
+
+                String geojson = createGeoJson(coordinates, name);
+                zone.setGeojson(geojson);
+
+                // Center point
+                zone.setCenterLat(BigDecimal.valueOf((north + south) / 2));
+                zone.setCenterLng(BigDecimal.valueOf((east + west) / 2));
+
+                // Calculate approximate area in square meters
+                double latDiff = Math.abs(north - south);
+                double lngDiff = Math.abs(east - west);
+                // Approximate conversion at this latitude (about 111km per degree)
+                double areaSqm = latDiff * 111000 * lngDiff * 111000
+                        * Math.cos(Math.toRadians((north + south) / 2));
+                zone.setAreaSqm(BigDecimal.valueOf(areaSqm));
+
+                // Set metadata
+                zone.setZoneType("Đất quy hoạch");
+                zone.setFillColor(getRandomColor());
+                zone.setProvince(province != null ? province : "Cần Thơ");
+                zone.setDistrict(district);
+                zone.setSource("KMZ Upload (GroundOverlay)");
+                zone.setPlanningPeriod("2021-2030");
+                zone.setFillOpacity(new BigDecimal("0.1")); // Lower opacity for image overlay
+                zone.setStrokeColor("#333333");
+
+                // Copy image entry straight out of the archive and set imageUrl
+                if (href != null && !href.isEmpty()) {
+                    try {
+                        ZipEntry imageEntry = findOverlayImageEntry(zipFile, kmlEntry, href);
+                        if (imageEntry != null) {
+                            // Create images directory for this upload
+                            Path imagesDir = Paths.get(uploadDir, "images", String.valueOf(uploadId));
+                            Files.createDirectories(imagesDir);
+
+                            // Copy with unique name
+                            String imageName = parsed + "_" + href;
+                            Path targetImage = imagesDir.resolve(imageName);
+                            Files.createDirectories(targetImage.getParent());
+                            try (InputStream imageStream = zipFile.getInputStream(imageEntry)) {
+                                Files.copy(imageStream, targetImage, StandardCopyOption.REPLACE_EXISTING);
+                            }
 
-                    while (innerPlacemarkMatcher.find() && parsed < 10000) {
-                        found++;
-                        String placemarkContent = innerPlacemarkMatcher.group(1);
+                            // Set image URL (relative path for serving)
+                            String imageUrl = "/api/kmz/images/" + uploadId + "/" + imageName;
+                            zone.setImageUrl(imageUrl);
+                            logger.info("Saved overlay image: {} -> {}", href, imageUrl);
 
-                        try {
-                            PlanningZone zone = parsePlacemark(placemarkContent, province, district, zoneTypeMap);
-                            if (zone != null) {
-                                zones.add(zone);
-                                parsed++;
-                            }
-                        } catch (Exception e) {
-                            logger.warn("Failed to parse nested placemark: {}", e.getMessage());
+                            // Cut the tile pyramid in the background (served by /api/kmz/tiles)
+                            overlayTileService.generateAsync(uploadId, imageName, targetImage, north, south, east,
+                                    west);
+                        } else {
+                            logger.warn("Image file not found: {}", href);
                         }
+                    } catch (Exception imageEx) {
+                        logger.warn("Failed to copy image {}: {}", href, imageEx.getMessage());
                     }
                 }
 
-                logger.info("After folder search: Found {} placemarks, parsed {} zones", found, parsed);
-            }
+                sink.accept(zone);
+                parsed++;
+                logger.debug("Parsed GroundOverlay zone: {} at [{},{},{},{}]", name, north, south, east, west);
 
-            // If still no zones, try GroundOverlay (image overlay KMZ files)
-            if (zones.isEmpty() && normalizedContent.contains("<GroundOverlay")) {
-                logger.info("No placemarks found, trying GroundOverlay (image overlay) parsing...");
-                zones = parseGroundOverlays(normalizedContent, province, district, zoneTypeMap, tempDir, uploadId);
-                logger.info("Parsed {} zones from GroundOverlay", zones.size());
+            } catch (Exception e) {
+                logger.warn("Failed to parse GroundOverlay {}: {}", found, e.getMessage());
             }
-
-        } catch (Exception e) {
-            logger.error("Error parsing KML content: {}", e.getMessage(), e);
         }
 
-        return zones;
+        logger.info("Found {} GroundOverlays, parsed {} zones", found, parsed);
+        return parsed;
     }
 
     /**
-     * Parse GroundOverlay elements (image overlays with LatLonBox)
-     * These are KMZ files that use raster images instead of vector polygons
+     * Find KML file in extracted directory
      */
-    private List<PlanningZone> parseGroundOverlays(String content, String province, String district,
-            Map<String, PlanningZoneType> zoneTypeMap, Path tempDir, Long uploadId) {
-        List<PlanningZone> zones = new ArrayList<>();
-        Set<String> processedBounds = new HashSet<>(); // Avoid duplicates
-
-        try {
-            // Find all GroundOverlay elements
-            Pattern overlayPattern = Pattern.compile(
-                    "<GroundOverlay[^>]*>(.*?)</GroundOverlay>",
-                    Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-            Matcher matcher = overlayPattern.matcher(content);
-
-            int found = 0;
-            int parsed = 0;
-
-            while (matcher.find() && parsed < 100) { // Limit overlays
-                found++;
-                String overlayContent = matcher.group(1);
-
-                try {
-                    // Extract LatLonBox coordinates
-                    String latLonBox = extractTag(overlayContent, "LatLonBox");
-                    if (latLonBox == null)
-                        continue;
-
-                    String northStr = extractTag(latLonBox, "north");
-                    String southStr = extractTag(latLonBox, "south");
-                    String eastStr = extractTag(latLonBox, "east");
-                    String westStr = extractTag(latLonBox, "west");
-
-                    if (northStr == null || southStr == null || eastStr == null || westStr == null)
-                        continue;
-
-                    double north = Double.parseDouble(northStr);
-                    double south = Double.parseDouble(southStr);
-                    double east = Double.parseDouble(eastStr);
-                    double west = Double.parseDouble(westStr);
-
-                    // Create unique key for this bounding box
-                    String boundsKey = String.format("%.6f,%.6f,%.6f,%.6f", north, south, east, west);
-                    if (processedBounds.contains(boundsKey))
-                        continue; // Skip duplicates
-                    processedBounds.add(boundsKey);
-
-                    // Get name from parent Folder if available
-                    String name = extractTag(overlayContent, "name");
-                    if (name == null || name.isEmpty()) {
-                        // Try to get from Icon href
-                        String icon = extractTag(overlayContent, "Icon");
-                        if (icon != null) {
-                            String href = extractTag(icon, "href");
-                            if (href != null) {
-                                name = href.replace(".png", "").replace("kml_image_", "");
-                            }
-                        }
-                    }
-                    if (name == null || name.isEmpty()) {
-                        name = "Vùng quy hoạch " + (parsed + 1);
-                    }
-
-                    // Create zone from bounding box
-                    PlanningZone zone = new PlanningZone();
-                    zone.setName(name);
-
-                    // Convert LatLonBox to polygon coordinates (clockwise from NW)
-                    // NW -> NE -> SE -> SW -> NW (closed polygon)
-                    String coordinates = String.format(
-                            "%f,%f,0 %f,%f,0 %f,%f,0 %f,%f,0 %f,%f,0",
-                            west, north, // NW
-                            east, north, // NE
-                            east, south, // SE
-                            west, south, // SW
-                            west, north // Close polygon
-                    );
-
-                    String coordJson = parseCoordinatesToJson(coordinates);
-                    zone.setBoundaryCoordinates(coordJson);
-
-                    String geojson = createGeoJson(coordinates, name);
-                    zone.setGeojson(geojson);
-
-                    // Center point
-                    zone.setCenterLat(BigDecimal.valueOf((north + south) / 2));
-                    zone.setCenterLng(BigDecimal.valueOf((east + west) / 2));
-
-                    // Calculate approximate area in square meters
-                    double latDiff = Math.abs(north - south);
-                    double lngDiff = Math.abs(east - west);
-                    // Approximate conversion at this latitude (about 111km per degree)
-                    double areaSqm = latDiff * 111000 * lngDiff * 111000
-                            * Math.cos(Math.toRadians((north + south) / 2));
-                    zone.setAreaSqm(BigDecimal.valueOf(areaSqm));
-
-                    // Set metadata
-                    zone.setZoneType("Đất quy hoạch");
-                    zone.setFillColor(getRandomColor());
-                    zone.setProvince(province != null ? province : "Cần Thơ");
-                    zone.setDistrict(district);
-                    zone.setSource("KMZ Upload (GroundOverlay)");
-                    zone.setPlanningPeriod("2021-2030");
-                    zone.setFillOpacity(new BigDecimal("0.1")); // Lower opacity for image overlay
-                    zone.setStrokeColor("#333333");
-
-                    // Copy image file and set imageUrl
-                    String icon = extractTag(overlayContent, "Icon");
-                    if (icon != null) {
-                        String href = extractTag(icon, "href");
-                        if (href != null && !href.isEmpty()) {
-                            try {
-                                // Find image in temp directory
-                                Path sourceImage = tempDir.resolve(href);
-                                if (Files.exists(sourceImage)) {
-                                    // Create images directory for this upload
-                                    Path imagesDir = Paths.get(uploadDir, "images", String.valueOf(uploadId));
-                                    Files.createDirectories(imagesDir);
-
-                                    // Copy with unique name
-                                    String imageName = parsed + "_" + href;
-                                    Path targetImage = imagesDir.resolve(imageName);
-                                    Files.copy(sourceImage, targetImage, StandardCopyOption.REPLACE_EXISTING);
-
-                                    // Set image URL (relative path for serving)
-                                    String imageUrl = "/api/kmz/images/" + uploadId + "/" + imageName;
-                                    zone.setImageUrl(imageUrl);
-                                    logger.info("Saved overlay image: {} -> {}", href, imageUrl);
-                                } else {
-                                    logger.warn("Image file not found: {}", href);
-                                }
-                            } catch (Exception imageEx) {
-                                logger.warn("Failed to copy image {}: {}", href, imageEx.getMessage());
-                            }
-                        }
-                    }
-
-                    zones.add(zone);
-                    parsed++;
-                    logger.debug("Parsed GroundOverlay zone: {} at [{},{},{},{}]", name, north, south, east, west);
+    private Path findKmlFile(Path directory) throws IOException {
+        try (var stream = Files.walk(directory)) {
+            return stream
+                    .filter(p -> p.toString().toLowerCase().endsWith(".kml"))
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
 
-                } catch (Exception e) {
-                    logger.warn("Failed to parse GroundOverlay {}: {}", found, e.getMessage());
-                }
+    /**
+     * Resolve a GroundOverlay Icon href against the archive (relative to the KML entry, then archive root)
+     */
+    private ZipEntry findOverlayImageEntry(java.util.zip.ZipFile zipFile, ZipEntry kmlEntry, String href) {
+        String kmlName = kmlEntry.getName();
+        int slash = kmlName.lastIndexOf('/');
+        if (slash >= 0) {
+            ZipEntry relative = zipFile.getEntry(kmlName.substring(0, slash + 1) + href);
+            if (relative != null) {
+                return relative;
             }
-
-            logger.info("Found {} GroundOverlays, parsed {} zones", found, parsed);
-
-        } catch (Exception e) {
-            logger.error("Error parsing GroundOverlays: {}", e.getMessage(), e);
         }
-
-        return zones;
+        return zipFile.getEntry(href);
     }
 
     /**
-     * Parse a single Placemark element
+     * Build a zone from a single Placemark
      */
-    private PlanningZone parsePlacemark(String content, String province, String district,
-            Map<String, PlanningZoneType> zoneTypeMap) {
+    private PlanningZone buildZoneFromPlacemark(KmlStreamParser.Placemark placemark, String province,
+            String district, Map<String, PlanningZoneType> zoneTypeMap) {
         PlanningZone zone = new PlanningZone();
 
         // Extract name
-        String name = extractTag(content, "name");
+        String name = placemark.getName();
         if (name == null || name.isEmpty()) {
             name = "Unnamed Zone";
         }
         zone.setName(name);
 
         // Extract description
-        String description = extractTag(content, "description");
+        String description = placemark.getDescription();
         zone.setNotes(description);
 
-        // Extract coordinates from Polygon, LineString, or MultiGeometry
-        String coordinates = extractCoordinates(content);
+        // Coordinates from Polygon, LineString, or MultiGeometry
+        String coordinates = placemark.getCoordinates();
         if (coordinates == null || coordinates.isEmpty()) {
             logger.debug("No coordinates found for placemark: {}", name);
             return null; // Skip if no coordinates
@@ -473,7 +417,7 @@ public class KmzParserService {
             zone.setCenterLng(BigDecimal.valueOf(center[1]));
         }
 
-        // Try to detect zone type from name or description
+        // Try to detect zone code from name or description
         String zoneCode = detectZoneCode(name, description);
         zone.setZoneCode(zoneCode);
 
@@ -488,8 +432,8 @@ public class KmzParserService {
             zone.setFillColor(getRandomColor());
         }
 
-        // Extract style/color from KML if available
-        String fillColor = extractStyleColor(content);
+        // Style/color from KML if available
+        String fillColor = convertKmlColor(placemark.getColor());
         if (fillColor != null) {
             zone.setFillColor(fillColor);
         }
@@ -505,72 +449,6 @@ public class KmzParserService {
         return zone;
     }
 
-    /**
-     * Extract tag content from XML
-     */
-    private String extractTag(String content, String tagName) {
-        Pattern pattern = Pattern.compile(
-                "<" + tagName + "[^>]*>(.*?)</" + tagName + ">",
-                Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        Matcher matcher = pattern.matcher(content);
-        if (matcher.find()) {
-            String value = matcher.group(1).trim();
-            // Remove CDATA wrapper if present
-            value = value.replaceAll("<!\\[CDATA\\[(.*)\\]\\]>", "$1");
-            // Decode HTML entities
-            value = value.replace("&lt;", "<").replace("&gt;", ">")
-                    .replace("&amp;", "&").replace("&quot;", "\"");
-            return value;
-        }
-        return null;
-    }
-
-    /**
-     * Extract coordinates from polygon, linestring, or multigeometry
-     */
-    private String extractCoordinates(String content) {
-        // Try to find coordinates in various structures
-        // 1. Direct coordinates tag
-        Pattern coordPattern = Pattern.compile(
-                "<coordinates[^>]*>([^<]+)</coordinates>",
-                Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        Matcher matcher = coordPattern.matcher(content);
-
-        if (matcher.find()) {
-            String coords = matcher.group(1).trim();
-            // Clean up whitespace and newlines
-            coords = coords.replaceAll("\\s+", " ").trim();
-            if (!coords.isEmpty()) {
-                return coords;
-            }
-        }
-
-        // 2. Try within Polygon -> outerBoundaryIs -> LinearRing
-        Pattern polygonPattern = Pattern.compile(
-                "<Polygon[^>]*>.*?<outerBoundaryIs>.*?<LinearRing>.*?<coordinates[^>]*>([^<]+)</coordinates>",
-                Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        matcher = polygonPattern.matcher(content);
-        if (matcher.find()) {
-            return matcher.group(1).trim().replaceAll("\\s+", " ");
-        }
-
-        // 3. Try MultiGeometry
-        Pattern multiPattern = Pattern.compile(
-                "<MultiGeometry[^>]*>(.*?)</MultiGeometry>",
-                Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        matcher = multiPattern.matcher(content);
-        if (matcher.find()) {
-            String multiContent = matcher.group(1);
-            // Get first polygon's coordinates
-            matcher = coordPattern.matcher(multiContent);
-            if (matcher.find()) {
-                return matcher.group(1).trim().replaceAll("\\s+", " ");
-            }
-        }
-
-        return null;
-    }
-
     /**
      * Parse KML coordinates to JSON array format
      */
@@ -709,24 +587,16 @@ public class KmzParserService {
     }
 
     /**
-     * Extract style color from KML
+     * Convert KML color to HTML hex
      */
-    private String extractStyleColor(String content) {
-        // Try to find color in Style element
-        Pattern colorPattern = Pattern.compile(
-                "<color>([a-fA-F0-9]{8})</color>",
-                Pattern.CASE_INSENSITIVE);
-        Matcher matcher = colorPattern.matcher(content);
-        if (matcher.find()) {
-            String kmlColor = matcher.group(1);
-            // KML color format: AABBGGRR (Alpha, Blue, Green, Red)
-            // Convert to HTML hex: #RRGGBB
-            if (kmlColor.length() == 8) {
-                String r = kmlColor.substring(6, 8);
-                String g = kmlColor.substring(4, 6);
-                String b = kmlColor.substring(2, 4);
-                return "#" + r + g + b;
-            }
+    private String convertKmlColor(String kmlColor) {
+        // KML color format: AABBGGRR (Alpha, Blue, Green, Red)
+        // Convert to HTML hex: #RRGGBB
+        if (kmlColor != null && kmlColor.length() == 8) {
+            String r = kmlColor.substring(6, 8);
+            String g = kmlColor.substring(4, 6);
+            String b = kmlColor.substring(2, 4);
+            return "#" + r + g + b;
         }
         return null;
     }
@@ -742,24 +612,6 @@ public class KmzParserService {
         return colors[new Random().nextInt(colors.length)];
     }
 
-    /**
-     * Delete directory recursively
-     */
-    private void deleteDirectory(Path path) {
-        try {
-            Files.walk(path)
-                    .sorted(Comparator.reverseOrder())
-                    .forEach(p -> {
-                        try {
-                            Files.delete(p);
-                        } catch (Exception e) {
-                        }
-                    });
-        } catch (Exception e) {
-            logger.warn("Failed to delete temp directory: {}", e.getMessage());
-        }
-    }
-
     /**
      * Get zones by upload ID
      */
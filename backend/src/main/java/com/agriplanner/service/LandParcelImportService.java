@@ -0,0 +1,798 @@
+package com.agriplanner.service;
+
+import com.agriplanner.util.ZoneGeometryUtils;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.io.ByteOrderValues;
+import org.locationtech.jts.io.WKBWriter;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.zip.ZipFile;
+
+/**
+ * Bulk importer for cadastral parcel dumps (nhập hàng loạt thửa đất từ GeoServer)
+ *
+ * Accepts GeoJSON FeatureCollections, GeoJSON text sequences (one feature per line, RS optional)
+ * and zipped shapefiles. The file is read as a stream in batches; each batch is converted
+ * (geometry repair, centroid, geodesic area, EWKB) on a fork-join pool while the next one is
+ * being parsed, then COPY'd into a temp staging table and upserted by parcel_id in its own
+ * transaction. Batches commit in file order, so committedOffset is always a safe resume point:
+ * a failed job keeps its upload and can be resumed, or the same file re-sent with resumeFrom.
+ * Features without a parcel id are keyed by a hash of their geometry, so re-imports and
+ * resumes update them instead of inserting them again.
+ */
+@Service
+public class LandParcelImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LandParcelImportService.class);
+
+    public static final String FORMAT_GEOJSON = "geojson";
+    public static final String FORMAT_GEOJSON_SEQ = "geojsonseq";
+    public static final String FORMAT_SHAPEFILE = "shapefile";
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    // Staged per batch, in this order; created_at is only set for new rows
+    private static final String[] COLUMNS = {
+            "object_id", "parcel_id", "map_sheet_id", "map_sheet_number", "parcel_number", "area_sqm",
+            "legal_area_sqm", "land_use_code", "land_use_name", "address", "street_name", "road", "road_section",
+            "location", "admin_unit_code", "admin_unit_name", "district", "province", "registration_status",
+            "change_status", "spatial_status", "area_zone", "province_code", "area_road", "area_land", "area_river",
+            "area_railway", "boundary_geojson", "geom", "center_lat", "center_lng", "source", "scraped_at" };
+
+    private static final String[] INTEGER_COLUMNS = {
+            "object_id", "map_sheet_number", "parcel_number", "admin_unit_code", "registration_status",
+            "change_status", "spatial_status", "area_zone", "province_code" };
+
+    private static final String[] DECIMAL_COLUMNS = {
+            "area_sqm", "legal_area_sqm", "area_road", "area_land", "area_river", "area_railway" };
+
+    // Attribute name (lower-case, letters and digits only) -> column
+    private static final Map<String, String> ATTRIBUTE_COLUMNS = buildAttributeColumns();
+
+    private static final int COL_PARCEL_ID = indexOf("parcel_id");
+    private static final int COL_AREA_SQM = indexOf("area_sqm");
+    private static final int COL_BOUNDARY = indexOf("boundary_geojson");
+    private static final int COL_GEOM = indexOf("geom");
+    private static final int COL_CENTER_LAT = indexOf("center_lat");
+    private static final int COL_CENTER_LNG = indexOf("center_lng");
+    private static final int COL_DISTRICT = indexOf("district");
+    private static final int COL_PROVINCE = indexOf("province");
+    private static final int COL_SOURCE = indexOf("source");
+    private static final int COL_SCRAPED_AT = indexOf("scraped_at");
+
+    // parcel_id of features without one: this prefix and the SHA-1 of the geometry's EWKB
+    public static final String GEOMETRY_KEY_PREFIX = "geom:";
+    public static final String MISSING_ID_POLICY = "geometry-sha1";
+
+    private static final String STAGING_TABLE = "land_parcels_import";
+
+    private static final String CREATE_STAGING_SQL = "CREATE TEMP TABLE IF NOT EXISTS " + STAGING_TABLE
+            + " ON COMMIT DELETE ROWS AS SELECT 0::bigint AS seq, " + String.join(", ", COLUMNS)
+            + " FROM land_parcels WITH NO DATA";
+
+    private static final String COPY_SQL = "COPY " + STAGING_TABLE + " (seq, " + String.join(", ", COLUMNS)
+            + ") FROM STDIN WITH (FORMAT csv)";
+
+    // Last occurrence of a parcel_id in the batch wins
+    private static final String LATEST_SQL = "SELECT DISTINCT ON (parcel_id) * FROM " + STAGING_TABLE
+            + " WHERE parcel_id IS NOT NULL ORDER BY parcel_id, seq DESC";
+
+    private static final String UPDATE_SQL = "UPDATE land_parcels p SET " + updateAssignments()
+            + " FROM (" + LATEST_SQL + ") s WHERE p.parcel_id = s.parcel_id";
+
+    private static final String INSERT_SQL = "INSERT INTO land_parcels (" + String.join(", ", COLUMNS)
+            + ", created_at) SELECT " + String.join(", ", COLUMNS) + ", s.scraped_at FROM ("
+            + LATEST_SQL + ") s WHERE NOT EXISTS (SELECT 1 FROM land_parcels p WHERE p.parcel_id = s.parcel_id)";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate batchTransaction;
+    private final ShapefileStreamReader shapefileReader = new ShapefileStreamReader();
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    // Jobs run one at a time; conversion work fans out on the fork-join pool
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "parcel-import");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ForkJoinPool workers;
+
+    @Value("${land-parcel.import.dir:${user.home}/agriplanner/uploads/land-parcels}")
+    private String importDir;
+
+    @Value("${land-parcel.import.batch-size:5000}")
+    private int batchSize;
+
+    // Converted batches allowed to wait for the writer
+    @Value("${land-parcel.import.max-pending-batches:4}")
+    private int maxPendingBatches;
+
+    // Finished jobs stay queryable (and failed ones resumable) this long
+    @Value("${land-parcel.import.job-retention-minutes:1440}")
+    private long jobRetentionMinutes;
+
+    // Oldest finished jobs are dropped beyond this many
+    @Value("${land-parcel.import.max-finished-jobs:100}")
+    private int maxFinishedJobs;
+
+    public LandParcelImportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            @Value("${land-parcel.import.parallelism:0}") int parallelism) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.workers = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Progress of one import (tiến độ nhập)
+     */
+    @Data
+    public static class ImportJob {
+        private String jobId;
+        private String fileName;
+        private String format;
+        private String district;
+        private String province;
+        private String source;
+        private volatile String status = STATUS_QUEUED;
+        private long startOffset;
+        // Features read from the file so far (including the skipped resume prefix)
+        private volatile long readCount;
+        // Every feature before this offset is committed - resume from here
+        private volatile long committedOffset;
+        private volatile long insertedCount;
+        private volatile long updatedCount;
+        // Features without usable polygon geometry
+        private volatile long skippedCount;
+        // Features without a parcel id, keyed by geometry hash (GEOMETRY_KEY_PREFIX)
+        private volatile long geometryKeyedCount;
+        private volatile String errorMessage;
+        private LocalDateTime createdAt = LocalDateTime.now();
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private Path file;
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("jobId", jobId);
+            map.put("fileName", fileName);
+            map.put("format", format);
+            map.put("status", status);
+            map.put("startOffset", startOffset);
+            map.put("readCount", readCount);
+            map.put("committedOffset", committedOffset);
+            map.put("insertedCount", insertedCount);
+            map.put("updatedCount", updatedCount);
+            map.put("skippedCount", skippedCount);
+            map.put("geometryKeyedCount", geometryKeyedCount);
+            map.put("missingParcelIdPolicy", MISSING_ID_POLICY);
+            map.put("createdAt", createdAt.toString());
+            if (startedAt != null) {
+                LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+                double seconds = Math.max(Duration.between(startedAt, end).toMillis(), 1) / 1000.0;
+                map.put("startedAt", startedAt.toString());
+                map.put("elapsedSeconds", Math.round(seconds));
+                map.put("featuresPerSecond", Math.round((committedOffset - startOffset) / seconds));
+            }
+            if (finishedAt != null) {
+                map.put("finishedAt", finishedAt.toString());
+            }
+            if (errorMessage != null) {
+                map.put("error", errorMessage);
+            }
+            return map;
+        }
+    }
+
+    // ==================== JOBS ====================
+
+    /**
+     * Store the upload and queue an import; resumeFrom skips that many features
+     */
+    public ImportJob startImport(MultipartFile file, String district, String province, String source,
+            long resumeFrom) throws IOException {
+        String format = detectFormat(file.getOriginalFilename());
+        if (format == null) {
+            throw new IllegalArgumentException("Chỉ hỗ trợ GeoJSON (.geojson, .json), GeoJSON-seq (.geojsonl, "
+                    + ".geojsons, .ndjson) hoặc shapefile nén (.zip)");
+        }
+        ImportJob job = new ImportJob();
+        job.setJobId(UUID.randomUUID().toString().substring(0, 8));
+        job.setFileName(file.getOriginalFilename());
+        job.setFormat(format);
+        job.setDistrict(district);
+        job.setProvince(province);
+        job.setSource(source);
+
+        Path dir = Paths.get(importDir);
+        Files.createDirectories(dir);
+        Path target = dir.resolve(job.getJobId() + "_" + file.getOriginalFilename().replaceAll("[^A-Za-z0-9._-]", "_"));
+        file.transferTo(target);
+        job.setFile(target);
+
+        evictFinishedJobs();
+        jobs.put(job.getJobId(), job);
+        submit(job, Math.max(resumeFrom, 0));
+        return job;
+    }
+
+    /**
+     * Resume a failed job from its last committed offset using the kept upload
+     */
+    public ImportJob resume(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            return null;
+        }
+        // Same lock as eviction, so a job is never resumed while its upload is being deleted
+        synchronized (job) {
+            if (!STATUS_FAILED.equals(job.getStatus()) || job.getFile() == null || !Files.exists(job.getFile())) {
+                throw new IllegalStateException("Chỉ có thể tiếp tục job bị lỗi còn giữ file tải lên");
+            }
+            job.setErrorMessage(null);
+            job.setFinishedAt(null);
+            job.setStatus(STATUS_QUEUED);
+            submit(job, job.getCommittedOffset());
+        }
+        return job;
+    }
+
+    public ImportJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Drop finished jobs older than the retention period, then the oldest ones past the cap.
+     * A failed job's kept upload is deleted with it.
+     */
+    @Scheduled(fixedDelayString = "${land-parcel.import.job-eviction-interval-ms:600000}")
+    public void evictFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(jobRetentionMinutes);
+        // Finish times are read once: a resume clears them while we sort
+        List<Map.Entry<LocalDateTime, ImportJob>> finished = new ArrayList<>();
+        for (ImportJob job : jobs.values()) {
+            LocalDateTime finishedAt = job.getFinishedAt();
+            if (finishedAt != null && isFinished(job)) {
+                finished.add(Map.entry(finishedAt, job));
+            }
+        }
+        finished.sort(Map.Entry.comparingByKey());
+        int excess = finished.size() - Math.max(maxFinishedJobs, 0);
+        int evicted = 0;
+        for (Map.Entry<LocalDateTime, ImportJob> entry : finished) {
+            if (evicted >= excess && entry.getKey().isAfter(cutoff)) {
+                break;
+            }
+            if (evict(entry.getValue())) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.info("Evicted {} finished parcel import jobs ({} remain)", evicted, jobs.size());
+        }
+    }
+
+    private boolean evict(ImportJob job) {
+        synchronized (job) {
+            // Resumed since the scan
+            if (job.getFinishedAt() == null || !isFinished(job)) {
+                return false;
+            }
+            jobs.remove(job.getJobId(), job);
+            if (job.getFile() != null) {
+                try {
+                    Files.deleteIfExists(job.getFile());
+                } catch (IOException e) {
+                    logger.warn("Could not delete upload of import {}: {}", job.getJobId(), e.getMessage());
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean isFinished(ImportJob job) {
+        return STATUS_COMPLETED.equals(job.getStatus()) || STATUS_FAILED.equals(job.getStatus());
+    }
+
+    private void submit(ImportJob job, long offset) {
+        job.setStartOffset(offset);
+        job.setCommittedOffset(offset);
+        job.setReadCount(0);
+        jobExecutor.submit(() -> run(job));
+    }
+
+    private void run(ImportJob job) {
+        job.setStatus(STATUS_RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        logger.info("Parcel import {} ({}, {}) started at offset {}", job.getJobId(), job.getFileName(),
+                job.getFormat(), job.getStartOffset());
+        try {
+            new Pipeline(job).run();
+            job.setStatus(STATUS_COMPLETED);
+            Files.deleteIfExists(job.getFile());
+            logger.info("Parcel import {} completed: {} inserted, {} updated, {} skipped", job.getJobId(),
+                    job.getInsertedCount(), job.getUpdatedCount(), job.getSkippedCount());
+        } catch (Exception e) {
+            logger.error("Parcel import {} failed at offset {}: {}", job.getJobId(), job.getCommittedOffset(),
+                    e.getMessage(), e);
+            job.setErrorMessage(e.getMessage());
+            job.setStatus(STATUS_FAILED);
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+    }
+
+    // ==================== PIPELINE ====================
+
+    /**
+     * A parsed feature before conversion: either a GeoJSON feature node or a shapefile record
+     */
+    private static class RawFeature {
+        final long offset;
+        final JsonNode json;
+        final ShapefileStreamReader.Feature shape;
+
+        RawFeature(long offset, JsonNode json, ShapefileStreamReader.Feature shape) {
+            this.offset = offset;
+            this.json = json;
+            this.shape = shape;
+        }
+    }
+
+    /**
+     * Converted rows of one batch; endOffset is the offset right after its last feature
+     */
+    private static class ConvertedBatch {
+        final long endOffset;
+        final List<String[]> rows;
+        final int skipped;
+        final int geometryKeyed;
+
+        ConvertedBatch(long endOffset, List<String[]> rows, int skipped, int geometryKeyed) {
+            this.endOffset = endOffset;
+            this.rows = rows;
+            this.skipped = skipped;
+            this.geometryKeyed = geometryKeyed;
+        }
+    }
+
+    /**
+     * Parse -> convert (fork-join, in flight) -> write (in order) for one job run
+     */
+    private class Pipeline {
+        private final ImportJob job;
+        private final Deque<CompletableFuture<ConvertedBatch>> pending = new ArrayDeque<>();
+        private final String scrapedAt = LocalDateTime.now().toString();
+        private List<RawFeature> batch = new ArrayList<>();
+        private long offset;
+
+        Pipeline(ImportJob job) {
+            this.job = job;
+        }
+
+        void run() throws Exception {
+            try {
+                Predicate<RawFeature> sink = this::accept;
+                switch (job.getFormat()) {
+                    case FORMAT_SHAPEFILE:
+                        try (ZipFile zip = new ZipFile(job.getFile().toFile())) {
+                            shapefileReader.read(zip, feature -> sink.test(new RawFeature(offset, null, feature)));
+                        }
+                        break;
+                    default:
+                        try (InputStream in = new RecordSeparatorFilter(
+                                new BufferedInputStream(Files.newInputStream(job.getFile()), 1 << 16))) {
+                            readGeoJson(in, node -> sink.test(new RawFeature(offset, node, null)));
+                        }
+                }
+                dispatch(offset);
+                while (!pending.isEmpty()) {
+                    write(pending.removeFirst().join());
+                }
+            } finally {
+                pending.forEach(future -> future.cancel(true));
+            }
+        }
+
+        private boolean accept(RawFeature feature) {
+            offset++;
+            job.setReadCount(offset);
+            if (feature.offset < job.getStartOffset()) {
+                return true;
+            }
+            batch.add(feature);
+            if (batch.size() >= Math.max(batchSize, 1)) {
+                dispatch(offset);
+            }
+            return true;
+        }
+
+        private void dispatch(long endOffset) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<RawFeature> features = batch;
+            batch = new ArrayList<>(Math.max(batchSize, 1));
+            // parallelStream inside the pool's task runs on the pool's own workers
+            pending.addLast(CompletableFuture.supplyAsync(() -> {
+                List<String[]> rows = features.parallelStream()
+                        .map(feature -> toRow(feature, job, scrapedAt))
+                        .toList();
+                List<String[]> kept = new ArrayList<>(rows.size());
+                int geometryKeyed = 0;
+                for (String[] row : rows) {
+                    if (row != null) {
+                        kept.add(row);
+                        if (row[COL_PARCEL_ID].startsWith(GEOMETRY_KEY_PREFIX)) {
+                            geometryKeyed++;
+                        }
+                    }
+                }
+                return new ConvertedBatch(endOffset, kept, rows.size() - kept.size(), geometryKeyed);
+            }, workers));
+            // Parsing pauses while the writer catches up, bounding memory
+            while (pending.size() > Math.max(maxPendingBatches, 1)) {
+                write(pending.removeFirst().join());
+            }
+        }
+
+        private void write(ConvertedBatch converted) {
+            long[] counts = converted.rows.isEmpty() ? new long[2] : writeBatch(converted.rows);
+            job.setInsertedCount(job.getInsertedCount() + counts[0]);
+            job.setUpdatedCount(job.getUpdatedCount() + counts[1]);
+            job.setSkippedCount(job.getSkippedCount() + converted.skipped);
+            job.setGeometryKeyedCount(job.getGeometryKeyedCount() + converted.geometryKeyed);
+            job.setCommittedOffset(converted.endOffset);
+        }
+    }
+
+    // ==================== READING ====================
+
+    /**
+     * Stream features out of a FeatureCollection, or a sequence of root-level features
+     */
+    private void readGeoJson(InputStream in, Predicate<JsonNode> sink) throws IOException {
+        try (JsonParser parser = MAPPER.createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                // Root object: stream "features" in place, keep the other (small) fields
+                ObjectNode root = MAPPER.createObjectNode();
+                boolean collection = false;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("features".equals(field) && value == JsonToken.START_ARRAY) {
+                        collection = true;
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            if (!sink.test(parser.readValueAsTree())) {
+                                return;
+                            }
+                        }
+                    } else {
+                        root.set(field, parser.readValueAsTree());
+                    }
+                }
+                if (!collection && "Feature".equals(root.path("type").asText()) && !sink.test(root)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps the RFC 8142 record separator to whitespace so GeoJSON text sequences parse as plain JSON
+     */
+    private static class RecordSeparatorFilter extends FilterInputStream {
+        RecordSeparatorFilter(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            return b == 0x1E ? ' ' : b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            for (int i = off; i < off + n; i++) {
+                if (b[i] == 0x1E) {
+                    b[i] = ' ';
+                }
+            }
+            return n;
+        }
+    }
+
+    static String detectFormat(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".zip")) {
+            return FORMAT_SHAPEFILE;
+        }
+        if (name.endsWith(".geojsonl") || name.endsWith(".geojsons") || name.endsWith(".geojsonseq")
+                || name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return FORMAT_GEOJSON_SEQ;
+        }
+        if (name.endsWith(".geojson") || name.endsWith(".json")) {
+            return FORMAT_GEOJSON;
+        }
+        return null;
+    }
+
+    // ==================== CONVERSION (worker threads) ====================
+
+    /**
+     * One staging row (text values, COLUMNS order); null when the feature has no polygon
+     */
+    private static String[] toRow(RawFeature feature, ImportJob job, String scrapedAt) {
+        Geometry geometry;
+        String boundaryGeojson;
+        Map<String, Object> properties = new HashMap<>();
+        String featureId = null;
+        if (feature.json != null) {
+            JsonNode geometryNode = feature.json.get("geometry");
+            geometry = ZoneGeometryUtils.fromGeoJson(geometryNode);
+            boundaryGeojson = geometryNode != null ? geometryNode.toString() : null;
+            Iterator<Map.Entry<String, JsonNode>> fields = feature.json.path("properties").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode value = field.getValue();
+                properties.put(field.getKey(), value.isNull() ? null : value.isValueNode() ? value.asText() : null);
+            }
+            JsonNode id = feature.json.get("id");
+            featureId = id != null && !id.isNull() ? id.asText() : null;
+        } else {
+            geometry = feature.shape.getGeometry();
+            boundaryGeojson = ZoneGeometryUtils.toGeoJson(geometry);
+            properties.putAll(feature.shape.getProperties());
+        }
+
+        MultiPolygon multiPolygon = ZoneGeometryUtils.toMultiPolygon(geometry);
+        if (multiPolygon == null) {
+            return null;
+        }
+
+        String[] row = new String[COLUMNS.length];
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            String column = ATTRIBUTE_COLUMNS.get(normalize(property.getKey()));
+            if (column != null && property.getValue() != null) {
+                row[indexOf(column)] = normalizeValue(column, property.getValue().toString());
+            }
+        }
+        if (row[COL_PARCEL_ID] == null) {
+            row[COL_PARCEL_ID] = featureId;
+        }
+        if (row[COL_PARCEL_ID] != null && row[COL_PARCEL_ID].length() > 64) {
+            row[COL_PARCEL_ID] = row[COL_PARCEL_ID].substring(0, 64);
+        }
+        if (row[COL_DISTRICT] == null) {
+            row[COL_DISTRICT] = job.getDistrict();
+        }
+        if (row[COL_PROVINCE] == null) {
+            row[COL_PROVINCE] = job.getProvince();
+        }
+        row[COL_SOURCE] = job.getSource();
+        row[COL_SCRAPED_AT] = scrapedAt;
+
+        // Dataset area wins; otherwise the area on the sphere
+        if (row[COL_AREA_SQM] == null) {
+            row[COL_AREA_SQM] = BigDecimal.valueOf(ZoneGeometryUtils.geodesicAreaSqm(multiPolygon))
+                    .setScale(2, RoundingMode.HALF_UP).toPlainString();
+        }
+        Point center = multiPolygon.getCentroid();
+        row[COL_CENTER_LAT] = BigDecimal.valueOf(center.getY()).setScale(7, RoundingMode.HALF_UP).toPlainString();
+        row[COL_CENTER_LNG] = BigDecimal.valueOf(center.getX()).setScale(7, RoundingMode.HALF_UP).toPlainString();
+        row[COL_BOUNDARY] = boundaryGeojson;
+        byte[] ewkb = new WKBWriter(2, ByteOrderValues.LITTLE_ENDIAN, true).write(multiPolygon);
+        row[COL_GEOM] = WKBWriter.toHex(ewkb);
+        if (row[COL_PARCEL_ID] == null) {
+            // Same geometry, same key: a re-import or resume updates the row instead of duplicating it
+            row[COL_PARCEL_ID] = GEOMETRY_KEY_PREFIX + sha1Hex(ewkb);
+        }
+        return row;
+    }
+
+    private static String sha1Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalizeValue(String column, String value) {
+        String text = value.trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        for (String integerColumn : INTEGER_COLUMNS) {
+            if (integerColumn.equals(column)) {
+                try {
+                    return new BigDecimal(text).setScale(0, RoundingMode.HALF_UP).toBigIntegerExact().toString();
+                } catch (ArithmeticException | NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        for (String decimalColumn : DECIMAL_COLUMNS) {
+            if (decimalColumn.equals(column)) {
+                try {
+                    return new BigDecimal(text).setScale(2, RoundingMode.HALF_UP).toPlainString();
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return text;
+    }
+
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(column);
+    }
+
+    private static Map<String, String> buildAttributeColumns() {
+        Map<String, String> map = new HashMap<>();
+        // Column names in snake_case and camelCase (as exported from our own tables)
+        for (String column : COLUMNS) {
+            map.put(normalize(column), column);
+        }
+        // Common iLIS / WFS attribute names
+        map.put("fid", "object_id");
+        map.put("mathua", "parcel_id");
+        map.put("thuadatid", "parcel_id");
+        map.put("matoban", "map_sheet_id");
+        map.put("sohieutoban", "map_sheet_number");
+        map.put("sotobando", "map_sheet_number");
+        map.put("sothututhua", "parcel_number");
+        map.put("sothua", "parcel_number");
+        map.put("sothututh", "parcel_number"); // DBF names are cut to 10 characters
+        map.put("dientich", "area_sqm");
+        map.put("dientichphaply", "legal_area_sqm");
+        map.put("dientichpl", "legal_area_sqm");
+        map.put("kyhieumucdich", "land_use_code");
+        map.put("loaidat", "land_use_code");
+        map.put("tenmucdich", "land_use_name");
+        map.put("diachi", "address");
+        map.put("maxa", "admin_unit_code");
+        map.put("tenxa", "admin_unit_name");
+        map.put("huyen", "district");
+        map.put("tinh", "province");
+        // Never taken from attributes
+        map.remove("geom");
+        map.remove("boundarygeojson");
+        map.remove("centerlat");
+        map.remove("centerlng");
+        map.remove("source");
+        map.remove("scrapedat");
+        return map;
+    }
+
+    // ==================== WRITING ====================
+
+    /**
+     * COPY one batch into staging and upsert it by parcel_id in one transaction.
+     *
+     * @return { inserted, updated }
+     */
+    private long[] writeBatch(List<String[]> rows) {
+        return batchTransaction.execute(status -> jdbcTemplate.execute((ConnectionCallback<long[]>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_STAGING_SQL);
+                connection.unwrap(PGConnection.class).getCopyAPI()
+                        .copyIn(COPY_SQL, new StringReader(toCsv(rows)));
+                long updated = statement.executeUpdate(UPDATE_SQL);
+                long inserted = statement.executeUpdate(INSERT_SQL);
+                return new long[] { inserted, updated };
+            } catch (IOException e) {
+                throw new IllegalStateException("COPY failed: " + e.getMessage(), e);
+            }
+        }));
+    }
+
+    private static String toCsv(List<String[]> rows) {
+        StringBuilder sb = new StringBuilder(rows.size() * 1024);
+        long seq = 0;
+        for (String[] row : rows) {
+            sb.append(seq++);
+            for (String value : row) {
+                sb.append(',');
+                if (value != null) {
+                    sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String updateAssignments() {
+        List<String> sets = new ArrayList<>();
+        for (String column : COLUMNS) {
+            if (column.equals("parcel_id")) {
+                continue;
+            }
+            // Attributes missing from the dump keep their stored value
+            sets.add(column + " = COALESCE(s." + column + ", p." + column + ")");
+        }
+        return String.join(", ", sets);
+    }
+}
@@ -0,0 +1,256 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.LandParcel;
+import com.agriplanner.repository.LandParcelRepository;
+import com.fasterxml.jackson.databind.util.RawValue;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Level-of-detail, keyset-paged parcel viewports (thửa đất theo mức chi tiết, phân trang)
+ *
+ * Zoomed out a viewport can hold hundreds of thousands of parcels, so the representation
+ * shrinks with zoom: centroids, then outlines simplified to about a pixel, then full rows.
+ * Pages follow the Hilbert key of each parcel centre (then id), so consecutive pages cover
+ * compact areas, and every page is capped; the opaque cursor resumes after the last row.
+ * Rows without a Hilbert key or geometry yet (not backfilled) follow as a tail ordered by id.
+ */
+@Service
+public class LandParcelViewportService {
+
+    public static final String LOD_POINT = "point";
+    public static final String LOD_OUTLINE = "outline";
+    public static final String LOD_FULL = "full";
+
+    // Cursor key of the tail pages; real keys use 62 bits
+    private static final long TAIL_KEY = Long.MAX_VALUE;
+
+    private final LandParcelRepository landParcelRepository;
+    private final BoundaryResponseMapper boundaryMapper;
+
+    // Hard cap per page; requested limits are clamped to it
+    @Value("${land-parcel.viewport.max-rows:2000}")
+    private int maxRows;
+
+    // Centroids are tiny, so point pages may be this many times larger
+    @Value("${land-parcel.viewport.point-rows-factor:10}")
+    private int pointRowsFactor;
+
+    // zoom <= point-max-zoom: centroids; <= outline-max-zoom: simplified outlines; above: full
+    @Value("${land-parcel.viewport.point-max-zoom:14}")
+    private int pointMaxZoom;
+
+    @Value("${land-parcel.viewport.outline-max-zoom:16}")
+    private int outlineMaxZoom;
+
+    public LandParcelViewportService(LandParcelRepository landParcelRepository,
+            BoundaryResponseMapper boundaryMapper) {
+        this.landParcelRepository = landParcelRepository;
+        this.boundaryMapper = boundaryMapper;
+    }
+
+    /**
+     * One page of a viewport
+     */
+    @Data
+    public static class ViewportPage {
+        private String lod;
+        private Object items;
+        private int count;
+        private int limit;
+        private boolean hasMore;
+        private String nextCursor;
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("lod", lod);
+            map.put("count", count);
+            map.put("limit", limit);
+            map.put("hasMore", hasMore);
+            map.put("nextCursor", nextCursor);
+            map.put("items", items);
+            return map;
+        }
+    }
+
+    // Rows of one page: keyset rows first, then tail rows
+    private record Rows<T>(List<T> rows, int keyed) {
+    }
+
+    @FunctionalInterface
+    private interface KeysetQuery<T> {
+        List<T> fetch(long afterKey, long afterId, int limit);
+    }
+
+    @FunctionalInterface
+    private interface TailQuery<T> {
+        List<T> fetch(long afterId, int limit);
+    }
+
+    public String lodForZoom(Integer zoom) {
+        if (zoom == null || zoom > outlineMaxZoom) {
+            return LOD_FULL;
+        }
+        return zoom <= pointMaxZoom ? LOD_POINT : LOD_OUTLINE;
+    }
+
+    /**
+     * Fetch one page of the viewport at the detail level for the zoom (null zoom = full rows)
+     *
+     * @throws IllegalArgumentException for a malformed cursor
+     */
+    public ViewportPage getPage(double swLat, double swLng, double neLat, double neLng, Integer zoom,
+            String cursor, Integer limit, String geometry) {
+        String lod = lodForZoom(zoom);
+        int cap = LOD_POINT.equals(lod) ? maxRows * Math.max(pointRowsFactor, 1) : maxRows;
+        int pageSize = limit != null && limit > 0 ? Math.min(limit, cap) : cap;
+        long[] after = decodeCursor(cursor);
+
+        ViewportPage page = new ViewportPage();
+        page.setLod(lod);
+        page.setLimit(pageSize);
+        // One extra row tells whether another page exists
+        int fetch = pageSize + 1;
+        long[] last;
+        switch (lod) {
+            case LOD_POINT: {
+                Rows<Object[]> fetched = fetchRows(after, fetch,
+                        (key, id, n) -> landParcelRepository.findCentroidPageInEnvelope(swLat, swLng, neLat, neLng,
+                                key, id, n),
+                        (id, n) -> landParcelRepository.findCentroidTailPageInEnvelope(swLat, swLng, neLat, neLng,
+                                id, n));
+                List<Object[]> rows = fetched.rows();
+                page.setHasMore(rows.size() > pageSize);
+                rows = trim(rows, pageSize);
+                List<Map<String, Object>> items = new ArrayList<>(rows.size());
+                for (Object[] r : rows) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("id", r[0]);
+                    item.put("parcelId", r[2]);
+                    item.put("landUseCode", r[3]);
+                    item.put("lat", r[4]);
+                    item.put("lng", r[5]);
+                    items.add(item);
+                }
+                page.setItems(items);
+                page.setCount(items.size());
+                last = lastKey(rows, fetched.keyed(), LandParcelViewportService::keyOf);
+                break;
+            }
+            case LOD_OUTLINE: {
+                double tolerance = pixelDegrees(zoom);
+                Rows<Object[]> fetched = fetchRows(after, fetch,
+                        (key, id, n) -> landParcelRepository.findOutlinePageInEnvelope(swLat, swLng, neLat, neLng,
+                                tolerance, key, id, n),
+                        (id, n) -> landParcelRepository.findOutlineTailPageInEnvelope(swLat, swLng, neLat, neLng,
+                                tolerance, id, n));
+                List<Object[]> rows = fetched.rows();
+                page.setHasMore(rows.size() > pageSize);
+                rows = trim(rows, pageSize);
+                List<Map<String, Object>> items = new ArrayList<>(rows.size());
+                for (Object[] r : rows) {
+                    Map<String, Object> item = new LinkedHashMap<>();
+                    item.put("id", r[0]);
+                    item.put("parcelId", r[2]);
+                    item.put("mapSheetNumber", r[3]);
+                    item.put("parcelNumber", r[4]);
+                    item.put("landUseCode", r[5]);
+                    item.put("landUseName", r[6]);
+                    item.put("areaSqm", r[7]);
+                    // GeoJSON from PostGIS is embedded as-is
+                    item.put("geometry", r[8] != null ? new RawValue((String) r[8]) : null);
+                    items.add(item);
+                }
+                page.setItems(items);
+                page.setCount(items.size());
+                last = lastKey(rows, fetched.keyed(), LandParcelViewportService::keyOf);
+                break;
+            }
+            default: {
+                Rows<LandParcel> fetched = fetchRows(after, fetch,
+                        (key, id, n) -> landParcelRepository.findPageInEnvelope(swLat, swLng, neLat, neLng,
+                                key, id, n),
+                        (id, n) -> landParcelRepository.findTailPageInEnvelope(swLat, swLng, neLat, neLng, id, n));
+                List<LandParcel> rows = fetched.rows();
+                page.setHasMore(rows.size() > pageSize);
+                rows = trim(rows, pageSize);
+                page.setItems(boundaryMapper.landParcels(rows, geometry));
+                page.setCount(rows.size());
+                last = lastKey(rows, fetched.keyed(), p -> new long[] {
+                        p.getHilbertKey() != null ? p.getHilbertKey() : TAIL_KEY, p.getId() });
+            }
+        }
+        page.setNextCursor(page.isHasMore() && last != null ? encodeCursor(last[0], last[1]) : null);
+        return page;
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * Keyset rows after the cursor, topped up from the tail once they run out
+     */
+    private static <T> Rows<T> fetchRows(long[] after, int fetch, KeysetQuery<T> keyset, TailQuery<T> tail) {
+        boolean inTail = after[0] == TAIL_KEY;
+        List<T> rows = new ArrayList<>(inTail ? List.of() : keyset.fetch(after[0], after[1], fetch));
+        int keyed = rows.size();
+        if (rows.size() < fetch) {
+            rows.addAll(tail.fetch(inTail ? after[1] : 0L, fetch - rows.size()));
+        }
+        return new Rows<>(rows, keyed);
+    }
+
+    /**
+     * Cursor key of the last row of a trimmed page; tail rows resume by id only
+     */
+    private static <T> long[] lastKey(List<T> rows, int keyed, Function<T, long[]> key) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+        long[] last = key.apply(rows.get(rows.size() - 1));
+        return rows.size() > keyed ? new long[] { TAIL_KEY, last[1] } : last;
+    }
+
+    private static <T> List<T> trim(List<T> rows, int size) {
+        return rows.size() > size ? rows.subList(0, size) : rows;
+    }
+
+    private static long[] keyOf(Object[] row) {
+        long key = row[1] != null ? ((Number) row[1]).longValue() : TAIL_KEY;
+        return new long[] { key, ((Number) row[0]).longValue() };
+    }
+
+    // Degrees per 256px-tile pixel at the zoom, used as the simplification tolerance
+    private static double pixelDegrees(int zoom) {
+        return 360.0 / (256.0 * (1L << Math.max(0, Math.min(zoom, 30))));
+    }
+
+    static String encodeCursor(long hilbertKey, long id) {
+        String raw = hilbertKey + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * { afterKey, afterId }; the first page starts before every key
+     */
+    static long[] decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return new long[] { -1L, 0L };
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int sep = raw.indexOf(':');
+            return new long[] { Long.parseLong(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)) };
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ");
+        }
+    }
+}
@@ -1,20 +1,37 @@
 package com.agriplanner.service;
 
+import com.agriplanner.config.OutboundHttpClients;
+import com.agriplanner.service.VisionImagePreparer.PreparedImage;
+import com.agriplanner.util.MapTiles;
+import com.agriplanner.util.StreamingJsonBody;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service phân tích bản đồ thổ nhưỡng và quy hoạch sử dụng AI Vision
@@ -39,9 +56,45 @@ public class MapAnalysisAIService {
     @Value("${ai.gemini.model:gemini-1.5-pro}")
     private String geminiModel;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final OutboundHttpClients httpClients;
+    private final VisionImagePreparer imagePreparer;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // ==================== TILING ====================
+    // Scans whose longest side exceeds this are analysed as overlapping tiles
+    @Value("${map-analysis.tiling.threshold-px:4096}")
+    private int tilingThresholdPx;
+
+    @Value("${map-analysis.tiling.tile-px:2048}")
+    private int tilePx;
+
+    @Value("${map-analysis.tiling.overlap-px:160}")
+    private int tileOverlapPx;
+
+    // Decoded pixels (ARGB bytes) of one band of tiles; a wider row is cut in several bands
+    @Value("${map-analysis.tiling.band-max-bytes:134217728}")
+    private long bandMaxBytes;
+
+    // Tiles / images analysed at the same time (each holds one decoded band or image)
+    private final ExecutorService tileExecutor;
+
+    public MapAnalysisAIService(OutboundHttpClients httpClients, VisionImagePreparer imagePreparer,
+            @Value("${map-analysis.tiling.parallelism:4}") int tileParallelism) {
+        this.httpClients = httpClients;
+        this.imagePreparer = imagePreparer;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.tileExecutor = Executors.newFixedThreadPool(Math.max(1, tileParallelism), r -> {
+            Thread t = new Thread(r, "map-tile-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        tileExecutor.shutdownNow();
+    }
+
     // API Endpoints
     private static final String GITHUB_API_URL = "https://models.inference.ai.azure.com/chat/completions";
     private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/%s:generateContent?key=%s";
@@ -114,52 +167,379 @@ public class MapAnalysisAIService {
      */
     public Map<String, Object> analyzeMapImage(File imageFile, String mapType) {
         logger.info("Starting AI analysis for map: {} (type: {})", imageFile.getName(), mapType);
+        return analyzeImages(List.of(imageFile), mapType).get(0);
+    }
 
-        try {
-            // Convert image to base64
-            byte[] imageBytes = Files.readAllBytes(imageFile.toPath());
-            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-            String mimeType = getMimeType(imageFile.getName());
-
-            // Try GitHub Models first
-            if (isConfigured(githubToken)) {
-                try {
-                    Map<String, Object> result = analyzeWithGitHub(base64Image, mimeType, mapType);
-                    if (result != null && !result.isEmpty()) {
-                        logger.info("GitHub Models analysis successful");
-                        return result;
-                    }
-                } catch (Exception e) {
-                    logger.warn("GitHub Models failed: {}, trying Gemini backup", e.getMessage());
+    /**
+     * One provider round (GitHub Models, then Gemini) for an image or one cut tile of it;
+     * skips the providers not yet called once the analysis is cancelled
+     */
+    private Map<String, Object> analyzeWithProviders(File imageFile, String mapType, AtomicBoolean cancelled) {
+        if (stopped(cancelled)) {
+            return Collections.emptyMap();
+        }
+        // Each provider gets a copy downscaled to the resolution it actually uses
+        // Try GitHub Models first
+        if (isConfigured(githubToken)) {
+            try (PreparedImage image = imagePreparer.prepare(imageFile,
+                    VisionImagePreparer.MAX_EDGE_GPT4O_HIGH)) {
+                Map<String, Object> result = analyzeWithGitHub(image, mapType);
+                if (result != null && !result.isEmpty()) {
+                    logger.info("GitHub Models analysis successful");
+                    return result;
+                }
+            } catch (Exception e) {
+                logger.warn("GitHub Models failed: {}, trying Gemini backup", e.getMessage());
+            }
+        }
+
+        // Fallback to Gemini
+        if (stopped(cancelled)) {
+            return Collections.emptyMap();
+        }
+        if (isConfigured(geminiApiKey)) {
+            try (PreparedImage image = imagePreparer.prepare(imageFile, imagePreparer.getGeminiMaxEdge())) {
+                Map<String, Object> result = analyzeWithGemini(image, mapType);
+                if (result != null && !result.isEmpty()) {
+                    logger.info("Gemini analysis successful");
+                    return result;
                 }
+            } catch (Exception e) {
+                logger.error("Gemini also failed: {}", e.getMessage());
             }
+        }
+
+        logger.warn("All AI providers failed, returning empty result");
+        return Collections.emptyMap();
+    }
+
+    // ==================== TILED / PARALLEL ANALYSIS ====================
+
+    private record ImagePlan(File file, int width, int height, List<MapTiles.Tile> tiles) {
+        boolean tiled() {
+            return tiles != null;
+        }
+    }
 
-            // Fallback to Gemini
-            if (isConfigured(geminiApiKey)) {
-                try {
-                    Map<String, Object> result = analyzeWithGemini(base64Image, mimeType, mapType);
-                    if (result != null && !result.isEmpty()) {
-                        logger.info("Gemini analysis successful");
-                        return result;
+    /**
+     * Analyse images (very large ones as overlapping tiles) with bounded parallelism
+     *
+     * @return one AI result per image, in input order (empty map when analysis failed)
+     */
+    private List<Map<String, Object>> analyzeImages(List<File> imageFiles, String mapType) {
+        List<ImagePlan> plans = new ArrayList<>();
+        int units = 0;
+        for (File imageFile : imageFiles) {
+            ImagePlan plan = planImage(imageFile);
+            plans.add(plan);
+            units += plan.tiled() ? plan.tiles().size() : 1;
+        }
+
+        // Set when the caller is interrupted; tile tasks check it before each step, since
+        // CompletableFuture.cancel does not interrupt a task that is already running
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        // A single small image: no need for the pool
+        if (units == 1) {
+            return List.of(analyzeWithProviders(imageFiles.get(0), mapType, cancelled));
+        }
+
+        // Submit every image / tile before waiting so nothing blocks inside the pool
+        List<List<Future<Map<String, Object>>>> futures = new ArrayList<>();
+        for (ImagePlan plan : plans) {
+            List<Future<Map<String, Object>>> imageFutures = new ArrayList<>();
+            if (plan.tiled()) {
+                // Each band is decoded once; its tiles are analysed when the cut is done
+                for (List<MapTiles.Tile> band : bands(plan)) {
+                    CompletableFuture<List<PreparedImage>> cut = CompletableFuture.supplyAsync(
+                            () -> cutTiles(plan.file(), band, cancelled), tileExecutor);
+                    List<CompletableFuture<Map<String, Object>>> analyses = new ArrayList<>();
+                    for (int k = 0; k < band.size(); k++) {
+                        int index = k;
+                        analyses.add(cut.thenApplyAsync(
+                                images -> analyzeTile(images.get(index), mapType, cancelled), tileExecutor));
                     }
-                } catch (Exception e) {
-                    logger.error("Gemini also failed: {}", e.getMessage());
+                    imageFutures.addAll(analyses);
+                    // Tiles whose analysis was cancelled before it started still have their JPEG
+                    CompletableFuture.allOf(analyses.toArray(CompletableFuture[]::new)).whenComplete(
+                            (ignored, error) -> cut.thenAccept(images -> images.forEach(PreparedImage::close)));
                 }
+            } else {
+                imageFutures.add(tileExecutor.submit(() -> analyzeWithProviders(plan.file(), mapType, cancelled)));
             }
+            futures.add(imageFutures);
+        }
 
-            logger.warn("All AI providers failed, returning empty result");
-            return Collections.emptyMap();
+        // On the first interrupt: stop the tasks that are running and drop the ones not started
+        Runnable cancelAll = () -> {
+            if (cancelled.compareAndSet(false, true)) {
+                futures.forEach(list -> list.forEach(f -> f.cancel(true)));
+                logger.info("Map analysis interrupted, cancelling the remaining images and tiles");
+            }
+        };
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int i = 0; i < plans.size(); i++) {
+            ImagePlan plan = plans.get(i);
+            List<Map<String, Object>> unitResults = new ArrayList<>();
+            for (Future<Map<String, Object>> future : futures.get(i)) {
+                unitResults.add(awaitUnit(future, plan.file(), cancelAll));
+            }
+            results.add(plan.tiled() ? stitchTiles(plan, unitResults) : unitResults.get(0));
+        }
+        return results;
+    }
+
+    private static boolean stopped(AtomicBoolean cancelled) {
+        return cancelled.get() || Thread.currentThread().isInterrupted();
+    }
 
+    private ImagePlan planImage(File imageFile) {
+        try {
+            Dimension size = imagePreparer.dimensions(imageFile);
+            if (size != null && Math.max(size.width, size.height) > tilingThresholdPx) {
+                List<MapTiles.Tile> tiles = MapTiles.plan(size.width, size.height, tilePx, tileOverlapPx);
+                logger.info("Large map {} ({}x{}): analysing {} tiles of {} px, overlap {} px",
+                        imageFile.getName(), size.width, size.height, tiles.size(), tilePx, tileOverlapPx);
+                return new ImagePlan(imageFile, size.width, size.height, tiles);
+            }
         } catch (IOException e) {
-            logger.error("Failed to read image file: {}", e.getMessage());
+            logger.warn("Cannot read size of {}: {}", imageFile.getName(), e.getMessage());
+        }
+        return new ImagePlan(imageFile, -1, -1, null);
+    }
+
+    /**
+     * Consecutive tiles of one row, split so a decoded band stays under bandMaxBytes
+     */
+    private List<List<MapTiles.Tile>> bands(ImagePlan plan) {
+        List<List<MapTiles.Tile>> bands = new ArrayList<>();
+        List<MapTiles.Tile> band = new ArrayList<>();
+        int bandX = 0;
+        for (MapTiles.Tile tile : plan.tiles()) {
+            boolean sameRow = !band.isEmpty() && band.get(0).y() == tile.y();
+            long bytes = 4L * (tile.x() + tile.width() - bandX) * tile.height();
+            if (!band.isEmpty() && (!sameRow || bytes > bandMaxBytes)) {
+                bands.add(band);
+                band = new ArrayList<>();
+            }
+            if (band.isEmpty()) {
+                bandX = tile.x();
+            }
+            band.add(tile);
+        }
+        if (!band.isEmpty()) {
+            bands.add(band);
+        }
+        return bands;
+    }
+
+    private List<PreparedImage> cutTiles(File imageFile, List<MapTiles.Tile> band, AtomicBoolean cancelled) {
+        if (cancelled.get()) {
+            throw new CancellationException("Map analysis cancelled");
+        }
+        List<Rectangle> regions = band.stream()
+                .map(tile -> new Rectangle(tile.x(), tile.y(), tile.width(), tile.height()))
+                .toList();
+        try {
+            // Fit the larger provider edge; analyzeWithProviders shrinks further for the other one
+            return imagePreparer.prepareTiles(imageFile, regions,
+                    Math.max(VisionImagePreparer.MAX_EDGE_GPT4O_HIGH, imagePreparer.getGeminiMaxEdge()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Object> analyzeTile(PreparedImage tile, String mapType, AtomicBoolean cancelled) {
+        try (tile) {
+            return analyzeWithProviders(tile.getPath().toFile(), mapType, cancelled);
+        }
+    }
+
+    private Map<String, Object> awaitUnit(Future<Map<String, Object>> future, File imageFile, Runnable cancelAll) {
+        if (Thread.currentThread().isInterrupted()) {
+            cancelAll.run();
+            return Collections.emptyMap();
+        }
+        try {
+            Map<String, Object> result = future.get();
+            return result != null ? result : Collections.emptyMap();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll.run();
+            return Collections.emptyMap();
+        } catch (CancellationException e) {
+            return Collections.emptyMap();
+        } catch (ExecutionException e) {
+            logger.error("Error analyzing image {}: {}", imageFile.getName(), e.getCause().getMessage());
             return Collections.emptyMap();
         }
     }
 
+    /**
+     * Map tile zones (bounds in % of the tile) onto the whole image and merge the ones cut by seams
+     */
+    private Map<String, Object> stitchTiles(ImagePlan plan, List<Map<String, Object>> tileResults) {
+        double imageArea = (double) plan.width() * plan.height();
+        List<MapTiles.TileZone> tileZones = new ArrayList<>();
+        Map<String, Map<String, Object>> colorMapping = new LinkedHashMap<>();
+        int failedTiles = 0;
+
+        for (int i = 0; i < tileResults.size(); i++) {
+            Map<String, Object> result = tileResults.get(i);
+            MapTiles.Tile tile = plan.tiles().get(i);
+            if (result.isEmpty()) {
+                failedTiles++;
+                continue;
+            }
+            for (Map<String, Object> zone : jsonObjects(result.get("zones"))) {
+                Map<String, Object> bounds = jsonObject(zone.get("bounds"));
+                if (bounds == null) {
+                    continue;
+                }
+                double minX = tile.x() + clampPercent(getDouble(bounds, "minX")) / 100 * tile.width();
+                double maxX = tile.x() + clampPercent(getDouble(bounds, "maxX")) / 100 * tile.width();
+                double minY = tile.y() + clampPercent(getDouble(bounds, "minY")) / 100 * tile.height();
+                double maxY = tile.y() + clampPercent(getDouble(bounds, "maxY")) / 100 * tile.height();
+                if (maxX <= minX || maxY <= minY) {
+                    continue;
+                }
+                Geometry box = MapTiles.pixelFactory().toGeometry(new Envelope(minX, maxX, minY, maxY));
+                tileZones.add(new MapTiles.TileZone(tile, zoneKey(zone), box, zone));
+            }
+            mergeColorMapping(colorMapping, result);
+        }
+
+        List<MapTiles.MergedZone> merged = MapTiles.mergeAcrossSeams(tileZones, plan.width(), plan.height(),
+                tileOverlapPx);
+        merged.sort(Comparator.comparingDouble((MapTiles.MergedZone m) -> m.geometry().getArea()).reversed());
+
+        List<Map<String, Object>> zones = new ArrayList<>();
+        Map<String, Double> typeArea = new HashMap<>();
+        for (MapTiles.MergedZone mergedZone : merged) {
+            Map<String, Object> zone = new HashMap<>(mergedZone.primary().attributes());
+            Envelope env = mergedZone.geometry().getEnvelopeInternal();
+            Map<String, Object> bounds = new LinkedHashMap<>();
+            bounds.put("minX", round2(env.getMinX() / plan.width() * 100));
+            bounds.put("minY", round2(env.getMinY() / plan.height() * 100));
+            bounds.put("maxX", round2(env.getMaxX() / plan.width() * 100));
+            bounds.put("maxY", round2(env.getMaxY() / plan.height() * 100));
+            zone.put("bounds", bounds);
+
+            // areaPercent was relative to the tile; rescale, and drop what the overlap counted twice
+            double scaledPercent = 0;
+            double memberArea = 0;
+            for (MapTiles.TileZone member : mergedZone.members()) {
+                double tileArea = (double) member.tile().width() * member.tile().height();
+                scaledPercent += getDouble(member.attributes(), "areaPercent") * tileArea / imageArea;
+                memberArea += member.geometry().getArea();
+            }
+            double areaPercent = round2(scaledPercent * mergedZone.geometry().getArea() / memberArea);
+            zone.put("areaPercent", areaPercent);
+            zone.put("id", zones.size() + 1);
+            zone.put("tileCount", mergedZone.members().size());
+            zones.add(zone);
+
+            Object type = zone.get("type");
+            if (type != null) {
+                typeArea.merge(type.toString(), areaPercent, Double::sum);
+            }
+        }
+
+        String dominantType = typeArea.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse("Unknown");
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("zones", zones);
+        result.put("totalZones", zones.size());
+        result.put("dominantType", dominantType);
+        if (!colorMapping.isEmpty()) {
+            result.put("colorMapping", colorMapping);
+        }
+        result.put("tiled", true);
+        result.put("tileCount", plan.tiles().size());
+        result.put("failedTiles", failedTiles);
+        result.put("summary", String.format(
+                "Đã phân tích %d ô ảnh (%d lỗi), ghép được %d vùng, loại phổ biến nhất: %s",
+                plan.tiles().size(), failedTiles, zones.size(), dominantType));
+
+        logger.info("Tiled analysis of {}: {} tile zones -> {} zones ({} tiles failed)",
+                plan.file().getName(), tileZones.size(), zones.size(), failedTiles);
+        if (failedTiles == plan.tiles().size()) {
+            return Collections.emptyMap();
+        }
+        return result;
+    }
+
+    // Zones of the same zone code / type (or colour) are the ones stitched across seams
+    private String zoneKey(Map<String, Object> zone) {
+        for (String field : new String[] { "zoneCode", "type" }) {
+            Object value = zone.get(field);
+            if (value != null && !value.toString().isBlank()) {
+                return field + ":" + value.toString().trim().toLowerCase();
+            }
+        }
+        Object color = zone.get("color");
+        return color != null ? "color:" + color.toString().trim().toUpperCase() : "unknown";
+    }
+
+    private double clampPercent(double value) {
+        return Math.max(0, Math.min(100, value));
+    }
+
+    private double round2(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private void mergeColorMapping(Map<String, Map<String, Object>> colorMapping, Map<String, Object> result) {
+        Map<String, Object> colors = jsonObject(result.get("colorMapping"));
+        if (colors != null) {
+            colors.forEach((color, value) -> {
+                Map<String, Object> info = jsonObject(value);
+                if (info == null) {
+                    return;
+                }
+                if (colorMapping.containsKey(color)) {
+                    // Merge counts
+                    Map<String, Object> existing = colorMapping.get(color);
+                    existing.put("count", (int) getDouble(existing, "count") + (int) getDouble(info, "count"));
+                } else {
+                    colorMapping.put(color, info);
+                }
+            });
+        }
+    }
+
+    // A JSON object from the model's answer, or null when the value has another shape
+    private static Map<String, Object> jsonObject(Object value) {
+        if (!(value instanceof Map<?, ?> map)) {
+            return null;
+        }
+        Map<String, Object> object = new LinkedHashMap<>();
+        map.forEach((key, item) -> object.put(String.valueOf(key), item));
+        return object;
+    }
+
+    // The JSON objects of an array; other elements (and non-arrays) are skipped
+    private static List<Map<String, Object>> jsonObjects(Object value) {
+        if (!(value instanceof List<?> list)) {
+            return List.of();
+        }
+        List<Map<String, Object>> objects = new ArrayList<>(list.size());
+        for (Object item : list) {
+            Map<String, Object> object = jsonObject(item);
+            if (object != null) {
+                objects.add(object);
+            }
+        }
+        return objects;
+    }
+
     /**
      * Phân tích với GitHub Models (GPT-4o Vision)
      */
-    private Map<String, Object> analyzeWithGitHub(String base64Image, String mimeType, String mapType) {
+    private Map<String, Object> analyzeWithGitHub(PreparedImage image, String mapType) throws IOException {
         logger.debug("Calling GitHub Models API with model: {}", githubModel);
 
         HttpHeaders headers = new HttpHeaders();
@@ -196,17 +576,16 @@ public class MapAnalysisAIService {
         ObjectNode imagePart = content.addObject();
         imagePart.put("type", "image_url");
         ObjectNode imageUrl = imagePart.putObject("image_url");
-        imageUrl.put("url", "data:" + mimeType + ";base64," + base64Image);
+        imageUrl.put("url", "data:" + image.getMimeType() + ";base64," + StreamingJsonBody.PLACEHOLDER);
         imageUrl.put("detail", "high"); // High detail for map analysis
 
-        HttpEntity<String> entity = new HttpEntity<>(requestBody.toString(), headers);
-
         try {
-            ResponseEntity<String> response = restTemplate.exchange(
+            ResponseEntity<String> response = httpClients.postJson(
+                    OutboundHttpClients.PROFILE_AI_VISION,
                     GITHUB_API_URL,
-                    HttpMethod.POST,
-                    entity,
-                    String.class);
+                    headers,
+                    StreamingJsonBody.withBase64File(requestBody.toString(), StreamingJsonBody.PLACEHOLDER,
+                            image.getPath()));
 
             if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
                 return parseAIResponse(response.getBody(), "github");
@@ -222,7 +601,7 @@ public class MapAnalysisAIService {
     /**
      * Phân tích với Google Gemini (Backup)
      */
-    private Map<String, Object> analyzeWithGemini(String base64Image, String mimeType, String mapType) {
+    private Map<String, Object> analyzeWithGemini(PreparedImage image, String mapType) throws IOException {
         logger.debug("Calling Gemini API with model: {}", geminiModel);
 
         String url = String.format(GEMINI_API_URL, geminiModel, geminiApiKey);
@@ -245,22 +624,21 @@ public class MapAnalysisAIService {
         // Image part
         ObjectNode imagePart = parts.addObject();
         ObjectNode inlineData = imagePart.putObject("inline_data");
-        inlineData.put("mime_type", mimeType);
-        inlineData.put("data", base64Image);
+        inlineData.put("mime_type", image.getMimeType());
+        inlineData.put("data", StreamingJsonBody.PLACEHOLDER);
 
         // Generation config
         ObjectNode generationConfig = requestBody.putObject("generationConfig");
         generationConfig.put("temperature", 0.2);
         generationConfig.put("maxOutputTokens", 4096);
 
-        HttpEntity<String> entity = new HttpEntity<>(requestBody.toString(), headers);
-
         try {
-            ResponseEntity<String> response = restTemplate.exchange(
+            ResponseEntity<String> response = httpClients.postJson(
+                    OutboundHttpClients.PROFILE_AI_VISION,
                     url,
-                    HttpMethod.POST,
-                    entity,
-                    String.class);
+                    headers,
+                    StreamingJsonBody.withBase64File(requestBody.toString(), StreamingJsonBody.PLACEHOLDER,
+                            image.getPath()));
 
             if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
                 return parseAIResponse(response.getBody(), "gemini");
@@ -383,22 +761,6 @@ public class MapAnalysisAIService {
         return response.trim();
     }
 
-    /**
-     * Get MIME type from filename
-     */
-    private String getMimeType(String filename) {
-        String lower = filename.toLowerCase();
-        if (lower.endsWith(".png"))
-            return "image/png";
-        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg"))
-            return "image/jpeg";
-        if (lower.endsWith(".gif"))
-            return "image/gif";
-        if (lower.endsWith(".webp"))
-            return "image/webp";
-        return "image/png"; // default
-    }
-
     /**
      * Check if a config value is set
      */
@@ -517,13 +879,14 @@ public class MapAnalysisAIService {
         List<Map<String, Object>> allZones = new ArrayList<>();
         Map<String, Map<String, Object>> colorMapping = new LinkedHashMap<>();
 
-        // Analyze each image
+        // Analyze the images (and tiles of large ones) in parallel, then merge in input order
+        List<Map<String, Object>> results = analyzeImages(imageFiles, mapType);
         for (int i = 0; i < imageFiles.size(); i++) {
             File imageFile = imageFiles.get(i);
-            logger.info("Analyzing image {}/{}: {}", i + 1, imageFiles.size(), imageFile.getName());
+            logger.info("Merging image {}/{}: {}", i + 1, imageFiles.size(), imageFile.getName());
 
             try {
-                Map<String, Object> result = analyzeMapImage(imageFile, mapType);
+                Map<String, Object> result = results.get(i);
 
                 if (result != null && !result.isEmpty()) {
                     // Extract zones
@@ -539,21 +902,7 @@ public class MapAnalysisAIService {
                     }
 
                     // Merge color mapping
-                    @SuppressWarnings("rawtypes")
-                    Map<String, Map<String, Object>> colors = (Map) result.get("colorMapping");
-                    if (colors != null) {
-                        colors.forEach((color, info) -> {
-                            if (colorMapping.containsKey(color)) {
-                                // Merge counts
-                                Map<String, Object> existing = colorMapping.get(color);
-                                int existingCount = (int) existing.getOrDefault("count", 0);
-                                int newCount = (int) info.getOrDefault("count", 0);
-                                existing.put("count", existingCount + newCount);
-                            } else {
-                                colorMapping.put(color, info);
-                            }
-                        });
-                    }
+                    mergeColorMapping(colorMapping, result);
                 }
             } catch (Exception e) {
                 logger.error("Error analyzing image {}: {}", imageFile.getName(), e.getMessage());
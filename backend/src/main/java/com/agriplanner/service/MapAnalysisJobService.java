@@ -0,0 +1,593 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.MapAnalysisJob;
+import com.agriplanner.repository.MapAnalysisJobRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable, prioritised queue for map-image analyses (hàng đợi phân tích bản đồ)
+ *
+ * Jobs are stored in map_analysis_jobs before they are queued, so queued and interrupted jobs
+ * are picked up again after a restart. A fixed number of workers take interactive jobs before
+ * bulk ones; when the queue is full {@link #submit} throws {@link QueueFullException} with a
+ * retry hint instead of queueing without bound. Cancelling a running job flags it (checked at
+ * every progress step) and interrupts its worker, which kills a running Python job; cancelling a
+ * job that has not started also deletes its uploaded image. Queue
+ * position and ETA come from per-step duration averages of earlier jobs.
+ */
+@Service
+public class MapAnalysisJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MapAnalysisJobService.class);
+
+    public static final String KIND_AI = "ai";
+    public static final String KIND_GEOREF = "georef";
+
+    public static final int PRIORITY_INTERACTIVE = 0;
+    public static final int PRIORITY_BULK = 1;
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<LinkedHashMap<String, Long>> TIMINGS_TYPE = new TypeReference<>() {
+    };
+    // Weight of the newest run in the per-step moving average
+    private static final double EWMA_ALPHA = 0.3;
+    private static final int TIMING_SEED_JOBS = 20;
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private final MapAnalysisJobRepository jobRepository;
+
+    private final PriorityBlockingQueue<Queued> queue = new PriorityBlockingQueue<>(16,
+            Comparator.comparingInt((Queued q) -> q.priority).thenComparingLong(q -> q.seq));
+    private final Object queueLock = new Object();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, JobContext> running = new ConcurrentHashMap<>();
+    // Cancelled after a worker took them off the queue but before it registered them (guarded by queueLock)
+    private final Set<String> cancelRequested = ConcurrentHashMap.newKeySet();
+    private final Map<String, JobHandler> handlers = new ConcurrentHashMap<>();
+    // kind -> step -> average millis (insertion order = step order)
+    private final Map<String, Map<String, Double>> stepAverages = new ConcurrentHashMap<>();
+    private final int workerCount;
+    private final ExecutorService workers;
+    private volatile boolean stopping;
+
+    @Value("${map-analysis.queue.capacity:20}")
+    private int capacity;
+
+    // Bulk jobs may only fill part of the queue, so interactive uploads still get in
+    @Value("${map-analysis.queue.bulk-capacity:10}")
+    private int bulkCapacity;
+
+    @Value("${map-analysis.default-duration-seconds:120}")
+    private long defaultDurationSeconds;
+
+    @Value("${map-analysis.max-attempts:2}")
+    private int maxAttempts;
+
+    public MapAnalysisJobService(MapAnalysisJobRepository jobRepository,
+            @Value("${map-analysis.workers:2}") int workerCount) {
+        this.jobRepository = jobRepository;
+        this.workerCount = Math.max(1, workerCount);
+        this.workers = Executors.newFixedThreadPool(this.workerCount, r -> {
+            Thread t = new Thread(r, "map-analysis-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs one job; returns the result map ("success" = false marks the job failed)
+     */
+    @FunctionalInterface
+    public interface JobHandler {
+        Map<String, Object> run(MapAnalysisJob job, JobContext context) throws Exception;
+    }
+
+    /**
+     * Queue is full - the caller should answer 429 with the hint
+     */
+    @Getter
+    public static class QueueFullException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int queued;
+        private final long retryAfterSeconds;
+
+        public QueueFullException(int queued, long retryAfterSeconds) {
+            super("Hàng đợi phân tích đang đầy (" + queued + " công việc), vui lòng thử lại sau khoảng "
+                    + retryAfterSeconds + " giây");
+            this.queued = queued;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    private static final class Queued {
+        final String id;
+        final String kind;
+        final int priority;
+        final long seq;
+
+        Queued(String id, String kind, int priority, long seq) {
+            this.id = id;
+            this.kind = kind;
+            this.priority = priority;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * State of a running job, handed to its handler
+     */
+    public final class JobContext {
+        private final String jobId;
+        private final String kind;
+        private final long startedAt = System.currentTimeMillis();
+        private final Map<String, Long> stepStarted = new LinkedHashMap<>();
+        private final Map<String, Long> stepTimings = new LinkedHashMap<>();
+        private volatile boolean cancelled;
+        private volatile Thread thread;
+        private volatile String currentStep;
+
+        JobContext(String jobId, String kind) {
+            this.jobId = jobId;
+            this.kind = kind;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Record a progress event and stop the job here if it was cancelled
+         *
+         * @param status "running" / "processing" starts a step; any other status ends it
+         */
+        public void onProgress(String step, String status) {
+            if (cancelled) {
+                throw new CancellationException("Đã hủy phân tích");
+            }
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if ("running".equals(status) || "processing".equals(status)) {
+                    stepStarted.putIfAbsent(step, now);
+                    currentStep = step;
+                } else {
+                    // A step may report more than once (e.g. "completed" after "warning")
+                    Long start = stepStarted.remove(step);
+                    if (start != null) {
+                        stepTimings.merge(step, now - start, Long::sum);
+                    } else {
+                        stepTimings.putIfAbsent(step, 0L);
+                    }
+                }
+            }
+        }
+
+        synchronized long remainingMillis() {
+            Map<String, Double> averages = stepAverages.get(kind);
+            long elapsed = System.currentTimeMillis() - startedAt;
+            if (averages == null || averages.isEmpty()) {
+                return Math.max(0, defaultDurationSeconds * 1000 - elapsed);
+            }
+            long now = System.currentTimeMillis();
+            double remaining = 0;
+            for (Map.Entry<String, Double> step : averages.entrySet()) {
+                if (stepTimings.containsKey(step.getKey())) {
+                    continue;
+                }
+                Long start = stepStarted.get(step.getKey());
+                remaining += start != null ? Math.max(0, step.getValue() - (now - start)) : step.getValue();
+            }
+            return (long) remaining;
+        }
+
+        synchronized Map<String, Long> timings() {
+            return new LinkedHashMap<>(stepTimings);
+        }
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    public void registerHandler(String kind, JobHandler handler) {
+        handlers.put(kind, handler);
+    }
+
+    /**
+     * Re-queue jobs left over from the previous run, seed the step estimates, start the workers
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            for (String kind : List.of(KIND_AI, KIND_GEOREF)) {
+                List<MapAnalysisJob> recent = new ArrayList<>(
+                        jobRepository.findRecentCompleted(kind, PageRequest.of(0, TIMING_SEED_JOBS)));
+                // Oldest first, so the newest runs weigh most
+                for (int i = recent.size() - 1; i >= 0; i--) {
+                    recordTimings(kind, parseTimings(recent.get(i).getStepTimings()));
+                }
+            }
+            int recovered = 0;
+            for (MapAnalysisJob job : jobRepository
+                    .findByStatusInOrderByPriorityAscCreatedAtAsc(List.of(STATUS_QUEUED, STATUS_RUNNING))) {
+                if (STATUS_RUNNING.equals(job.getStatus()) && job.getAttempts() >= maxAttempts) {
+                    finish(job, STATUS_FAILED, "Bị gián đoạn khi khởi động lại máy chủ", null);
+                } else if (job.getImagePath() == null || !new File(job.getImagePath()).isFile()) {
+                    finish(job, STATUS_FAILED, "Không còn file ảnh để phân tích", null);
+                } else {
+                    job.setStatus(STATUS_QUEUED);
+                    jobRepository.save(job);
+                    queue.add(new Queued(job.getId(), job.getKind(), job.getPriority(), sequence.incrementAndGet()));
+                    recovered++;
+                }
+            }
+            if (recovered > 0) {
+                logger.info("Re-queued {} map analysis jobs from the previous run", recovered);
+            }
+        } catch (Exception e) {
+            logger.warn("Map analysis job recovery failed: {}", e.getMessage());
+        }
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::workLoop);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        // Interrupted jobs stay RUNNING in the table and are re-queued on the next start
+        workers.shutdownNow();
+    }
+
+    // ==================== SUBMIT / CANCEL ====================
+
+    /**
+     * Throw {@link QueueFullException} if a job of this priority would not be accepted now
+     */
+    public void checkCapacity(int priority) {
+        int queued = queue.size();
+        int limit = priority == PRIORITY_BULK ? Math.min(bulkCapacity, capacity) : capacity;
+        if (queued >= limit) {
+            throw new QueueFullException(queued, Math.max(1, nextSlotMillis() / 1000));
+        }
+    }
+
+    /**
+     * Store and queue a job (status QUEUED)
+     */
+    public MapAnalysisJob submit(MapAnalysisJob job) {
+        synchronized (queueLock) {
+            checkCapacity(job.getPriority());
+            job.setStatus(STATUS_QUEUED);
+            job.setCreatedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            queue.add(new Queued(job.getId(), job.getKind(), job.getPriority(), sequence.incrementAndGet()));
+        }
+        logger.info("Queued map analysis {} ({}, priority {}), {} waiting", job.getId(), job.getKind(),
+                job.getPriority(), queue.size());
+        return job;
+    }
+
+    /**
+     * Cancel a queued or running job; false if it is unknown or already finished
+     */
+    public boolean cancel(String jobId) {
+        synchronized (queueLock) {
+            JobContext context = running.get(jobId);
+            if (context != null) {
+                context.cancelled = true;
+                Thread thread = context.thread;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+                logger.info("Cancelling running map analysis {}", jobId);
+                return true;
+            }
+            if (queue.removeIf(q -> q.id.equals(jobId))) {
+                jobRepository.findById(jobId).ifPresent(job -> {
+                    finish(job, STATUS_CANCELLED, null, null);
+                    deleteUpload(job);
+                });
+                logger.info("Cancelled queued map analysis {}", jobId);
+                return true;
+            }
+            // Still QUEUED in the table but off the queue: a worker has taken it and not yet
+            // registered it, so leave the cancel for the worker to pick up
+            MapAnalysisJob job = jobRepository.findById(jobId).orElse(null);
+            if (job != null && STATUS_QUEUED.equals(job.getStatus())) {
+                cancelRequested.add(jobId);
+                logger.info("Cancelling map analysis {} as it starts", jobId);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    // ==================== STATUS ====================
+
+    /**
+     * { state, position, queueLength, etaSeconds, step, error } or null for an unknown job
+     */
+    public Map<String, Object> getStatus(String jobId) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        JobContext context = running.get(jobId);
+        if (context != null) {
+            status.put("state", context.cancelled ? "CANCELLING" : STATUS_RUNNING);
+            status.put("step", context.currentStep);
+            status.put("etaSeconds", Math.round(context.remainingMillis() / 1000.0));
+            return status;
+        }
+        List<Queued> waiting = sortedQueue();
+        for (int i = 0; i < waiting.size(); i++) {
+            if (waiting.get(i).id.equals(jobId)) {
+                status.put("state", STATUS_QUEUED);
+                status.put("position", i + 1);
+                status.put("queueLength", waiting.size());
+                status.put("etaSeconds", Math.round(etaMillis(waiting, i) / 1000.0));
+                return status;
+            }
+        }
+        MapAnalysisJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return null;
+        }
+        status.put("state", job.getStatus());
+        status.put("error", job.getError());
+        status.put("finishedAt", job.getFinishedAt());
+        return status;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workerCount);
+        stats.put("running", running.size());
+        stats.put("queued", queue.size());
+        stats.put("capacity", capacity);
+        stats.put("bulkCapacity", bulkCapacity);
+        Map<String, Object> estimates = new LinkedHashMap<>();
+        stepAverages.forEach((kind, steps) -> estimates.put(kind, Math.round(expectedMillis(kind) / 1000.0)));
+        stats.put("expectedSeconds", estimates);
+        return stats;
+    }
+
+    private List<Queued> sortedQueue() {
+        List<Queued> waiting = new ArrayList<>(queue);
+        waiting.sort(queue.comparator());
+        return waiting;
+    }
+
+    /**
+     * Milliseconds until the job at index starts and finishes: workers are simulated taking
+     * the jobs ahead of it in order, each busy for that kind's expected duration
+     */
+    private long etaMillis(List<Queued> waiting, int index) {
+        PriorityQueue<Long> freeAt = workerFreeTimes();
+        for (int i = 0; i < index; i++) {
+            long start = freeAt.poll();
+            freeAt.add(start + expectedMillis(waiting.get(i).kind));
+        }
+        return freeAt.peek() + expectedMillis(waiting.get(index).kind);
+    }
+
+    /**
+     * Milliseconds until a queued job starts, freeing a queue slot
+     */
+    private long nextSlotMillis() {
+        List<Queued> waiting = sortedQueue();
+        if (waiting.isEmpty()) {
+            return workerFreeTimes().peek();
+        }
+        return etaMillis(waiting, 0) - expectedMillis(waiting.get(0).kind);
+    }
+
+    private PriorityQueue<Long> workerFreeTimes() {
+        long[] busy = new long[workerCount];
+        int i = 0;
+        for (JobContext context : running.values()) {
+            if (i < workerCount) {
+                busy[i++] = context.remainingMillis();
+            }
+        }
+        PriorityQueue<Long> freeAt = new PriorityQueue<>();
+        Arrays.stream(busy).forEach(freeAt::add);
+        return freeAt;
+    }
+
+    private long expectedMillis(String kind) {
+        Map<String, Double> averages = stepAverages.get(kind);
+        if (averages == null || averages.isEmpty()) {
+            return defaultDurationSeconds * 1000;
+        }
+        return (long) averages.values().stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    private void recordTimings(String kind, Map<String, Long> timings) {
+        if (timings == null || timings.isEmpty()) {
+            return;
+        }
+        synchronized (stepAverages) {
+            Map<String, Double> averages = stepAverages.getOrDefault(kind, Map.of());
+            // Rebuilt in this run's step order and swapped in whole, so readers never see a partial map
+            Map<String, Double> ordered = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> step : timings.entrySet()) {
+                Double previous = averages.get(step.getKey());
+                ordered.put(step.getKey(), previous == null ? step.getValue()
+                        : previous + EWMA_ALPHA * (step.getValue() - previous));
+            }
+            averages.forEach(ordered::putIfAbsent);
+            stepAverages.put(kind, Collections.unmodifiableMap(ordered));
+        }
+    }
+
+    // ==================== WORKERS ====================
+
+    private void workLoop() {
+        while (!stopping) {
+            Queued next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // Register before anything else, so a cancel from here on reaches this thread
+            JobContext context = new JobContext(next.id, next.kind);
+            synchronized (queueLock) {
+                context.thread = Thread.currentThread();
+                context.cancelled = cancelRequested.remove(next.id);
+                running.put(next.id, context);
+            }
+            try {
+                execute(next, context);
+            } catch (Exception e) {
+                logger.error("Map analysis job {} crashed the worker loop: {}", next.id, e.getMessage(), e);
+            } finally {
+                context.thread = null;
+                running.remove(next.id);
+                // Clear a cancel interrupt before the next job
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private void execute(Queued next, JobContext context) {
+        MapAnalysisJob job = jobRepository.findById(next.id).orElse(null);
+        if (job == null || !STATUS_QUEUED.equals(job.getStatus())) {
+            return;
+        }
+        if (context.cancelled) {
+            finish(job, STATUS_CANCELLED, null, null);
+            deleteUpload(job);
+            logger.info("Cancelled map analysis {} before it started", job.getId());
+            return;
+        }
+        JobHandler handler = handlers.get(job.getKind());
+        if (handler == null) {
+            finish(job, STATUS_FAILED, "Không có bộ xử lý cho loại " + job.getKind(), null);
+            return;
+        }
+
+        job.setStatus(STATUS_RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        job.setAttempts(job.getAttempts() + 1);
+        jobRepository.save(job);
+
+        String status;
+        String error = null;
+        try {
+            Map<String, Object> result = handler.run(job, context);
+            if (context.cancelled) {
+                status = STATUS_CANCELLED;
+            } else if (result != null && Boolean.TRUE.equals(result.get("success"))) {
+                status = STATUS_COMPLETED;
+            } else {
+                status = STATUS_FAILED;
+                error = result != null ? String.valueOf(result.get("error")) : "Không có kết quả";
+            }
+        } catch (CancellationException e) {
+            status = STATUS_CANCELLED;
+        } catch (Exception e) {
+            status = context.cancelled ? STATUS_CANCELLED : STATUS_FAILED;
+            error = e.getMessage();
+        } finally {
+            context.thread = null;
+            running.remove(job.getId());
+            // Clear a cancel interrupt before touching the database
+            Thread.interrupted();
+        }
+
+        if (stopping && !context.cancelled && !STATUS_COMPLETED.equals(status)) {
+            logger.info("Map analysis {} interrupted by shutdown, will be re-queued on restart", job.getId());
+            return;
+        }
+        Map<String, Long> timings = context.timings();
+        if (STATUS_COMPLETED.equals(status)) {
+            recordTimings(job.getKind(), timings);
+        }
+        try {
+            job.setCurrentStep(context.currentStep);
+            finish(job, status, error, timings);
+        } catch (Exception e) {
+            logger.warn("Could not store outcome of map analysis {}: {}", job.getId(), e.getMessage());
+        }
+        logger.info("Map analysis {} {} in {} ms", job.getId(), status,
+                System.currentTimeMillis() - context.startedAt);
+    }
+
+    private void finish(MapAnalysisJob job, String status, String error, Map<String, Long> timings) {
+        job.setStatus(status);
+        job.setFinishedAt(LocalDateTime.now());
+        if (error != null) {
+            job.setError(error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        }
+        if (timings != null && !timings.isEmpty()) {
+            try {
+                job.setStepTimings(MAPPER.writeValueAsString(timings));
+            } catch (Exception ignored) {
+                // timings are only an estimate source
+            }
+        }
+        jobRepository.save(job);
+    }
+
+    /**
+     * Remove the uploaded image of a job that never ran
+     */
+    private void deleteUpload(MapAnalysisJob job) {
+        if (job.getImagePath() == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(new File(job.getImagePath()).toPath());
+        } catch (Exception e) {
+            logger.warn("Could not delete upload of cancelled map analysis {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private Map<String, Long> parseTimings(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return MAPPER.readValue(json, TIMINGS_TYPE);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.agriplanner.service;
 
+import com.agriplanner.config.OutboundHttpClients;
 import com.agriplanner.model.PlanningZoneType;
 import com.agriplanner.model.SoilType;
 import com.agriplanner.service.GeminiVisionService.GeminiErrorType;
 import com.agriplanner.service.GeminiVisionService.GeminiResult;
+import com.agriplanner.service.VisionImagePreparer.PreparedImage;
+import com.agriplanner.util.StreamingJsonBody;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -14,10 +17,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.io.*;
 import java.nio.file.*;
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Stream;
 
@@ -61,12 +64,13 @@ public class MultiAIOrchestrator {
     @Value("${ai.github.model:gpt-4o}")
     private String githubModel;
 
-    @Value("${python.path:python}")
-    private String pythonPath;
-
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final OutboundHttpClients httpClients;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    public MultiAIOrchestrator(OutboundHttpClients httpClients) {
+        this.httpClients = httpClients;
+    }
+
     // Soil type mapping service for AI-to-DB mapping (Thổ nhưỡng)
     @Autowired
     private SoilTypeMappingService soilTypeMappingService;
@@ -79,6 +83,34 @@ public class MultiAIOrchestrator {
     @Autowired
     private GeminiVisionService geminiVisionService;
 
+    // Long-lived Python workers for the OpenCV scripts
+    @Autowired
+    private PythonWorkerPool pythonWorkerPool;
+
+    // Coordinate / legend results of images analysed before (keyed by image SHA-256)
+    @Autowired
+    private VisionResultCache visionResultCache;
+
+    // Downscaled copies of uploads for the GPT-4o requests
+    @Autowired
+    private VisionImagePreparer visionImagePreparer;
+
+    // Hedged Gemini -> GPT-4o coordinate calls with circuit breakers (shared with AIAdvisorService)
+    @Autowired
+    private AiProviderRouter providerRouter;
+
+    @Value("${ai.vision.budget-ms:150000}")
+    private long visionBudgetMs;
+
+    private static final String PROVIDER_GEMINI_VISION = "gemini-vision";
+    private static final String PROVIDER_GPT4O_VISION = "gpt4o-vision";
+    // Vision calls take 20-60 s: wait this long before hedging until latencies are known
+    private static final long VISION_COLD_START_MS = 45000;
+
+    // Bump when the coordinate or legend prompts (here or in GeminiVisionService) change,
+    // so cached vision results from the old prompts are no longer used
+    private static final String VISION_PROMPT_VERSION = "v1";
+
     // API Endpoints
     private static final String GITHUB_API_URL = "https://models.inference.ai.azure.com/chat/completions";
 
@@ -366,6 +398,8 @@ public class MultiAIOrchestrator {
         result.put("mapType", mapType);
         result.put("mapTypeLabel", mapTypeLabel);
 
+        String imageHash = visionResultCache.hashImage(imageFile);
+
         try {
             // ╔═══════════════════════════════════════════════════════════════╗
             // ║ BƯỚC 1: TRÍCH XUẤT TỌA ĐỘ (KNOWN DATA → GEMINI → GPT-4o) ║
@@ -385,54 +419,64 @@ public class MultiAIOrchestrator {
                 logger.info("Using known coordinates for: {}", imageFile.getName());
             }
 
-            // Priority 2: Try Gemini (better for OCR/coordinate reading)
-            if (coordinatesResult == null && geminiVisionService.isConfigured()) {
-                callback.onProgress("gemini", "running",
-                        "Đang dùng Gemini " + geminiVisionService.getModelName() + " đọc tọa độ...");
-                addLog(logs, "Gemini", "START",
-                        "Bắt đầu phân tích tọa độ với Gemini " + geminiVisionService.getModelName());
-
-                GeminiResult geminiResult = geminiVisionService.analyzeCoordinates(imageFile);
-
-                if (geminiResult.isSuccess()) {
-                    coordinatesResult = geminiResult.getData();
-                    coordsProvider = "gemini";
-                    addLog(logs, "Gemini", "SUCCESS", "Đã trích xuất tọa độ: " + coordinatesResult.get("center"));
-                    callback.onProgress("gemini", "completed", "✓ Gemini: Đã trích xuất tọa độ thành công");
-                    geminiLogger.info("Coordinate extraction successful via Gemini");
-                } else {
-                    // Gemini failed - log detailed error
-                    String errorIcon = getErrorIcon(geminiResult.getErrorType());
-
-                    addLog(logs, "Gemini", "ERROR", errorIcon + " " + geminiResult.getErrorMessage());
-                    callback.onProgress("gemini", "error",
-                            errorIcon + " Gemini lỗi: " + geminiResult.getErrorMessage(),
-                            Map.of("errorType", geminiResult.getErrorType().name(),
-                                    "details",
-                                    geminiResult.getErrorDetails() != null ? geminiResult.getErrorDetails() : ""));
-
-                    geminiLogger.warn("Gemini failed: {} - {}", geminiResult.getErrorType(),
-                            geminiResult.getErrorMessage());
-
-                    // Decide whether to fallback
-                    if (geminiResult.shouldFallback()) {
-                        addLog(logs, "System", "INFO", "🔄 Chuyển sang GPT-4o (fallback)...");
-                        callback.onProgress("fallback", "running", "🔄 Đang chuyển sang GPT-4o...");
-                    }
+            // Priority 1b: Same image (by content) analysed before
+            if (coordinatesResult == null) {
+                VisionResultCache.Cached cachedCoords = visionResultCache.get(imageHash, mapType,
+                        VISION_PROMPT_VERSION, VisionResultCache.KIND_COORDINATES);
+                if (cachedCoords != null) {
+                    coordinatesResult = cachedCoords.getData();
+                    coordsProvider = "cache_" + cachedCoords.getProvider();
+                    addLog(logs, "Cache", "SUCCESS",
+                            "Dùng tọa độ đã phân tích trước đó cho ảnh này (" + cachedCoords.getProvider() + ")");
+                    callback.onProgress("step1_coords", "completed", "✓ Dùng tọa độ đã lưu cho ảnh này");
                 }
-            } else if (coordinatesResult == null) {
-                addLog(logs, "Gemini", "SKIP", "Gemini không được cấu hình, sử dụng GPT-4o");
-                callback.onProgress("gemini", "skipped", "Gemini chưa cấu hình, dùng GPT-4o");
             }
 
-            // Fallback to GPT-4o if Gemini failed or not configured
+            // Priority 2: Gemini (better for OCR/coordinate reading), hedged with GPT-4o:
+            // GPT-4o starts if Gemini fails or is slower than usual, the first result wins
             if (coordinatesResult == null) {
-                callback.onProgress("gpt4o_coords", "running", "Đang dùng GPT-4o đọc tọa độ (fallback)...");
-                addLog(logs, "GPT-4o", "START", "Bắt đầu phân tích tọa độ (fallback)");
+                List<AiProviderRouter.Candidate<Map<String, Object>>> coordProviders = new ArrayList<>();
+                if (geminiVisionService.isConfigured()) {
+                    callback.onProgress("gemini", "running",
+                            "Đang dùng Gemini " + geminiVisionService.getModelName() + " đọc tọa độ...");
+                    addLog(logs, "Gemini", "START",
+                            "Bắt đầu phân tích tọa độ với Gemini " + geminiVisionService.getModelName());
+                    coordProviders.add(new AiProviderRouter.Candidate<>(PROVIDER_GEMINI_VISION, VISION_COLD_START_MS,
+                            () -> {
+                                GeminiResult geminiResult = geminiVisionService.analyzeCoordinates(imageFile);
+                                if (!geminiResult.isSuccess()) {
+                                    throw new IllegalStateException(getErrorIcon(geminiResult.getErrorType()) + " "
+                                            + geminiResult.getErrorMessage());
+                                }
+                                return geminiResult.getData();
+                            }));
+                } else {
+                    addLog(logs, "Gemini", "SKIP", "Gemini không được cấu hình, sử dụng GPT-4o");
+                    callback.onProgress("gemini", "skipped", "Gemini chưa cấu hình, dùng GPT-4o");
+                    callback.onProgress("gpt4o_coords", "running", "Đang dùng GPT-4o đọc tọa độ (fallback)...");
+                    addLog(logs, "GPT-4o", "START", "Bắt đầu phân tích tọa độ (fallback)");
+                }
+                coordProviders.add(new AiProviderRouter.Candidate<>(PROVIDER_GPT4O_VISION, VISION_COLD_START_MS,
+                        () -> analyzeCoordinatesWithGPT4o(imageFile)));
+
+                AiProviderRouter.Outcome<Map<String, Object>> coords = providerRouter.hedge("vision-coords",
+                        coordProviders, data -> !data.isEmpty(), Duration.ofMillis(visionBudgetMs));
 
-                coordinatesResult = analyzeCoordinatesWithGPT4o(imageFile);
+                String geminiError = coords.errorOf(PROVIDER_GEMINI_VISION);
+                if (geminiError != null) {
+                    addLog(logs, "Gemini", "ERROR", geminiError);
+                    callback.onProgress("gemini", "error", "Gemini lỗi: " + geminiError);
+                    geminiLogger.warn("Gemini failed: {}", geminiError);
+                }
 
-                if (coordinatesResult != null && !coordinatesResult.isEmpty()) {
+                if (coords.isSuccess() && PROVIDER_GEMINI_VISION.equals(coords.getProvider())) {
+                    coordinatesResult = coords.getValue();
+                    coordsProvider = "gemini";
+                    addLog(logs, "Gemini", "SUCCESS", "Đã trích xuất tọa độ: " + coordinatesResult.get("center"));
+                    callback.onProgress("gemini", "completed", "✓ Gemini: Đã trích xuất tọa độ thành công");
+                    geminiLogger.info("Coordinate extraction successful via Gemini");
+                } else if (coords.isSuccess()) {
+                    coordinatesResult = coords.getValue();
                     coordsProvider = "gpt4o";
                     addLog(logs, "GPT-4o", "SUCCESS", "Đã trích xuất tọa độ: " + coordinatesResult.get("center"));
                     callback.onProgress("gpt4o_coords", "completed", "✓ GPT-4o: Đã trích xuất tọa độ");
@@ -443,6 +487,11 @@ public class MultiAIOrchestrator {
                 }
             }
 
+            if ("gemini".equals(coordsProvider) || "gpt4o".equals(coordsProvider)) {
+                visionResultCache.put(imageHash, mapType, VISION_PROMPT_VERSION,
+                        VisionResultCache.KIND_COORDINATES, coordsProvider, coordinatesResult);
+            }
+
             // Save coordinate provider info
             aiUsage.put("coordinates", coordsProvider);
             if (coordinatesResult != null) {
@@ -584,12 +633,25 @@ public class MultiAIOrchestrator {
                 }
             }
 
-            // Priority 2: Use GPT-4o if no known mappings available
+            // Priority 2: Legend of the same image read before
+            if (colorMapping == null) {
+                VisionResultCache.Cached cachedLegend = visionResultCache.get(imageHash, mapType,
+                        VISION_PROMPT_VERSION, VisionResultCache.KIND_LEGEND);
+                if (cachedLegend != null) {
+                    colorMapping = cachedLegend.getData();
+                    labelProvider = "cache_" + cachedLegend.getProvider();
+                    addLog(logs, "Cache", "SUCCESS", "Dùng chú giải đã phân tích trước đó cho ảnh này");
+                }
+            }
+
+            // Priority 3: Use GPT-4o if no known mappings available
             if (colorMapping == null) {
                 addLog(logs, "GPT-4o", "START", "Bắt đầu phân loại màu sắc bằng GPT-4o (mode: " + mapType + ")");
                 colorMapping = labelColorsWithGPT4o(imageFile, colorSummary, province, legendInfo, mapType);
                 if (colorMapping != null && !colorMapping.isEmpty()) {
                     labelProvider = "gpt4o";
+                    visionResultCache.put(imageHash, mapType, VISION_PROMPT_VERSION,
+                            VisionResultCache.KIND_LEGEND, labelProvider, colorMapping);
                 }
             }
 
@@ -684,7 +746,8 @@ public class MultiAIOrchestrator {
                     }
                 }
 
-                String providerLabel = "known_data".equals(labelProvider) ? "Bảng màu chuẩn" : "GPT-4o";
+                String providerLabel = "known_data".equals(labelProvider) ? "Bảng màu chuẩn"
+                        : labelProvider.startsWith("cache_") ? "Cache" : "GPT-4o";
                 addLog(logs, providerLabel, "SUCCESS",
                         String.format("Đã gán nhãn %d màu. Mapped: %d, Unmapped: %d",
                                 colorToSoil.size(), mappedCount, unmappedCount));
@@ -761,12 +824,9 @@ public class MultiAIOrchestrator {
             return null;
         }
 
-        try {
-            byte[] imageBytes = Files.readAllBytes(imageFile.toPath());
-            String base64Image = Base64.getEncoder().encodeToString(imageBytes);
-            String mimeType = getMimeType(imageFile);
-
-            gpt4oLogger.debug("Image encoded, size: {} bytes", imageBytes.length);
+        // Downscaled copy; its Base64 is streamed into the request body
+        try (PreparedImage image = visionImagePreparer.prepare(imageFile, VisionImagePreparer.MAX_EDGE_GPT4O_HIGH)) {
+            gpt4oLogger.debug("Image prepared, size: {} bytes", image.size());
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
@@ -809,15 +869,13 @@ public class MultiAIOrchestrator {
             ObjectNode imagePart = content.addObject();
             imagePart.put("type", "image_url");
             ObjectNode imageUrl = imagePart.putObject("image_url");
-            imageUrl.put("url", "data:" + mimeType + ";base64," + base64Image);
+            imageUrl.put("url", "data:" + image.getMimeType() + ";base64," + StreamingJsonBody.PLACEHOLDER);
             imageUrl.put("detail", "high"); // Need high detail for coordinates
 
-            HttpEntity<String> entity = new HttpEntity<>(requestBody.toString(), headers);
-
             gpt4oLogger.info("Calling GPT-4o for coordinates...");
-            ResponseEntity<String> response = restTemplate.exchange(
-                    Objects.requireNonNull(GITHUB_API_URL), Objects.requireNonNull(HttpMethod.POST), entity,
-                    String.class);
+            ResponseEntity<String> response = httpClients.postJson(OutboundHttpClients.PROFILE_AI_VISION,
+                    GITHUB_API_URL, headers, StreamingJsonBody.withBase64File(requestBody.toString(),
+                            StreamingJsonBody.PLACEHOLDER, image.getPath()));
 
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
                 JsonNode responseJson = objectMapper.readTree(response.getBody());
@@ -1010,8 +1068,6 @@ public class MultiAIOrchestrator {
             opencvLogger.info("[DEBUG] Using script path: {}", scriptPath);
 
             List<String> command = new ArrayList<>();
-            command.add(pythonPath != null ? pythonPath : "python");
-            command.add(scriptPath);
             command.add(imageFile.getAbsolutePath());
             command.add(outputJson.getAbsolutePath());
             command.add("--with-legend");
@@ -1037,44 +1093,19 @@ public class MultiAIOrchestrator {
                 }
             }
 
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
-
-            opencvLogger.debug("Running polygon extractor: {}", pb.command());
+            opencvLogger.debug("Running polygon extractor: {} {}", scriptPath, command);
 
-            Process process = pb.start();
+            // Pooled worker (no interpreter / OpenCV start-up per analysis)
+            PythonWorkerPool.Result run = pythonWorkerPool.run(scriptPath, command);
+            int exitCode = run.getExitCode();
+            String jsonOutput = run.getStatus();
 
-            // Read output and look for JSON marker
-            StringBuilder fullOutput = new StringBuilder();
-            String jsonOutput = null;
-            boolean inJsonBlock = false;
-            StringBuilder jsonBuilder = new StringBuilder();
-
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    fullOutput.append(line).append("\n");
-                    opencvLogger.debug("Python: {}", line);
-
-                    if (line.equals("===JSON_START===")) {
-                        inJsonBlock = true;
-                        continue;
-                    }
-                    if (line.equals("===JSON_END===")) {
-                        inJsonBlock = false;
-                        jsonOutput = jsonBuilder.toString();
-                        continue;
-                    }
-                    if (inJsonBlock) {
-                        jsonBuilder.append(line);
-                    }
-                }
+            opencvLogger.info("[DEBUG] Python exit code: {} in {} ms (pooled: {})", exitCode, run.getDurationMs(),
+                    run.isPooled());
+            if (run.getError() != null) {
+                opencvLogger.warn("[DEBUG] Python error: {}", run.getError());
             }
-
-            int exitCode = process.waitFor();
-
-            opencvLogger.info("[DEBUG] Python exit code: {}", exitCode);
-            opencvLogger.info("[DEBUG] Full Python output:\n{}", fullOutput.toString());
+            opencvLogger.debug("[DEBUG] Python output (tail):\n{}", run.getOutput());
             opencvLogger.info("[DEBUG] Extracted JSON output (from stdout): {}",
                     jsonOutput != null ? jsonOutput.substring(0, Math.min(500, jsonOutput.length())) : "null");
 
@@ -1227,8 +1258,6 @@ public class MultiAIOrchestrator {
             }
 
             List<String> command = new ArrayList<>();
-            command.add(pythonPath != null ? pythonPath : "python");
-            command.add(scriptPath);
             command.add(imageFile.getAbsolutePath());
             command.add(outputJson.getAbsolutePath());
             if (scriptPath.contains("map_polygon_extractor")) {
@@ -1255,30 +1284,20 @@ public class MultiAIOrchestrator {
                 command.add("0.02");
             }
 
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
+            opencvLogger.info("Running advanced zone detector: {} {}", scriptPath, String.join(" ", command));
 
-            opencvLogger.info("Running advanced zone detector: {}", String.join(" ", command));
-
-            Process process = pb.start();
-            StringBuilder fullOutput = new StringBuilder();
-
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    fullOutput.append(line).append("\n");
-                    opencvLogger.debug("Python: {}", line);
-                }
-            }
-
-            int exitCode = process.waitFor();
-            opencvLogger.info("Python exit code: {}, output length: {}", exitCode, fullOutput.length());
+            PythonWorkerPool.Result run = pythonWorkerPool.run(scriptPath, command);
+            int exitCode = run.getExitCode();
+            String fullOutput = run.getError() != null ? run.getError() + "\n" + run.getOutput() : run.getOutput();
+            opencvLogger.info("Python exit code: {} in {} ms (pooled: {})", exitCode, run.getDurationMs(),
+                    run.isPooled());
 
             if (exitCode != 0 || !outputJson.exists()) {
                 opencvLogger.error("Advanced zone detector failed. Exit: {}, Output: {}", exitCode, fullOutput);
                 result.put("success", false);
+                // Last lines carry the actual error
                 result.put("error", "Lỗi phân tích OpenCV: "
-                        + fullOutput.toString().substring(0, Math.min(500, fullOutput.length())));
+                        + fullOutput.substring(Math.max(0, fullOutput.length() - 500)));
                 addLog(logs, "OpenCV", "ERROR", "Script failed: exit code " + exitCode);
                 callback.onProgress("step3_opencv", "failed", "❌ Lỗi OpenCV");
                 return result;
@@ -1454,6 +1473,7 @@ public class MultiAIOrchestrator {
             return null;
         }
 
+        PreparedImage fullMap = null;
         try {
             // Build a compact color list string
             StringBuilder colorList = new StringBuilder();
@@ -1474,10 +1494,10 @@ public class MultiAIOrchestrator {
                 gpt4oLogger.info("[OPTIMIZED] Using extracted legend image (position: {})",
                         legendInfo.get("position"));
             } else {
-                // Fallback: Use full map image
-                byte[] imageBytes = Files.readAllBytes(imageFile.toPath());
-                base64Image = Base64.getEncoder().encodeToString(imageBytes);
-                mimeType = getMimeType(imageFile);
+                // Fallback: Use full map image, sent at "low" detail so 512 px is all GPT-4o looks at
+                fullMap = visionImagePreparer.prepare(imageFile, VisionImagePreparer.MAX_EDGE_GPT4O_LOW);
+                base64Image = StreamingJsonBody.PLACEHOLDER;
+                mimeType = fullMap.getMimeType();
                 gpt4oLogger.info("[FALLBACK] Using full map image (legend extraction failed)");
             }
 
@@ -1554,12 +1574,14 @@ public class MultiAIOrchestrator {
             // Use higher detail for legend image since it's already small
             imageUrl.put("detail", usingLegendImage ? "high" : "low");
 
-            HttpEntity<String> entity = new HttpEntity<>(requestBody.toString(), headers);
+            java.net.http.HttpRequest.BodyPublisher body = fullMap != null
+                    ? StreamingJsonBody.withBase64File(requestBody.toString(), StreamingJsonBody.PLACEHOLDER,
+                            fullMap.getPath())
+                    : java.net.http.HttpRequest.BodyPublishers.ofString(requestBody.toString());
 
             gpt4oLogger.info("Calling GPT-4o for color labeling...");
-            ResponseEntity<String> response = restTemplate.exchange(
-                    Objects.requireNonNull(GITHUB_API_URL), Objects.requireNonNull(HttpMethod.POST), entity,
-                    String.class);
+            ResponseEntity<String> response = httpClients.postJson(OutboundHttpClients.PROFILE_AI_VISION,
+                    GITHUB_API_URL, headers, body);
 
             if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
                 JsonNode responseJson = objectMapper.readTree(response.getBody());
@@ -1584,6 +1606,10 @@ public class MultiAIOrchestrator {
         } catch (Exception e) {
             gpt4oLogger.error("Color labeling failed: {}", e.getMessage(), e);
             return null;
+        } finally {
+            if (fullMap != null) {
+                fullMap.close();
+            }
         }
     }
 
@@ -1605,19 +1631,6 @@ public class MultiAIOrchestrator {
         }
     }
 
-    private String getMimeType(File file) {
-        String name = file.getName().toLowerCase();
-        if (name.endsWith(".png"))
-            return "image/png";
-        if (name.endsWith(".jpg") || name.endsWith(".jpeg"))
-            return "image/jpeg";
-        if (name.endsWith(".gif"))
-            return "image/gif";
-        if (name.endsWith(".webp"))
-            return "image/webp";
-        return "image/jpeg";
-    }
-
     private String extractJsonFromText(String text) {
         if (text == null || text.isEmpty())
             return null;
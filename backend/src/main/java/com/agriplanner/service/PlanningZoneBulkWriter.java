@@ -0,0 +1,347 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.PlanningZone;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.locationtech.jts.io.WKBWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bulk writer for planning zones (ghi hàng loạt vùng quy hoạch)
+ *
+ * Zones are inserted with JDBC batches, one transaction per chunk. When a chunk fails it is
+ * rolled back and its rows are retried one by one, so a bad row only rejects itself - the same
+ * partial-failure behaviour as saving each zone separately, at a fraction of the round-trips.
+ */
+@Service
+public class PlanningZoneBulkWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanningZoneBulkWriter.class);
+
+    // Bound in this order by bind(); geom is always last
+    private static final String[] COLUMNS = {
+            "name", "boundary_coordinates", "area_sqm", "center_lat", "center_lng", "zone_type", "zone_code",
+            "land_use_purpose", "planning_period", "province", "district", "commune", "source", "source_url",
+            "verified", "verified_date", "fill_color", "stroke_color", "fill_opacity", "notes", "created_by",
+            "kmz_upload_id", "geojson", "image_url", "map_type", "analysis_id", "created_at", "updated_at", "geom" };
+
+    private static final String INSERT_SQL = "INSERT INTO planning_zones (" + String.join(", ", COLUMNS)
+            + ") VALUES (" + placeholders(COLUMNS.length) + ")";
+
+    // Restores keep the original primary key
+    private static final String INSERT_WITH_ID_SQL = "INSERT INTO planning_zones (" + String.join(", ", COLUMNS)
+            + ", id) VALUES (" + placeholders(COLUMNS.length) + ", ?)";
+
+    private static final String UPDATE_SQL = "UPDATE planning_zones SET " + assignments() + " WHERE id = ?";
+
+    // Max rejected rows kept in a result (the count is always exact)
+    private static final int MAX_REPORTED_REJECTIONS = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate chunkTransaction;
+    private final PlanningZoneSpatialIndex spatialIndex;
+
+    @Value("${planning-zone.bulk.chunk-size:1000}")
+    private int chunkSize;
+
+    public PlanningZoneBulkWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            PlanningZoneSpatialIndex spatialIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.spatialIndex = spatialIndex;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * A zone that could not be inserted
+     */
+    @Data
+    @AllArgsConstructor
+    public static class RejectedZone {
+        private int index;
+        private String name;
+        private String error;
+    }
+
+    /**
+     * Outcome of a bulk write
+     */
+    @Data
+    public static class BulkWriteResult {
+        private int savedCount;
+        private int rejectedCount;
+        private List<RejectedZone> rejected = new ArrayList<>();
+    }
+
+    /**
+     * Open a batch that buffers zones and flushes every chunk-size rows.
+     * Use for streaming producers (e.g. KMZ parsing) so only one chunk is held in memory.
+     */
+    public Batch openBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Insert all zones in chunks
+     */
+    public BulkWriteResult writeAll(Collection<PlanningZone> zones) {
+        Batch batch = openBatch();
+        zones.forEach(batch::add);
+        return batch.finish();
+    }
+
+    /**
+     * Buffered batch of zones, flushed chunk by chunk
+     */
+    public class Batch {
+        private final BulkWriteResult result = new BulkWriteResult();
+        private List<PlanningZone> chunk = new ArrayList<>(Math.max(chunkSize, 1));
+        private int offset = 0;
+        private UnaryOperator<List<PlanningZone>> chunkFilter;
+
+        /**
+         * Pass every chunk through the filter before it is written (e.g. to drop duplicates)
+         */
+        public Batch filterChunks(UnaryOperator<List<PlanningZone>> filter) {
+            this.chunkFilter = filter;
+            return this;
+        }
+
+        public void add(PlanningZone zone) {
+            chunk.add(zone);
+            if (chunk.size() >= Math.max(chunkSize, 1)) {
+                flush();
+            }
+        }
+
+        /**
+         * Flush remaining zones and return the result
+         */
+        public BulkWriteResult finish() {
+            flush();
+            return result;
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<PlanningZone> kept = chunkFilter != null ? chunkFilter.apply(chunk) : chunk;
+            if (!kept.isEmpty()) {
+                writeChunk(kept, offset, result);
+            }
+            offset += chunk.size();
+            chunk = new ArrayList<>(Math.max(chunkSize, 1));
+        }
+    }
+
+    /**
+     * Insert zones keeping their IDs, in the caller's transaction (all or nothing)
+     */
+    public void insertWithIds(List<PlanningZone> zones) {
+        executeBatch(INSERT_WITH_ID_SQL, zones);
+    }
+
+    /**
+     * Overwrite every column of existing zones by ID, in the caller's transaction (all or nothing)
+     */
+    public void updateAll(List<PlanningZone> zones) {
+        executeBatch(UPDATE_SQL, zones);
+    }
+
+    private void executeBatch(String sql, List<PlanningZone> zones) {
+        if (zones.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                for (PlanningZone zone : zones) {
+                    zone.refreshGeom();
+                    int next = bind(ps, zone);
+                    ps.setLong(next, zone.getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            return null;
+        });
+        spatialIndex.upsertAll(zones);
+    }
+
+    private void writeChunk(List<PlanningZone> chunk, int offset, BulkWriteResult result) {
+        try {
+            chunkTransaction.executeWithoutResult(status -> insert(chunk));
+            result.setSavedCount(result.getSavedCount() + chunk.size());
+            return;
+        } catch (Exception e) {
+            logger.warn("Zone chunk at offset {} ({} rows) failed, retrying row by row: {}",
+                    offset, chunk.size(), e.getMessage());
+        }
+
+        // Isolate the failing rows
+        for (int i = 0; i < chunk.size(); i++) {
+            PlanningZone zone = chunk.get(i);
+            try {
+                chunkTransaction.executeWithoutResult(status -> insert(Collections.singletonList(zone)));
+                result.setSavedCount(result.getSavedCount() + 1);
+            } catch (Exception e) {
+                zone.setId(null);
+                result.setRejectedCount(result.getRejectedCount() + 1);
+                if (result.getRejected().size() < MAX_REPORTED_REJECTIONS) {
+                    result.getRejected().add(new RejectedZone(offset + i, zone.getName(), rootMessage(e)));
+                }
+                logger.warn("Rejected zone {} ({}): {}", offset + i, zone.getName(), rootMessage(e));
+            }
+        }
+    }
+
+    private void insert(List<PlanningZone> zones) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            insertBatch(connection, zones);
+            return null;
+        });
+        // JDBC inserts bypass the entity listener - index the chunk once it commits
+        spatialIndex.upsertAll(zones);
+    }
+
+    private void insertBatch(Connection connection, List<PlanningZone> zones) throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[] { "id" })) {
+            for (PlanningZone zone : zones) {
+                zone.setCreatedAt(now);
+                zone.setUpdatedAt(now);
+                zone.refreshGeom();
+                bind(ps, zone);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+
+            // Copy generated IDs back so callers can reference the saved zones
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                int i = 0;
+                while (keys.next() && i < zones.size()) {
+                    zones.get(i++).setId(keys.getLong(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Bind COLUMNS from index 1; returns the next free parameter index
+     */
+    private int bind(PreparedStatement ps, PlanningZone zone) throws SQLException {
+        int i = 1;
+        ps.setString(i++, zone.getName());
+        ps.setString(i++, zone.getBoundaryCoordinates());
+        setDecimal(ps, i++, zone.getAreaSqm());
+        setDecimal(ps, i++, zone.getCenterLat());
+        setDecimal(ps, i++, zone.getCenterLng());
+        ps.setString(i++, zone.getZoneType());
+        ps.setString(i++, zone.getZoneCode());
+        ps.setString(i++, zone.getLandUsePurpose());
+        ps.setString(i++, zone.getPlanningPeriod());
+        ps.setString(i++, zone.getProvince());
+        ps.setString(i++, zone.getDistrict());
+        ps.setString(i++, zone.getCommune());
+        ps.setString(i++, zone.getSource());
+        ps.setString(i++, zone.getSourceUrl());
+        if (zone.getVerified() != null) {
+            ps.setBoolean(i++, zone.getVerified());
+        } else {
+            ps.setNull(i++, Types.BOOLEAN);
+        }
+        setTimestamp(ps, i++, zone.getVerifiedDate());
+        ps.setString(i++, zone.getFillColor());
+        ps.setString(i++, zone.getStrokeColor());
+        setDecimal(ps, i++, zone.getFillOpacity());
+        ps.setString(i++, zone.getNotes());
+        setLong(ps, i++, zone.getCreatedBy());
+        setLong(ps, i++, zone.getKmzUploadId());
+        ps.setString(i++, zone.getGeojson());
+        ps.setString(i++, zone.getImageUrl());
+        ps.setString(i++, zone.getMapType());
+        ps.setString(i++, zone.getAnalysisId());
+        setTimestamp(ps, i++, zone.getCreatedAt());
+        setTimestamp(ps, i++, zone.getUpdatedAt());
+        if (zone.getGeom() != null) {
+            ps.setBytes(i++, new WKBWriter().write(zone.getGeom()));
+        } else {
+            ps.setNull(i++, Types.BINARY);
+        }
+        return i;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? ", " : "").append(valueExpression(COLUMNS[i]));
+        }
+        return sb.toString();
+    }
+
+    private static String assignments() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            sb.append(i > 0 ? ", " : "").append(COLUMNS[i]).append(" = ").append(valueExpression(COLUMNS[i]));
+        }
+        return sb.toString();
+    }
+
+    private static String valueExpression(String column) {
+        return "geom".equals(column) ? "ST_GeomFromWKB(?, 4326)" : "?";
+    }
+
+    private void setDecimal(PreparedStatement ps, int index, BigDecimal value) throws SQLException {
+        if (value != null) {
+            ps.setBigDecimal(index, value);
+        } else {
+            ps.setNull(index, Types.NUMERIC);
+        }
+    }
+
+    private void setLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value != null) {
+            ps.setLong(index, value);
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+
+    private void setTimestamp(PreparedStatement ps, int index, LocalDateTime value) throws SQLException {
+        if (value != null) {
+            ps.setTimestamp(index, Timestamp.valueOf(value));
+        } else {
+            ps.setNull(index, Types.TIMESTAMP);
+        }
+    }
+
+    private String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,427 @@
+package com.agriplanner.service;
+
+import com.agriplanner.repository.PlanningZoneRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.locationtech.jts.geom.Envelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Server-side clustering of zone centroids for the overview map (gom cụm vùng theo mức zoom)
+ *
+ * One grid level is precomputed per zoom (cell size = cluster radius in screen pixels, in Web
+ * Mercator). Each cell keeps a running count, centroid sums and per-type counts, so adding or
+ * removing a zone only touches one cell per level - saves and deletes (KMZ uploads, confirmed
+ * analyses) are applied incrementally from the spatial index change feed.
+ */
+@Service
+public class PlanningZoneClusterService implements PlanningZoneSpatialIndex.ChangeListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanningZoneClusterService.class);
+
+    private static final int TILE_SIZE = 256;
+    private static final double MAX_LAT = 85.05112878;
+    private static final int UPDATE_CHUNK = 1000;
+
+    private final PlanningZoneRepository planningZoneRepository;
+    private final PlanningZoneSpatialIndex spatialIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService clusterExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "zone-clusters");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Guarded by lock
+    private Hierarchy hierarchy;
+
+    @Value("${planning-zone.cluster.max-zoom:16}")
+    private int maxClusterZoom;
+
+    @Value("${planning-zone.cluster.radius:60}")
+    private int clusterRadius;
+
+    public PlanningZoneClusterService(PlanningZoneRepository planningZoneRepository,
+            PlanningZoneSpatialIndex spatialIndex) {
+        this.planningZoneRepository = planningZoneRepository;
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * Zone centroid with the overview fields
+     */
+    private static final class ZonePoint {
+        final long id;
+        final String name;
+        final double lat;
+        final double lng;
+        final double x;
+        final double y;
+        final String type;
+        final String color;
+        final double area;
+        final Object rawArea;
+
+        ZonePoint(long id, String name, double lat, double lng, String type, String color, Object rawArea) {
+            this.id = id;
+            this.name = name;
+            this.lat = lat;
+            this.lng = lng;
+            this.x = mercatorX(lng);
+            this.y = mercatorY(lat);
+            this.type = type;
+            this.color = color;
+            this.rawArea = rawArea;
+            this.area = rawArea instanceof Number ? ((Number) rawArea).doubleValue() : 0;
+        }
+    }
+
+    /**
+     * Running aggregate of the zones in one grid cell
+     */
+    private static final class Cell {
+        int count;
+        double sumLat;
+        double sumLng;
+        double sumArea;
+        // XOR of member IDs: equals the only member's ID when count == 1
+        long idXor;
+        final Map<String, Integer> typeCounts = new HashMap<>();
+        // Members are only tracked on the deepest level (for per-zone output past max zoom)
+        Set<Long> members;
+
+        void add(ZonePoint p) {
+            count++;
+            sumLat += p.lat;
+            sumLng += p.lng;
+            sumArea += p.area;
+            idXor ^= p.id;
+            typeCounts.merge(p.type, 1, Integer::sum);
+            if (members != null) {
+                members.add(p.id);
+            }
+        }
+
+        void remove(ZonePoint p) {
+            count--;
+            sumLat -= p.lat;
+            sumLng -= p.lng;
+            sumArea -= p.area;
+            idXor ^= p.id;
+            typeCounts.computeIfPresent(p.type, (k, v) -> v > 1 ? v - 1 : null);
+            if (members != null) {
+                members.remove(p.id);
+            }
+        }
+
+        String dominantType() {
+            String best = null;
+            int bestCount = -1;
+            for (Map.Entry<String, Integer> entry : typeCounts.entrySet()) {
+                if (entry.getValue() > bestCount) {
+                    best = entry.getKey();
+                    bestCount = entry.getValue();
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * All zoom levels plus the points themselves
+     */
+    private final class Hierarchy {
+        final Map<Long, ZonePoint> points = new HashMap<>();
+        final List<Map<Long, Cell>> levels = new ArrayList<>();
+        final Map<String, String> typeColors = new HashMap<>();
+
+        Hierarchy() {
+            for (int z = 0; z <= maxClusterZoom; z++) {
+                levels.add(new HashMap<>());
+            }
+        }
+
+        void add(ZonePoint p) {
+            ZonePoint previous = points.put(p.id, p);
+            if (previous != null) {
+                removeFromLevels(previous);
+            }
+            typeColors.put(p.type, p.color);
+            for (int z = 0; z <= maxClusterZoom; z++) {
+                final boolean deepest = z == maxClusterZoom;
+                Cell cell = levels.get(z).computeIfAbsent(cellKey(p.x, p.y, z), k -> {
+                    Cell c = new Cell();
+                    if (deepest) {
+                        c.members = new HashSet<>();
+                    }
+                    return c;
+                });
+                cell.add(p);
+            }
+        }
+
+        void remove(long id) {
+            ZonePoint p = points.remove(id);
+            if (p != null) {
+                removeFromLevels(p);
+            }
+        }
+
+        private void removeFromLevels(ZonePoint p) {
+            for (int z = 0; z <= maxClusterZoom; z++) {
+                long key = cellKey(p.x, p.y, z);
+                Cell cell = levels.get(z).get(key);
+                if (cell != null) {
+                    cell.remove(p);
+                    if (cell.count <= 0) {
+                        levels.get(z).remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    @PostConstruct
+    public void registerListener() {
+        spatialIndex.addChangeListener(this);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        clusterExecutor.submit(this::rebuild);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clusterExecutor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return hierarchy != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            Hierarchy built = new Hierarchy();
+            for (Object[] row : planningZoneRepository.findZoneOverview()) {
+                ZonePoint p = toPoint(row);
+                if (p != null) {
+                    built.add(p);
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                hierarchy = built;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info("Zone cluster hierarchy built: {} zones, zoom 0-{} in {} ms", built.points.size(),
+                    maxClusterZoom, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Failed to build zone cluster hierarchy: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Re-read changed zones after commit (off the committing thread) and patch the hierarchy
+     */
+    @Override
+    public void onZonesChanged(Set<Long> ids, List<Envelope> areas) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        clusterExecutor.submit(() -> applyChanges(new ArrayList<>(ids)));
+    }
+
+    private void applyChanges(List<Long> ids) {
+        try {
+            for (int i = 0; i < ids.size(); i += UPDATE_CHUNK) {
+                List<Long> chunk = ids.subList(i, Math.min(i + UPDATE_CHUNK, ids.size()));
+                List<ZonePoint> current = new ArrayList<>();
+                for (Object[] row : planningZoneRepository.findZoneOverviewByIdIn(chunk)) {
+                    ZonePoint p = toPoint(row);
+                    if (p != null) {
+                        current.add(p);
+                    }
+                }
+                lock.writeLock().lock();
+                try {
+                    if (hierarchy == null) {
+                        return;
+                    }
+                    // Deleted zones have no row; saved ones are re-added with their new centroid
+                    chunk.forEach(hierarchy::remove);
+                    current.forEach(hierarchy::add);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to update zone clusters for {} zones: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * Clusters and single zones visible in the viewport at the given zoom.
+     * Past the max cluster zoom every zone is returned on its own.
+     */
+    public List<Map<String, Object>> getClusters(int zoom, double minLat, double maxLat, double minLng,
+            double maxLng) {
+        int z = Math.max(0, zoom);
+        lock.readLock().lock();
+        try {
+            if (hierarchy == null) {
+                return new ArrayList<>();
+            }
+            int level = Math.min(z, maxClusterZoom);
+            Map<Long, Cell> cells = hierarchy.levels.get(level);
+            long cellsPerAxis = cellsPerAxis(level);
+            long minCx = cellIndex(mercatorX(minLng), cellsPerAxis);
+            long maxCx = cellIndex(mercatorX(maxLng), cellsPerAxis);
+            long minCy = cellIndex(mercatorY(maxLat), cellsPerAxis);
+            long maxCy = cellIndex(mercatorY(minLat), cellsPerAxis);
+
+            List<Cell> visible = new ArrayList<>();
+            long rangeSize = (maxCx - minCx + 1) * (maxCy - minCy + 1);
+            if (rangeSize < cells.size()) {
+                for (long cx = minCx; cx <= maxCx; cx++) {
+                    for (long cy = minCy; cy <= maxCy; cy++) {
+                        Cell cell = cells.get(pack(cx, cy));
+                        if (cell != null) {
+                            visible.add(cell);
+                        }
+                    }
+                }
+            } else {
+                for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                    long cx = entry.getKey() >>> 32;
+                    long cy = entry.getKey() & 0xFFFFFFFFL;
+                    if (cx >= minCx && cx <= maxCx && cy >= minCy && cy <= maxCy) {
+                        visible.add(entry.getValue());
+                    }
+                }
+            }
+
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (Cell cell : visible) {
+                if (z > maxClusterZoom) {
+                    for (Long id : cell.members) {
+                        ZonePoint p = hierarchy.points.get(id);
+                        if (p != null && p.lat >= minLat && p.lat <= maxLat && p.lng >= minLng && p.lng <= maxLng) {
+                            result.add(toZoneMap(p));
+                        }
+                    }
+                } else if (cell.count == 1) {
+                    ZonePoint p = hierarchy.points.get(cell.idXor);
+                    if (p != null) {
+                        result.add(toZoneMap(p));
+                    }
+                } else {
+                    result.add(toClusterMap(cell, level));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Object> toZoneMap(ZonePoint p) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", p.id);
+        map.put("name", p.name != null ? p.name : "Vùng quy hoạch");
+        map.put("lat", p.lat);
+        map.put("lng", p.lng);
+        map.put("type", p.type);
+        map.put("color", p.color);
+        map.put("area", p.rawArea != null ? p.rawArea : 0);
+        return map;
+    }
+
+    private Map<String, Object> toClusterMap(Cell cell, int level) {
+        String dominantType = cell.dominantType();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("cluster", true);
+        map.put("count", cell.count);
+        map.put("lat", cell.sumLat / cell.count);
+        map.put("lng", cell.sumLng / cell.count);
+        map.put("dominantType", dominantType);
+        map.put("color", hierarchy.typeColors.getOrDefault(dominantType, "#f59e0b"));
+        map.put("area", cell.sumArea);
+        map.put("types", new HashMap<>(cell.typeCounts));
+        // Zoom at which this cluster starts to split
+        map.put("expansionZoom", Math.min(level + 1, maxClusterZoom + 1));
+        return map;
+    }
+
+    // ==================== GRID MATH ====================
+
+    private ZonePoint toPoint(Object[] row) {
+        // id, name, centerLat, centerLng, zoneType, fillColor, areaSqm
+        if (row[2] == null || row[3] == null) {
+            return null;
+        }
+        double lat = ((BigDecimal) row[2]).doubleValue();
+        double lng = ((BigDecimal) row[3]).doubleValue();
+        return new ZonePoint((Long) row[0], (String) row[1], lat, lng,
+                row[4] != null ? (String) row[4] : "unknown",
+                row[5] != null ? (String) row[5] : "#f59e0b",
+                row[6]);
+    }
+
+    private long cellsPerAxis(int z) {
+        return Math.max(1, ((long) TILE_SIZE << z) / Math.max(1, clusterRadius));
+    }
+
+    private long cellKey(double x, double y, int z) {
+        long n = cellsPerAxis(z);
+        return pack(cellIndex(x, n), cellIndex(y, n));
+    }
+
+    private static long cellIndex(double worldCoord, long cellsPerAxis) {
+        long index = (long) Math.floor(worldCoord * cellsPerAxis);
+        return Math.max(0, Math.min(cellsPerAxis - 1, index));
+    }
+
+    private static long pack(long cx, long cy) {
+        return (cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private static double mercatorX(double lng) {
+        return (lng + 180.0) / 360.0;
+    }
+
+    private static double mercatorY(double lat) {
+        double rad = Math.toRadians(Math.max(-MAX_LAT, Math.min(MAX_LAT, lat)));
+        return (1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2;
+    }
+}
@@ -0,0 +1,146 @@
+package com.agriplanner.service;
+
+import com.agriplanner.repository.PlanningZoneRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Streaming GeoJSON export of planning zones (xuất GeoJSON dạng luồng)
+ *
+ * Zones are read in keyset pages and written feature by feature with a JsonGenerator.
+ * Stored geometry JSON is copied as a raw value instead of being turned into an object
+ * tree, so memory stays at one page regardless of how many zones are exported.
+ */
+@Service
+@RequiredArgsConstructor
+public class PlanningZoneExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanningZoneExportService.class);
+
+    private static final int PAGE_SIZE = 500;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final PlanningZoneRepository planningZoneRepository;
+
+    /**
+     * Write a FeatureCollection of the matching zones; filters are optional
+     *
+     * @return number of features written
+     */
+    public int writeGeoJson(OutputStream out, String district, String zoneType) throws IOException {
+        String districtFilter = district != null && !district.isEmpty() ? district : null;
+        String zoneTypeFilter = zoneType != null && !zoneType.isEmpty() ? zoneType : null;
+
+        int count = 0;
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeStringField("type", "FeatureCollection");
+            gen.writeArrayFieldStart("features");
+
+            Long afterId = 0L;
+            while (true) {
+                List<Object[]> rows = planningZoneRepository.findExportRowsAfterId(afterId, districtFilter,
+                        zoneTypeFilter, PageRequest.of(0, PAGE_SIZE));
+                for (Object[] row : rows) {
+                    writeFeature(gen, row);
+                    count++;
+                }
+                // Push each page to the client instead of buffering the response
+                gen.flush();
+                if (rows.size() < PAGE_SIZE) {
+                    break;
+                }
+                afterId = (Long) rows.get(rows.size() - 1)[0];
+            }
+
+            gen.writeEndArray();
+            gen.writeObjectFieldStart("metadata");
+            gen.writeStringField("exported", LocalDateTime.now().toString());
+            gen.writeNumberField("count", count);
+            gen.writeObjectFieldStart("filter");
+            gen.writeStringField("district", district != null ? district : "all");
+            gen.writeStringField("zoneType", zoneType != null ? zoneType : "all");
+            gen.writeEndObject();
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+        logger.debug("Exported {} planning zones as GeoJSON", count);
+        return count;
+    }
+
+    /**
+     * row: id, name, zoneType, zoneCode, district, fillColor, areaSqm, geojson, boundaryCoordinates
+     */
+    private void writeFeature(JsonGenerator gen, Object[] row) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", "Feature");
+
+        gen.writeObjectFieldStart("properties");
+        gen.writeNumberField("id", (Long) row[0]);
+        gen.writeStringField("name", orDefault((String) row[1], ""));
+        gen.writeStringField("zoneType", orDefault((String) row[2], ""));
+        gen.writeStringField("zoneCode", orDefault((String) row[3], ""));
+        gen.writeStringField("district", orDefault((String) row[4], ""));
+        gen.writeStringField("fillColor", orDefault((String) row[5], "#f59e0b"));
+        BigDecimal areaSqm = (BigDecimal) row[6];
+        gen.writeNumberField("areaSqm", areaSqm != null ? areaSqm : BigDecimal.ZERO);
+        gen.writeEndObject();
+
+        gen.writeFieldName("geometry");
+        String geojson = (String) row[7];
+        String boundaryCoordinates = (String) row[8];
+        if (isWellFormed(geojson, JsonToken.START_OBJECT)) {
+            gen.writeRawValue(geojson);
+        } else if (isWellFormed(boundaryCoordinates, JsonToken.START_ARRAY)) {
+            // Same shape as before: boundary ring wrapped as Polygon coordinates
+            gen.writeStartObject();
+            gen.writeStringField("type", "Polygon");
+            gen.writeFieldName("coordinates");
+            gen.writeStartArray();
+            gen.writeRawValue(boundaryCoordinates);
+            gen.writeEndArray();
+            gen.writeEndObject();
+        } else {
+            gen.writeNull();
+        }
+
+        gen.writeEndObject();
+    }
+
+    /**
+     * Token-level check that a stored value is one complete JSON object/array, so a corrupt row
+     * becomes a null geometry instead of breaking the whole file (no object tree is built)
+     */
+    private boolean isWellFormed(String json, JsonToken expectedStart) {
+        if (json == null || json.isBlank()) {
+            return false;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            if (parser.nextToken() != expectedStart) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private String orDefault(String value, String defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,33 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.PlanningZone;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * JPA entity listener that keeps {@link PlanningZoneSpatialIndex} in sync with
+ * zones saved or deleted through the repository (applied after commit).
+ */
+@Component
+public class PlanningZoneIndexListener {
+
+    private final ObjectProvider<PlanningZoneSpatialIndex> spatialIndex;
+
+    public PlanningZoneIndexListener(ObjectProvider<PlanningZoneSpatialIndex> spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(PlanningZone zone) {
+        spatialIndex.ifAvailable(index -> index.upsert(zone));
+    }
+
+    @PostRemove
+    public void onRemove(PlanningZone zone) {
+        spatialIndex.ifAvailable(index -> index.remove(zone.getId()));
+    }
+}
@@ -0,0 +1,546 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.PlanningZone;
+import com.agriplanner.repository.PlanningZoneRepository;
+import com.agriplanner.util.ZoneGeometryUtils;
+import jakarta.annotation.PreDestroy;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory STRtree index over every planning zone's prepared geometry
+ * Chỉ mục không gian trong bộ nhớ cho vùng quy hoạch/thổ nhưỡng
+ *
+ * Readers work on an immutable snapshot (tree + small add/remove delta) and never block.
+ * Writers copy the delta and swap the snapshot; when the delta grows past the compaction
+ * threshold a new tree is built in the background and swapped in. Full reloads and compactions
+ * build outside the write lock; changes applied meanwhile are buffered and replayed on top of
+ * the new tree when it is swapped in. Changes made inside a
+ * transaction are collected and applied once after commit, so rolled-back inserts/deletes never
+ * reach the index. Change listeners (e.g. the vector tile cache) are told which areas changed.
+ */
+@Service
+public class PlanningZoneSpatialIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanningZoneSpatialIndex.class);
+
+    private static final int LOAD_PAGE_SIZE = 2000;
+
+    private final PlanningZoneRepository planningZoneRepository;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.empty());
+    private final AtomicBoolean ready = new AtomicBoolean(false);
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+    // Changes applied while a new tree is being built (guarded by writeLock; null when idle)
+    private List<Map<Long, Entry>> changesDuringBuild;
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "zone-spatial-index");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${planning-zone.index.compaction-threshold:2048}")
+    private int compactionThreshold;
+
+    public PlanningZoneSpatialIndex(PlanningZoneRepository planningZoneRepository) {
+        this.planningZoneRepository = planningZoneRepository;
+    }
+
+    /**
+     * Indexed zone: id, map type and prepared geometry
+     */
+    public static final class Entry {
+        private final Long id;
+        private final String mapType;
+        private final Geometry geometry;
+        private final PreparedGeometry prepared;
+
+        Entry(Long id, String mapType, Geometry geometry) {
+            this.id = id;
+            this.mapType = mapType;
+            this.geometry = geometry;
+            this.prepared = PreparedGeometryFactory.prepare(geometry);
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getMapType() {
+            return mapType;
+        }
+
+        public Geometry getGeometry() {
+            return geometry;
+        }
+
+        public PreparedGeometry getPrepared() {
+            return prepared;
+        }
+    }
+
+    /**
+     * Notified after committed changes are visible in the index
+     */
+    public interface ChangeListener {
+        /**
+         * @param ids   IDs of the saved or deleted zones, or null after a full reload
+         * @param areas envelopes (lng/lat) of the old and new geometry of every changed zone
+         */
+        void onZonesChanged(Set<Long> ids, List<Envelope> areas);
+    }
+
+    /**
+     * Immutable view: built tree plus the changes since it was built
+     */
+    private static final class Snapshot {
+        final STRtree tree;
+        final List<Entry> treeEntries;
+        final Map<Long, Entry> treeById;
+        final Map<Long, Entry> added;
+        final Set<Long> removed;
+
+        Snapshot(STRtree tree, List<Entry> treeEntries, Map<Long, Entry> treeById, Map<Long, Entry> added,
+                Set<Long> removed) {
+            this.tree = tree;
+            this.treeEntries = treeEntries;
+            this.treeById = treeById;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        static Snapshot empty() {
+            return build(Collections.emptyList());
+        }
+
+        static Snapshot build(List<Entry> entries) {
+            STRtree tree = new STRtree();
+            Map<Long, Entry> byId = new HashMap<>(entries.size() * 2);
+            for (Entry entry : entries) {
+                tree.insert(entry.geometry.getEnvelopeInternal(), entry);
+                byId.put(entry.id, entry);
+            }
+            tree.build();
+            return new Snapshot(tree, Collections.unmodifiableList(entries), byId, Map.of(), Set.of());
+        }
+
+        Entry lookup(Long id) {
+            Entry entry = added.get(id);
+            if (entry != null || removed.contains(id)) {
+                return entry;
+            }
+            return treeById.get(id);
+        }
+
+        int deltaSize() {
+            return added.size() + removed.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Entry> candidates(Envelope envelope) {
+            List<Entry> result = new ArrayList<>();
+            for (Entry entry : (List<Entry>) tree.query(envelope)) {
+                if (!removed.contains(entry.id)) {
+                    result.add(entry);
+                }
+            }
+            for (Entry entry : added.values()) {
+                if (entry.geometry.getEnvelopeInternal().intersects(envelope)) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        }
+
+        List<Entry> liveEntries() {
+            List<Entry> result = new ArrayList<>(treeEntries.size() + added.size());
+            for (Entry entry : treeEntries) {
+                if (!removed.contains(entry.id)) {
+                    result.add(entry);
+                }
+            }
+            result.addAll(added.values());
+            return result;
+        }
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuildAsync();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexExecutor.shutdownNow();
+    }
+
+    /**
+     * True once the initial load has finished (callers fall back to SQL before that)
+     */
+    public boolean isReady() {
+        return ready.get();
+    }
+
+    /**
+     * Approximate number of indexed zones
+     */
+    public int size() {
+        Snapshot current = snapshot.get();
+        return current.treeEntries.size() - current.removed.size() + current.added.size();
+    }
+
+    /**
+     * Reload every zone from the database in the background and swap the new tree in
+     */
+    public void rebuildAsync() {
+        indexExecutor.submit(this::rebuild);
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        startBuffering();
+        try {
+            // Paged load and tree build without the lock: commits keep applying meanwhile
+            List<Entry> entries = new ArrayList<>();
+            Long afterId = 0L;
+            while (true) {
+                List<Object[]> rows = planningZoneRepository.findGeometryRowsAfterId(afterId,
+                        PageRequest.of(0, LOAD_PAGE_SIZE));
+                for (Object[] row : rows) {
+                    Entry entry = toEntry((Long) row[0], (String) row[1], (String) row[2], (String) row[3],
+                            (BigDecimal) row[4], (BigDecimal) row[5]);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+                if (rows.size() < LOAD_PAGE_SIZE) {
+                    break;
+                }
+                afterId = (Long) rows.get(rows.size() - 1)[0];
+            }
+            swapIn(Snapshot.build(entries));
+            ready.set(true);
+            notifyListeners(null, Collections.singletonList(new Envelope(-180, 180, -90, 90)));
+            logger.info("Planning zone spatial index built: {} zones in {} ms", size(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            stopBuffering();
+            logger.error("Failed to build planning zone spatial index: {}", e.getMessage(), e);
+        }
+    }
+
+    private void compact() {
+        compactionScheduled.set(false);
+        long start = System.currentTimeMillis();
+        Snapshot current;
+        synchronized (writeLock) {
+            current = snapshot.get();
+            if (current.deltaSize() == 0) {
+                return;
+            }
+            changesDuringBuild = new ArrayList<>();
+        }
+        try {
+            swapIn(Snapshot.build(current.liveEntries()));
+        } catch (RuntimeException e) {
+            stopBuffering();
+            throw e;
+        }
+        logger.debug("Planning zone spatial index compacted in {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void startBuffering() {
+        synchronized (writeLock) {
+            changesDuringBuild = new ArrayList<>();
+        }
+    }
+
+    private void stopBuffering() {
+        synchronized (writeLock) {
+            changesDuringBuild = null;
+        }
+    }
+
+    /**
+     * Replace the snapshot with a freshly built one plus the changes buffered while it was built
+     */
+    private void swapIn(Snapshot built) {
+        synchronized (writeLock) {
+            Snapshot next = built;
+            for (Map<Long, Entry> changes : changesDuringBuild) {
+                next = withChanges(next, changes, null);
+            }
+            changesDuringBuild = null;
+            snapshot.set(next);
+            if (next.deltaSize() > compactionThreshold && compactionScheduled.compareAndSet(false, true)) {
+                indexExecutor.submit(this::compact);
+            }
+        }
+    }
+
+    // ==================== QUERIES ====================
+
+    /**
+     * IDs of zones whose polygon intersects the bounding box
+     */
+    public List<Long> findIntersecting(double minLat, double maxLat, double minLng, double maxLng, String mapType) {
+        Envelope envelope = new Envelope(minLng, maxLng, minLat, maxLat);
+        Geometry box = ZoneGeometryUtils.GEOMETRY_FACTORY.toGeometry(envelope);
+        List<Long> ids = new ArrayList<>();
+        for (Entry entry : snapshot.get().candidates(envelope)) {
+            if (matchesMapType(entry, mapType)
+                    && (envelope.contains(entry.geometry.getEnvelopeInternal()) || entry.prepared.intersects(box))) {
+                ids.add(entry.id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * IDs of zones whose polygon contains the point (boundary included)
+     */
+    public List<Long> findContaining(double lat, double lng, String mapType) {
+        Point point = ZoneGeometryUtils.GEOMETRY_FACTORY.createPoint(new Coordinate(lng, lat));
+        List<Long> ids = new ArrayList<>();
+        for (Entry entry : snapshot.get().candidates(point.getEnvelopeInternal())) {
+            if (matchesMapType(entry, mapType) && entry.prepared.covers(point)) {
+                ids.add(entry.id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * IDs of zones whose polygon lies within radius (degrees) of the point, nearest first
+     */
+    public List<Long> findWithinDistance(double lat, double lng, double radius, String mapType) {
+        Point point = ZoneGeometryUtils.GEOMETRY_FACTORY.createPoint(new Coordinate(lng, lat));
+        Envelope envelope = new Envelope(lng - radius, lng + radius, lat - radius, lat + radius);
+        List<Object[]> hits = new ArrayList<>();
+        for (Entry entry : snapshot.get().candidates(envelope)) {
+            if (!matchesMapType(entry, mapType)) {
+                continue;
+            }
+            double distance = entry.prepared.covers(point) ? 0 : entry.geometry.distance(point);
+            if (distance <= radius) {
+                hits.add(new Object[] { entry.id, distance });
+            }
+        }
+        hits.sort((a, b) -> Double.compare((Double) a[1], (Double) b[1]));
+        List<Long> ids = new ArrayList<>(hits.size());
+        hits.forEach(hit -> ids.add((Long) hit[0]));
+        return ids;
+    }
+
+    /**
+     * Indexed entries whose envelope intersects the given envelope (no exact geometry test)
+     */
+    public List<Entry> findCandidates(Envelope envelope, String mapType) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : snapshot.get().candidates(envelope)) {
+            if (matchesMapType(entry, mapType)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Indexed entry for a zone ID, or null
+     */
+    public Entry get(Long id) {
+        return id != null ? snapshot.get().lookup(id) : null;
+    }
+
+    private boolean matchesMapType(Entry entry, String mapType) {
+        return mapType == null || mapType.isEmpty() || mapType.equals(entry.mapType);
+    }
+
+    // ==================== UPDATES ====================
+
+    /**
+     * Add or replace zones (after commit if a transaction is active)
+     */
+    public void upsertAll(Collection<PlanningZone> zones) {
+        Map<Long, Entry> changes = new LinkedHashMap<>();
+        for (PlanningZone zone : zones) {
+            if (zone.getId() == null) {
+                continue;
+            }
+            Entry entry = toEntry(zone.getId(), zone.getMapType(), zone.getGeojson(), zone.getBoundaryCoordinates(),
+                    zone.getCenterLat(), zone.getCenterLng());
+            if (entry != null) {
+                changes.put(entry.id, entry);
+            }
+        }
+        if (!changes.isEmpty()) {
+            enqueue(changes);
+        }
+    }
+
+    public void upsert(PlanningZone zone) {
+        upsertAll(Collections.singletonList(zone));
+    }
+
+    /**
+     * Remove zones by ID (after commit if a transaction is active)
+     */
+    public void removeAll(Collection<Long> ids) {
+        Map<Long, Entry> changes = new LinkedHashMap<>();
+        for (Long id : ids) {
+            if (id != null) {
+                // null entry = removal
+                changes.put(id, null);
+            }
+        }
+        if (!changes.isEmpty()) {
+            enqueue(changes);
+        }
+    }
+
+    public void remove(Long id) {
+        if (id != null) {
+            removeAll(Collections.singletonList(id));
+        }
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    private void apply(Map<Long, Entry> changes) {
+        List<Envelope> changedAreas = new ArrayList<>();
+        synchronized (writeLock) {
+            Snapshot next = withChanges(snapshot.get(), changes, changedAreas);
+            snapshot.set(next);
+            if (changesDuringBuild != null) {
+                changesDuringBuild.add(changes);
+            } else if (next.deltaSize() > compactionThreshold && compactionScheduled.compareAndSet(false, true)) {
+                indexExecutor.submit(this::compact);
+            }
+        }
+        notifyListeners(Collections.unmodifiableSet(new HashSet<>(changes.keySet())), changedAreas);
+    }
+
+    /**
+     * Snapshot with the changes layered on its delta; collects old and new envelopes if asked
+     */
+    private static Snapshot withChanges(Snapshot current, Map<Long, Entry> changes, List<Envelope> changedAreas) {
+        Map<Long, Entry> added = new HashMap<>(current.added);
+        Set<Long> removed = new HashSet<>(current.removed);
+        for (Map.Entry<Long, Entry> change : changes.entrySet()) {
+            Long id = change.getKey();
+            Entry entry = change.getValue();
+            if (changedAreas != null) {
+                Entry previous = current.lookup(id);
+                if (previous != null) {
+                    changedAreas.add(previous.geometry.getEnvelopeInternal());
+                }
+            }
+            // Shadow any copy already in the tree
+            added.remove(id);
+            removed.add(id);
+            if (entry != null) {
+                added.put(id, entry);
+                if (changedAreas != null) {
+                    changedAreas.add(entry.geometry.getEnvelopeInternal());
+                }
+            }
+        }
+        return new Snapshot(current.tree, current.treeEntries, current.treeById, added, removed);
+    }
+
+    private void notifyListeners(Set<Long> ids, List<Envelope> areas) {
+        if (areas.isEmpty() && (ids == null || ids.isEmpty())) {
+            return;
+        }
+        for (ChangeListener listener : changeListeners) {
+            try {
+                listener.onZonesChanged(ids, areas);
+            } catch (Exception e) {
+                logger.warn("Zone index change listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Apply now, or collect into the current transaction and apply once after it commits
+     * (bulk deletes then swap the snapshot once instead of once per row)
+     */
+    private void enqueue(Map<Long, Entry> changes) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(changes);
+            return;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingChanges pending && pending.owner() == this) {
+                pending.changes.putAll(changes);
+                return;
+            }
+        }
+        PendingChanges pending = new PendingChanges();
+        pending.changes.putAll(changes);
+        TransactionSynchronizationManager.registerSynchronization(pending);
+    }
+
+    /**
+     * Changes made by one transaction, in order (later change to the same ID wins)
+     */
+    private final class PendingChanges implements TransactionSynchronization {
+        final Map<Long, Entry> changes = new LinkedHashMap<>();
+
+        PlanningZoneSpatialIndex owner() {
+            return PlanningZoneSpatialIndex.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            apply(changes);
+        }
+    }
+
+    private Entry toEntry(Long id, String mapType, String geojson, String boundaryCoordinates,
+            BigDecimal centerLat, BigDecimal centerLng) {
+        try {
+            Geometry geometry = ZoneGeometryUtils.toGeometry(geojson, boundaryCoordinates, centerLat, centerLng);
+            return geometry != null ? new Entry(id, mapType, geometry) : null;
+        } catch (Exception e) {
+            logger.debug("Skipping zone {} in spatial index: {}", id, e.getMessage());
+            return null;
+        }
+    }
+}
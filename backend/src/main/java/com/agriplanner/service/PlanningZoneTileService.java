@@ -0,0 +1,394 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.PlanningZone;
+import com.agriplanner.repository.PlanningZoneRepository;
+import com.agriplanner.util.MvtEncoder;
+import com.agriplanner.util.ZoneGeometryUtils;
+import jakarta.annotation.PostConstruct;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFilter;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mapbox Vector Tiles for planning / soil zones (vector tile cho vùng quy hoạch, thổ nhưỡng)
+ *
+ * Zones come from the in-memory spatial index (PostGIS while it is loading), are clipped to
+ * the tile plus a small buffer, simplified in tile units (so the tolerance scales with zoom),
+ * and encoded as MVT. Tiles are kept in a byte-bounded LRU cache; when zones are saved or
+ * deleted (KMZ import, analysis confirm, edits) only the tiles covering their old/new extent
+ * are evicted.
+ */
+@Service
+public class PlanningZoneTileService implements PlanningZoneSpatialIndex.ChangeListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanningZoneTileService.class);
+
+    public static final int MAX_ZOOM = 22;
+    public static final String LAYER_NAME = "zones";
+
+    private static final int EXTENT = MvtEncoder.DEFAULT_EXTENT;
+    private static final int BUFFER = 64;
+    private static final double MAX_LAT = 85.05112878;
+    private static final int ATTRIBUTE_CHUNK = 1000;
+    private static final int MAX_SIMPLIFY_ATTEMPTS = 4;
+    // Past this many changed areas, evict by their union instead
+    private static final int MAX_INVALIDATION_AREAS = 256;
+
+    private final PlanningZoneSpatialIndex spatialIndex;
+    private final PlanningZoneRepository planningZoneRepository;
+
+    private final LinkedHashMap<String, CachedTile> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cacheBytes = 0;
+    // Bumped on every invalidation; tiles rendered across a change are not cached
+    private long cacheVersion = 0;
+
+    @Value("${planning-zone.tiles.cache-max-bytes:67108864}")
+    private long cacheMaxBytes;
+
+    @Value("${planning-zone.tiles.max-tile-bytes:204800}")
+    private int maxTileBytes;
+
+    // Douglas-Peucker tolerance and smallest kept feature, in tile units (extent 4096)
+    @Value("${planning-zone.tiles.simplify-tolerance:4}")
+    private double simplifyTolerance;
+
+    @Value("${planning-zone.tiles.min-feature-size:8}")
+    private double minFeatureSize;
+
+    public PlanningZoneTileService(PlanningZoneSpatialIndex spatialIndex,
+            PlanningZoneRepository planningZoneRepository) {
+        this.spatialIndex = spatialIndex;
+        this.planningZoneRepository = planningZoneRepository;
+    }
+
+    @PostConstruct
+    public void registerListener() {
+        spatialIndex.addChangeListener(this);
+    }
+
+    private static final class CachedTile {
+        final byte[] data;
+        final Envelope bounds;
+
+        CachedTile(byte[] data, Envelope bounds) {
+            this.data = data;
+            this.bounds = bounds;
+        }
+    }
+
+    /**
+     * Zone to draw: id, lng/lat geometry and properties
+     */
+    private static final class TileZone {
+        final Long id;
+        final Geometry geometry;
+        Map<String, Object> properties;
+
+        TileZone(Long id, Geometry geometry) {
+            this.id = id;
+            this.geometry = geometry;
+        }
+    }
+
+    /**
+     * Check tile coordinates
+     */
+    public static boolean isValidTile(int z, int x, int y) {
+        if (z < 0 || z > MAX_ZOOM) {
+            return false;
+        }
+        long n = 1L << z;
+        return x >= 0 && y >= 0 && x < n && y < n;
+    }
+
+    /**
+     * Encoded MVT for tile z/x/y (empty array when no zone is visible)
+     */
+    public byte[] getTile(int z, int x, int y, String mapType) {
+        if (!isValidTile(z, x, y)) {
+            throw new IllegalArgumentException("Invalid tile " + z + "/" + x + "/" + y);
+        }
+        String type = mapType != null && !mapType.isEmpty() ? mapType : null;
+        String key = (type != null ? type : "*") + "/" + z + "/" + x + "/" + y;
+
+        long version;
+        synchronized (cache) {
+            CachedTile cached = cache.get(key);
+            if (cached != null) {
+                return cached.data;
+            }
+            version = cacheVersion;
+        }
+
+        boolean fromIndex = spatialIndex.isReady();
+        Envelope bounds = tileBounds(z, x, y, (double) BUFFER / EXTENT);
+        byte[] data = render(z, x, y, type, fromIndex);
+
+        // Tiles built from the SQL fallback are not cached - the index is about to take over
+        if (fromIndex) {
+            synchronized (cache) {
+                if (version == cacheVersion && data.length <= cacheMaxBytes) {
+                    CachedTile previous = cache.put(key, new CachedTile(data, bounds));
+                    if (previous != null) {
+                        cacheBytes -= previous.data.length;
+                    }
+                    cacheBytes += data.length;
+                    evictOverflow();
+                }
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public void onZonesChanged(Set<Long> ids, List<Envelope> areas) {
+        if (areas.isEmpty()) {
+            return;
+        }
+        List<Envelope> evictAreas = areas;
+        if (areas.size() > MAX_INVALIDATION_AREAS) {
+            Envelope union = new Envelope();
+            areas.forEach(union::expandToInclude);
+            evictAreas = List.of(union);
+        }
+        int evicted = 0;
+        synchronized (cache) {
+            cacheVersion++;
+            Iterator<CachedTile> it = cache.values().iterator();
+            while (it.hasNext()) {
+                CachedTile tile = it.next();
+                for (Envelope area : evictAreas) {
+                    if (tile.bounds.intersects(area)) {
+                        cacheBytes -= tile.data.length;
+                        it.remove();
+                        evicted++;
+                        break;
+                    }
+                }
+            }
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted {} zone tiles after zone changes", evicted);
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedTile> it = cache.values().iterator();
+        while (cacheBytes > cacheMaxBytes && it.hasNext()) {
+            cacheBytes -= it.next().data.length;
+            it.remove();
+        }
+    }
+
+    // ==================== RENDERING ====================
+
+    private byte[] render(int z, int x, int y, String mapType, boolean fromIndex) {
+        double buffer = (double) BUFFER / EXTENT;
+        Envelope clipBounds = tileBounds(z, x, y, buffer);
+        TileProjection projection = new TileProjection(z, x, y);
+
+        List<TileZone> zones = fromIndex
+                ? loadFromIndex(clipBounds, mapType, projection)
+                : loadFromDatabase(clipBounds, mapType);
+
+        double tolerance = simplifyTolerance;
+        double minSize = minFeatureSize;
+        byte[] data = new byte[0];
+        for (int attempt = 0; attempt < MAX_SIMPLIFY_ATTEMPTS; attempt++) {
+            data = encode(zones, clipBounds, projection, tolerance, minSize);
+            if (data.length <= maxTileBytes) {
+                break;
+            }
+            // Too heavy - coarsen and drop more small zones
+            tolerance *= 2;
+            minSize *= 2;
+        }
+        if (data.length > maxTileBytes) {
+            logger.warn("Zone tile {}/{}/{} is {} bytes after simplification", z, x, y, data.length);
+        }
+        return data;
+    }
+
+    private List<TileZone> loadFromIndex(Envelope clipBounds, String mapType, TileProjection projection) {
+        List<TileZone> zones = new ArrayList<>();
+        for (PlanningZoneSpatialIndex.Entry entry : spatialIndex.findCandidates(clipBounds, mapType)) {
+            // Skip sub-pixel zones before loading their attributes
+            Geometry geometry = entry.getGeometry();
+            if (geometry.getDimension() > 0
+                    && projection.isSmallerThan(geometry.getEnvelopeInternal(), minFeatureSize)) {
+                continue;
+            }
+            zones.add(new TileZone(entry.getId(), geometry));
+        }
+
+        Map<Long, TileZone> byId = new HashMap<>();
+        zones.forEach(zone -> byId.put(zone.id, zone));
+        List<Long> ids = new ArrayList<>(byId.keySet());
+        for (int i = 0; i < ids.size(); i += ATTRIBUTE_CHUNK) {
+            List<Object[]> rows = planningZoneRepository.findTileAttributesByIdIn(
+                    ids.subList(i, Math.min(i + ATTRIBUTE_CHUNK, ids.size())));
+            for (Object[] row : rows) {
+                TileZone zone = byId.get((Long) row[0]);
+                if (zone != null) {
+                    zone.properties = properties((String) row[1], (String) row[2], (String) row[3],
+                            (String) row[4], (String) row[5], (Long) row[6], (String) row[7]);
+                }
+            }
+        }
+        // Zones deleted since the index snapshot have no row
+        zones.removeIf(zone -> zone.properties == null);
+        return zones;
+    }
+
+    private List<TileZone> loadFromDatabase(Envelope clipBounds, String mapType) {
+        List<TileZone> zones = new ArrayList<>();
+        for (PlanningZone zone : planningZoneRepository.findIntersectingEnvelope(clipBounds.getMinY(),
+                clipBounds.getMaxY(), clipBounds.getMinX(), clipBounds.getMaxX(), mapType)) {
+            Geometry geometry = zone.getGeom() != null ? zone.getGeom()
+                    : ZoneGeometryUtils.toGeometry(zone.getGeojson(), zone.getBoundaryCoordinates(),
+                            zone.getCenterLat(), zone.getCenterLng());
+            if (geometry == null) {
+                continue;
+            }
+            TileZone tileZone = new TileZone(zone.getId(), geometry);
+            tileZone.properties = properties(zone.getName(), zone.getZoneType(), zone.getZoneCode(),
+                    zone.getFillColor(), zone.getMapType(), zone.getKmzUploadId(), zone.getAnalysisId());
+            zones.add(tileZone);
+        }
+        return zones;
+    }
+
+    private Map<String, Object> properties(String name, String zoneType, String zoneCode, String fillColor,
+            String mapType, Long kmzUploadId, String analysisId) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("name", name);
+        properties.put("zoneType", zoneType);
+        properties.put("zoneCode", zoneCode);
+        properties.put("fillColor", fillColor);
+        properties.put("mapType", mapType);
+        properties.put("kmzUploadId", kmzUploadId);
+        properties.put("analysisId", analysisId);
+        return properties;
+    }
+
+    private byte[] encode(List<TileZone> zones, Envelope clipBounds, TileProjection projection, double tolerance,
+            double minSize) {
+        MvtEncoder encoder = new MvtEncoder();
+        MvtEncoder.Layer layer = encoder.addLayer(LAYER_NAME, EXTENT);
+        Geometry clipBox = ZoneGeometryUtils.GEOMETRY_FACTORY.toGeometry(clipBounds);
+
+        for (TileZone zone : zones) {
+            Geometry geometry = zone.geometry;
+            if (geometry.getDimension() > 0
+                    && projection.isSmallerThan(geometry.getEnvelopeInternal(), minSize)) {
+                continue;
+            }
+            try {
+                // Web Mercator is separable, so a lng/lat box is the tile box
+                if (!clipBounds.contains(geometry.getEnvelopeInternal())) {
+                    geometry = OverlayNGRobust.overlay(geometry, clipBox, OverlayNG.INTERSECTION);
+                    if (geometry.isEmpty()) {
+                        continue;
+                    }
+                }
+                geometry = projection.project(geometry);
+                if (geometry.getDimension() > 0 && tolerance > 0) {
+                    geometry = DouglasPeuckerSimplifier.simplify(geometry, tolerance);
+                }
+                layer.addFeature(zone.id, zone.properties, geometry);
+            } catch (Exception e) {
+                logger.debug("Skipping zone {} in tile: {}", zone.id, e.getMessage());
+            }
+        }
+        return encoder.encode();
+    }
+
+    // ==================== TILE MATH ====================
+
+    /**
+     * Lng/lat envelope of a tile, expanded by buffer (fraction of the tile size)
+     */
+    private static Envelope tileBounds(int z, int x, int y, double buffer) {
+        double n = Math.pow(2, z);
+        double minLng = (x - buffer) / n * 360.0 - 180.0;
+        double maxLng = (x + 1 + buffer) / n * 360.0 - 180.0;
+        double maxLat = tileLat(y - buffer, n);
+        double minLat = tileLat(y + 1 + buffer, n);
+        return new Envelope(minLng, maxLng, minLat, maxLat);
+    }
+
+    private static double tileLat(double y, double n) {
+        double clamped = Math.max(0, Math.min(n, y));
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * clamped / n))));
+    }
+
+    /**
+     * Lng/lat to tile coordinates (0..EXTENT, y down) for one tile
+     */
+    private static final class TileProjection implements CoordinateSequenceFilter {
+        private final double scale;
+        private final int x;
+        private final int y;
+
+        TileProjection(int z, int x, int y) {
+            this.scale = Math.pow(2, z);
+            this.x = x;
+            this.y = y;
+        }
+
+        double px(double lng) {
+            return ((lng + 180.0) / 360.0 * scale - x) * EXTENT;
+        }
+
+        double py(double lat) {
+            double rad = Math.toRadians(Math.max(-MAX_LAT, Math.min(MAX_LAT, lat)));
+            double worldY = (1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * scale;
+            return (worldY - y) * EXTENT;
+        }
+
+        boolean isSmallerThan(Envelope lngLat, double size) {
+            return px(lngLat.getMaxX()) - px(lngLat.getMinX()) < size
+                    && py(lngLat.getMinY()) - py(lngLat.getMaxY()) < size;
+        }
+
+        Geometry project(Geometry geometry) {
+            Geometry copy = geometry.copy();
+            copy.apply(this);
+            return copy;
+        }
+
+        @Override
+        public void filter(CoordinateSequence seq, int i) {
+            double lng = seq.getX(i);
+            double lat = seq.getY(i);
+            seq.setOrdinate(i, CoordinateSequence.X, px(lng));
+            seq.setOrdinate(i, CoordinateSequence.Y, py(lat));
+        }
+
+        @Override
+        public boolean isDone() {
+            return false;
+        }
+
+        @Override
+        public boolean isGeometryChanged() {
+            return true;
+        }
+    }
+}
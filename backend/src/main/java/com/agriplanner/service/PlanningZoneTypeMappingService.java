@@ -41,6 +41,19 @@ public class PlanningZoneTypeMappingService {
 
     // Pattern để loại bỏ dấu tiếng Việt
     private static final Pattern DIACRITICS_PATTERN = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    // Fuzzy match chỉ chấp nhận khi similarity > 65% (quy hoạch)
+    private static final double FUZZY_THRESHOLD = 0.65;
+
+    // Stop words bỏ qua khi tách keyword
+    private static final Set<String> STOP_WORDS = Set.of(
+        "dat", "la", "va", "cua", "cho", "trong", "co", "khac", "cac", 
+        "su", "dung", "voi", "tai", "den", "tu", "duoc", "nhu", "khi"
+    );
+
+    // Index so khớp dựng lại mỗi lần reload cache
+    private volatile FuzzyNameMatcher matcher = new FuzzyNameMatcher(Map.of(), Map.of(), FUZZY_THRESHOLD);
 
     public PlanningZoneTypeMappingService(PlanningZoneTypeRepository planningZoneTypeRepository) {
         this.planningZoneTypeRepository = planningZoneTypeRepository;
@@ -94,6 +107,9 @@ public class PlanningZoneTypeMappingService {
         } catch (Exception e) {
             logger.error("Failed to load PlanningZoneType cache: {}", e.getMessage(), e);
         }
+
+        // Dựng lại index so khớp (memo cũ bị bỏ cùng index cũ)
+        matcher = new FuzzyNameMatcher(normalizedNameToCode, keywordsToCode, FUZZY_THRESHOLD);
     }
 
     /**
@@ -252,11 +268,7 @@ public class PlanningZoneTypeMappingService {
      * Kiểm tra stop words
      */
     private boolean isStopWord(String word) {
-        Set<String> stopWords = Set.of(
-            "dat", "la", "va", "cua", "cho", "trong", "co", "khac", "cac", 
-            "su", "dung", "voi", "tai", "den", "tu", "duoc", "nhu", "khi"
-        );
-        return stopWords.contains(word);
+        return STOP_WORDS.contains(word);
     }
 
     /**
@@ -276,7 +288,7 @@ public class PlanningZoneTypeMappingService {
         normalized = normalized.replace("đ", "d").replace("Đ", "d");
         
         // Remove extra spaces
-        normalized = normalized.replaceAll("\\s+", " ");
+        normalized = WHITESPACE_PATTERN.matcher(normalized).replaceAll(" ");
         
         return normalized;
     }
@@ -297,103 +309,16 @@ public class PlanningZoneTypeMappingService {
         String normalized = normalizeText(aiZoneName);
         logger.debug("Mapping planning zone AI name: '{}' -> normalized: '{}'", aiZoneName, normalized);
 
-        // Strategy 1: Exact match
-        if (normalizedNameToCode.containsKey(normalized)) {
-            String code = normalizedNameToCode.get(normalized);
-            logger.debug("  -> Exact match: {}", code);
-            return code;
-        }
-
-        // Strategy 2: Contains match
-        for (Map.Entry<String, String> entry : normalizedNameToCode.entrySet()) {
-            if (normalized.contains(entry.getKey()) || entry.getKey().contains(normalized)) {
-                logger.debug("  -> Contains match: {} (via {})", entry.getValue(), entry.getKey());
-                return entry.getValue();
-            }
-        }
-
-        // Strategy 3: Keyword match - ưu tiên match dài nhất
-        String bestMatch = null;
-        int bestMatchLength = 0;
-        
-        for (Map.Entry<String, String> entry : keywordsToCode.entrySet()) {
-            String keyword = entry.getKey();
-            if (normalized.contains(keyword) && keyword.length() > bestMatchLength) {
-                bestMatch = entry.getValue();
-                bestMatchLength = keyword.length();
-            }
-        }
-        
-        if (bestMatch != null) {
-            logger.debug("  -> Keyword match: {} (length: {})", bestMatch, bestMatchLength);
-            return bestMatch;
-        }
-
-        // Strategy 4: Fuzzy match
-        String fuzzyMatch = findBestFuzzyMatch(normalized);
-        if (fuzzyMatch != null) {
-            logger.debug("  -> Fuzzy match: {}", fuzzyMatch);
-            return fuzzyMatch;
+        FuzzyNameMatcher.Match match = matcher.match(normalized);
+        if (match != null) {
+            logger.debug("  -> {} match: {} (via {})", match.getStrategy(), match.getCode(), match.getVia());
+            return match.getCode();
         }
 
         logger.warn("  -> No match found for planning zone: '{}'", aiZoneName);
         return null;
     }
 
-    /**
-     * Fuzzy match với Levenshtein distance
-     */
-    private String findBestFuzzyMatch(String normalized) {
-        String bestCode = null;
-        double bestSimilarity = 0.65; // Threshold 65% cho quy hoạch
-        
-        for (Map.Entry<String, String> entry : normalizedNameToCode.entrySet()) {
-            double similarity = calculateSimilarity(normalized, entry.getKey());
-            if (similarity > bestSimilarity) {
-                bestSimilarity = similarity;
-                bestCode = entry.getValue();
-            }
-        }
-        
-        return bestCode;
-    }
-
-    /**
-     * Tính similarity ratio (0.0 - 1.0)
-     */
-    private double calculateSimilarity(String s1, String s2) {
-        int maxLen = Math.max(s1.length(), s2.length());
-        if (maxLen == 0) return 1.0;
-        
-        int distance = levenshteinDistance(s1, s2);
-        return 1.0 - ((double) distance / maxLen);
-    }
-
-    /**
-     * Levenshtein distance
-     */
-    private int levenshteinDistance(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-        
-        for (int i = 0; i <= s1.length(); i++) {
-            for (int j = 0; j <= s2.length(); j++) {
-                if (i == 0) {
-                    dp[i][j] = j;
-                } else if (j == 0) {
-                    dp[i][j] = i;
-                } else {
-                    int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
-                    dp[i][j] = Math.min(
-                        Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
-                        dp[i - 1][j - 1] + cost
-                    );
-                }
-            }
-        }
-        
-        return dp[s1.length()][s2.length()];
-    }
-
     /**
      * Lấy PlanningZoneType entity từ code
      */
@@ -466,6 +391,7 @@ public class PlanningZoneTypeMappingService {
         stats.put("totalZoneTypes", codeToZoneType.size());
         stats.put("totalNameMappings", normalizedNameToCode.size());
         stats.put("totalKeywordMappings", keywordsToCode.size());
+        stats.put("matcher", matcher.getStats());
         stats.put("categories", codeToZoneType.values().stream()
                 .map(PlanningZoneType::getCategory)
                 .distinct()
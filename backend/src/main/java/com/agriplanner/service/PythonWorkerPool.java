@@ -0,0 +1,481 @@
+package com.agriplanner.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of long-lived Python workers for the OpenCV map scripts (tiến trình Python dùng lại)
+ *
+ * Each worker runs backend/python/extractor_worker.py, which imports OpenCV/NumPy and the
+ * extractor once and then executes jobs sent as length-prefixed JSON frames over stdin/stdout.
+ * At most pool-size jobs run at a time (callers wait for a free slot). Workers are pinged
+ * while idle, recycled after max-jobs jobs or after idling too long, and killed when a job
+ * exceeds its timeout. With the pool disabled, or when the worker script is missing, jobs fall
+ * back to one process per run.
+ */
+@Service
+public class PythonWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger("AI.OpenCV");
+
+    private static final String WORKER_SCRIPT = "extractor_worker.py";
+    private static final String STATUS_START = "===JSON_START===";
+    private static final String STATUS_END = "===JSON_END===";
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    private static final int TAIL_LINES = 200;
+    private static final long PING_TIMEOUT_MS = 10_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final LinkedBlockingDeque<Worker> idle = new LinkedBlockingDeque<>();
+    private final Map<Long, Worker> live = new ConcurrentHashMap<>();
+    private final ExecutorService ioExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "python-worker-io");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Semaphore slots;
+    private final int poolSize;
+
+    // Metrics
+    private final AtomicLong jobsCompleted = new AtomicLong();
+    private final AtomicLong jobsFailed = new AtomicLong();
+    private final AtomicLong jobsTimedOut = new AtomicLong();
+    private final AtomicLong oneShotRuns = new AtomicLong();
+    private final AtomicLong workersStarted = new AtomicLong();
+    private final AtomicLong workersRecycled = new AtomicLong();
+    private final AtomicLong totalJobMs = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong requestIds = new AtomicLong();
+
+    @Value("${python.path:python}")
+    private String pythonPath;
+
+    @Value("${python.worker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${python.worker.max-jobs:50}")
+    private int maxJobsPerWorker;
+
+    @Value("${python.worker.job-timeout-seconds:600}")
+    private long jobTimeoutSeconds;
+
+    @Value("${python.worker.startup-timeout-seconds:120}")
+    private long startupTimeoutSeconds;
+
+    @Value("${python.worker.idle-timeout-minutes:30}")
+    private long idleTimeoutMinutes;
+
+    public PythonWorkerPool(@Value("${python.worker.pool-size:2}") int poolSize) {
+        this.poolSize = Math.max(1, poolSize);
+        this.slots = new Semaphore(this.poolSize, true);
+    }
+
+    /**
+     * Outcome of one script run
+     */
+    @Data
+    public static class Result {
+        private int exitCode;
+        // Text between ===JSON_START=== and ===JSON_END=== printed by the script, or null
+        private String status;
+        // Last log lines of the run (for error messages)
+        private String output;
+        private String error;
+        private long durationMs;
+        private boolean pooled;
+
+        public boolean isSuccess() {
+            return exitCode == 0 && error == null;
+        }
+    }
+
+    /**
+     * Long-lived worker process
+     */
+    private final class Worker {
+        final Process process;
+        final File scriptDir;
+        final DataOutputStream in;
+        final DataInputStream out;
+        int jobs;
+        long lastUsed = System.currentTimeMillis();
+
+        Worker(Process process, File scriptDir) {
+            this.process = process;
+            this.scriptDir = scriptDir;
+            this.in = new DataOutputStream(process.getOutputStream());
+            this.out = new DataInputStream(process.getInputStream());
+        }
+
+        long pid() {
+            return process.pid();
+        }
+
+        /**
+         * Send one request and wait for the reply; the process is killed on timeout
+         */
+        JsonNode call(ObjectNode request, long timeoutMs) throws Exception {
+            byte[] payload = objectMapper.writeValueAsBytes(request);
+            in.writeInt(payload.length);
+            in.write(payload);
+            in.flush();
+            Future<JsonNode> reply = ioExecutor.submit(() -> {
+                int length = out.readInt();
+                if (length < 0 || length > MAX_FRAME) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                byte[] data = new byte[length];
+                out.readFully(data);
+                return objectMapper.readTree(data);
+            });
+            try {
+                return reply.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                process.destroyForcibly();
+                reply.cancel(true);
+                throw e;
+            }
+        }
+    }
+
+    // ==================== RUN ====================
+
+    /**
+     * Run a script (same arguments as on the command line) on a pooled worker
+     *
+     * @param scriptPath path of the script, e.g. .../python/map_polygon_extractor.py
+     * @param args       arguments after the script name
+     */
+    public Result run(String scriptPath, List<String> args) {
+        File script = new File(scriptPath);
+        File workerScript = new File(script.getParentFile(), WORKER_SCRIPT);
+        if (!enabled || !workerScript.isFile()) {
+            return runOnce(scriptPath, args);
+        }
+
+        waiting.incrementAndGet();
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed("Bị gián đoạn khi chờ tiến trình Python");
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        Worker worker = null;
+        try {
+            worker = borrow(script.getParentFile());
+            ObjectNode request = objectMapper.createObjectNode();
+            request.put("id", requestIds.incrementAndGet());
+            request.put("op", "run");
+            request.put("script", script.getName().replaceFirst("\\.py$", ""));
+            request.set("args", objectMapper.valueToTree(args));
+
+            long start = System.currentTimeMillis();
+            JsonNode reply = worker.call(request, TimeUnit.SECONDS.toMillis(jobTimeoutSeconds));
+            worker.jobs++;
+            worker.lastUsed = System.currentTimeMillis();
+
+            Result result = new Result();
+            result.setPooled(true);
+            result.setExitCode(reply.path("exitCode").asInt(1));
+            result.setStatus(reply.hasNonNull("status") ? reply.get("status").toString() : null);
+            result.setOutput(reply.path("output").asText(""));
+            result.setError(reply.hasNonNull("error") ? reply.get("error").asText() : null);
+            result.setDurationMs(System.currentTimeMillis() - start);
+            record(result);
+
+            logger.debug("Python worker {} finished job {} in {} ms (exit {})", worker.pid(), worker.jobs,
+                    result.getDurationMs(), result.getExitCode());
+            if (!reply.path("ok").asBoolean(false)) {
+                // Protocol-level error: the worker is fine but the request was rejected
+                result.setExitCode(result.getExitCode() == 0 ? 2 : result.getExitCode());
+            }
+            giveBack(worker);
+            worker = null;
+            return result;
+        } catch (TimeoutException e) {
+            jobsTimedOut.incrementAndGet();
+            jobsFailed.incrementAndGet();
+            logger.warn("Python job exceeded {} s, worker killed", jobTimeoutSeconds);
+            return failed("Quá thời gian xử lý (" + jobTimeoutSeconds + " giây)");
+        } catch (Exception e) {
+            jobsFailed.incrementAndGet();
+            logger.warn("Python worker failed: {}", e.getMessage());
+            return failed("Lỗi tiến trình Python: " + e.getMessage());
+        } finally {
+            if (worker != null) {
+                retire(worker);
+            }
+            slots.release();
+        }
+    }
+
+    private Worker borrow(File scriptDir) throws Exception {
+        Worker worker;
+        while ((worker = idle.pollFirst()) != null) {
+            if (worker.process.isAlive() && worker.scriptDir.equals(scriptDir)) {
+                return worker;
+            }
+            retire(worker);
+        }
+        return start(scriptDir);
+    }
+
+    private void giveBack(Worker worker) {
+        if (worker.jobs >= maxJobsPerWorker || !worker.process.isAlive()) {
+            workersRecycled.incrementAndGet();
+            retire(worker);
+        } else {
+            // Most recently used first, so surplus workers age out
+            idle.offerFirst(worker);
+        }
+    }
+
+    private Worker start(File scriptDir) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder(pythonPath != null ? pythonPath : "python", "-u",
+                new File(scriptDir, WORKER_SCRIPT).getAbsolutePath());
+        pb.directory(scriptDir);
+        pb.environment().put("PYTHONIOENCODING", "utf-8");
+        Process process = pb.start();
+        Worker worker = new Worker(process, scriptDir);
+        live.put(worker.pid(), worker);
+        drainLog(worker);
+        workersStarted.incrementAndGet();
+
+        // First ping returns once the heavy imports are done
+        long start = System.currentTimeMillis();
+        try {
+            ping(worker, TimeUnit.SECONDS.toMillis(startupTimeoutSeconds));
+        } catch (Exception e) {
+            retire(worker);
+            throw new IOException("Python worker did not start: " + e.getMessage(), e);
+        }
+        logger.info("Python worker {} started in {} ms", worker.pid(), System.currentTimeMillis() - start);
+        return worker;
+    }
+
+    private void ping(Worker worker, long timeoutMs) throws Exception {
+        ObjectNode request = objectMapper.createObjectNode();
+        request.put("id", requestIds.incrementAndGet());
+        request.put("op", "ping");
+        JsonNode reply = worker.call(request, timeoutMs);
+        if (!reply.path("pong").asBoolean(false)) {
+            throw new IOException("Unexpected ping reply " + reply);
+        }
+    }
+
+    private void retire(Worker worker) {
+        live.remove(worker.pid());
+        try {
+            // Closing stdin ends the worker loop
+            worker.in.close();
+        } catch (IOException ignored) {
+            // already gone
+        }
+        try {
+            if (!worker.process.waitFor(2, TimeUnit.SECONDS)) {
+                worker.process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            worker.process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLog(Worker worker) {
+        Thread drain = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(worker.process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    logger.debug("Python[{}]: {}", worker.pid(), line);
+                }
+            } catch (IOException ignored) {
+                // process ended
+            }
+        }, "python-worker-log-" + worker.pid());
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    // ==================== ONE-SHOT FALLBACK ====================
+
+    /**
+     * One process per run; stdout is streamed and only the status block and a tail are kept
+     */
+    private Result runOnce(String scriptPath, List<String> args) {
+        oneShotRuns.incrementAndGet();
+        List<String> command = new ArrayList<>();
+        command.add(pythonPath != null ? pythonPath : "python");
+        command.add(scriptPath);
+        command.addAll(args);
+        long start = System.currentTimeMillis();
+        Process process = null;
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            pb.environment().put("PYTHONIOENCODING", "utf-8");
+            process = pb.start();
+            Process running = process;
+            Future<String[]> reader = ioExecutor.submit(() -> readOutput(running));
+            if (!process.waitFor(jobTimeoutSeconds, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                jobsTimedOut.incrementAndGet();
+                jobsFailed.incrementAndGet();
+                return failed("Quá thời gian xử lý (" + jobTimeoutSeconds + " giây)");
+            }
+            String[] output = reader.get(10, TimeUnit.SECONDS);
+            Result result = new Result();
+            result.setExitCode(process.exitValue());
+            result.setStatus(output[0]);
+            result.setOutput(output[1]);
+            result.setDurationMs(System.currentTimeMillis() - start);
+            record(result);
+            return result;
+        } catch (Exception e) {
+            if (process != null) {
+                process.destroyForcibly();
+            }
+            jobsFailed.incrementAndGet();
+            return failed("Lỗi chạy Python: " + e.getMessage());
+        }
+    }
+
+    private String[] readOutput(Process process) throws IOException {
+        Deque<String> tail = new ArrayDeque<>();
+        StringBuilder status = null;
+        String lastStatus = null;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                logger.debug("Python: {}", line);
+                if (line.equals(STATUS_START)) {
+                    status = new StringBuilder();
+                } else if (line.equals(STATUS_END)) {
+                    lastStatus = status != null ? status.toString() : null;
+                    status = null;
+                } else if (status != null) {
+                    status.append(line);
+                } else {
+                    tail.addLast(line);
+                    if (tail.size() > TAIL_LINES) {
+                        tail.removeFirst();
+                    }
+                }
+            }
+        }
+        return new String[] { lastStatus, String.join("\n", tail) };
+    }
+
+    private Result failed(String error) {
+        Result result = new Result();
+        result.setExitCode(-1);
+        result.setError(error);
+        result.setOutput("");
+        return result;
+    }
+
+    private void record(Result result) {
+        totalJobMs.addAndGet(result.getDurationMs());
+        if (result.isSuccess()) {
+            jobsCompleted.incrementAndGet();
+        } else {
+            jobsFailed.incrementAndGet();
+        }
+    }
+
+    // ==================== HEALTH ====================
+
+    /**
+     * Ping idle workers; drop dead, unresponsive and long-idle ones
+     */
+    @Scheduled(fixedDelayString = "${python.worker.health-interval-ms:60000}")
+    public void checkHealth() {
+        long idleLimit = TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+        int count = idle.size();
+        for (int i = 0; i < count; i++) {
+            Worker worker = idle.pollLast();
+            if (worker == null) {
+                return;
+            }
+            if (System.currentTimeMillis() - worker.lastUsed > idleLimit) {
+                logger.debug("Python worker {} idle too long, stopping", worker.pid());
+                workersRecycled.incrementAndGet();
+                retire(worker);
+                continue;
+            }
+            try {
+                ping(worker, PING_TIMEOUT_MS);
+                idle.offerLast(worker);
+            } catch (Exception e) {
+                logger.warn("Python worker {} failed health check: {}", worker.pid(), e.getMessage());
+                retire(worker);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long completed = jobsCompleted.get();
+        long failed = jobsFailed.get();
+        stats.put("enabled", enabled);
+        stats.put("poolSize", poolSize);
+        stats.put("liveWorkers", live.size());
+        stats.put("idleWorkers", idle.size());
+        stats.put("busySlots", poolSize - slots.availablePermits());
+        stats.put("waiting", waiting.get());
+        stats.put("jobsCompleted", completed);
+        stats.put("jobsFailed", failed);
+        stats.put("jobsTimedOut", jobsTimedOut.get());
+        stats.put("oneShotRuns", oneShotRuns.get());
+        stats.put("workersStarted", workersStarted.get());
+        stats.put("workersRecycled", workersRecycled.get());
+        stats.put("avgJobMs", completed + failed > 0 ? totalJobMs.get() / (completed + failed) : 0);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Worker worker;
+        while ((worker = idle.poll()) != null) {
+            retire(worker);
+        }
+        live.values().forEach(w -> w.process.destroyForcibly());
+        ioExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,288 @@
+package com.agriplanner.service;
+
+import com.agriplanner.util.ZoneGeometryUtils;
+import lombok.Data;
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Streaming reader for zipped ESRI shapefiles (đọc shapefile nén theo luồng).
+ *
+ * The .shp and .dbf entries are read side by side, one record at a time, so memory stays flat
+ * whatever the layer size. Only what cadastral exports use is supported: (Multi)Polygon shapes
+ * (plain, Z and M variants) in geographic WGS84 coordinates; other shape types yield a feature
+ * without geometry. The attribute charset comes from the .cpg / .cst entry (UTF-8 otherwise).
+ */
+public class ShapefileStreamReader {
+
+    private static final int SHAPE_NULL = 0;
+    private static final int SHAPE_POLYGON = 5;
+    private static final int SHAPE_POLYGON_Z = 15;
+    private static final int SHAPE_POLYGON_M = 25;
+
+    /**
+     * One shapefile record
+     */
+    @Data
+    public static class Feature {
+        private Geometry geometry;
+        private Map<String, Object> properties;
+    }
+
+    private static class DbfField {
+        String name;
+        char type;
+        int length;
+        int decimals;
+    }
+
+    /**
+     * Read every record of the first .shp in the archive.
+     *
+     * @param sink receives each record in file order; return false to stop reading
+     * @return number of records read
+     */
+    public long read(ZipFile zip, Predicate<Feature> sink) throws IOException {
+        ZipEntry shp = findEntry(zip, null, ".shp");
+        if (shp == null) {
+            throw new IllegalArgumentException("Không tìm thấy file .shp trong file zip");
+        }
+        String base = shp.getName().substring(0, shp.getName().length() - 4);
+        ZipEntry dbf = findEntry(zip, base, ".dbf");
+        checkProjection(zip, findEntry(zip, base, ".prj"));
+        Charset charset = readCharset(zip, base);
+
+        try (DataInputStream shpIn = new DataInputStream(new BufferedInputStream(zip.getInputStream(shp), 1 << 16));
+                DataInputStream dbfIn = dbf != null
+                        ? new DataInputStream(new BufferedInputStream(zip.getInputStream(dbf), 1 << 16))
+                        : null) {
+            shpIn.skipNBytes(100);
+            List<DbfField> fields = dbfIn != null ? readDbfHeader(dbfIn) : List.of();
+            int recordLength = dbfIn != null ? fields.stream().mapToInt(f -> f.length).sum() + 1 : 0;
+            byte[] record = new byte[recordLength];
+
+            long count = 0;
+            while (true) {
+                Geometry geometry;
+                try {
+                    geometry = readShape(shpIn);
+                } catch (EOFException e) {
+                    return count;
+                }
+                Map<String, Object> properties = new LinkedHashMap<>();
+                boolean deleted = false;
+                if (dbfIn != null) {
+                    dbfIn.readFully(record);
+                    deleted = record[0] == '*';
+                    int pos = 1;
+                    for (DbfField field : fields) {
+                        properties.put(field.name, parseValue(field, record, pos, charset));
+                        pos += field.length;
+                    }
+                }
+                if (deleted) {
+                    continue;
+                }
+                Feature feature = new Feature();
+                feature.setGeometry(geometry);
+                feature.setProperties(properties);
+                count++;
+                if (!sink.test(feature)) {
+                    return count;
+                }
+            }
+        }
+    }
+
+    // ==================== SHP ====================
+
+    private Geometry readShape(DataInputStream in) throws IOException {
+        in.readInt(); // record number (big-endian)
+        int contentBytes = in.readInt() * 2;
+        byte[] content = new byte[contentBytes];
+        in.readFully(content);
+        ByteBuffer buf = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+        int shapeType = buf.getInt();
+        if (shapeType == SHAPE_NULL
+                || (shapeType != SHAPE_POLYGON && shapeType != SHAPE_POLYGON_Z && shapeType != SHAPE_POLYGON_M)) {
+            return null;
+        }
+        buf.position(buf.position() + 32); // bounding box
+        int numParts = buf.getInt();
+        int numPoints = buf.getInt();
+        int[] parts = new int[numParts + 1];
+        for (int i = 0; i < numParts; i++) {
+            parts[i] = buf.getInt();
+        }
+        parts[numParts] = numPoints;
+
+        List<Polygon> shells = new ArrayList<>();
+        List<LinearRing> shellRings = new ArrayList<>();
+        List<List<LinearRing>> holes = new ArrayList<>();
+        for (int p = 0; p < numParts; p++) {
+            int n = parts[p + 1] - parts[p];
+            Coordinate[] coords = new Coordinate[n];
+            for (int i = 0; i < n; i++) {
+                double x = buf.getDouble();
+                double y = buf.getDouble();
+                coords[i] = new Coordinate(x, y);
+            }
+            if (n < 4 || !coords[0].equals2D(coords[n - 1])) {
+                continue;
+            }
+            LinearRing ring = ZoneGeometryUtils.GEOMETRY_FACTORY.createLinearRing(coords);
+            // Shapefile shells are clockwise, holes counter-clockwise
+            if (!Orientation.isCCW(coords) || shellRings.isEmpty()) {
+                shellRings.add(ring);
+                shells.add(ZoneGeometryUtils.GEOMETRY_FACTORY.createPolygon(ring));
+                holes.add(new ArrayList<>());
+            } else {
+                holes.get(owningShell(shells, ring)).add(ring);
+            }
+        }
+        if (shellRings.isEmpty()) {
+            return null;
+        }
+        Polygon[] polygons = new Polygon[shellRings.size()];
+        for (int i = 0; i < polygons.length; i++) {
+            polygons[i] = ZoneGeometryUtils.GEOMETRY_FACTORY.createPolygon(shellRings.get(i),
+                    holes.get(i).toArray(new LinearRing[0]));
+        }
+        return ZoneGeometryUtils.fixInvalid(polygons.length == 1 ? polygons[0]
+                : ZoneGeometryUtils.GEOMETRY_FACTORY.createMultiPolygon(polygons));
+    }
+
+    private int owningShell(List<Polygon> shells, LinearRing hole) {
+        for (int i = shells.size() - 1; i >= 0; i--) {
+            Polygon shell = shells.get(i);
+            if (shell.getEnvelopeInternal().covers(hole.getEnvelopeInternal())
+                    && shell.covers(hole.getStartPoint())) {
+                return i;
+            }
+        }
+        return shells.size() - 1;
+    }
+
+    // ==================== DBF ====================
+
+    private List<DbfField> readDbfHeader(DataInputStream in) throws IOException {
+        byte[] header = new byte[32];
+        in.readFully(header);
+        ByteBuffer buf = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        int headerLength = buf.getShort(8) & 0xFFFF;
+
+        List<DbfField> fields = new ArrayList<>();
+        int read = 32;
+        byte[] descriptor = new byte[32];
+        while (read + 32 < headerLength) {
+            in.readFully(descriptor);
+            read += 32;
+            if (descriptor[0] == 0x0D) {
+                break;
+            }
+            DbfField field = new DbfField();
+            int nameEnd = 0;
+            while (nameEnd < 11 && descriptor[nameEnd] != 0) {
+                nameEnd++;
+            }
+            field.name = new String(descriptor, 0, nameEnd, StandardCharsets.US_ASCII).trim();
+            field.type = (char) descriptor[11];
+            field.length = descriptor[16] & 0xFF;
+            field.decimals = descriptor[17] & 0xFF;
+            fields.add(field);
+        }
+        in.skipNBytes(headerLength - read);
+        return fields;
+    }
+
+    private Object parseValue(DbfField field, byte[] record, int pos, Charset charset) {
+        String text = new String(record, pos, field.length, charset).trim();
+        if (text.isEmpty() || text.startsWith("*")) {
+            return null;
+        }
+        switch (field.type) {
+            case 'N':
+            case 'F':
+                try {
+                    BigDecimal value = new BigDecimal(text);
+                    return field.decimals == 0 && value.scale() <= 0 ? (Object) value.longValue() : value;
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            case 'L':
+                return "YyTt".indexOf(text.charAt(0)) >= 0;
+            default:
+                return text;
+        }
+    }
+
+    // ==================== SIDECAR FILES ====================
+
+    private ZipEntry findEntry(ZipFile zip, String base, String extension) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() || !name.toLowerCase().endsWith(extension)) {
+                continue;
+            }
+            if (base == null || name.substring(0, name.length() - extension.length()).equals(base)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void checkProjection(ZipFile zip, ZipEntry prj) throws IOException {
+        if (prj == null) {
+            return;
+        }
+        try (InputStream in = zip.getInputStream(prj)) {
+            String wkt = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (wkt.trim().toUpperCase().startsWith("PROJCS")) {
+                throw new IllegalArgumentException(
+                        "Shapefile phải dùng hệ tọa độ địa lý WGS84 (EPSG:4326), không hỗ trợ hệ chiếu");
+            }
+        }
+    }
+
+    private Charset readCharset(ZipFile zip, String base) throws IOException {
+        for (String extension : new String[] { ".cpg", ".cst" }) {
+            ZipEntry entry = findEntry(zip, base, extension);
+            if (entry == null) {
+                continue;
+            }
+            try (InputStream in = zip.getInputStream(entry)) {
+                String name = new String(in.readAllBytes(), StandardCharsets.US_ASCII).trim();
+                try {
+                    return Charset.forName(name);
+                } catch (IllegalArgumentException e) {
+                    // Unknown charset name - fall back to UTF-8
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
@@ -45,6 +45,23 @@ public class SoilTypeMappingService {
     private static final String DEFAULT_CODE = "NKH"; // Nông nghiệp khác
     private static final String DEFAULT_SOIL_NAME = "Đất chưa phân loại";
 
+    // Fuzzy match chỉ chấp nhận khi similarity > 70%
+    private static final double FUZZY_THRESHOLD = 0.7;
+
+    private static final Pattern DIACRITICS_PATTERN = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern NON_ALPHANUMERIC_PATTERN = Pattern.compile("[^a-z0-9\\s]");
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    // Stop words bỏ qua khi tách keyword
+    private static final Set<String> STOP_WORDS = Set.of(
+        "dat", "loai", "vung", "khu", "nong", "nghiep", "san", "xuat",
+        "trong", "trot", "cay", "lua", "mau", "va", "cua", "cho",
+        "co", "the", "duoc", "nhieu", "it", "cao", "thap"
+    );
+
+    // Index so khớp dựng lại mỗi lần reload cache
+    private volatile FuzzyNameMatcher matcher = new FuzzyNameMatcher(Map.of(), Map.of(), FUZZY_THRESHOLD);
+
     public SoilTypeMappingService(SoilTypeRepository soilTypeRepository) {
         this.soilTypeRepository = soilTypeRepository;
     }
@@ -97,6 +114,9 @@ public class SoilTypeMappingService {
         } catch (Exception e) {
             logger.error("Failed to load SoilType cache: {}", e.getMessage(), e);
         }
+
+        // Dựng lại index so khớp (memo cũ bị bỏ cùng index cũ)
+        matcher = new FuzzyNameMatcher(normalizedNameToCode, keywordsToCode, FUZZY_THRESHOLD);
     }
 
     /**
@@ -213,12 +233,7 @@ public class SoilTypeMappingService {
      * Kiểm tra stop words tiếng Việt
      */
     private boolean isStopWord(String word) {
-        Set<String> stopWords = Set.of(
-            "dat", "loai", "vung", "khu", "nong", "nghiep", "san", "xuat",
-            "trong", "trot", "cay", "lua", "mau", "va", "cua", "cho",
-            "co", "the", "duoc", "nhieu", "it", "cao", "thap"
-        );
-        return stopWords.contains(word);
+        return STOP_WORDS.contains(word);
     }
 
     /**
@@ -232,14 +247,13 @@ public class SoilTypeMappingService {
         
         // Remove Vietnamese diacritics
         result = Normalizer.normalize(result, Normalizer.Form.NFD);
-        Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
-        result = pattern.matcher(result).replaceAll("");
+        result = DIACRITICS_PATTERN.matcher(result).replaceAll("");
         
         // Remove special characters, keep only alphanumeric and spaces
-        result = result.replaceAll("[^a-z0-9\\s]", " ");
+        result = NON_ALPHANUMERIC_PATTERN.matcher(result).replaceAll(" ");
         
         // Collapse multiple spaces
-        result = result.replaceAll("\\s+", " ").trim();
+        result = WHITESPACE_PATTERN.matcher(result).replaceAll(" ").trim();
         
         return result;
     }
@@ -263,104 +277,16 @@ public class SoilTypeMappingService {
         String normalized = normalizeText(aiSoilName);
         logger.debug("Mapping AI soil name: '{}' -> normalized: '{}'", aiSoilName, normalized);
 
-        // Strategy 1: Exact match với normalized name
-        if (normalizedNameToCode.containsKey(normalized)) {
-            String code = normalizedNameToCode.get(normalized);
-            logger.debug("  -> Exact match found: {}", code);
-            return code;
-        }
-
-        // Strategy 2: Contains match - kiểm tra AI name có chứa standard name không
-        for (Map.Entry<String, String> entry : normalizedNameToCode.entrySet()) {
-            if (normalized.contains(entry.getKey()) || entry.getKey().contains(normalized)) {
-                logger.debug("  -> Contains match found: {} (via {})", entry.getValue(), entry.getKey());
-                return entry.getValue();
-            }
-        }
-
-        // Strategy 3: Keyword match - ưu tiên match dài nhất
-        String bestMatch = null;
-        int bestMatchLength = 0;
-        
-        for (Map.Entry<String, String> entry : keywordsToCode.entrySet()) {
-            String keyword = entry.getKey();
-            if (normalized.contains(keyword) && keyword.length() > bestMatchLength) {
-                bestMatch = entry.getValue();
-                bestMatchLength = keyword.length();
-            }
-        }
-        
-        if (bestMatch != null) {
-            logger.debug("  -> Keyword match found: {} (keyword length: {})", bestMatch, bestMatchLength);
-            return bestMatch;
-        }
-
-        // Strategy 4: Fuzzy match với Levenshtein distance
-        String fuzzyMatch = findBestFuzzyMatch(normalized);
-        if (fuzzyMatch != null) {
-            logger.debug("  -> Fuzzy match found: {}", fuzzyMatch);
-            return fuzzyMatch;
+        FuzzyNameMatcher.Match match = matcher.match(normalized);
+        if (match != null) {
+            logger.debug("  -> {} match: {} (via {})", match.getStrategy(), match.getCode(), match.getVia());
+            return match.getCode();
         }
 
         logger.warn("  -> No match found for: '{}'", aiSoilName);
         return null;
     }
 
-    /**
-     * Tìm best match bằng Levenshtein distance
-     * Chỉ accept nếu similarity >= 70%
-     */
-    private String findBestFuzzyMatch(String normalized) {
-        String bestCode = null;
-        double bestSimilarity = 0.7; // Threshold 70%
-        
-        for (Map.Entry<String, String> entry : normalizedNameToCode.entrySet()) {
-            double similarity = calculateSimilarity(normalized, entry.getKey());
-            if (similarity > bestSimilarity) {
-                bestSimilarity = similarity;
-                bestCode = entry.getValue();
-            }
-        }
-        
-        return bestCode;
-    }
-
-    /**
-     * Calculate similarity ratio (0.0 - 1.0) using Levenshtein distance
-     */
-    private double calculateSimilarity(String s1, String s2) {
-        int maxLen = Math.max(s1.length(), s2.length());
-        if (maxLen == 0) return 1.0;
-        
-        int distance = levenshteinDistance(s1, s2);
-        return 1.0 - ((double) distance / maxLen);
-    }
-
-    /**
-     * Levenshtein distance implementation
-     */
-    private int levenshteinDistance(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-        
-        for (int i = 0; i <= s1.length(); i++) {
-            for (int j = 0; j <= s2.length(); j++) {
-                if (i == 0) {
-                    dp[i][j] = j;
-                } else if (j == 0) {
-                    dp[i][j] = i;
-                } else {
-                    int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
-                    dp[i][j] = Math.min(
-                        Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
-                        dp[i - 1][j - 1] + cost
-                    );
-                }
-            }
-        }
-        
-        return dp[s1.length()][s2.length()];
-    }
-
     /**
      * Lấy SoilType entity từ code
      */
@@ -447,6 +373,7 @@ public class SoilTypeMappingService {
         stats.put("totalSoilTypes", codeToSoilType.size());
         stats.put("totalNameMappings", normalizedNameToCode.size());
         stats.put("totalKeywordMappings", keywordsToCode.size());
+        stats.put("matcher", matcher.getStats());
         stats.put("categories", codeToSoilType.values().stream()
                 .map(SoilType::getCategory)
                 .distinct()
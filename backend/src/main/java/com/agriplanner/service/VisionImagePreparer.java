@@ -0,0 +1,305 @@
+package com.agriplanner.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Shrinks map images before they are sent to vision models (Chuẩn bị ảnh trước khi gửi AI Vision)
+ *
+ * Vision models downscale large images on their side anyway (GPT-4o fits "high" detail into
+ * 2048 px, "low" into 512 px), so uploading a 50 MB scan only costs memory and upload time.
+ * The image is decoded with ImageIO source subsampling, which never holds the full-resolution
+ * raster, and re-encoded as JPEG into a temporary file that callers stream from.
+ */
+@Service
+public class VisionImagePreparer {
+
+    private static final Logger logger = LoggerFactory.getLogger(VisionImagePreparer.class);
+
+    // GPT-4o "high" detail: longest side is fitted into 2048 px by the API
+    public static final int MAX_EDGE_GPT4O_HIGH = 2048;
+    // GPT-4o "low" detail: a single 512 px tile
+    public static final int MAX_EDGE_GPT4O_LOW = 512;
+
+    @Value("${ai.vision.image.gemini-max-edge:3072}")
+    private int geminiMaxEdge;
+
+    @Value("${ai.vision.image.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    @Value("${ai.vision.image.dir:${java.io.tmpdir}/agriplanner/vision}")
+    private String workDir;
+
+    /**
+     * Image ready to upload; close it to delete the temporary copy
+     */
+    public static final class PreparedImage implements AutoCloseable {
+        private final Path path;
+        private final String mimeType;
+        private final int width;
+        private final int height;
+        private final boolean temporary;
+
+        private PreparedImage(Path path, String mimeType, int width, int height, boolean temporary) {
+            this.path = path;
+            this.mimeType = mimeType;
+            this.width = width;
+            this.height = height;
+            this.temporary = temporary;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long size() throws IOException {
+            return Files.size(path);
+        }
+
+        @Override
+        public void close() {
+            if (temporary) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    logger.warn("Could not delete prepared image {}: {}", path, e.getMessage());
+                }
+            }
+        }
+    }
+
+    public int getGeminiMaxEdge() {
+        return geminiMaxEdge;
+    }
+
+    /**
+     * Downscale so the longest side is at most maxEdge pixels. Small PNG/JPEG files and
+     * formats ImageIO cannot decode are returned as they are.
+     */
+    public PreparedImage prepare(File source, int maxEdge) throws IOException {
+        return prepare(source, null, maxEdge);
+    }
+
+    /**
+     * Same as {@link #prepare(File, int)} for one region of the image (a tile); only that
+     * region is decoded. A null region means the whole image.
+     */
+    public PreparedImage prepare(File source, Rectangle region, int maxEdge) throws IOException {
+        String sourceMime = getMimeType(source);
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                if (region != null) {
+                    throw new IOException("Cannot decode " + source.getName() + " to cut a region");
+                }
+                logger.debug("No ImageIO reader for {}, sending original", source.getName());
+                return new PreparedImage(source.toPath(), sourceMime, -1, -1, false);
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                Rectangle area = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+                if (region != null) {
+                    area = area.intersection(region);
+                }
+                int width = area.width;
+                int height = area.height;
+                int longest = Math.max(width, height);
+                boolean passThrough = "image/png".equals(sourceMime) || "image/jpeg".equals(sourceMime);
+                if (region == null && longest <= maxEdge && passThrough) {
+                    return new PreparedImage(source.toPath(), sourceMime, width, height, false);
+                }
+
+                // Decoder keeps every n-th pixel of every n-th row: memory ~ output size only
+                int step = Math.max(1, (int) Math.ceil(longest / (double) maxEdge));
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    param.setSourceRegion(area);
+                }
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage image = toRgb(reader.read(0, param));
+
+                Path target = writeJpeg(image);
+                logger.info("Prepared {}{} for vision: {}x{} ({} KB) -> {}x{} ({} KB)",
+                        source.getName(), region != null ? " " + area.x + "," + area.y : "", width, height,
+                        source.length() / 1024,
+                        image.getWidth(), image.getHeight(), Files.size(target) / 1024);
+                return new PreparedImage(target, "image/jpeg", image.getWidth(), image.getHeight(), true);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Cut several tiles out of one band of the image: the band covering them is decoded once
+     * and each tile is cropped from it, instead of decoding every tile region separately
+     * (PNG cannot seek, so each region read starts over from the first row).
+     *
+     * @return one JPEG per tile, in the order given; tiles are downscaled to fit maxEdge
+     */
+    public List<PreparedImage> prepareTiles(File source, List<Rectangle> tiles, int maxEdge) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Cannot decode " + source.getName() + " to cut tiles");
+            }
+
+            ImageReader reader = readers.next();
+            List<PreparedImage> prepared = new ArrayList<>(tiles.size());
+            try {
+                reader.setInput(input, true, true);
+                Rectangle image = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+                Rectangle band = null;
+                int longest = 1;
+                for (Rectangle tile : tiles) {
+                    band = band == null ? new Rectangle(tile) : band.union(tile);
+                    longest = Math.max(longest, Math.max(tile.width, tile.height));
+                }
+                band = band == null ? new Rectangle() : band.intersection(image);
+                if (band.isEmpty()) {
+                    throw new IOException("Tiles lie outside " + source.getName());
+                }
+
+                int step = Math.max(1, (int) Math.ceil(longest / (double) maxEdge));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(band);
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage decoded = toRgb(reader.read(0, param));
+
+                for (Rectangle tile : tiles) {
+                    // Tile in band pixels, after subsampling
+                    int x0 = Math.min(ceilDiv(Math.max(tile.x - band.x, 0), step), decoded.getWidth() - 1);
+                    int y0 = Math.min(ceilDiv(Math.max(tile.y - band.y, 0), step), decoded.getHeight() - 1);
+                    int x1 = Math.min(ceilDiv(tile.x + tile.width - band.x, step), decoded.getWidth());
+                    int y1 = Math.min(ceilDiv(tile.y + tile.height - band.y, step), decoded.getHeight());
+                    BufferedImage crop = decoded.getSubimage(x0, y0, Math.max(x1 - x0, 1), Math.max(y1 - y0, 1));
+                    Path target = writeJpeg(crop);
+                    prepared.add(new PreparedImage(target, "image/jpeg", crop.getWidth(), crop.getHeight(), true));
+                }
+                logger.info("Cut {} tiles of {} from band {},{} {}x{} (step {})", tiles.size(), source.getName(),
+                        band.x, band.y, band.width, band.height, step);
+                return prepared;
+            } catch (IOException | RuntimeException e) {
+                prepared.forEach(PreparedImage::close);
+                throw e;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * Pixel size read from the image header, or null if ImageIO cannot decode the file
+     */
+    public Dimension dimensions(File source) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // JPEG has no alpha channel; flatten onto white like the map background
+    private BufferedImage toRgb(BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_3BYTE_BGR
+                || type == BufferedImage.TYPE_BYTE_GRAY) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    private Path writeJpeg(BufferedImage image) throws IOException {
+        Path dir = Path.of(workDir);
+        Files.createDirectories(dir);
+        Path target = Files.createTempFile(dir, "vision-", ".jpg");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        } finally {
+            writer.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * MIME type from the file extension
+     */
+    private static String getMimeType(File file) {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".png"))
+            return "image/png";
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg"))
+            return "image/jpeg";
+        if (name.endsWith(".gif"))
+            return "image/gif";
+        if (name.endsWith(".webp"))
+            return "image/webp";
+        return "image/jpeg";
+    }
+}
@@ -0,0 +1,263 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.AiVisionCacheEntry;
+import com.agriplanner.repository.AiVisionCacheRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache of AI vision results (bộ nhớ đệm kết quả AI theo nội dung ảnh)
+ *
+ * Coordinate extraction (Gemini / GPT-4o) and legend colour labelling (GPT-4o) take 20-60 s
+ * and cost API calls. Results are stored in ai_vision_cache under SHA-256 of the image bytes +
+ * map type + prompt version, so re-uploading the same scan skips the providers. The table is
+ * kept under an entry / size limit by deleting the least recently used rows.
+ */
+@Service
+@RequiredArgsConstructor
+public class VisionResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VisionResultCache.class);
+
+    public static final String KIND_COORDINATES = "coordinates";
+    public static final String KIND_LEGEND = "legend";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<LinkedHashMap<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+    private static final int EVICT_BATCH = 50;
+
+    private final AiVisionCacheRepository cacheRepository;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Value("${ai.vision-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.vision-cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${ai.vision-cache.max-mb:50}")
+    private long maxMb;
+
+    /**
+     * Cached provider result
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Cached {
+        private String provider;
+        private Map<String, Object> data;
+        private LocalDateTime createdAt;
+    }
+
+    /**
+     * SHA-256 hex of the file contents, or null if it cannot be read
+     */
+    public String hashImage(File imageFile) {
+        if (!enabled || imageFile == null) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(imageFile.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (Exception e) {
+            logger.warn("Could not hash image {}: {}", imageFile.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    // ==================== LOOKUP / STORE ====================
+
+    /**
+     * Cached result (a fresh copy the caller may modify), or null on a miss
+     */
+    public Cached get(String imageHash, String mapType, String promptVersion, String kind) {
+        if (!enabled || imageHash == null) {
+            return null;
+        }
+        try {
+            AiVisionCacheEntry entry = cacheRepository
+                    .findByCacheKey(cacheKey(imageHash, mapType, promptVersion, kind)).orElse(null);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            cacheRepository.recordHit(entry.getId(), LocalDateTime.now());
+            hits.incrementAndGet();
+            logger.info("Vision cache hit: {} {} for image {}", kind, mapType, imageHash.substring(0, 12));
+            return new Cached(entry.getProvider(), MAPPER.readValue(entry.getResult(), MAP_TYPE),
+                    entry.getCreatedAt());
+        } catch (Exception e) {
+            // A broken cache must never block the analysis
+            logger.warn("Vision cache lookup failed: {}", e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String imageHash, String mapType, String promptVersion, String kind,
+            String provider, Map<String, Object> data) {
+        if (!enabled || imageHash == null || data == null || data.isEmpty()) {
+            return;
+        }
+        try {
+            String json = MAPPER.writeValueAsString(data);
+            String key = cacheKey(imageHash, mapType, promptVersion, kind);
+            AiVisionCacheEntry entry = cacheRepository.findByCacheKey(key).orElseGet(AiVisionCacheEntry::new);
+            entry.setCacheKey(key);
+            entry.setImageHash(imageHash);
+            entry.setMapType(mapType);
+            entry.setPromptVersion(promptVersion);
+            entry.setKind(kind);
+            entry.setProvider(provider);
+            entry.setResult(json);
+            entry.setSizeBytes(json.getBytes(StandardCharsets.UTF_8).length);
+            entry.setLastUsedAt(LocalDateTime.now());
+            cacheRepository.save(entry);
+            enforceLimits();
+        } catch (DataIntegrityViolationException e) {
+            // Same image analysed concurrently: the other run stored it
+            logger.debug("Vision cache entry already stored: {}", e.getMessage());
+        } catch (Exception e) {
+            logger.warn("Could not store vision cache entry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Delete least recently used rows until both the entry and size limits hold
+     */
+    private void enforceLimits() {
+        long maxBytes = maxMb * 1024 * 1024;
+        while (true) {
+            long count = cacheRepository.count();
+            long bytes = cacheRepository.sumSizeBytes();
+            if (count <= maxEntries && bytes <= maxBytes) {
+                return;
+            }
+            List<AiVisionCacheEntry> oldest = cacheRepository
+                    .findAllByOrderByLastUsedAtAsc(PageRequest.of(0, EVICT_BATCH));
+            if (oldest.isEmpty()) {
+                return;
+            }
+            int removed = 0;
+            for (AiVisionCacheEntry entry : oldest) {
+                if (count <= maxEntries && bytes <= maxBytes) {
+                    break;
+                }
+                cacheRepository.delete(entry);
+                count--;
+                bytes -= entry.getSizeBytes();
+                removed++;
+            }
+            evictions.addAndGet(removed);
+            logger.info("Vision cache evicted {} least recently used entries", removed);
+        }
+    }
+
+    // ==================== ADMIN ====================
+
+    /**
+     * Entries newest-used first (without the stored result), optionally for one image
+     */
+    public Map<String, Object> list(String imageHash, int page, int size) {
+        PageRequest pageable = PageRequest.of(Math.max(0, page), Math.min(Math.max(1, size), 200));
+        Page<AiVisionCacheEntry> entries = imageHash != null && !imageHash.isBlank()
+                ? cacheRepository.findByImageHashOrderByLastUsedAtDesc(imageHash, pageable)
+                : cacheRepository.findAllByOrderByLastUsedAtDesc(pageable);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("entries", entries.getContent().stream().map(this::describe).toList());
+        response.put("totalCount", entries.getTotalElements());
+        response.put("page", entries.getNumber());
+        response.put("stats", getStats());
+        return response;
+    }
+
+    /**
+     * Remove entries of one image, one map type, or everything; returns the number removed
+     */
+    public long purge(String imageHash, String mapType) {
+        long removed;
+        if (imageHash != null && !imageHash.isBlank()) {
+            removed = cacheRepository.deleteByImageHash(imageHash);
+        } else if (mapType != null && !mapType.isBlank()) {
+            removed = cacheRepository.deleteByMapType(mapType);
+        } else {
+            removed = cacheRepository.count();
+            cacheRepository.deleteAllInBatch();
+        }
+        logger.info("Vision cache purged {} entries (image={}, mapType={})", removed, imageHash, mapType);
+        return removed;
+    }
+
+    public boolean delete(Long id) {
+        if (!cacheRepository.existsById(id)) {
+            return false;
+        }
+        cacheRepository.deleteById(id);
+        return true;
+    }
+
+    public Map<String, Object> getStats() {
+        long lookups = hits.get() + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", cacheRepository.count());
+        stats.put("sizeBytes", cacheRepository.sumSizeBytes());
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxBytes", maxMb * 1024 * 1024);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : Math.round(hits.get() * 1000.0 / lookups) / 1000.0);
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private Map<String, Object> describe(AiVisionCacheEntry entry) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", entry.getId());
+        item.put("imageHash", entry.getImageHash());
+        item.put("mapType", entry.getMapType());
+        item.put("kind", entry.getKind());
+        item.put("promptVersion", entry.getPromptVersion());
+        item.put("provider", entry.getProvider());
+        item.put("sizeBytes", entry.getSizeBytes());
+        item.put("hitCount", entry.getHitCount());
+        item.put("createdAt", entry.getCreatedAt());
+        item.put("lastUsedAt", entry.getLastUsedAt());
+        return item;
+    }
+
+    private static String cacheKey(String imageHash, String mapType, String promptVersion, String kind) {
+        return imageHash + ":" + mapType + ":" + promptVersion + ":" + kind;
+    }
+}
@@ -0,0 +1,405 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.PlanningZone;
+import com.agriplanner.repository.PlanningZoneRepository;
+import com.agriplanner.util.ZoneGeometryUtils;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.operation.overlayng.OverlayNG;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Spatial join of a batch of new zones against the stored zones of the same map type and
+ * against each other (phát hiện vùng trùng / chồng lấn trước khi lưu)
+ *
+ * Candidates come from the in-memory STRtree ({@link PlanningZoneSpatialIndex}); while it is
+ * still loading, the stored zones inside the batch extent are read from PostGIS into a
+ * temporary tree. Pairs inside the batch come from a tree built over the batch itself.
+ * Candidate pairs are then filtered and measured in parallel on a fork-join pool. For each
+ * pair the overlap is expressed as a share of both polygons:
+ * - duplicate: the overlap covers at least duplicate-ratio of both zones (same polygon again)
+ * - conflict: the overlap covers at least conflict-ratio of either zone
+ */
+@Service
+public class ZoneOverlapDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZoneOverlapDetector.class);
+
+    public static final String KIND_DUPLICATE = "duplicate";
+    public static final String KIND_CONFLICT = "conflict";
+
+    // Confirm-time "overlapPolicy" values
+    public static final String POLICY_REJECT = "reject"; // any duplicate or conflict
+    public static final String POLICY_REJECT_DUPLICATES = "reject-duplicates"; // default
+    public static final String POLICY_SKIP_DUPLICATES = "skip-duplicates"; // save the rest
+    public static final String POLICY_ALLOW = "allow"; // no check
+
+    // Longest list of pairs returned per kind; the counts stay exact
+    private static final int MAX_REPORTED_OVERLAPS = 500;
+
+    private final PlanningZoneSpatialIndex spatialIndex;
+    private final PlanningZoneRepository planningZoneRepository;
+    private final ForkJoinPool workers;
+
+    @Value("${planning-zone.overlap.duplicate-ratio:0.9}")
+    private double duplicateRatio;
+
+    @Value("${planning-zone.overlap.conflict-ratio:0.1}")
+    private double conflictRatio;
+
+    public ZoneOverlapDetector(PlanningZoneSpatialIndex spatialIndex, PlanningZoneRepository planningZoneRepository,
+            @Value("${planning-zone.overlap.parallelism:0}") int parallelism) {
+        this.spatialIndex = spatialIndex;
+        this.planningZoneRepository = planningZoneRepository;
+        this.workers = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * One new zone overlapping one stored zone, or an earlier zone of the same batch
+     */
+    @Data
+    public static class Overlap {
+        private String kind;
+        // Position of the new zone in the checked batch
+        private int index;
+        private String name;
+        private Long existingId;
+        // Position of the earlier zone of the batch it overlaps (null = a stored zone)
+        private Integer otherIndex;
+        // Overlap as a share of the new zone / of the other zone (0.0 - 1.0)
+        private double newRatio;
+        private double existingRatio;
+        private double overlapAreaSqm;
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("kind", kind);
+            map.put("index", index);
+            map.put("name", name);
+            map.put("existingId", existingId);
+            map.put("otherIndex", otherIndex);
+            map.put("newRatio", Math.round(newRatio * 1000) / 1000.0);
+            map.put("existingRatio", Math.round(existingRatio * 1000) / 1000.0);
+            map.put("overlapAreaSqm", Math.round(overlapAreaSqm * 100) / 100.0);
+            return map;
+        }
+    }
+
+    /**
+     * Result of checking one batch
+     */
+    @Data
+    public static class OverlapReport {
+        private int checkedCount;
+        private long candidatePairs;
+        private int duplicateCount;
+        private int conflictCount;
+        private List<Overlap> duplicates = new ArrayList<>();
+        private List<Overlap> conflicts = new ArrayList<>();
+        // Batch positions of zones that duplicate a stored zone or an earlier zone of the batch
+        private List<Integer> duplicateIndexes = new ArrayList<>();
+        private boolean usedSpatialIndex;
+        private long elapsedMs;
+
+        public boolean hasOverlaps() {
+            return duplicateCount > 0 || conflictCount > 0;
+        }
+
+        public String describe() {
+            return String.format("%d vùng trùng với vùng đã lưu hoặc vùng khác trong cùng lô, %d cặp vùng chồng lấn. "
+                    + "Chọn bỏ qua vùng trùng hoặc xóa bản đồ cũ trước khi lưu.",
+                    duplicateIndexes.size(), conflictCount);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("checkedCount", checkedCount);
+            map.put("candidatePairs", candidatePairs);
+            map.put("duplicateCount", duplicateCount);
+            map.put("conflictCount", conflictCount);
+            map.put("duplicates", duplicates.stream().map(Overlap::toMap).collect(Collectors.toList()));
+            map.put("conflicts", conflicts.stream().map(Overlap::toMap).collect(Collectors.toList()));
+            map.put("elapsedMs", elapsedMs);
+            return map;
+        }
+    }
+
+    // Zone on the other side of a pair: stored (from the spatial index or loaded for this
+    // check) or an earlier zone of the batch (id null, batchIndex >= 0)
+    private static final class Stored {
+        final Long id;
+        final int batchIndex;
+        final Geometry geometry;
+        final PreparedGeometry prepared;
+
+        Stored(Long id, Geometry geometry, PreparedGeometry prepared) {
+            this(id, -1, geometry, prepared);
+        }
+
+        Stored(Long id, int batchIndex, Geometry geometry, PreparedGeometry prepared) {
+            this.id = id;
+            this.batchIndex = batchIndex;
+            this.geometry = geometry;
+            this.prepared = prepared;
+        }
+    }
+
+    private static final class Candidate {
+        final int index;
+        final Geometry geometry;
+        final Stored stored;
+
+        Candidate(int index, Geometry geometry, Stored stored) {
+            this.index = index;
+            this.geometry = geometry;
+            this.stored = stored;
+        }
+    }
+
+    /**
+     * Check new (unsaved) zones against the stored zones of the map type and against each other
+     *
+     * @param zones   zones about to be saved; their geom is (re)computed from the boundary JSON
+     * @param mapType map type to compare against (null = all)
+     */
+    public OverlapReport detect(List<PlanningZone> zones, String mapType) {
+        long started = System.currentTimeMillis();
+        OverlapReport report = new OverlapReport();
+        report.setCheckedCount(zones.size());
+
+        Geometry[] geometries = new Geometry[zones.size()];
+        Envelope extent = new Envelope();
+        for (int i = 0; i < zones.size(); i++) {
+            PlanningZone zone = zones.get(i);
+            zone.refreshGeom();
+            geometries[i] = zone.getGeom();
+            if (geometries[i] != null) {
+                extent.expandToInclude(geometries[i].getEnvelopeInternal());
+            }
+        }
+        if (extent.isNull()) {
+            report.setElapsedMs(System.currentTimeMillis() - started);
+            return report;
+        }
+
+        boolean useIndex = spatialIndex.isReady();
+        report.setUsedSpatialIndex(useIndex);
+        STRtree loaded = useIndex ? null : loadStored(extent, mapType);
+        STRtree batch = batchTree(geometries);
+
+        List<Overlap> overlaps;
+        try {
+            overlaps = workers.submit(() -> {
+                // Stage 1: candidate pairs by envelope, one query per new zone on each tree;
+                // inside the batch a pair is kept once, on its later zone
+                List<Candidate> pairs = IntStream.range(0, geometries.length).parallel()
+                        .filter(i -> geometries[i] != null)
+                        .boxed()
+                        .flatMap(i -> {
+                            List<Stored> others = candidates(geometries[i], mapType, loaded);
+                            others.addAll(earlierInBatch(i, geometries[i], batch));
+                            return others.stream().map(other -> new Candidate(i, geometries[i], other));
+                        })
+                        .collect(Collectors.toList());
+                report.setCandidatePairs(pairs.size());
+
+                // Stage 2: exact intersection areas, pair by pair
+                return pairs.parallelStream()
+                        .map(this::measure)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Overlap check interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Overlap check failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        overlaps.sort(Comparator.comparingInt(Overlap::getIndex).thenComparing(o -> -o.getNewRatio()));
+        List<Integer> duplicateIndexes = new ArrayList<>();
+        for (Overlap overlap : overlaps) {
+            overlap.setName(zones.get(overlap.getIndex()).getName());
+            if (KIND_DUPLICATE.equals(overlap.getKind())) {
+                report.setDuplicateCount(report.getDuplicateCount() + 1);
+                if (duplicateIndexes.isEmpty() || duplicateIndexes.get(duplicateIndexes.size() - 1) != overlap.getIndex()) {
+                    duplicateIndexes.add(overlap.getIndex());
+                }
+                if (report.getDuplicates().size() < MAX_REPORTED_OVERLAPS) {
+                    report.getDuplicates().add(overlap);
+                }
+            } else {
+                report.setConflictCount(report.getConflictCount() + 1);
+                if (report.getConflicts().size() < MAX_REPORTED_OVERLAPS) {
+                    report.getConflicts().add(overlap);
+                }
+            }
+        }
+        report.setDuplicateIndexes(duplicateIndexes);
+        report.setElapsedMs(System.currentTimeMillis() - started);
+        logger.info("Overlap check of {} zones ({}): {} candidate pairs, {} duplicates, {} conflicts in {} ms",
+                zones.size(), mapType, report.getCandidatePairs(), report.getDuplicateCount(),
+                report.getConflictCount(), report.getElapsedMs());
+        return report;
+    }
+
+    /**
+     * Whether the policy (null = reject-duplicates) refuses to save a batch with this report
+     */
+    public boolean rejects(OverlapReport report, String policy) {
+        if (POLICY_ALLOW.equals(policy) || POLICY_SKIP_DUPLICATES.equals(policy)) {
+            return false;
+        }
+        return POLICY_REJECT.equals(policy) ? report.hasOverlaps() : report.getDuplicateCount() > 0;
+    }
+
+    /**
+     * Zones of the batch that duplicate neither a stored zone nor an earlier zone of the batch
+     * (the first copy and conflicting zones are kept)
+     */
+    public List<PlanningZone> withoutDuplicates(List<PlanningZone> zones, OverlapReport report) {
+        if (report.getDuplicateIndexes().isEmpty()) {
+            return zones;
+        }
+        List<PlanningZone> kept = new ArrayList<>(zones.size());
+        int next = 0;
+        List<Integer> skip = report.getDuplicateIndexes();
+        for (int i = 0; i < zones.size(); i++) {
+            if (next < skip.size() && skip.get(next) == i) {
+                next++;
+                continue;
+            }
+            kept.add(zones.get(i));
+        }
+        return kept;
+    }
+
+    // ==================== JOIN ====================
+
+    @SuppressWarnings("unchecked")
+    private List<Stored> candidates(Geometry geometry, String mapType, STRtree loaded) {
+        Envelope envelope = geometry.getEnvelopeInternal();
+        List<Stored> result = new ArrayList<>();
+        if (loaded != null) {
+            result.addAll((List<Stored>) loaded.query(envelope));
+            return result;
+        }
+        for (PlanningZoneSpatialIndex.Entry entry : spatialIndex.findCandidates(envelope, mapType)) {
+            result.add(new Stored(entry.getId(), entry.getGeometry(), entry.getPrepared()));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Stored> earlierInBatch(int index, Geometry geometry, STRtree batch) {
+        List<Stored> result = new ArrayList<>();
+        for (Stored other : (List<Stored>) batch.query(geometry.getEnvelopeInternal())) {
+            if (other.batchIndex < index) {
+                result.add(other);
+            }
+        }
+        return result;
+    }
+
+    private Overlap measure(Candidate pair) {
+        Geometry geometry = pair.geometry;
+        Stored stored = pair.stored;
+        if (!geometry.getEnvelopeInternal().intersects(stored.geometry.getEnvelopeInternal())
+                || !stored.prepared.intersects(geometry)) {
+            return null;
+        }
+        double newArea = geometry.getArea();
+        double storedArea = stored.geometry.getArea();
+        if (newArea <= 0 || storedArea <= 0) {
+            return null;
+        }
+
+        // Containment needs no overlay; otherwise a robust intersection
+        Geometry intersection;
+        if (stored.prepared.covers(geometry)) {
+            intersection = geometry;
+        } else if (geometry.getEnvelopeInternal().covers(stored.geometry.getEnvelopeInternal())
+                && geometry.covers(stored.geometry)) {
+            intersection = stored.geometry;
+        } else {
+            intersection = OverlayNGRobust.overlay(geometry, stored.geometry, OverlayNG.INTERSECTION);
+        }
+        double overlapArea = intersection.getArea();
+        double newRatio = Math.min(overlapArea / newArea, 1.0);
+        double existingRatio = Math.min(overlapArea / storedArea, 1.0);
+
+        String kind;
+        if (newRatio >= duplicateRatio && existingRatio >= duplicateRatio) {
+            kind = KIND_DUPLICATE;
+        } else if (newRatio >= conflictRatio || existingRatio >= conflictRatio) {
+            kind = KIND_CONFLICT;
+        } else {
+            return null;
+        }
+        Overlap overlap = new Overlap();
+        overlap.setKind(kind);
+        overlap.setIndex(pair.index);
+        overlap.setExistingId(stored.id);
+        overlap.setOtherIndex(stored.batchIndex >= 0 ? stored.batchIndex : null);
+        overlap.setNewRatio(newRatio);
+        overlap.setExistingRatio(existingRatio);
+        overlap.setOverlapAreaSqm(ZoneGeometryUtils.geodesicAreaSqm(intersection));
+        return overlap;
+    }
+
+    // New zones of the batch, keyed by their position
+    private static STRtree batchTree(Geometry[] geometries) {
+        STRtree tree = new STRtree();
+        for (int i = 0; i < geometries.length; i++) {
+            if (geometries[i] != null && !geometries[i].isEmpty()) {
+                tree.insert(geometries[i].getEnvelopeInternal(),
+                        new Stored(null, i, geometries[i], PreparedGeometryFactory.prepare(geometries[i])));
+            }
+        }
+        tree.build();
+        return tree;
+    }
+
+    /**
+     * Stored zones inside the batch extent, read from PostGIS while the spatial index is loading
+     */
+    private STRtree loadStored(Envelope extent, String mapType) {
+        List<PlanningZone> stored = planningZoneRepository.findIntersectingEnvelope(extent.getMinY(),
+                extent.getMaxY(), extent.getMinX(), extent.getMaxX(),
+                mapType == null || mapType.isEmpty() ? null : mapType);
+        STRtree tree = new STRtree();
+        for (PlanningZone zone : stored) {
+            if (zone.getGeom() != null && !zone.getGeom().isEmpty()) {
+                tree.insert(zone.getGeom().getEnvelopeInternal(),
+                        new Stored(zone.getId(), zone.getGeom(), PreparedGeometryFactory.prepare(zone.getGeom())));
+            }
+        }
+        tree.build();
+        return tree;
+    }
+}
@@ -0,0 +1,454 @@
+package com.agriplanner.service;
+
+import com.agriplanner.model.PlanningZone;
+import com.agriplanner.model.ZoneSnapshot;
+import com.agriplanner.repository.PlanningZoneRepository;
+import com.agriplanner.repository.ZoneSnapshotItemRepository;
+import com.agriplanner.repository.ZoneSnapshotRepository;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Delta snapshots of planning zones with bulk rollback (snapshot & rollback vùng quy hoạch)
+ *
+ * Each zone is serialized to JSON and addressed by its SHA-256. A snapshot stores only the
+ * zones added/changed (UPSERT + hash) or removed (DELETE) since its parent; payloads live once
+ * in zone_snapshot_blobs as gzip, so unchanged zones cost nothing. Rolling back rebuilds the
+ * target state from the chain, diffs it with the live table and applies only the differences
+ * as batched deletes / updates / inserts in one transaction.
+ *
+ * Snapshots made before deltas existed (inline zone_data, no hash) are still restorable; they
+ * act as full bases and the next snapshot after them starts a new chain.
+ */
+@Service
+public class ZoneSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZoneSnapshotService.class);
+
+    public static final String CHANGE_UPSERT = "UPSERT";
+    public static final String CHANGE_DELETE = "DELETE";
+
+    private static final String LEGACY_PREFIX = "item:";
+    private static final int PAGE_SIZE = 500;
+    private static final int WRITE_CHUNK = 500;
+
+    private static final String INSERT_ITEM_SQL = "INSERT INTO zone_snapshot_items "
+            + "(snapshot_id, original_zone_id, change_type, content_hash, created_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_BLOB_SQL = "INSERT INTO zone_snapshot_blobs (content_hash, payload, created_at) "
+            + "VALUES (?, ?, ?) ON CONFLICT (content_hash) DO NOTHING";
+
+    // Sorted properties so the same zone always hashes the same
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private final ZoneSnapshotRepository zoneSnapshotRepository;
+    private final ZoneSnapshotItemRepository zoneSnapshotItemRepository;
+    private final PlanningZoneRepository planningZoneRepository;
+    private final PlanningZoneBulkWriter bulkWriter;
+    private final PlanningZoneSpatialIndex spatialIndex;
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // A full base is started once a chain gets this long (payloads are still shared)
+    @Value("${zone-snapshot.max-chain-length:20}")
+    private int maxChainLength;
+
+    public ZoneSnapshotService(ZoneSnapshotRepository zoneSnapshotRepository,
+            ZoneSnapshotItemRepository zoneSnapshotItemRepository, PlanningZoneRepository planningZoneRepository,
+            PlanningZoneBulkWriter bulkWriter, PlanningZoneSpatialIndex spatialIndex, JdbcTemplate jdbcTemplate) {
+        this.zoneSnapshotRepository = zoneSnapshotRepository;
+        this.zoneSnapshotItemRepository = zoneSnapshotItemRepository;
+        this.planningZoneRepository = planningZoneRepository;
+        this.bulkWriter = bulkWriter;
+        this.spatialIndex = spatialIndex;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Outcome of a rollback
+     */
+    @Data
+    public static class RollbackResult {
+        private int restoredCount;
+        private int insertedCount;
+        private int updatedCount;
+        private int deletedCount;
+        private int unchangedCount;
+    }
+
+    // ==================== CREATE ====================
+
+    /**
+     * Snapshot the current zones as a delta against the latest snapshot
+     */
+    @Transactional
+    public ZoneSnapshot createSnapshot(String name, String description, Long createdBy) {
+        ZoneSnapshot parent = zoneSnapshotRepository.findFirstByOrderByIdDesc().orElse(null);
+        Map<Long, String> parentState = Collections.emptyMap();
+        if (parent != null) {
+            List<ZoneSnapshot> chain = chainOf(parent);
+            parentState = reconstruct(chain);
+            // Legacy parents and long chains start a new base
+            if (chain.size() >= maxChainLength || hasLegacyEntries(parentState)) {
+                parent = null;
+                parentState = Collections.emptyMap();
+            }
+        }
+
+        ZoneSnapshot snapshot = new ZoneSnapshot();
+        snapshot.setName(name);
+        snapshot.setDescription(description);
+        snapshot.setCreatedBy(createdBy);
+        snapshot.setParentSnapshotId(parent != null ? parent.getId() : null);
+        snapshot = zoneSnapshotRepository.saveAndFlush(snapshot);
+        Long snapshotId = snapshot.getId();
+
+        Map<Long, String> remaining = new HashMap<>(parentState);
+        int[] counts = new int[2]; // zones, changes
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> items = new ArrayList<>();
+        List<Object[]> blobs = new ArrayList<>();
+
+        forEachZonePage(page -> {
+            for (PlanningZone zone : page) {
+                byte[] json = serialize(zone);
+                String hash = sha256(json);
+                counts[0]++;
+                String previous = remaining.remove(zone.getId());
+                if (!hash.equals(previous)) {
+                    items.add(new Object[] { snapshotId, zone.getId(), CHANGE_UPSERT, hash, now });
+                    blobs.add(new Object[] { hash, gzip(json), now });
+                }
+            }
+            counts[1] += items.size();
+            writeRows(blobs, items);
+        });
+
+        // Zones that existed in the parent but are gone now
+        for (Long removedId : remaining.keySet()) {
+            items.add(new Object[] { snapshotId, removedId, CHANGE_DELETE, null, now });
+            if (items.size() >= WRITE_CHUNK) {
+                counts[1] += items.size();
+                writeRows(blobs, items);
+            }
+        }
+        counts[1] += items.size();
+        writeRows(blobs, items);
+
+        snapshot.setZonesCount(counts[0]);
+        snapshot.setChangesCount(counts[1]);
+        snapshot = zoneSnapshotRepository.save(snapshot);
+        logger.info("Snapshot {} created: {} zones, {} changes (parent {})", snapshotId, counts[0], counts[1],
+                snapshot.getParentSnapshotId());
+        return snapshot;
+    }
+
+    private void writeRows(List<Object[]> blobs, List<Object[]> items) {
+        if (!blobs.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_BLOB_SQL, blobs);
+            blobs.clear();
+        }
+        if (!items.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_ITEM_SQL, items);
+            items.clear();
+        }
+    }
+
+    // ==================== ROLLBACK ====================
+
+    /**
+     * Restore the zone table to a snapshot by applying only the differences
+     */
+    @Transactional
+    public RollbackResult rollback(Long snapshotId) {
+        ZoneSnapshot snapshot = zoneSnapshotRepository.findById(snapshotId)
+                .orElseThrow(() -> new IllegalArgumentException("Snapshot không tồn tại"));
+        Map<Long, String> target = reconstruct(chainOf(snapshot));
+
+        // Hash the live table page by page
+        Map<Long, String> current = new HashMap<>();
+        forEachZonePage(page -> page.forEach(zone -> current.put(zone.getId(), sha256(serialize(zone)))));
+
+        List<Long> toDelete = new ArrayList<>();
+        for (Long id : current.keySet()) {
+            if (!target.containsKey(id)) {
+                toDelete.add(id);
+            }
+        }
+        List<Long> toUpdate = new ArrayList<>();
+        List<Long> toInsert = new ArrayList<>();
+        int unchanged = 0;
+        for (Map.Entry<Long, String> entry : target.entrySet()) {
+            String live = current.get(entry.getKey());
+            if (live == null) {
+                toInsert.add(entry.getKey());
+            } else if (!live.equals(entry.getValue())) {
+                toUpdate.add(entry.getKey());
+            } else {
+                unchanged++;
+            }
+        }
+
+        // Nothing JPA-managed may shadow the JDBC writes below
+        entityManager.flush();
+        entityManager.clear();
+
+        for (int i = 0; i < toDelete.size(); i += WRITE_CHUNK) {
+            List<Long> chunk = toDelete.subList(i, Math.min(i + WRITE_CHUNK, toDelete.size()));
+            jdbcTemplate.update("DELETE FROM planning_zones WHERE id = ANY(?)",
+                    (Object) chunk.toArray(new Long[0]));
+            spatialIndex.removeAll(chunk);
+        }
+        for (int i = 0; i < toUpdate.size(); i += WRITE_CHUNK) {
+            bulkWriter.updateAll(loadZones(toUpdate.subList(i, Math.min(i + WRITE_CHUNK, toUpdate.size())), target));
+        }
+        for (int i = 0; i < toInsert.size(); i += WRITE_CHUNK) {
+            bulkWriter.insertWithIds(
+                    loadZones(toInsert.subList(i, Math.min(i + WRITE_CHUNK, toInsert.size())), target));
+        }
+
+        RollbackResult result = new RollbackResult();
+        result.setRestoredCount(target.size());
+        result.setInsertedCount(toInsert.size());
+        result.setUpdatedCount(toUpdate.size());
+        result.setDeletedCount(toDelete.size());
+        result.setUnchangedCount(unchanged);
+        logger.info("Rolled back to snapshot {}: {} inserted, {} updated, {} deleted, {} unchanged", snapshotId,
+                toInsert.size(), toUpdate.size(), toDelete.size(), unchanged);
+        return result;
+    }
+
+    /**
+     * Decode the target version of each zone from blobs (or legacy inline JSON)
+     */
+    private List<PlanningZone> loadZones(List<Long> ids, Map<Long, String> target) {
+        List<String> hashes = new ArrayList<>();
+        List<Long> legacyItemIds = new ArrayList<>();
+        for (Long id : ids) {
+            String ref = target.get(id);
+            if (ref.startsWith(LEGACY_PREFIX)) {
+                legacyItemIds.add(Long.parseLong(ref.substring(LEGACY_PREFIX.length())));
+            } else {
+                hashes.add(ref);
+            }
+        }
+
+        Map<String, byte[]> payloads = new HashMap<>();
+        if (!hashes.isEmpty()) {
+            jdbcTemplate.query("SELECT content_hash, payload FROM zone_snapshot_blobs WHERE content_hash = ANY(?)",
+                    rs -> {
+                        payloads.put(rs.getString(1), gunzip(rs.getBytes(2)));
+                    }, (Object) hashes.toArray(new String[0]));
+        }
+        if (!legacyItemIds.isEmpty()) {
+            jdbcTemplate.query("SELECT id, zone_data FROM zone_snapshot_items WHERE id = ANY(?)",
+                    rs -> {
+                        payloads.put(LEGACY_PREFIX + rs.getLong(1), rs.getString(2).getBytes(StandardCharsets.UTF_8));
+                    }, (Object) legacyItemIds.toArray(new Long[0]));
+        }
+
+        List<PlanningZone> zones = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            byte[] json = payloads.get(target.get(id));
+            if (json == null) {
+                throw new IllegalStateException("Missing snapshot payload for zone " + id);
+            }
+            try {
+                PlanningZone zone = MAPPER.readValue(json, PlanningZone.class);
+                zone.setId(id);
+                zones.add(zone);
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupt snapshot payload for zone " + id, e);
+            }
+        }
+        return zones;
+    }
+
+    // ==================== DELETE ====================
+
+    /**
+     * Delete a snapshot; its changes are folded into child snapshots so their chains stay valid
+     */
+    @Transactional
+    public boolean deleteSnapshot(Long snapshotId) {
+        ZoneSnapshot snapshot = zoneSnapshotRepository.findById(snapshotId).orElse(null);
+        if (snapshot == null) {
+            return false;
+        }
+        for (ZoneSnapshot child : zoneSnapshotRepository.findByParentSnapshotId(snapshotId)) {
+            // Child entries win; copy the rest of this snapshot's entries down
+            jdbcTemplate.update("INSERT INTO zone_snapshot_items "
+                    + "(snapshot_id, original_zone_id, zone_data, change_type, content_hash, created_at) "
+                    + "SELECT ?, s.original_zone_id, s.zone_data, s.change_type, s.content_hash, s.created_at "
+                    + "FROM zone_snapshot_items s WHERE s.snapshot_id = ? AND NOT EXISTS ("
+                    + "SELECT 1 FROM zone_snapshot_items c WHERE c.snapshot_id = ? "
+                    + "AND c.original_zone_id = s.original_zone_id)",
+                    child.getId(), snapshotId, child.getId());
+            if (snapshot.getParentSnapshotId() == null) {
+                // Child becomes a base: DELETE entries have nothing left to delete from
+                jdbcTemplate.update("DELETE FROM zone_snapshot_items WHERE snapshot_id = ? AND change_type = ?",
+                        child.getId(), CHANGE_DELETE);
+            }
+            child.setParentSnapshotId(snapshot.getParentSnapshotId());
+            zoneSnapshotRepository.save(child);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        jdbcTemplate.update("DELETE FROM zone_snapshot_items WHERE snapshot_id = ?", snapshotId);
+        jdbcTemplate.update("DELETE FROM zone_snapshots WHERE id = ?", snapshotId);
+        // Drop payloads no snapshot references any more
+        int freed = jdbcTemplate.update("DELETE FROM zone_snapshot_blobs b WHERE NOT EXISTS ("
+                + "SELECT 1 FROM zone_snapshot_items i WHERE i.content_hash = b.content_hash)");
+        logger.info("Snapshot {} deleted, {} unreferenced payloads freed", snapshotId, freed);
+        return true;
+    }
+
+    // ==================== CHAIN ====================
+
+    /**
+     * Snapshots from the base to the given one
+     */
+    private List<ZoneSnapshot> chainOf(ZoneSnapshot snapshot) {
+        List<ZoneSnapshot> chain = new ArrayList<>();
+        ZoneSnapshot current = snapshot;
+        while (current != null) {
+            chain.add(current);
+            if (current.getParentSnapshotId() == null || chain.size() > 10_000) {
+                break;
+            }
+            current = zoneSnapshotRepository.findById(current.getParentSnapshotId()).orElse(null);
+        }
+        Collections.reverse(chain);
+        return chain;
+    }
+
+    /**
+     * zone id -> content hash (or legacy item reference) at the end of the chain
+     */
+    private Map<Long, String> reconstruct(List<ZoneSnapshot> chain) {
+        Map<Long, String> state = new HashMap<>();
+        for (ZoneSnapshot snapshot : chain) {
+            for (Object[] row : zoneSnapshotItemRepository.findChangeRowsBySnapshotId(snapshot.getId())) {
+                Long itemId = (Long) row[0];
+                Long zoneId = (Long) row[1];
+                String changeType = (String) row[2];
+                String hash = (String) row[3];
+                if (zoneId == null) {
+                    continue;
+                }
+                if (CHANGE_DELETE.equals(changeType)) {
+                    state.remove(zoneId);
+                } else {
+                    state.put(zoneId, hash != null ? hash : LEGACY_PREFIX + itemId);
+                }
+            }
+        }
+        return state;
+    }
+
+    private boolean hasLegacyEntries(Map<Long, String> state) {
+        for (String ref : state.values()) {
+            if (ref.startsWith(LEGACY_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ==================== HELPERS ====================
+
+    private interface PageConsumer {
+        void accept(List<PlanningZone> page);
+    }
+
+    /**
+     * Keyset pages of zones; the persistence context is cleared between pages
+     */
+    private void forEachZonePage(PageConsumer consumer) {
+        Long afterId = 0L;
+        while (true) {
+            List<PlanningZone> page = planningZoneRepository.findByIdGreaterThanOrderByIdAsc(afterId,
+                    PageRequest.of(0, PAGE_SIZE));
+            if (page.isEmpty()) {
+                return;
+            }
+            consumer.accept(page);
+            afterId = page.get(page.size() - 1).getId();
+            entityManager.clear();
+            if (page.size() < PAGE_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private byte[] serialize(PlanningZone zone) {
+        try {
+            return MAPPER.writeValueAsBytes(zone);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize zone " + zone.getId(), e);
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 3));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt snapshot payload", e);
+        }
+    }
+}
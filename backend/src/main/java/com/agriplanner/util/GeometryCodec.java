@@ -0,0 +1,290 @@
+package com.agriplanner.util;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.util.PolygonExtracter;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact boundary encodings (mã hóa ranh giới gọn)
+ *
+ * - Packed binary for storage: polygons as zigzag delta varints at 1e-7 degree (~1 cm),
+ *   typically 3-5 bytes per vertex instead of ~40 bytes of JSON text. A plain [lat, lng]
+ *   ring array can be rebuilt from it, so that text need not be stored as well.
+ * - Google encoded polylines (1e-5 degree, lat first) for opt-in API responses.
+ */
+public final class GeometryCodec {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final double PACK_SCALE = 1e7;
+    private static final double POLYLINE_SCALE = 1e5;
+
+    private GeometryCodec() {
+    }
+
+    // ==================== PACKED BINARY ====================
+
+    /**
+     * Pack the polygonal part of a geometry (x = lng, y = lat); null when there is none.
+     * Layout: version, polygon count, then per polygon ring count, then per ring point count
+     * and (lat, lng) deltas carried across rings.
+     */
+    public static byte[] pack(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        List<Polygon> polygons = PolygonExtracter.getPolygons(geometry);
+        if (polygons.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + geometry.getNumPoints() * 6);
+        writeVarint(out, FORMAT_VERSION);
+        writeVarint(out, polygons.size());
+        long[] last = new long[2];
+        for (Polygon polygon : polygons) {
+            writeVarint(out, 1 + polygon.getNumInteriorRing());
+            writeRing(out, polygon.getExteriorRing().getCoordinates(), last);
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                writeRing(out, polygon.getInteriorRingN(i).getCoordinates(), last);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode packed bytes back to a MultiPolygon (SRID 4326); null for null/corrupt input
+     */
+    public static MultiPolygon unpack(byte[] packed) {
+        if (packed == null || packed.length == 0) {
+            return null;
+        }
+        try {
+            int[] pos = { 0 };
+            if (readVarint(packed, pos) != FORMAT_VERSION) {
+                return null;
+            }
+            int polygonCount = (int) readVarint(packed, pos);
+            long[] last = new long[2];
+            Polygon[] polygons = new Polygon[polygonCount];
+            for (int p = 0; p < polygonCount; p++) {
+                int ringCount = (int) readVarint(packed, pos);
+                LinearRing shell = null;
+                LinearRing[] holes = new LinearRing[Math.max(0, ringCount - 1)];
+                for (int r = 0; r < ringCount; r++) {
+                    LinearRing ring = ZoneGeometryUtils.GEOMETRY_FACTORY.createLinearRing(readRing(packed, pos, last));
+                    if (r == 0) {
+                        shell = ring;
+                    } else {
+                        holes[r - 1] = ring;
+                    }
+                }
+                polygons[p] = ZoneGeometryUtils.GEOMETRY_FACTORY.createPolygon(shell, holes);
+            }
+            return ZoneGeometryUtils.GEOMETRY_FACTORY.createMultiPolygon(polygons);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * [lat, lng] array text of a single polygon without holes (closing point left out, as the
+     * map editors write it); null for anything else
+     */
+    public static String toLatLngArray(Geometry geometry) {
+        if (geometry == null || geometry.getNumGeometries() != 1
+                || !(geometry.getGeometryN(0) instanceof Polygon polygon) || polygon.getNumInteriorRing() > 0) {
+            return null;
+        }
+        Coordinate[] ring = polygon.getExteriorRing().getCoordinates();
+        StringBuilder json = new StringBuilder(ring.length * 24).append('[');
+        for (int i = 0; i < ring.length - 1; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('[').append(decimal(ring[i].y)).append(',').append(decimal(ring[i].x)).append(']');
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Whether the packed bytes give back the same [lat, lng] array at 1e-7 degree, so the text
+     * copy can be dropped. Nested ring arrays (holes, several polygons), arrays repaired on
+     * parsing, lines and points keep their text.
+     */
+    public static boolean rebuildsLatLngArray(String latLngArray, byte[] packed) {
+        if (!ZoneGeometryUtils.isFlatLatLngArray(latLngArray)) {
+            return false;
+        }
+        List<Coordinate> original = ZoneGeometryUtils.latLngPoints(latLngArray);
+        List<Coordinate> rebuilt = ZoneGeometryUtils.latLngPoints(toLatLngArray(unpack(packed)));
+        if (original == null || rebuilt == null) {
+            return false;
+        }
+        if (original.size() > 1 && original.get(0).equals2D(original.get(original.size() - 1))) {
+            original = original.subList(0, original.size() - 1);
+        }
+        if (original.size() != rebuilt.size()) {
+            return false;
+        }
+        for (int i = 0; i < original.size(); i++) {
+            if (Math.round(original.get(i).x * PACK_SCALE) != Math.round(rebuilt.get(i).x * PACK_SCALE)
+                    || Math.round(original.get(i).y * PACK_SCALE) != Math.round(rebuilt.get(i).y * PACK_SCALE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String decimal(double degrees) {
+        return BigDecimal.valueOf(Math.round(degrees * PACK_SCALE), 7).stripTrailingZeros().toPlainString();
+    }
+
+    private static void writeRing(ByteArrayOutputStream out, Coordinate[] coords, long[] last) {
+        writeVarint(out, coords.length);
+        for (Coordinate c : coords) {
+            long lat = Math.round(c.y * PACK_SCALE);
+            long lng = Math.round(c.x * PACK_SCALE);
+            writeVarint(out, zigZag(lat - last[0]));
+            writeVarint(out, zigZag(lng - last[1]));
+            last[0] = lat;
+            last[1] = lng;
+        }
+    }
+
+    private static Coordinate[] readRing(byte[] in, int[] pos, long[] last) {
+        int count = (int) readVarint(in, pos);
+        Coordinate[] coords = new Coordinate[count];
+        for (int i = 0; i < count; i++) {
+            last[0] += unZigZag(readVarint(in, pos));
+            last[1] += unZigZag(readVarint(in, pos));
+            coords[i] = new Coordinate(last[1] / PACK_SCALE, last[0] / PACK_SCALE);
+        }
+        return coords;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] in, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        while (true) {
+            if (pos[0] >= in.length || shift > 63) {
+                throw new IllegalArgumentException("Truncated varint");
+            }
+            byte b = in[pos[0]++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    // ==================== ENCODED POLYLINE ====================
+
+    /**
+     * Polylines for a polygonal geometry: one list per polygon, exterior ring first then holes.
+     * Lines and points become a single one-ring entry.
+     */
+    public static List<List<String>> toPolylines(Geometry geometry) {
+        List<List<String>> result = new ArrayList<>();
+        if (geometry == null || geometry.isEmpty()) {
+            return result;
+        }
+        if (geometry.getDimension() < 2) {
+            result.add(List.of(encodePolyline(geometry.getCoordinates())));
+            return result;
+        }
+        @SuppressWarnings("unchecked")
+        List<Polygon> polygons = PolygonExtracter.getPolygons(geometry);
+        for (Polygon polygon : polygons) {
+            List<String> rings = new ArrayList<>(1 + polygon.getNumInteriorRing());
+            rings.add(encodePolyline(polygon.getExteriorRing().getCoordinates()));
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                rings.add(encodePolyline(polygon.getInteriorRingN(i).getCoordinates()));
+            }
+            result.add(rings);
+        }
+        return result;
+    }
+
+    /**
+     * Google encoded polyline (precision 5, lat first) of JTS coordinates (x = lng, y = lat)
+     */
+    public static String encodePolyline(Coordinate[] coords) {
+        StringBuilder sb = new StringBuilder(coords.length * 6);
+        long lastLat = 0;
+        long lastLng = 0;
+        for (Coordinate c : coords) {
+            long lat = Math.round(c.y * POLYLINE_SCALE);
+            long lng = Math.round(c.x * POLYLINE_SCALE);
+            encodeSigned(sb, lat - lastLat);
+            encodeSigned(sb, lng - lastLng);
+            lastLat = lat;
+            lastLng = lng;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decode a Google encoded polyline into JTS coordinates (x = lng, y = lat)
+     */
+    public static Coordinate[] decodePolyline(String encoded) {
+        List<Coordinate> coords = new ArrayList<>();
+        int[] pos = { 0 };
+        long lat = 0;
+        long lng = 0;
+        while (pos[0] < encoded.length()) {
+            lat += decodeSigned(encoded, pos);
+            lng += decodeSigned(encoded, pos);
+            coords.add(new Coordinate(lng / POLYLINE_SCALE, lat / POLYLINE_SCALE));
+        }
+        return coords.toArray(new Coordinate[0]);
+    }
+
+    private static void encodeSigned(StringBuilder sb, long value) {
+        long v = value < 0 ? ~(value << 1) : value << 1;
+        while (v >= 0x20) {
+            sb.append((char) ((0x20 | (v & 0x1F)) + 63));
+            v >>= 5;
+        }
+        sb.append((char) (v + 63));
+    }
+
+    private static long decodeSigned(String encoded, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (pos[0] >= encoded.length()) {
+                throw new IllegalArgumentException("Truncated polyline");
+            }
+            b = encoded.charAt(pos[0]++) - 63;
+            result |= (long) (b & 0x1F) << shift;
+            shift += 5;
+        } while (b >= 0x20);
+        return (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+    }
+}
@@ -0,0 +1,158 @@
+package com.agriplanner.util;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Overlapping tiles for very large map scans, and seam-aware merging of the zones found per tile
+ * Chia ảnh bản đồ lớn thành các ô chồng lấn và ghép các vùng bị cắt qua đường nối
+ *
+ * Geometries are in full-image pixels (x right, y down). Zones from different tiles are merged
+ * only when they have the same key (zone code / colour), both reach into the overlap band of
+ * their tile and actually intersect; zones away from the seams are kept as found.
+ */
+public final class MapTiles {
+
+    private static final GeometryFactory PIXEL_FACTORY = new GeometryFactory();
+
+    private MapTiles() {
+    }
+
+    public record Tile(int index, int x, int y, int width, int height) {
+    }
+
+    /**
+     * Zone detected in one tile; attributes are the provider's zone map
+     */
+    public record TileZone(Tile tile, String key, Geometry geometry, Map<String, Object> attributes) {
+    }
+
+    /**
+     * Zone after stitching: one or more tile zones with their union
+     */
+    public record MergedZone(String key, Geometry geometry, List<TileZone> members) {
+        /** Member with the largest area, whose attributes represent the zone */
+        public TileZone primary() {
+            return members.stream().max(Comparator.comparingDouble(m -> m.geometry().getArea())).orElseThrow();
+        }
+    }
+
+    public static GeometryFactory pixelFactory() {
+        return PIXEL_FACTORY;
+    }
+
+    /**
+     * Grid of tiles of at most tileSize px that overlap by at least overlap px; edge tiles are
+     * shifted inwards so every tile has full size when the image allows it
+     */
+    public static List<Tile> plan(int width, int height, int tileSize, int overlap) {
+        if (tileSize <= overlap) {
+            throw new IllegalArgumentException("Tile size must be larger than the overlap");
+        }
+        List<int[]> columns = spans(width, tileSize, overlap);
+        List<int[]> rows = spans(height, tileSize, overlap);
+        List<Tile> tiles = new ArrayList<>(columns.size() * rows.size());
+        for (int[] row : rows) {
+            for (int[] column : columns) {
+                tiles.add(new Tile(tiles.size(), column[0], row[0], column[1], row[1]));
+            }
+        }
+        return tiles;
+    }
+
+    private static List<int[]> spans(int length, int tileSize, int overlap) {
+        List<int[]> spans = new ArrayList<>();
+        if (length <= tileSize) {
+            spans.add(new int[] { 0, length });
+            return spans;
+        }
+        int step = tileSize - overlap;
+        int count = (int) Math.ceil((length - overlap) / (double) step);
+        for (int i = 0; i < count; i++) {
+            int start = Math.min(i * step, length - tileSize);
+            spans.add(new int[] { start, tileSize });
+        }
+        return spans;
+    }
+
+    /**
+     * Stitch zones across tile seams
+     *
+     * @param zones        zones of all tiles of one image
+     * @param imageWidth   full image width (px)
+     * @param imageHeight  full image height (px)
+     * @param overlap      overlap between neighbouring tiles (px); seam band width
+     */
+    public static List<MergedZone> mergeAcrossSeams(List<TileZone> zones, int imageWidth, int imageHeight,
+            int overlap) {
+        int n = zones.size();
+        int[] parent = new int[n];
+        boolean[] onSeam = new boolean[n];
+        STRtree index = new STRtree();
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            TileZone zone = zones.get(i);
+            onSeam[i] = touchesSeam(zone, imageWidth, imageHeight, overlap);
+            if (onSeam[i]) {
+                index.insert(zone.geometry().getEnvelopeInternal(), i);
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (!onSeam[i]) {
+                continue;
+            }
+            TileZone zone = zones.get(i);
+            for (Object hit : index.query(zone.geometry().getEnvelopeInternal())) {
+                int j = (Integer) hit;
+                TileZone other = zones.get(j);
+                if (j > i && other.tile().index() != zone.tile().index()
+                        && Objects.equals(other.key(), zone.key())
+                        && other.geometry().intersects(zone.geometry())) {
+                    parent[find(parent, i)] = find(parent, j);
+                }
+            }
+        }
+
+        Map<Integer, List<TileZone>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            groups.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(zones.get(i));
+        }
+        List<MergedZone> merged = new ArrayList<>(groups.size());
+        for (List<TileZone> members : groups.values()) {
+            Geometry geometry = members.size() == 1
+                    ? members.get(0).geometry()
+                    : UnaryUnionOp.union(members.stream().map(TileZone::geometry).toList());
+            merged.add(new MergedZone(members.get(0).key(), geometry, members));
+        }
+        return merged;
+    }
+
+    // Does the zone reach into the band along an edge this tile shares with a neighbour?
+    private static boolean touchesSeam(TileZone zone, int imageWidth, int imageHeight, int overlap) {
+        Tile tile = zone.tile();
+        Envelope env = zone.geometry().getEnvelopeInternal();
+        return (tile.x() > 0 && env.getMinX() < tile.x() + overlap)
+                || (tile.x() + tile.width() < imageWidth && env.getMaxX() > tile.x() + tile.width() - overlap)
+                || (tile.y() > 0 && env.getMinY() < tile.y() + overlap)
+                || (tile.y() + tile.height() < imageHeight && env.getMaxY() > tile.y() + tile.height() - overlap);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
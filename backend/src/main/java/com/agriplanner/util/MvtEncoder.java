@@ -0,0 +1,389 @@
+package com.agriplanner.util;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal Mapbox Vector Tile (spec v2.1) encoder
+ * Mã hóa vector tile (MVT) cho bản đồ
+ *
+ * Geometries must already be in tile coordinates (0..extent, y pointing down).
+ * Only what the map layers need is supported: points, lines and polygons with
+ * string / number / boolean properties.
+ */
+public final class MvtEncoder {
+
+    public static final int DEFAULT_EXTENT = 4096;
+
+    private static final int GEOM_POINT = 1;
+    private static final int GEOM_LINESTRING = 2;
+    private static final int GEOM_POLYGON = 3;
+
+    private static final int CMD_MOVE_TO = 1;
+    private static final int CMD_LINE_TO = 2;
+    private static final int CMD_CLOSE_PATH = 7;
+
+    private final List<Layer> layers = new ArrayList<>();
+
+    /**
+     * Start a new layer
+     */
+    public Layer addLayer(String name, int extent) {
+        Layer layer = new Layer(name, extent);
+        layers.add(layer);
+        return layer;
+    }
+
+    /**
+     * Serialize the tile (layers without features are skipped)
+     */
+    public byte[] encode() {
+        ProtoWriter tile = new ProtoWriter();
+        for (Layer layer : layers) {
+            if (layer.featureCount > 0) {
+                tile.writeMessage(3, layer.encode());
+            }
+        }
+        return tile.toByteArray();
+    }
+
+    /**
+     * One named layer with its key/value tables
+     */
+    public static final class Layer {
+        private final String name;
+        private final int extent;
+        private final Map<String, Integer> keys = new LinkedHashMap<>();
+        private final Map<Object, Integer> values = new LinkedHashMap<>();
+        private final ProtoWriter features = new ProtoWriter();
+        private int featureCount;
+
+        private Layer(String name, int extent) {
+            this.name = name;
+            this.extent = extent;
+        }
+
+        public int getFeatureCount() {
+            return featureCount;
+        }
+
+        /**
+         * Add a feature. Returns false when the geometry collapses after rounding to the grid.
+         */
+        public boolean addFeature(Long id, Map<String, ?> properties, Geometry geometry) {
+            GeometryCommands commands = new GeometryCommands();
+            int type = commands.encode(geometry);
+            if (type == 0) {
+                return false;
+            }
+
+            IntList tags = new IntList();
+            if (properties != null) {
+                for (Map.Entry<String, ?> property : properties.entrySet()) {
+                    Object value = normalizeValue(property.getValue());
+                    if (property.getKey() == null || value == null) {
+                        continue;
+                    }
+                    tags.add(keys.computeIfAbsent(property.getKey(), k -> keys.size()));
+                    tags.add(values.computeIfAbsent(value, v -> values.size()));
+                }
+            }
+
+            ProtoWriter feature = new ProtoWriter();
+            if (id != null && id >= 0) {
+                feature.writeVarintField(1, id);
+            }
+            feature.writePacked(2, tags);
+            feature.writeVarintField(3, type);
+            feature.writePacked(4, commands.out);
+            features.writeMessage(2, feature);
+            featureCount++;
+            return true;
+        }
+
+        private ProtoWriter encode() {
+            ProtoWriter layer = new ProtoWriter();
+            layer.writeVarintField(15, 2);
+            layer.writeString(1, name);
+            layer.writeRaw(features);
+            for (String key : keys.keySet()) {
+                layer.writeString(3, key);
+            }
+            for (Object value : values.keySet()) {
+                layer.writeMessage(4, encodeValue(value));
+            }
+            layer.writeVarintField(5, extent);
+            return layer;
+        }
+    }
+
+    private static Object normalizeValue(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float || value instanceof BigDecimal) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String || value instanceof Long || value instanceof Double || value instanceof Boolean) {
+            return value;
+        }
+        return value != null ? value.toString() : null;
+    }
+
+    private static ProtoWriter encodeValue(Object value) {
+        ProtoWriter writer = new ProtoWriter();
+        if (value instanceof String) {
+            writer.writeString(1, (String) value);
+        } else if (value instanceof Double) {
+            writer.writeDouble(3, (Double) value);
+        } else if (value instanceof Long) {
+            long v = (Long) value;
+            if (v >= 0) {
+                writer.writeVarintField(5, v);
+            } else {
+                writer.writeVarintField(6, zigZag(v));
+            }
+        } else if (value instanceof Boolean) {
+            writer.writeVarintField(7, (Boolean) value ? 1 : 0);
+        }
+        return writer;
+    }
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    /**
+     * Geometry command stream with the cursor carried across parts
+     */
+    private static final class GeometryCommands {
+        final IntList out = new IntList();
+        int cursorX;
+        int cursorY;
+
+        int encode(Geometry geometry) {
+            if (geometry == null || geometry.isEmpty()) {
+                return 0;
+            }
+            switch (geometry.getDimension()) {
+                case 2:
+                    for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                        Geometry part = geometry.getGeometryN(i);
+                        if (part instanceof Polygon) {
+                            addPolygon((Polygon) part);
+                        }
+                    }
+                    return out.size > 0 ? GEOM_POLYGON : 0;
+                case 1:
+                    for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                        Geometry part = geometry.getGeometryN(i);
+                        if (part instanceof LineString) {
+                            addLine(round(part.getCoordinates(), false));
+                        }
+                    }
+                    return out.size > 0 ? GEOM_LINESTRING : 0;
+                default:
+                    List<int[]> points = new ArrayList<>();
+                    for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                        Geometry part = geometry.getGeometryN(i);
+                        if (part instanceof Point && !part.isEmpty()) {
+                            Coordinate c = part.getCoordinate();
+                            points.add(new int[] { (int) Math.round(c.x), (int) Math.round(c.y) });
+                        }
+                    }
+                    if (points.isEmpty()) {
+                        return 0;
+                    }
+                    out.add(command(CMD_MOVE_TO, points.size()));
+                    for (int[] p : points) {
+                        moveCursor(p[0], p[1]);
+                    }
+                    return GEOM_POINT;
+            }
+        }
+
+        private void addPolygon(Polygon polygon) {
+            List<int[]> shell = round(polygon.getExteriorRing().getCoordinates(), true);
+            long shellArea = signedArea(shell);
+            if (shell.size() < 3 || shellArea == 0) {
+                return;
+            }
+            // Exterior rings have positive area in tile coordinates, holes negative
+            addRing(shellArea > 0 ? shell : reversed(shell));
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                List<int[]> hole = round(polygon.getInteriorRingN(i).getCoordinates(), true);
+                long holeArea = signedArea(hole);
+                if (hole.size() >= 3 && holeArea != 0) {
+                    addRing(holeArea < 0 ? hole : reversed(hole));
+                }
+            }
+        }
+
+        private void addRing(List<int[]> ring) {
+            out.add(command(CMD_MOVE_TO, 1));
+            moveCursor(ring.get(0)[0], ring.get(0)[1]);
+            out.add(command(CMD_LINE_TO, ring.size() - 1));
+            for (int i = 1; i < ring.size(); i++) {
+                moveCursor(ring.get(i)[0], ring.get(i)[1]);
+            }
+            out.add(command(CMD_CLOSE_PATH, 1));
+        }
+
+        private void addLine(List<int[]> line) {
+            if (line.size() < 2) {
+                return;
+            }
+            out.add(command(CMD_MOVE_TO, 1));
+            moveCursor(line.get(0)[0], line.get(0)[1]);
+            out.add(command(CMD_LINE_TO, line.size() - 1));
+            for (int i = 1; i < line.size(); i++) {
+                moveCursor(line.get(i)[0], line.get(i)[1]);
+            }
+        }
+
+        private void moveCursor(int x, int y) {
+            out.add((int) zigZag(x - cursorX));
+            out.add((int) zigZag(y - cursorY));
+            cursorX = x;
+            cursorY = y;
+        }
+
+        private static int command(int id, int count) {
+            return (id & 0x7) | (count << 3);
+        }
+
+        /**
+         * Snap to the integer grid and drop repeated points (and the closing point of rings)
+         */
+        private static List<int[]> round(Coordinate[] coords, boolean ring) {
+            List<int[]> points = new ArrayList<>(coords.length);
+            for (Coordinate c : coords) {
+                int x = (int) Math.round(c.x);
+                int y = (int) Math.round(c.y);
+                if (points.isEmpty() || !Arrays.equals(points.get(points.size() - 1), new int[] { x, y })) {
+                    points.add(new int[] { x, y });
+                }
+            }
+            if (ring && points.size() > 1 && Arrays.equals(points.get(0), points.get(points.size() - 1))) {
+                points.remove(points.size() - 1);
+            }
+            return points;
+        }
+
+        private static long signedArea(List<int[]> ring) {
+            long area = 0;
+            for (int i = 0; i < ring.size(); i++) {
+                int[] a = ring.get(i);
+                int[] b = ring.get((i + 1) % ring.size());
+                area += (long) a[0] * b[1] - (long) b[0] * a[1];
+            }
+            return area;
+        }
+
+        private static List<int[]> reversed(List<int[]> ring) {
+            List<int[]> result = new ArrayList<>(ring);
+            Collections.reverse(result);
+            return result;
+        }
+    }
+
+    /**
+     * Growable int array (avoids boxing for command streams)
+     */
+    private static final class IntList {
+        int[] data = new int[32];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+
+    /**
+     * Just enough protobuf wire format for MVT
+     */
+    private static final class ProtoWriter {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        void writeTag(int field, int wireType) {
+            writeVarint(((long) field << 3) | wireType);
+        }
+
+        void writeVarintField(int field, long value) {
+            writeTag(field, 0);
+            writeVarint(value);
+        }
+
+        void writeDouble(int field, double value) {
+            writeTag(field, 1);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 0; i < 8; i++) {
+                out.write((int) (bits >>> (8 * i)) & 0xFF);
+            }
+        }
+
+        void writeBytes(int field, byte[] bytes) {
+            writeTag(field, 2);
+            writeVarint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        void writeString(int field, String value) {
+            writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeMessage(int field, ProtoWriter message) {
+            writeTag(field, 2);
+            writeVarint(message.out.size());
+            writeRaw(message);
+        }
+
+        void writePacked(int field, IntList values) {
+            if (values.size == 0) {
+                return;
+            }
+            ProtoWriter packed = new ProtoWriter();
+            for (int i = 0; i < values.size; i++) {
+                packed.writeVarint(values.data[i] & 0xFFFFFFFFL);
+            }
+            writeMessage(field, packed);
+        }
+
+        void writeRaw(ProtoWriter other) {
+            try {
+                other.out.writeTo(out);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.agriplanner.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JSON request body with an inline Base64 file that is encoded while it is sent
+ * Body JSON chứa ảnh Base64 được mã hoá dần khi gửi, không dựng cả chuỗi trong bộ nhớ
+ *
+ * The JSON is built as usual with a placeholder string where the Base64 data goes; only the
+ * text around it is kept in memory, the file is read and encoded in small chunks.
+ */
+public final class StreamingJsonBody {
+
+    // Default placeholder to put in the JSON where the file's Base64 goes
+    public static final String PLACEHOLDER = "__BASE64_FILE__";
+
+    // Multiple of 3 so every chunk but the last encodes without padding
+    private static final int CHUNK_BYTES = 3 * 16 * 1024;
+
+    private StreamingJsonBody() {
+    }
+
+    /**
+     * @param json        serialized JSON containing the placeholder exactly once
+     * @param placeholder text to replace with the file's Base64 (must not need JSON escaping)
+     * @param file        file to embed
+     */
+    public static HttpRequest.BodyPublisher withBase64File(String json, String placeholder, Path file)
+            throws IOException {
+        int at = json.indexOf(placeholder);
+        if (at < 0 || json.indexOf(placeholder, at + placeholder.length()) >= 0) {
+            throw new IllegalArgumentException("Placeholder must appear exactly once in the JSON body");
+        }
+        byte[] head = json.substring(0, at).getBytes(StandardCharsets.UTF_8);
+        byte[] tail = json.substring(at + placeholder.length()).getBytes(StandardCharsets.UTF_8);
+        long length = head.length + base64Length(Files.size(file)) + tail.length;
+
+        // Supplier is called again if the client has to resend the body
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return new SequenceInputStream(Collections.enumeration(List.of(
+                        new ByteArrayInputStream(head),
+                        new Base64InputStream(Files.newInputStream(file)),
+                        new ByteArrayInputStream(tail))));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return HttpRequest.BodyPublishers.fromPublisher(stream, length);
+    }
+
+    public static long base64Length(long bytes) {
+        return 4 * ((bytes + 2) / 3);
+    }
+
+    /**
+     * Reads the source in 3-byte aligned chunks and serves their Base64 encoding
+     */
+    private static final class Base64InputStream extends InputStream {
+        private final InputStream source;
+        private final Base64.Encoder encoder = Base64.getEncoder();
+        private final byte[] raw = new byte[CHUNK_BYTES];
+        private final byte[] encoded = new byte[(int) base64Length(CHUNK_BYTES)];
+        private int encodedLength;
+        private int pos;
+        private boolean eof;
+
+        Base64InputStream(InputStream source) {
+            this.source = source;
+        }
+
+        private boolean fill() throws IOException {
+            while (pos >= encodedLength) {
+                if (eof) {
+                    return false;
+                }
+                int n = source.readNBytes(raw, 0, raw.length);
+                if (n < raw.length) {
+                    eof = true;
+                }
+                if (n == 0) {
+                    return false;
+                }
+                encodedLength = encoder.encode(n == raw.length ? raw : Arrays.copyOf(raw, n), encoded);
+                pos = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? encoded[pos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, encodedLength - pos);
+            System.arraycopy(encoded, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.agriplanner.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.util.GeometryFixer;
+import org.locationtech.jts.geom.util.PolygonExtracter;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers to turn stored boundary JSON into JTS geometries (x = lng, y = lat, SRID 4326)
+ * Chuyển ranh giới lưu dạng JSON sang JTS Geometry
+ *
+ * Two storage formats exist in the database:
+ * - boundary coordinates: JSON array of [lat, lng] pairs (or {lat, lng} objects)
+ * - GeoJSON: Feature / FeatureCollection / geometry with [lng, lat] positions
+ */
+public final class ZoneGeometryUtils {
+
+    public static final int SRID = 4326;
+    public static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), SRID);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Mean earth radius used for area on the sphere
+    private static final double EARTH_RADIUS_M = 6371008.8;
+
+    private ZoneGeometryUtils() {
+    }
+
+    /**
+     * Build geometry from GeoJSON first, then boundary coordinates, then the center point.
+     * Returns null when nothing usable is stored.
+     */
+    public static Geometry toGeometry(String geojson, String boundaryCoordinates, BigDecimal centerLat,
+            BigDecimal centerLng) {
+        Geometry geometry = fromGeoJson(geojson);
+        if (geometry == null) {
+            geometry = fromLatLngArray(boundaryCoordinates);
+        }
+        if (geometry == null && centerLat != null && centerLng != null) {
+            geometry = GEOMETRY_FACTORY.createPoint(new Coordinate(centerLng.doubleValue(), centerLat.doubleValue()));
+        }
+        return geometry;
+    }
+
+    /**
+     * Parse a GeoJSON Feature, FeatureCollection or bare geometry
+     */
+    public static Geometry fromGeoJson(String geojson) {
+        if (geojson == null || geojson.isBlank()) {
+            return null;
+        }
+        try {
+            return fixInvalid(readGeoJson(MAPPER.readTree(geojson)));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse an already-read GeoJSON node (Feature, FeatureCollection or bare geometry)
+     */
+    public static Geometry fromGeoJson(JsonNode node) {
+        try {
+            return fixInvalid(readGeoJson(node));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a JSON array of [lat, lng] pairs (or {lat, lng} objects) into a polygon
+     */
+    public static Geometry fromLatLngArray(String boundaryCoordinates) {
+        List<Coordinate> coords = latLngPoints(boundaryCoordinates);
+        return coords != null ? fixInvalid(toPolygonal(coords)) : null;
+    }
+
+    /**
+     * Points of a JSON array of [lat, lng] pairs (or {lat, lng} objects) as written; null if unreadable.
+     * Nested ring arrays ([[[lat, lng], ...], ...]) give their first ring only.
+     */
+    public static List<Coordinate> latLngPoints(String boundaryCoordinates) {
+        JsonNode root = latLngRoot(boundaryCoordinates);
+        if (root == null) {
+            return null;
+        }
+        try {
+            // Unwrap [[[lat,lng],...]] ring arrays
+            while (isNestedRings(root)) {
+                root = root.get(0);
+            }
+            List<Coordinate> coords = new ArrayList<>();
+            for (JsonNode point : root) {
+                if (point.isArray() && point.size() >= 2) {
+                    coords.add(new Coordinate(point.get(1).asDouble(), point.get(0).asDouble()));
+                } else if (point.isObject() && point.has("lat") && point.has("lng")) {
+                    coords.add(new Coordinate(point.get("lng").asDouble(), point.get("lat").asDouble()));
+                }
+            }
+            return coords;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the text is one flat ring of points, not nested ring arrays (which may hold holes
+     * or several polygons that latLngPoints does not return)
+     */
+    public static boolean isFlatLatLngArray(String boundaryCoordinates) {
+        JsonNode root = latLngRoot(boundaryCoordinates);
+        return root != null && !isNestedRings(root);
+    }
+
+    // The JSON array of a [lat, lng] text (double-encoded rows included); null otherwise
+    private static JsonNode latLngRoot(String boundaryCoordinates) {
+        if (boundaryCoordinates == null || boundaryCoordinates.isBlank()) {
+            return null;
+        }
+        try {
+            JsonNode root = MAPPER.readTree(boundaryCoordinates);
+            // Some rows are double-encoded JSON strings
+            if (root.isTextual()) {
+                root = MAPPER.readTree(root.asText());
+            }
+            return root.isArray() ? root : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean isNestedRings(JsonNode root) {
+        return root.size() > 0 && root.get(0).isArray() && root.get(0).size() > 0 && root.get(0).get(0).isArray();
+    }
+
+    private static Geometry readGeoJson(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        String type = node.path("type").asText("");
+        switch (type) {
+            case "Feature":
+                return readGeoJson(node.get("geometry"));
+            case "FeatureCollection": {
+                List<Geometry> parts = new ArrayList<>();
+                for (JsonNode feature : node.path("features")) {
+                    Geometry g = readGeoJson(feature);
+                    if (g != null) {
+                        parts.add(g);
+                    }
+                }
+                return parts.isEmpty() ? null : GEOMETRY_FACTORY.buildGeometry(parts);
+            }
+            case "GeometryCollection": {
+                List<Geometry> parts = new ArrayList<>();
+                for (JsonNode child : node.path("geometries")) {
+                    Geometry g = readGeoJson(child);
+                    if (g != null) {
+                        parts.add(g);
+                    }
+                }
+                return parts.isEmpty() ? null : GEOMETRY_FACTORY.buildGeometry(parts);
+            }
+            case "Point": {
+                Coordinate c = readPosition(node.get("coordinates"));
+                return c != null ? GEOMETRY_FACTORY.createPoint(c) : null;
+            }
+            case "LineString":
+                return GEOMETRY_FACTORY.createLineString(readPositions(node.get("coordinates"))
+                        .toArray(new Coordinate[0]));
+            case "Polygon":
+                return readPolygon(node.get("coordinates"));
+            case "MultiPolygon": {
+                List<Polygon> polygons = new ArrayList<>();
+                for (JsonNode polygon : node.path("coordinates")) {
+                    Polygon p = readPolygon(polygon);
+                    if (p != null) {
+                        polygons.add(p);
+                    }
+                }
+                return polygons.isEmpty() ? null
+                        : GEOMETRY_FACTORY.createMultiPolygon(polygons.toArray(new Polygon[0]));
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static Polygon readPolygon(JsonNode rings) {
+        if (rings == null || !rings.isArray() || rings.size() == 0) {
+            return null;
+        }
+        LinearRing shell = toRing(readPositions(rings.get(0)));
+        if (shell == null) {
+            return null;
+        }
+        List<LinearRing> holes = new ArrayList<>();
+        for (int i = 1; i < rings.size(); i++) {
+            LinearRing hole = toRing(readPositions(rings.get(i)));
+            if (hole != null) {
+                holes.add(hole);
+            }
+        }
+        return GEOMETRY_FACTORY.createPolygon(shell, holes.toArray(new LinearRing[0]));
+    }
+
+    private static List<Coordinate> readPositions(JsonNode positions) {
+        List<Coordinate> coords = new ArrayList<>();
+        if (positions != null) {
+            for (JsonNode position : positions) {
+                Coordinate c = readPosition(position);
+                if (c != null) {
+                    coords.add(c);
+                }
+            }
+        }
+        return coords;
+    }
+
+    private static Coordinate readPosition(JsonNode position) {
+        if (position == null || !position.isArray() || position.size() < 2) {
+            return null;
+        }
+        return new Coordinate(position.get(0).asDouble(), position.get(1).asDouble());
+    }
+
+    /**
+     * Polygon from an open or closed ring; degenerate inputs become a line or point
+     */
+    public static Geometry toPolygonal(List<Coordinate> coords) {
+        if (coords.isEmpty()) {
+            return null;
+        }
+        if (coords.size() == 1) {
+            return GEOMETRY_FACTORY.createPoint(coords.get(0));
+        }
+        LinearRing ring = toRing(coords);
+        if (ring == null) {
+            return GEOMETRY_FACTORY.createLineString(coords.toArray(new Coordinate[0]));
+        }
+        return GEOMETRY_FACTORY.createPolygon(ring);
+    }
+
+    private static LinearRing toRing(List<Coordinate> coords) {
+        List<Coordinate> ring = new ArrayList<>(coords);
+        if (ring.size() > 0 && !ring.get(0).equals2D(ring.get(ring.size() - 1))) {
+            ring.add(new Coordinate(ring.get(0)));
+        }
+        if (ring.size() < 4) {
+            return null;
+        }
+        return GEOMETRY_FACTORY.createLinearRing(ring.toArray(new Coordinate[0]));
+    }
+
+    /**
+     * Repair self-intersections so predicates and overlays don't throw
+     */
+    public static Geometry fixInvalid(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return null;
+        }
+        if (!geometry.isValid()) {
+            geometry = GeometryFixer.fix(geometry);
+        }
+        geometry.setSRID(SRID);
+        return geometry.isEmpty() ? null : geometry;
+    }
+
+    /**
+     * Area on the WGS84 sphere in square metres (diện tích thực, không phải độ vuông).
+     * Holes are subtracted; points and lines have no area.
+     */
+    public static double geodesicAreaSqm(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return 0;
+        }
+        double area = 0;
+        @SuppressWarnings("unchecked")
+        List<Polygon> polygons = PolygonExtracter.getPolygons(geometry);
+        for (Polygon polygon : polygons) {
+            area += ringArea(polygon.getExteriorRing().getCoordinates());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                area -= ringArea(polygon.getInteriorRingN(i).getCoordinates());
+            }
+        }
+        return Math.max(area, 0);
+    }
+
+    // Spherical excess of a closed lng/lat ring (Chamberlain & Duquette)
+    private static double ringArea(Coordinate[] ring) {
+        int n = ring.length - 1;
+        if (n < 3) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            Coordinate prev = ring[(i + n - 1) % n];
+            Coordinate next = ring[(i + 1) % n];
+            sum += Math.toRadians(next.x - prev.x) * Math.sin(Math.toRadians(ring[i].y));
+        }
+        return Math.abs(sum * EARTH_RADIUS_M * EARTH_RADIUS_M / 2);
+    }
+
+    /**
+     * Stored bounding box { minLat, maxLat, minLng, maxLng } at 7 decimals (như center_lat/center_lng),
+     * rounded outwards so the box always covers the geometry. Null for a missing or empty geometry.
+     */
+    public static BigDecimal[] boundsOf(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return null;
+        }
+        Envelope envelope = geometry.getEnvelopeInternal();
+        return new BigDecimal[] {
+                BigDecimal.valueOf(envelope.getMinY()).setScale(7, RoundingMode.FLOOR),
+                BigDecimal.valueOf(envelope.getMaxY()).setScale(7, RoundingMode.CEILING),
+                BigDecimal.valueOf(envelope.getMinX()).setScale(7, RoundingMode.FLOOR),
+                BigDecimal.valueOf(envelope.getMaxX()).setScale(7, RoundingMode.CEILING) };
+    }
+
+    /**
+     * GeoJSON geometry text of a polygonal geometry (Polygon or MultiPolygon, [lng, lat] positions)
+     */
+    public static String toGeoJson(Geometry geometry) {
+        MultiPolygon multiPolygon = toMultiPolygon(geometry);
+        if (multiPolygon == null) {
+            return null;
+        }
+        boolean single = multiPolygon.getNumGeometries() == 1;
+        StringBuilder sb = new StringBuilder(32 + multiPolygon.getNumPoints() * 40);
+        sb.append("{\"type\":\"").append(single ? "Polygon" : "MultiPolygon").append("\",\"coordinates\":");
+        if (!single) {
+            sb.append('[');
+        }
+        for (int p = 0; p < multiPolygon.getNumGeometries(); p++) {
+            Polygon polygon = (Polygon) multiPolygon.getGeometryN(p);
+            sb.append(p > 0 ? ",[" : "[");
+            appendRing(sb, polygon.getExteriorRing().getCoordinates());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                sb.append(',');
+                appendRing(sb, polygon.getInteriorRingN(i).getCoordinates());
+            }
+            sb.append(']');
+        }
+        if (!single) {
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void appendRing(StringBuilder sb, Coordinate[] ring) {
+        sb.append('[');
+        for (int i = 0; i < ring.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('[').append(ring[i].x).append(',').append(ring[i].y).append(']');
+        }
+        sb.append(']');
+    }
+
+    /**
+     * Polygonal part of a geometry as a MultiPolygon (for PostGIS geometry(MultiPolygon,4326) columns).
+     * Points and lines have no area and return null.
+     */
+    public static MultiPolygon toMultiPolygon(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return null;
+        }
+        if (geometry instanceof MultiPolygon) {
+            return (MultiPolygon) geometry;
+        }
+        @SuppressWarnings("unchecked")
+        List<Polygon> polygons = PolygonExtracter.getPolygons(geometry);
+        if (polygons.isEmpty()) {
+            return null;
+        }
+        MultiPolygon multiPolygon = GEOMETRY_FACTORY.createMultiPolygon(polygons.toArray(new Polygon[0]));
+        multiPolygon.setSRID(SRID);
+        return multiPolygon;
+    }
+}
@@ -0,0 +1,47 @@
+package com.agriplanner.util;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Polygon;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeometryCodecTest {
+
+    private static final String RING = "[[9.1,105.1],[9.1,105.2],[9.2,105.2],[9.2,105.1]]";
+    private static final String HOLE = "[[9.13,105.13],[9.13,105.17],[9.17,105.17],[9.17,105.13]]";
+
+    private static byte[] packed(String latLngArray) {
+        return GeometryCodec.pack(ZoneGeometryUtils.fromLatLngArray(latLngArray));
+    }
+
+    @Test
+    void flatRingIsRebuiltFromPackedBytes() {
+        byte[] packed = packed(RING);
+        assertNotNull(packed);
+        assertTrue(GeometryCodec.rebuildsLatLngArray(RING, packed));
+    }
+
+    @Test
+    void nestedRingKeepsItsText() {
+        String nested = "[" + RING + "]";
+        assertFalse(GeometryCodec.rebuildsLatLngArray(nested, packed(nested)));
+    }
+
+    @Test
+    void holedPolygonKeepsItsText() {
+        String holed = "[" + RING + "," + HOLE + "]";
+        // Only the outer ring is packed, so the hole would be lost without the text
+        assertEquals(0, ((Polygon) GeometryCodec.unpack(packed(holed)).getGeometryN(0)).getNumInteriorRing());
+        assertFalse(GeometryCodec.rebuildsLatLngArray(holed, packed(holed)));
+    }
+
+    @Test
+    void severalPolygonsKeepTheirText() {
+        String other = "[[10.1,106.1],[10.1,106.2],[10.2,106.2]]";
+        String multi = "[" + RING + "," + other + "]";
+        assertFalse(GeometryCodec.rebuildsLatLngArray(multi, packed(multi)));
+    }
+}
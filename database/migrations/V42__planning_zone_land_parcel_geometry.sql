@@ -0,0 +1,103 @@
+-- =====================================================
+-- V42: PostGIS geometry columns for planning_zones and land_parcels
+-- Cột hình học PostGIS + chỉ mục GiST cho truy vấn không gian
+-- =====================================================
+
+CREATE EXTENSION IF NOT EXISTS postgis;
+
+ALTER TABLE planning_zones ADD COLUMN IF NOT EXISTS geom geometry(MultiPolygon, 4326);
+ALTER TABLE land_parcels ADD COLUMN IF NOT EXISTS geom geometry(MultiPolygon, 4326);
+
+-- Convert stored boundary JSON to a valid MultiPolygon.
+-- p_geojson: GeoJSON Feature / FeatureCollection / geometry ([lng, lat] positions)
+-- p_latlng:  JSON array of [lat, lng] pairs (planning_zones.boundary_coordinates)
+-- Rows that cannot be parsed get NULL instead of failing the migration.
+CREATE OR REPLACE FUNCTION agri_boundary_to_multipolygon(p_geojson TEXT, p_latlng TEXT)
+RETURNS geometry AS $$
+DECLARE
+    g geometry;
+    j jsonb;
+    line geometry;
+BEGIN
+    IF p_geojson IS NOT NULL AND btrim(p_geojson) <> '' THEN
+        BEGIN
+            j := p_geojson::jsonb;
+            IF j->>'type' = 'Feature' THEN
+                g := ST_GeomFromGeoJSON((j->'geometry')::text);
+            ELSIF j->>'type' = 'FeatureCollection' THEN
+                SELECT ST_Collect(ST_GeomFromGeoJSON((f->'geometry')::text))
+                  INTO g
+                  FROM jsonb_array_elements(j->'features') AS f
+                 WHERE f->'geometry' IS NOT NULL AND jsonb_typeof(f->'geometry') = 'object';
+            ELSE
+                g := ST_GeomFromGeoJSON(j::text);
+            END IF;
+        EXCEPTION WHEN others THEN
+            g := NULL;
+        END;
+    END IF;
+
+    IF g IS NULL AND p_latlng IS NOT NULL AND btrim(p_latlng) LIKE '[%' THEN
+        BEGIN
+            SELECT ST_MakeLine(ST_MakePoint((p->>1)::float8, (p->>0)::float8) ORDER BY ord)
+              INTO line
+              FROM jsonb_array_elements(p_latlng::jsonb) WITH ORDINALITY AS t(p, ord)
+             WHERE jsonb_typeof(p) = 'array' AND jsonb_array_length(p) >= 2;
+            IF line IS NOT NULL AND ST_NPoints(line) >= 3 THEN
+                IF NOT ST_Equals(ST_StartPoint(line), ST_EndPoint(line)) THEN
+                    line := ST_AddPoint(line, ST_StartPoint(line));
+                END IF;
+                g := ST_MakePolygon(line);
+            END IF;
+        EXCEPTION WHEN others THEN
+            g := NULL;
+        END;
+    END IF;
+
+    IF g IS NULL THEN
+        RETURN NULL;
+    END IF;
+
+    g := ST_CollectionExtract(ST_MakeValid(ST_SetSRID(ST_Force2D(g), 4326)), 3);
+    IF g IS NULL OR ST_IsEmpty(g) THEN
+        RETURN NULL;
+    END IF;
+    RETURN ST_Multi(g);
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+-- Backfill existing rows
+UPDATE planning_zones
+   SET geom = agri_boundary_to_multipolygon(geojson, boundary_coordinates)
+ WHERE geom IS NULL;
+
+UPDATE land_parcels
+   SET geom = agri_boundary_to_multipolygon(boundary_geojson, NULL)
+ WHERE geom IS NULL;
+
+-- Parcels are also loaded by the external scraper with plain INSERTs - derive geom there too
+CREATE OR REPLACE FUNCTION agri_land_parcels_set_geom() RETURNS trigger AS $$
+BEGIN
+    IF NEW.geom IS NULL
+       OR (TG_OP = 'UPDATE' AND NEW.boundary_geojson IS DISTINCT FROM OLD.boundary_geojson
+           AND NEW.geom IS NOT DISTINCT FROM OLD.geom) THEN
+        NEW.geom := agri_boundary_to_multipolygon(NEW.boundary_geojson, NULL);
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_land_parcels_set_geom ON land_parcels;
+CREATE TRIGGER trg_land_parcels_set_geom
+    BEFORE INSERT OR UPDATE OF boundary_geojson ON land_parcels
+    FOR EACH ROW EXECUTE FUNCTION agri_land_parcels_set_geom();
+
+-- GiST indexes for &&, ST_Intersects, ST_Contains, ST_DWithin and KNN (<->)
+CREATE INDEX IF NOT EXISTS idx_planning_zones_geom ON planning_zones USING GIST (geom);
+CREATE INDEX IF NOT EXISTS idx_land_parcels_geom ON land_parcels USING GIST (geom);
+
+-- map_type is filtered together with geometry on every viewport query
+CREATE INDEX IF NOT EXISTS idx_planning_zones_map_type ON planning_zones (map_type);
+
+ANALYZE planning_zones;
+ANALYZE land_parcels;
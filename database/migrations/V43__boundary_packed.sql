@@ -0,0 +1,9 @@
+-- =====================================================
+-- V43: Packed binary boundaries for fields and field_zones
+-- Ranh giới dạng nhị phân gọn (delta varint, 1e-7 độ)
+-- =====================================================
+-- planning_zones / land_parcels already keep a binary copy in geom (V42).
+-- Existing rows are filled by BoundaryPackBackfillService after startup.
+
+ALTER TABLE fields ADD COLUMN IF NOT EXISTS boundary_packed BYTEA;
+ALTER TABLE field_zones ADD COLUMN IF NOT EXISTS boundary_packed BYTEA;
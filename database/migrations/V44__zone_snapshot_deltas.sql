@@ -0,0 +1,22 @@
+-- =====================================================
+-- V44: Delta zone snapshots with content-addressed gzip payloads
+-- Snapshot chỉ lưu thay đổi so với snapshot cha
+-- =====================================================
+
+ALTER TABLE zone_snapshots ADD COLUMN IF NOT EXISTS parent_snapshot_id BIGINT;
+ALTER TABLE zone_snapshots ADD COLUMN IF NOT EXISTS changes_count INTEGER;
+
+-- Delta items carry a hash instead of inline JSON
+ALTER TABLE zone_snapshot_items ALTER COLUMN zone_data DROP NOT NULL;
+ALTER TABLE zone_snapshot_items ADD COLUMN IF NOT EXISTS change_type VARCHAR(10);
+ALTER TABLE zone_snapshot_items ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+CREATE TABLE IF NOT EXISTS zone_snapshot_blobs (
+    content_hash VARCHAR(64) PRIMARY KEY,
+    payload BYTEA NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_zone_snapshot_items_snapshot ON zone_snapshot_items (snapshot_id);
+CREATE INDEX IF NOT EXISTS idx_zone_snapshot_items_hash ON zone_snapshot_items (content_hash);
+CREATE INDEX IF NOT EXISTS idx_zone_snapshots_parent ON zone_snapshots (parent_snapshot_id);
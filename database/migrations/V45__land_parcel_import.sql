@@ -0,0 +1,8 @@
+-- =====================================================
+-- V45: Lookup index for the land parcel bulk importer
+-- Nhập thửa đất hàng loạt: cập nhật theo parcel_id
+-- =====================================================
+-- Re-imports upsert by parcel_id (UPDATE ... FROM staging, then INSERT ... WHERE NOT EXISTS).
+-- Plain index: existing scraped data may already hold duplicate parcel ids.
+
+CREATE INDEX IF NOT EXISTS idx_land_parcels_parcel_id ON land_parcels (parcel_id);
@@ -0,0 +1,73 @@
+-- =====================================================
+-- V46: Hilbert key on parcel centroids for keyset-paged viewports
+-- Khóa Hilbert theo tâm thửa đất - phân trang theo thứ tự không gian
+-- =====================================================
+-- 31 bits per axis over lng [-180, 180] / lat [-90, 90] (~2 cm cells), 62-bit key.
+-- Kept by trigger so JPA saves, the bulk importer and plain INSERTs all agree.
+
+ALTER TABLE land_parcels ADD COLUMN IF NOT EXISTS hilbert_key BIGINT;
+
+CREATE OR REPLACE FUNCTION agri_hilbert_key(lat DOUBLE PRECISION, lng DOUBLE PRECISION) RETURNS BIGINT AS $$
+DECLARE
+    n  BIGINT := 2147483648;
+    x  BIGINT;
+    y  BIGINT;
+    s  BIGINT;
+    t  BIGINT;
+    rx INT;
+    ry INT;
+    d  BIGINT := 0;
+BEGIN
+    IF lat IS NULL OR lng IS NULL THEN
+        RETURN NULL;
+    END IF;
+    x := LEAST(GREATEST(floor((lng + 180) / 360 * n)::BIGINT, 0), n - 1);
+    y := LEAST(GREATEST(floor((lat + 90) / 180 * n)::BIGINT, 0), n - 1);
+    s := n / 2;
+    WHILE s > 0 LOOP
+        rx := CASE WHEN (x & s) > 0 THEN 1 ELSE 0 END;
+        ry := CASE WHEN (y & s) > 0 THEN 1 ELSE 0 END;
+        d := d + s * s * ((3 * rx) # ry);
+        IF ry = 0 THEN
+            IF rx = 1 THEN
+                x := n - 1 - x;
+                y := n - 1 - y;
+            END IF;
+            t := x;
+            x := y;
+            y := t;
+        END IF;
+        s := s / 2;
+    END LOOP;
+    RETURN d;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+-- Centre point first, geometry as fallback (runs after trg_land_parcels_set_geom: triggers fire by name)
+CREATE OR REPLACE FUNCTION agri_land_parcels_set_hilbert() RETURNS trigger AS $$
+BEGIN
+    IF NEW.center_lat IS NOT NULL AND NEW.center_lng IS NOT NULL THEN
+        NEW.hilbert_key := agri_hilbert_key(NEW.center_lat::DOUBLE PRECISION, NEW.center_lng::DOUBLE PRECISION);
+    ELSIF NEW.geom IS NOT NULL THEN
+        NEW.hilbert_key := agri_hilbert_key(ST_Y(ST_PointOnSurface(NEW.geom)), ST_X(ST_PointOnSurface(NEW.geom)));
+    ELSE
+        NEW.hilbert_key := NULL;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_land_parcels_set_hilbert ON land_parcels;
+CREATE TRIGGER trg_land_parcels_set_hilbert
+    BEFORE INSERT OR UPDATE OF center_lat, center_lng, geom, boundary_geojson ON land_parcels
+    FOR EACH ROW EXECUTE FUNCTION agri_land_parcels_set_hilbert();
+
+UPDATE land_parcels
+   SET hilbert_key = CASE
+           WHEN center_lat IS NOT NULL AND center_lng IS NOT NULL
+               THEN agri_hilbert_key(center_lat::DOUBLE PRECISION, center_lng::DOUBLE PRECISION)
+           ELSE agri_hilbert_key(ST_Y(ST_PointOnSurface(geom)), ST_X(ST_PointOnSurface(geom)))
+       END
+ WHERE hilbert_key IS NULL AND (center_lat IS NOT NULL OR geom IS NOT NULL);
+
+CREATE INDEX IF NOT EXISTS idx_land_parcels_hilbert ON land_parcels (hilbert_key, id);
@@ -0,0 +1,53 @@
+-- =====================================================
+-- V47: Stored bounding boxes for planning_zones, land_parcels and fields
+-- Khung bao (min/max lat/lng) để lọc theo khung nhìn bằng chỉ mục B-tree
+-- =====================================================
+-- A row overlaps the viewport when
+--   min_lat <= :maxLat AND max_lat >= :minLat AND min_lng <= :maxLng AND max_lng >= :minLng
+-- so large polygons whose centre is off-screen are still returned. The composite indexes let
+-- the whole test run inside one index range scan, without PostGIS.
+-- Values are written by the entities / bulk writers at ingest; existing rows are filled by
+-- BoundingBoxBackfillService after startup.
+
+ALTER TABLE planning_zones
+    ADD COLUMN IF NOT EXISTS min_lat NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS max_lat NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS min_lng NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS max_lng NUMERIC(10, 7);
+
+ALTER TABLE land_parcels
+    ADD COLUMN IF NOT EXISTS min_lat NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS max_lat NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS min_lng NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS max_lng NUMERIC(10, 7);
+
+ALTER TABLE fields
+    ADD COLUMN IF NOT EXISTS min_lat NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS max_lat NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS min_lng NUMERIC(10, 7),
+    ADD COLUMN IF NOT EXISTS max_lng NUMERIC(10, 7);
+
+-- Parcels loaded by the external scraper with plain INSERTs get their box from geom.
+-- Named so it fires after trg_land_parcels_set_geom (triggers fire by name).
+CREATE OR REPLACE FUNCTION agri_land_parcels_set_bbox() RETURNS trigger AS $$
+BEGIN
+    IF NEW.geom IS NOT NULL THEN
+        NEW.min_lat := floor(ST_YMin(NEW.geom)::NUMERIC * 10000000) / 10000000;
+        NEW.max_lat := ceil(ST_YMax(NEW.geom)::NUMERIC * 10000000) / 10000000;
+        NEW.min_lng := floor(ST_XMin(NEW.geom)::NUMERIC * 10000000) / 10000000;
+        NEW.max_lng := ceil(ST_XMax(NEW.geom)::NUMERIC * 10000000) / 10000000;
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_land_parcels_set_geom_bbox ON land_parcels;
+CREATE TRIGGER trg_land_parcels_set_geom_bbox
+    BEFORE INSERT OR UPDATE OF geom, boundary_geojson ON land_parcels
+    FOR EACH ROW EXECUTE FUNCTION agri_land_parcels_set_bbox();
+
+CREATE INDEX IF NOT EXISTS idx_planning_zones_bbox ON planning_zones (min_lat, max_lat, min_lng, max_lng);
+CREATE INDEX IF NOT EXISTS idx_planning_zones_map_type_bbox
+    ON planning_zones (map_type, min_lat, max_lat, min_lng, max_lng);
+CREATE INDEX IF NOT EXISTS idx_land_parcels_bbox ON land_parcels (min_lat, max_lat, min_lng, max_lng);
+CREATE INDEX IF NOT EXISTS idx_fields_bbox ON fields (min_lat, max_lat, min_lng, max_lng);
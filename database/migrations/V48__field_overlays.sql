@@ -0,0 +1,21 @@
+-- =====================================================
+-- V48: Per-field soil / planning zone composition
+-- Tỷ lệ diện tích từng loại đất / vùng quy hoạch trên mỗi ruộng
+-- =====================================================
+-- One row per field (field_zone_id NULL) and per field zone. composition is a JSON array of
+-- { mapType, zoneCode, zoneType, name, areaSqm, fraction } sorted by fraction. boundary_hash is
+-- the hash of the packed boundary the row was computed from, so unchanged boundaries are skipped.
+-- Rows are written by FieldOverlayService (on field save and when zones in the area change).
+
+CREATE TABLE IF NOT EXISTS field_overlays (
+    id BIGSERIAL PRIMARY KEY,
+    field_id BIGINT NOT NULL REFERENCES fields(id) ON DELETE CASCADE,
+    field_zone_id BIGINT REFERENCES field_zones(id) ON DELETE CASCADE,
+    boundary_hash INTEGER,
+    area_sqm NUMERIC(15, 2),
+    composition JSONB NOT NULL DEFAULT '[]',
+    computed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS ux_field_overlays_field ON field_overlays (field_id) WHERE field_zone_id IS NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS ux_field_overlays_field_zone ON field_overlays (field_zone_id);
@@ -0,0 +1,31 @@
+-- =====================================================
+-- V49: Durable queue for map-image analysis jobs
+-- Hàng đợi phân tích bản đồ (không mất khi khởi động lại)
+-- =====================================================
+-- status: QUEUED -> RUNNING -> COMPLETED | FAILED | CANCELLED
+-- priority: 0 = interactive (admin waiting on the page), 1 = bulk
+-- QUEUED and interrupted RUNNING jobs are re-queued by MapAnalysisJobService on startup.
+-- step_timings holds { step: millis } of finished jobs; it seeds the ETA estimates.
+
+CREATE TABLE IF NOT EXISTS map_analysis_jobs (
+    id VARCHAR(50) PRIMARY KEY,
+    kind VARCHAR(20) NOT NULL,
+    priority SMALLINT NOT NULL DEFAULT 0,
+    status VARCHAR(20) NOT NULL DEFAULT 'QUEUED',
+    image_path TEXT,
+    map_type VARCHAR(20),
+    province VARCHAR(100),
+    district VARCHAR(100),
+    params JSONB,
+    current_step VARCHAR(50),
+    step_timings JSONB,
+    error TEXT,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    created_by BIGINT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_map_analysis_jobs_status ON map_analysis_jobs (status, priority, created_at);
+CREATE INDEX IF NOT EXISTS idx_map_analysis_jobs_kind_finished ON map_analysis_jobs (kind, finished_at DESC);
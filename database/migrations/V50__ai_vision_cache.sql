@@ -0,0 +1,26 @@
+-- =====================================================
+-- V50: Cache of AI vision results keyed by image content
+-- Lưu kết quả đọc tọa độ / chú giải của AI theo mã băm ảnh
+-- =====================================================
+-- cache_key = image_sha256 : map_type : prompt_version : kind
+-- kind: 'coordinates' (Gemini / GPT-4o) or 'legend' (GPT-4o colour -> type mapping)
+-- Bump the prompt version in MultiAIOrchestrator when a prompt changes; old rows stop matching
+-- and age out through the LRU limit (last_used_at).
+
+CREATE TABLE IF NOT EXISTS ai_vision_cache (
+    id BIGSERIAL PRIMARY KEY,
+    cache_key VARCHAR(200) NOT NULL UNIQUE,
+    image_hash CHAR(64) NOT NULL,
+    map_type VARCHAR(20) NOT NULL,
+    prompt_version VARCHAR(20) NOT NULL,
+    kind VARCHAR(20) NOT NULL,
+    provider VARCHAR(30),
+    result JSONB NOT NULL,
+    size_bytes INTEGER NOT NULL DEFAULT 0,
+    hit_count INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    last_used_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_ai_vision_cache_image ON ai_vision_cache (image_hash);
+CREATE INDEX IF NOT EXISTS idx_ai_vision_cache_last_used ON ai_vision_cache (last_used_at);
@@ -0,0 +1,11 @@
+-- =====================================================
+-- V51: boundary_packed is the stored boundary of fields and field_zones
+-- Ranh giới lưu dạng nhị phân; cột JSON chỉ giữ cho ranh giới không mã hóa lại được
+-- =====================================================
+-- The entities rebuild boundaryCoordinates from boundary_packed on load and leave the JSON
+-- text NULL whenever the packed form gives the same [lat, lng] array back (1e-7 degree).
+-- Existing text is moved over by BoundaryPackBackfillService after startup; lines, points and
+-- self-intersecting rings keep their text.
+
+ALTER TABLE fields ALTER COLUMN boundary_coordinates DROP NOT NULL;
+ALTER TABLE field_zones ALTER COLUMN boundary_coordinates DROP NOT NULL;
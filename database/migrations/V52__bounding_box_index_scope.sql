@@ -0,0 +1,33 @@
+-- =====================================================
+-- V52: Bounding boxes only where a query reads them (fields)
+-- Chỉ giữ khung bao cho bảng fields - nơi truy vấn thực sự dùng tới
+-- =====================================================
+-- Correction to the V47 note: a composite B-tree range-scans its leading column only. For
+-- (min_lat, max_lat, min_lng, max_lng) the scan is bounded by min_lat <= :maxLat; the other three
+-- bounds are checked on the index entries, not used to narrow the scan.
+-- Viewport lookups on planning_zones and land_parcels go through the in-memory STRtree and the
+-- PostGIS geom index, so their box columns, indexes and the land_parcels trigger are dropped.
+-- fields keeps its box. BoundingBoxBackfillService fills old rows after startup, best-effort, so
+-- rows may still have a NULL box; FieldRepository.findByBoundingBox returns those as well.
+
+DROP TRIGGER IF EXISTS trg_land_parcels_set_geom_bbox ON land_parcels;
+DROP FUNCTION IF EXISTS agri_land_parcels_set_bbox();
+
+DROP INDEX IF EXISTS idx_planning_zones_bbox;
+DROP INDEX IF EXISTS idx_planning_zones_map_type_bbox;
+DROP INDEX IF EXISTS idx_land_parcels_bbox;
+
+ALTER TABLE planning_zones
+    DROP COLUMN IF EXISTS min_lat,
+    DROP COLUMN IF EXISTS max_lat,
+    DROP COLUMN IF EXISTS min_lng,
+    DROP COLUMN IF EXISTS max_lng;
+
+ALTER TABLE land_parcels
+    DROP COLUMN IF EXISTS min_lat,
+    DROP COLUMN IF EXISTS max_lat,
+    DROP COLUMN IF EXISTS min_lng,
+    DROP COLUMN IF EXISTS max_lng;
+
+COMMENT ON INDEX idx_fields_bbox IS
+    'Range scan on min_lat <= :maxLat; max_lat / min_lng / max_lng are filtered from index entries';
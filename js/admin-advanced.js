@@ -692,6 +692,44 @@ function renderZonesOnMap(zones) {
     zones.forEach(zone => addZoneToMap(zone));
 }
 
+/**
+ * Overlay image as a tile pyramid when the server has cut one (only the visible tiles load),
+ * otherwise as a single image overlay
+ */
+function addOverlayImageLayer(zone, imageUrl, bounds) {
+    const addImageOverlay = () => {
+        const imageOverlay = L.imageOverlay(imageUrl, bounds, {
+            opacity: 0.9,
+            interactive: true,
+            className: 'map-image-overlay' // Add class for CSS styling
+        });
+        imageOverlay.on('click', () => showZoneInfo(zone));
+        imageOverlay.addTo(planningZonesLayer);
+    };
+
+    const match = imageUrl.match(/^(.*)\/api\/kmz\/images\/(\d+)\/(.+)$/);
+    if (!match) {
+        addImageOverlay();
+        return;
+    }
+    const [, origin, uploadId, imageName] = match;
+    // The server derives the tile key (sanitised name + hash) from the image name
+    const image = encodeURIComponent(decodeURIComponent(imageName));
+    fetch(`${origin}/api/kmz/tiles/${uploadId}/tile.json?image=${image}`)
+        .then(response => response.ok ? response.json() : Promise.reject(response.status))
+        .then(tileJson => {
+            L.tileLayer(origin + tileJson.tiles[0], {
+                bounds: bounds,
+                minNativeZoom: tileJson.minzoom,
+                maxNativeZoom: tileJson.maxzoom,
+                maxZoom: 22,
+                opacity: 0.9,
+                className: 'map-image-overlay'
+            }).addTo(planningZonesLayer);
+        })
+        .catch(() => addImageOverlay());
+}
+
 function addZoneToMap(zone) {
     let coordinates;
 
@@ -716,14 +754,7 @@ function addZoneToMap(zone) {
                     ? API_BASE_URL.replace('/api', '') + zone.imageUrl
                     : zone.imageUrl;
 
-                const imageOverlay = L.imageOverlay(imageUrl, bounds, {
-                    opacity: 0.9,
-                    interactive: true,
-                    className: 'map-image-overlay' // Add class for CSS styling
-                });
-
-                imageOverlay.on('click', () => showZoneInfo(zone));
-                imageOverlay.addTo(planningZonesLayer);
+                addOverlayImageLayer(zone, imageUrl, bounds);
 
                 // Apply blend mode to remove white background effect
                 setTimeout(() => {
@@ -741,6 +772,7 @@ function addZoneToMap(zone) {
                     dashArray: '5, 5'
                 });
                 polygon.bindTooltip(zone.name || 'Vùng quy hoạch', { className: 'planning-popup' });
+                polygon.on('click', () => showZoneInfo(zone));
                 polygon.addTo(planningZonesLayer);
                 return;
             }
@@ -1832,11 +1864,10 @@ async function loadLocalParcelsOverlay() {
         const sw = bounds.getSouthWest();
         const ne = bounds.getNorthEast();
 
-        const parcels = await fetchAPI(
-            `/land-parcels/bounds?swLat=${sw.lat}&swLng=${sw.lng}&neLat=${ne.lat}&neLng=${ne.lng}`
-        );
+        // Hover needs polygons, so never below the simplified-outline level
+        const parcels = await fetchLocalParcelPages(sw, ne, Math.max(zoom, 15));
 
-        renderLocalParcelsOverlay(parcels || []);
+        renderLocalParcelsOverlay(parcels);
     } catch (error) {
         console.error('Error loading local parcels overlay:', error);
     }
@@ -1845,6 +1876,24 @@ async function loadLocalParcelsOverlay() {
     map.on('moveend', onMapMoveLoadLocalParcels);
 }
 
+/**
+ * Parcels in the viewport page by page; the server caps each page and returns nextCursor
+ * (zoom <= 14 centroids, 15-16 simplified outlines, 17+ full rows)
+ */
+async function fetchLocalParcelPages(sw, ne, zoom, maxPages = 5) {
+    const base = `/land-parcels/bounds?swLat=${sw.lat}&swLng=${sw.lng}&neLat=${ne.lat}&neLng=${ne.lng}&zoom=${Math.round(zoom)}`;
+    const items = [];
+    let cursor = null;
+    for (let page = 0; page < maxPages; page++) {
+        const body = await fetchAPI(cursor ? `${base}&cursor=${encodeURIComponent(cursor)}` : base);
+        if (!body || !Array.isArray(body.items)) break;
+        items.push(...body.items);
+        if (!body.hasMore || !body.nextCursor) break;
+        cursor = body.nextCursor;
+    }
+    return items;
+}
+
 function renderLocalParcelsOverlay(parcels) {
     if (landParcelsLocalLayer) {
         map.removeLayer(landParcelsLocalLayer);
@@ -1852,11 +1901,11 @@ function renderLocalParcelsOverlay(parcels) {
 
     const geojsonFeatures = [];
     parcels.forEach(parcel => {
-        if (!parcel.boundaryGeojson) return;
+        // Outline rows carry geometry, full rows boundaryGeojson
+        const source = parcel.geometry || parcel.boundaryGeojson;
+        if (!source) return;
         try {
-            const geometry = typeof parcel.boundaryGeojson === 'string'
-                ? JSON.parse(parcel.boundaryGeojson)
-                : parcel.boundaryGeojson;
+            const geometry = typeof source === 'string' ? JSON.parse(source) : source;
             geojsonFeatures.push({
                 type: 'Feature',
                 geometry: geometry,
@@ -2848,7 +2897,7 @@ function closeAIAnalysisModal() {
     clearAIPreview(); // Clear preview polygons from map
 }
 
-async function confirmAIAnalysis() {
+async function confirmAIAnalysis(overlapPolicy) {
     if (!aiAnalysisData) {
         showToast('Lỗi', 'Không có dữ liệu phân tích', 'error');
         return;
@@ -2871,12 +2920,21 @@ async function confirmAIAnalysis() {
             },
             body: JSON.stringify({
                 analysisId: aiAnalysisData.analysisId,
-                zones: aiAnalysisData.zones
+                zones: aiAnalysisData.zones,
+                overlapPolicy
             })
         });
 
         const data = await response.json();
 
+        // Zones duplicate ones already saved: ask before saving only the new ones
+        if (data.duplicateZones && !overlapPolicy) {
+            if (confirm(`${data.error}\n\nBỏ qua các vùng trùng và lưu phần còn lại?`)) {
+                return confirmAIAnalysis('skip-duplicates');
+            }
+            throw new Error(data.error);
+        }
+
         if (response.ok && data.success) {
             showToast('Thành công', `Đã lưu ${data.zonesCount || 0} vùng vào database`, 'success');
             closeAIAnalysisModal();
@@ -3315,6 +3373,9 @@ async function startMultiAIAnalysis() {
 
         currentAnalysisId = data.analysisId;
         addAnalysisLog('System', `Analysis ID: ${currentAnalysisId}`);
+        if (data.queuePosition) {
+            addAnalysisLog('System', `Đang chờ trong hàng đợi (vị trí ${data.queuePosition}, khoảng ${data.etaSeconds}s)`);
+        }
 
         // Step 1 completed - upload succeeded
         updateAnalysisStep('step1_upload', 'completed', '✓ Đã nhận ảnh bản đồ');
@@ -3410,6 +3471,10 @@ async function pollAnalysisStatus(analysisId, maxAttempts = 120) {
                 return;
             } else if (data.status === 'failed') {
                 throw new Error(data.error || 'Phân tích thất bại');
+            } else if (data.status === 'cancelled' || data.status === 'expired') {
+                showToast('Thông báo', data.message, 'info');
+                resetAnalysisUI();
+                return;
             }
 
             // Update progress message
@@ -4208,7 +4273,7 @@ function resetAnalysisUI() {
     `;
 }
 
-async function confirmAndSaveAnalysis() {
+async function confirmAndSaveAnalysis(overlapPolicy) {
     if (!currentAnalysisId || !currentAnalysisResult) {
         showToast('Lỗi', 'Không có kết quả để lưu', 'error');
         return;
@@ -4226,12 +4291,20 @@ async function confirmAndSaveAnalysis() {
                     'Authorization': `Bearer ${token}`,
                     'Content-Type': 'application/json'
                 },
-                body: JSON.stringify({ mapType })
+                body: JSON.stringify({ mapType, overlapPolicy })
             }
         );
 
         const data = await response.json();
 
+        // Zones duplicate ones already saved: ask before saving only the new ones
+        if (data.duplicateZones && !overlapPolicy) {
+            if (confirm(`${data.error}\n\nBỏ qua các vùng trùng và lưu phần còn lại?`)) {
+                return confirmAndSaveAnalysis('skip-duplicates');
+            }
+            throw new Error(data.error);
+        }
+
         if (data.success) {
             showToast('Thành công', data.message, 'success');
             discardAnalysis(true); // Skip backend DELETE - zones already saved to DB
@@ -565,6 +565,45 @@ function showUserSuitabilityPopup(parcelInfo, soilInfo, latlng) {
 
 // ============ LOCAL PARCELS OVERLAY (for tooltips) ============
 
+// Parcels in a box, page by page: the server caps each page and returns nextCursor for the rest.
+// zoom sets the detail level (<= 14 centroids, 15-16 simplified outlines, 17+ full rows).
+async function fetchLandParcelPages(sw, ne, zoom, { maxPages = 5, stopWhen = null } = {}) {
+    const base = `${API_BASE}/land-parcels/bounds?swLat=${sw.lat}&swLng=${sw.lng}&neLat=${ne.lat}&neLng=${ne.lng}&zoom=${Math.round(zoom)}`;
+    const items = [];
+    let cursor = null;
+    for (let page = 0; page < maxPages; page++) {
+        const url = cursor ? `${base}&cursor=${encodeURIComponent(cursor)}` : base;
+        const body = await fetch(url).then(r => r.ok ? r.json() : null);
+        if (!body || !Array.isArray(body.items)) break;
+        items.push(...body.items);
+        if ((stopWhen && body.items.some(stopWhen)) || !body.hasMore || !body.nextCursor) break;
+        cursor = body.nextCursor;
+    }
+    return items;
+}
+
+// GeoJSON geometry of a parcel item (outline: geometry, full row: boundaryGeojson)
+function landParcelGeometry(p) {
+    const geom = p.geometry || p.boundaryGeojson;
+    if (!geom) return null;
+    try {
+        return typeof geom === 'string' ? JSON.parse(geom) : geom;
+    } catch (e) {
+        return null;
+    }
+}
+
+// Parcel of a WMS GetFeatureInfo hit, with full geometry, from a small box around the point
+async function findLocalParcelGeometry(latlng, parcelInfo) {
+    const isMatch = p => p.parcelNumber == parcelInfo.parcelNumber && p.mapSheetNumber == parcelInfo.mapSheetNumber;
+    const parcels = await fetchLandParcelPages(
+        { lat: latlng.lat - 0.002, lng: latlng.lng - 0.002 },
+        { lat: latlng.lat + 0.002, lng: latlng.lng + 0.002 },
+        18, { stopWhen: isMatch });
+    const match = parcels.find(isMatch);
+    return match ? landParcelGeometry(match) : null;
+}
+
 async function loadUserLocalParcels() {
     const zoom = map.getZoom();
     if (zoom < 14) {
@@ -579,16 +618,16 @@ async function loadUserLocalParcels() {
         const bounds = map.getBounds();
         const sw = bounds.getSouthWest();
         const ne = bounds.getNorthEast();
-        const parcels = await fetch(`${API_BASE}/land-parcels/bounds?swLat=${sw.lat}&swLng=${sw.lng}&neLat=${ne.lat}&neLng=${ne.lng}`)
-            .then(r => r.ok ? r.json() : []);
+        // Hover needs polygons, so never below the simplified-outline level
+        const parcels = await fetchLandParcelPages(sw, ne, Math.max(zoom, 15));
 
         if (userLocalParcelsLayer) map.removeLayer(userLocalParcelsLayer);
 
         const features = [];
         parcels.forEach(p => {
-            if (!p.boundaryGeojson) return;
+            const geom = landParcelGeometry(p);
+            if (!geom) return;
             try {
-                const geom = typeof p.boundaryGeojson === 'string' ? JSON.parse(p.boundaryGeojson) : p.boundaryGeojson;
                 features.push({
                     type: 'Feature', geometry: geom,
                     properties: { parcelNumber: p.parcelNumber, mapSheetNumber: p.mapSheetNumber, landUseCode: p.landUseCode, landUseName: p.landUseName, areaSqm: p.areaSqm, adminUnitName: p.adminUnitName }
@@ -982,17 +1021,7 @@ async function onAddFieldByParcelClick(e) {
     // Try to get geometry from local DB for accurate boundary
     let parcelGeometry = null;
     try {
-        const localParcels = await fetch(`${API_BASE}/land-parcels/bounds?swLat=${latlng.lat - 0.002}&swLng=${latlng.lng - 0.002}&neLat=${latlng.lat + 0.002}&neLng=${latlng.lng + 0.002}`)
-            .then(r => r.ok ? r.json() : []);
-
-        // Find matching parcel
-        const match = localParcels.find(p =>
-            p.parcelNumber == parcelInfo.parcelNumber &&
-            p.mapSheetNumber == parcelInfo.mapSheetNumber
-        );
-        if (match && match.boundaryGeojson) {
-            parcelGeometry = typeof match.boundaryGeojson === 'string' ? JSON.parse(match.boundaryGeojson) : match.boundaryGeojson;
-        }
+        parcelGeometry = await findLocalParcelGeometry(latlng, parcelInfo);
     } catch (e) { console.warn('Could not fetch local parcel geometry:', e); }
 
     // Highlight the selected parcel